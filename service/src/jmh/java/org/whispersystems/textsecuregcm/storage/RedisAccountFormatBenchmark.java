@@ -0,0 +1,79 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the cost of encoding and decoding cached accounts in the JSON format with the cost of doing so in the binary
+ * (CBOR) format. Both directions go through the same methods {@link AccountsManager} uses to write accounts to and read
+ * accounts from the accounts cache, and use the account from the serialization round-trip test fixture.
+ * <p>
+ * Run with {@code ./mvnw -pl service -am -Pbenchmark -DskipTests test -Djmh.args="RedisAccountFormatBenchmark"}; add
+ * {@code -prof gc} to the JMH arguments to compare allocation rates, too.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisAccountFormatBenchmark {
+
+  private static final UUID ACCOUNT_IDENTIFIER = UUID.randomUUID();
+
+  private Account account;
+  private byte[] jsonAccount;
+  private byte[] binaryAccount;
+
+  @Setup
+  public void setUp() throws IOException {
+    try (final InputStream inputStream = AccountsManager.class.getResourceAsStream(
+        "AccountsManagerTest-testJsonRoundTripSerialization.json")) {
+
+      account = AccountsManager.parseRedisAccount(Objects.requireNonNull(inputStream).readAllBytes(), ACCOUNT_IDENTIFIER)
+          .orElseThrow();
+    }
+
+    jsonAccount = AccountsManager.writeRedisAccount(account, false);
+    binaryAccount = AccountsManager.writeRedisAccount(account, true);
+  }
+
+  @Benchmark
+  public byte[] writeJson() throws IOException {
+    return AccountsManager.writeRedisAccount(account, false);
+  }
+
+  @Benchmark
+  public byte[] writeBinary() throws IOException {
+    return AccountsManager.writeRedisAccount(account, true);
+  }
+
+  @Benchmark
+  public Optional<Account> readJson() {
+    return AccountsManager.parseRedisAccount(jsonAccount, ACCOUNT_IDENTIFIER);
+  }
+
+  @Benchmark
+  public Optional<Account> readBinary() {
+    return AccountsManager.parseRedisAccount(binaryAccount, ACCOUNT_IDENTIFIER);
+  }
+}
@@ -8,6 +8,7 @@ import static com.codahale.metrics.MetricRegistry.name;
 import static java.util.Objects.requireNonNull;
 
 import com.google.common.collect.Lists;
+import com.google.common.net.HttpHeaders;
 import io.dropwizard.auth.AuthDynamicFeature;
 import io.dropwizard.auth.AuthFilter;
 import io.dropwizard.auth.AuthValueFactoryProvider;
@@ -128,6 +129,7 @@ import org.whispersystems.textsecuregcm.grpc.ExternalServiceCredentialsGrpcServi
 import org.whispersystems.textsecuregcm.grpc.GrpcServerManagedWrapper;
 import org.whispersystems.textsecuregcm.grpc.KeysAnonymousGrpcService;
 import org.whispersystems.textsecuregcm.grpc.KeysGrpcService;
+import org.whispersystems.textsecuregcm.grpc.MessagesGrpcService;
 import org.whispersystems.textsecuregcm.grpc.PaymentsGrpcService;
 import org.whispersystems.textsecuregcm.grpc.ProfileAnonymousGrpcService;
 import org.whispersystems.textsecuregcm.grpc.ProfileGrpcService;
@@ -152,6 +154,7 @@ import org.whispersystems.textsecuregcm.metrics.MetricsApplicationEventListener;
 import org.whispersystems.textsecuregcm.metrics.MetricsUtil;
 import org.whispersystems.textsecuregcm.metrics.ReportedMessageMetricsListener;
 import org.whispersystems.textsecuregcm.metrics.TrafficSource;
+import org.whispersystems.textsecuregcm.metrics.VirtualThreadPinnedEventMonitor;
 import org.whispersystems.textsecuregcm.providers.MultiRecipientMessageProvider;
 import org.whispersystems.textsecuregcm.providers.RedisClusterHealthCheck;
 import org.whispersystems.textsecuregcm.push.APNSender;
@@ -178,11 +181,13 @@ import org.whispersystems.textsecuregcm.spam.ScoreThresholdProvider;
 import org.whispersystems.textsecuregcm.spam.SenderOverrideProvider;
 import org.whispersystems.textsecuregcm.spam.SpamFilter;
 import org.whispersystems.textsecuregcm.storage.AccountLockManager;
+import org.whispersystems.textsecuregcm.storage.AccountNearCache;
 import org.whispersystems.textsecuregcm.storage.Accounts;
 import org.whispersystems.textsecuregcm.storage.AccountsManager;
 import org.whispersystems.textsecuregcm.storage.ChangeNumberManager;
 import org.whispersystems.textsecuregcm.storage.ClientReleaseManager;
 import org.whispersystems.textsecuregcm.storage.ClientReleases;
+import org.whispersystems.textsecuregcm.storage.DeviceLastSeenUpdater;
 import org.whispersystems.textsecuregcm.storage.DynamicConfigurationManager;
 import org.whispersystems.textsecuregcm.storage.IssuedReceiptsManager;
 import org.whispersystems.textsecuregcm.storage.KeysManager;
@@ -210,11 +215,15 @@ import org.whispersystems.textsecuregcm.subscriptions.StripeManager;
 import org.whispersystems.textsecuregcm.util.DynamoDbFromConfig;
 import org.whispersystems.textsecuregcm.util.SystemMapper;
 import org.whispersystems.textsecuregcm.util.UsernameHashZkProofVerifier;
+import org.whispersystems.textsecuregcm.util.VirtualThreadExecutors;
 import org.whispersystems.textsecuregcm.util.logging.LoggingUnhandledExceptionMapper;
 import org.whispersystems.textsecuregcm.util.logging.UncaughtExceptionHandler;
+import org.whispersystems.textsecuregcm.util.ua.UnrecognizedUserAgentException;
+import org.whispersystems.textsecuregcm.util.ua.UserAgentUtil;
 import org.whispersystems.textsecuregcm.websocket.AuthenticatedConnectListener;
 import org.whispersystems.textsecuregcm.websocket.ProvisioningConnectListener;
 import org.whispersystems.textsecuregcm.websocket.WebSocketAccountAuthenticator;
+import org.whispersystems.textsecuregcm.websocket.WebSocketConnectionDrainer;
 import org.whispersystems.textsecuregcm.workers.AssignUsernameCommand;
 import org.whispersystems.textsecuregcm.workers.CertificateCommand;
 import org.whispersystems.textsecuregcm.workers.CheckDynamicConfigurationCommand;
@@ -230,6 +239,7 @@ import org.whispersystems.textsecuregcm.workers.SetUserDiscoverabilityCommand;
 import org.whispersystems.textsecuregcm.workers.UnlinkDeviceCommand;
 import org.whispersystems.textsecuregcm.workers.ZkParamsCommand;
 import org.whispersystems.websocket.WebSocketResourceProviderFactory;
+import org.whispersystems.websocket.compression.MeteredDeflaterPool;
 import org.whispersystems.websocket.setup.WebSocketEnvironment;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
@@ -372,6 +382,7 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
     PushChallengeDynamoDb pushChallengeDynamoDb = new PushChallengeDynamoDb(dynamoDbClient,
         config.getDynamoDbTables().getPushChallenge().getTableName());
     ReportMessageDynamoDb reportMessageDynamoDb = new ReportMessageDynamoDb(dynamoDbClient,
+        dynamoDbAsyncClient,
         config.getDynamoDbTables().getReportMessage().getTableName(),
         config.getReportMessageConfiguration().getReportTtl());
     RegistrationRecoveryPasswords registrationRecoveryPasswords = new RegistrationRecoveryPasswords(
@@ -402,8 +413,6 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
         keyspaceNotificationDispatchQueue);
     final BlockingQueue<Runnable> receiptSenderQueue = new LinkedBlockingQueue<>();
     Metrics.gaugeCollectionSize(name(getClass(), "receiptSenderQueue"), Collections.emptyList(), receiptSenderQueue);
-    final BlockingQueue<Runnable> fcmSenderQueue = new LinkedBlockingQueue<>();
-    Metrics.gaugeCollectionSize(name(getClass(), "fcmSenderQueue"), Collections.emptyList(), fcmSenderQueue);
     final BlockingQueue<Runnable> messageDeliveryQueue = new LinkedBlockingQueue<>();
     Metrics.gaugeCollectionSize(MetricsUtil.name(getClass(), "messageDeliveryQueue"), Collections.emptyList(),
         messageDeliveryQueue);
@@ -422,8 +431,22 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
         MetricsUtil.PREFIX);
     ExecutorService apnSenderExecutor = environment.lifecycle().executorService(name(getClass(), "apnSender-%d"))
         .maxThreads(1).minThreads(1).build();
-    ExecutorService fcmSenderExecutor = environment.lifecycle().executorService(name(getClass(), "fcmSender-%d"))
-        .maxThreads(32).minThreads(32).workQueue(fcmSenderQueue).build();
+    final VirtualThreadExecutors virtualThreadExecutors =
+        new VirtualThreadExecutors(config.getVirtualThreadConfiguration(), environment.lifecycle());
+    if (!config.getVirtualThreadConfiguration().enabledExecutors().isEmpty()) {
+      environment.lifecycle().manage(new VirtualThreadPinnedEventMonitor(
+          config.getVirtualThreadConfiguration().pinnedThreadReportingThreshold()));
+    }
+
+    ExecutorService fcmSenderExecutor = virtualThreadExecutors.executorService(VirtualThreadExecutors.FCM_SENDER, 32,
+        () -> {
+          // A virtual-thread executor reports its backlog through VirtualThreadExecutors' own gauge instead
+          final BlockingQueue<Runnable> fcmSenderQueue = new LinkedBlockingQueue<>();
+          Metrics.gaugeCollectionSize(name(getClass(), "fcmSenderQueue"), Collections.emptyList(), fcmSenderQueue);
+
+          return environment.lifecycle().executorService(name(getClass(), "fcmSender-%d"))
+              .maxThreads(32).minThreads(32).workQueue(fcmSenderQueue).build();
+        });
     ExecutorService secureValueRecoveryServiceExecutor = environment.lifecycle()
         .executorService(name(getClass(), "secureValueRecoveryService-%d")).maxThreads(1).minThreads(1).build();
     ExecutorService storageServiceExecutor = environment.lifecycle()
@@ -448,9 +471,13 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
         "messageDelivery");
 
     // TODO: generally speaking this is a DynamoDB I/O executor for the accounts table; we should eventually have a general executor for speaking to the accounts table, but most of the server is still synchronous so this isn't widely useful yet
-    ExecutorService batchIdentityCheckExecutor = environment.lifecycle().executorService(name(getClass(), "batchIdentityCheck-%d")).minThreads(32).maxThreads(32).build();
-    ExecutorService multiRecipientMessageExecutor = environment.lifecycle()
-        .executorService(name(getClass(), "multiRecipientMessage-%d")).minThreads(64).maxThreads(64).build();
+    ExecutorService batchIdentityCheckExecutor = virtualThreadExecutors.executorService(
+        VirtualThreadExecutors.BATCH_IDENTITY_CHECK, 32,
+        () -> environment.lifecycle().executorService(name(getClass(), "batchIdentityCheck-%d")).minThreads(32).maxThreads(32).build());
+    ExecutorService multiRecipientMessageExecutor = virtualThreadExecutors.executorService(
+        VirtualThreadExecutors.MULTI_RECIPIENT_MESSAGE, 64,
+        () -> environment.lifecycle()
+            .executorService(name(getClass(), "multiRecipientMessage-%d")).minThreads(64).maxThreads(64).build());
     ExecutorService subscriptionProcessorExecutor = environment.lifecycle()
         .executorService(name(getClass(), "subscriptionProcessor-%d"))
         .maxThreads(availableProcessors)  // mostly this is IO bound so tying to number of processors is tenuous at best
@@ -469,16 +496,19 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
         .maxThreads(2)
         .minThreads(2)
         .build();
-    ExecutorService accountLockExecutor = environment.lifecycle()
-        .executorService(name(getClass(), "accountLock-%d"))
-        .minThreads(8)
-        .maxThreads(8)
-        .build();
-    ExecutorService clientPresenceExecutor = environment.lifecycle()
-        .executorService(name(getClass(), "clientPresence-%d"))
-        .minThreads(8)
-        .maxThreads(8)
-        .build();
+    ExecutorService accountLockExecutor = virtualThreadExecutors.executorService(VirtualThreadExecutors.ACCOUNT_LOCK, 8,
+        () -> environment.lifecycle()
+            .executorService(name(getClass(), "accountLock-%d"))
+            .minThreads(8)
+            .maxThreads(8)
+            .build());
+    ExecutorService clientPresenceExecutor = virtualThreadExecutors.executorService(
+        VirtualThreadExecutors.CLIENT_PRESENCE, 8,
+        () -> environment.lifecycle()
+            .executorService(name(getClass(), "clientPresence-%d"))
+            .minThreads(8)
+            .maxThreads(8)
+            .build());
     ScheduledExecutorService subscriptionProcessorRetryExecutor = environment.lifecycle()
         .scheduledExecutorService(name(getClass(), "subscriptionProcessorRetry-%d")).threads(1).build();
 
@@ -532,7 +562,7 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
         keyspaceNotificationDispatchExecutor);
     ProfilesManager profilesManager = new ProfilesManager(profiles, cacheCluster);
     MessagesCache messagesCache = new MessagesCache(messagesCluster, messagesCluster,
-        keyspaceNotificationDispatchExecutor, messageDeliveryScheduler, messageDeletionAsyncExecutor, clock);
+        keyspaceNotificationDispatchExecutor, messageDeliveryScheduler, messageDeletionAsyncExecutor, clock, dynamicConfigurationManager);
     ClientReleaseManager clientReleaseManager = new ClientReleaseManager(clientReleases,
         recurringJobExecutor,
         config.getClientReleaseConfiguration().refreshInterval(),
@@ -544,8 +574,9 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
         messageDeletionAsyncExecutor);
     AccountLockManager accountLockManager = new AccountLockManager(dynamoDbClient,
         config.getDynamoDbTables().getDeletedAccountsLock().getTableName());
+    AccountNearCache accountNearCache = new AccountNearCache(cacheCluster, config.getAccountNearCacheConfiguration());
     AccountsManager accountsManager = new AccountsManager(accounts, phoneNumberIdentifiers, cacheCluster,
-        accountLockManager, keysManager, messagesManager, profilesManager,
+        accountNearCache, accountLockManager, keysManager, messagesManager, profilesManager,
         secureStorageClient, secureValueRecovery2Client,
         clientPresenceManager,
         experimentEnrollmentManager, registrationRecoveryPasswordsManager, accountLockExecutor, clientPresenceExecutor,
@@ -585,7 +616,11 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
         accountsManager);
     reportMessageManager.addListener(reportedMessageMetricsListener);
 
-    final AccountAuthenticator accountAuthenticator = new AccountAuthenticator(accountsManager);
+    final ScheduledExecutorService deviceLastSeenUpdaterExecutor = environment.lifecycle()
+        .scheduledExecutorService(name(getClass(), "deviceLastSeenUpdater-%d")).threads(1).build();
+    final DeviceLastSeenUpdater deviceLastSeenUpdater =
+        new DeviceLastSeenUpdater(accountsManager, deviceLastSeenUpdaterExecutor);
+    final AccountAuthenticator accountAuthenticator = new AccountAuthenticator(accountsManager, deviceLastSeenUpdater);
 
     final MessageSender messageSender = new MessageSender(clientPresenceManager, messagesManager,
         pushNotificationManager,
@@ -629,7 +664,10 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
     environment.lifecycle().manage(apnPushNotificationScheduler);
     environment.lifecycle().manage(provisioningManager);
     environment.lifecycle().manage(messagesCache);
+    environment.lifecycle().manage(reportMessageManager);
     environment.lifecycle().manage(clientPresenceManager);
+    environment.lifecycle().manage(accountNearCache);
+    environment.lifecycle().manage(deviceLastSeenUpdater);
     environment.lifecycle().manage(currencyManager);
     environment.lifecycle().manage(registrationServiceClient);
     environment.lifecycle().manage(clientReleaseManager);
@@ -689,7 +727,7 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
         clock);
 
     final BasicCredentialAuthenticationInterceptor basicCredentialAuthenticationInterceptor =
-        new BasicCredentialAuthenticationInterceptor(new AccountAuthenticator(accountsManager));
+        new BasicCredentialAuthenticationInterceptor(accountAuthenticator);
 
     final ServerBuilder<?> grpcServer = ServerBuilder.forPort(config.getGrpcPort())
         .addService(ServerInterceptors.intercept(new AccountsGrpcService(accountsManager, rateLimiters, usernameHashZkProofVerifier, registrationRecoveryPasswordsManager), basicCredentialAuthenticationInterceptor))
@@ -698,6 +736,9 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
         .addService(ExternalServiceCredentialsAnonymousGrpcService.create(accountsManager, config))
         .addService(ServerInterceptors.intercept(new KeysGrpcService(accountsManager, keysManager, rateLimiters), basicCredentialAuthenticationInterceptor))
         .addService(new KeysAnonymousGrpcService(accountsManager, keysManager))
+        .addService(ServerInterceptors.intercept(new MessagesGrpcService(accountsManager, messagesManager, clientPresenceManager,
+            pushNotificationManager, receiptSender, clientReleaseManager, messageDeliveryScheduler),
+            basicCredentialAuthenticationInterceptor))
         .addService(new PaymentsGrpcService(currencyManager))
         .addService(ServerInterceptors.intercept(new ProfileGrpcService(clock, accountsManager, profilesManager, dynamicConfigurationManager,
                 config.getBadges(), asyncCdnS3Client, profileCdnPolicyGenerator, profileCdnPolicySigner, profileBadgeConverter, rateLimiters, zkProfileOperations, config.getCdnConfiguration().bucket()), basicCredentialAuthenticationInterceptor))
@@ -738,15 +779,31 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
     WebSocketEnvironment<AuthenticatedAccount> webSocketEnvironment = new WebSocketEnvironment<>(environment,
         config.getWebSocketConfiguration(), Duration.ofMillis(90000));
     webSocketEnvironment.setAuthenticator(new WebSocketAccountAuthenticator(accountAuthenticator));
+    webSocketEnvironment.setClientPlatformResolver(upgradeRequest -> {
+      try {
+        return Optional.of(UserAgentUtil.parseUserAgentString(upgradeRequest.getHeader(HttpHeaders.USER_AGENT))
+            .getPlatform().name());
+      } catch (final UnrecognizedUserAgentException e) {
+        return Optional.empty();
+      }
+    });
+    final WebSocketConnectionDrainer webSocketConnectionDrainer =
+        new WebSocketConnectionDrainer(config.getWebSocketDrainConfiguration(), clock);
+    environment.lifecycle().addEventListener(webSocketConnectionDrainer);
+    webSocketEnvironment.setAdmissionController(webSocketConnectionDrainer);
     webSocketEnvironment.setConnectListener(
         new AuthenticatedConnectListener(receiptSender, messagesManager, pushNotificationManager,
-            clientPresenceManager, websocketScheduledExecutor, messageDeliveryScheduler, clientReleaseManager));
+            clientPresenceManager, websocketScheduledExecutor, messageDeliveryScheduler, clientReleaseManager,
+            dynamicConfigurationManager, webSocketConnectionDrainer));
     webSocketEnvironment.jersey()
         .register(new WebsocketRefreshApplicationEventListener(accountsManager, clientPresenceManager));
     webSocketEnvironment.jersey().register(new RequestStatisticsFilter(TrafficSource.WEBSOCKET));
     webSocketEnvironment.jersey().register(MultiRecipientMessageProvider.class);
     webSocketEnvironment.jersey().register(new MetricsApplicationEventListener(TrafficSource.WEBSOCKET, clientReleaseManager));
-    webSocketEnvironment.jersey().register(new KeepAliveController(clientPresenceManager));
+
+    final KeepAliveController keepAliveController = new KeepAliveController(clientPresenceManager);
+    webSocketEnvironment.jersey().register(keepAliveController);
+    webSocketEnvironment.routes().register("GET", "/v1/keepalive", keepAliveController::handleKeepAlive);
 
     boolean registeredSpamFilter = false;
     ReportSpamTokenProvider reportSpamTokenProvider = null;
@@ -798,6 +855,16 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
       reportSpamTokenProvider = ReportSpamTokenProvider.noop();
     }
 
+    final MessageController messageController = new MessageController(rateLimiters,
+        messageByteLimitCardinalityEstimator, messageSender, receiptSender, accountsManager, messagesManager,
+        pushNotificationManager, reportMessageManager, multiRecipientMessageExecutor, messageDeliveryScheduler,
+        reportSpamTokenProvider, clientReleaseManager, dynamicConfigurationManager, zkSecretParams);
+
+    // Like keepalives, message acknowledgements are frequent and need neither the spam filter nor rate limiting, so they
+    // can skip Jersey; sending messages relies on both and stays on Jersey
+    webSocketEnvironment.routes().register("DELETE", "/v1/messages/uuid/{uuid}",
+        messageController::handleRemovePendingMessage);
+
     final List<Object> commonControllers = Lists.newArrayList(
         new AccountController(accountsManager, rateLimiters, turnTokenGenerator, registrationRecoveryPasswordsManager,
             usernameHashZkProofVerifier),
@@ -822,10 +889,7 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
         new DonationController(clock, zkReceiptOperations, redeemedReceiptsManager, accountsManager, config.getBadges(),
             ReceiptCredentialPresentation::new),
         new KeysController(rateLimiters, keysManager, accountsManager),
-        new MessageController(rateLimiters, messageByteLimitCardinalityEstimator, messageSender, receiptSender,
-            accountsManager, messagesManager, pushNotificationManager, reportMessageManager,
-            multiRecipientMessageExecutor, messageDeliveryScheduler, reportSpamTokenProvider, clientReleaseManager,
-            dynamicConfigurationManager, zkSecretParams),
+        messageController,
         new PaymentsController(currencyManager, paymentsCredentialsGenerator),
         new ProfileController(clock, rateLimiters, accountsManager, profilesManager, dynamicConfigurationManager,
             profileBadgeConverter, config.getBadges(), cdnS3Client, profileCdnPolicyGenerator, profileCdnPolicySigner,
@@ -870,6 +934,7 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
     webSocketEnvironment.jersey().property(ServerProperties.UNWRAP_COMPLETION_STAGE_IN_WRITER_ENABLE, Boolean.TRUE);
     provisioningEnvironment.jersey().property(ServerProperties.UNWRAP_COMPLETION_STAGE_IN_WRITER_ENABLE, Boolean.TRUE);
 
+    MeteredDeflaterPool.install(environment.getApplicationContext(), environment.metrics());
     JettyWebSocketServletContainerInitializer.configure(environment.getApplicationContext(), null);
 
     WebSocketResourceProviderFactory<AuthenticatedAccount> webSocketServlet = new WebSocketResourceProviderFactory<>(
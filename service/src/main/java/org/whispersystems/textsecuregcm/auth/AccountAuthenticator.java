@@ -21,6 +21,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.AccountsManager;
 import org.whispersystems.textsecuregcm.storage.Device;
+import org.whispersystems.textsecuregcm.storage.DeviceLastSeenUpdater;
 import org.whispersystems.textsecuregcm.storage.RefreshingAccountAndDeviceSupplier;
 import org.whispersystems.textsecuregcm.util.Pair;
 import org.whispersystems.textsecuregcm.util.Util;
@@ -39,16 +40,37 @@ public class AccountAuthenticator implements Authenticator<BasicCredentials, Aut
   @VisibleForTesting
   static final char DEVICE_ID_SEPARATOR = '.';
 
+  private static final int VERIFIED_CREDENTIAL_CACHE_MAX_SIZE = 100_000;
+  private static final Duration VERIFIED_CREDENTIAL_CACHE_TTL = Duration.ofMinutes(5);
+
   private final AccountsManager accountsManager;
+  private final DeviceLastSeenUpdater deviceLastSeenUpdater;
+  private final VerifiedCredentialCache verifiedCredentialCache;
   private final Clock clock;
 
-  public AccountAuthenticator(AccountsManager accountsManager) {
-    this(accountsManager, Clock.systemUTC());
+  public AccountAuthenticator(AccountsManager accountsManager, DeviceLastSeenUpdater deviceLastSeenUpdater) {
+    this(accountsManager, deviceLastSeenUpdater, Clock.systemUTC());
+  }
+
+  @VisibleForTesting
+  public AccountAuthenticator(AccountsManager accountsManager, DeviceLastSeenUpdater deviceLastSeenUpdater,
+      Clock clock) {
+
+    this(accountsManager,
+        deviceLastSeenUpdater,
+        new VerifiedCredentialCache(VERIFIED_CREDENTIAL_CACHE_MAX_SIZE, VERIFIED_CREDENTIAL_CACHE_TTL),
+        clock);
   }
 
   @VisibleForTesting
-  public AccountAuthenticator(AccountsManager accountsManager, Clock clock) {
+  AccountAuthenticator(final AccountsManager accountsManager,
+      final DeviceLastSeenUpdater deviceLastSeenUpdater,
+      final VerifiedCredentialCache verifiedCredentialCache,
+      final Clock clock) {
+
     this.accountsManager = accountsManager;
+    this.deviceLastSeenUpdater = deviceLastSeenUpdater;
+    this.verifiedCredentialCache = verifiedCredentialCache;
     this.clock = clock;
   }
 
@@ -99,9 +121,10 @@ public class AccountAuthenticator implements Authenticator<BasicCredentials, Aut
       }
 
       SaltedTokenHash deviceSaltedTokenHash = device.get().getAuthTokenHash();
-      if (deviceSaltedTokenHash.verify(basicCredentials.getPassword())) {
+      if (verifyCredentials(accountUuid, deviceId, deviceSaltedTokenHash, basicCredentials.getPassword())) {
         succeeded = true;
-        Account authenticatedAccount = updateLastSeen(account.get(), device.get());
+        Account authenticatedAccount = account.get();
+        updateLastSeen(authenticatedAccount, device.get());
         if (deviceSaltedTokenHash.getVersion() != SaltedTokenHash.CURRENT_VERSION) {
           authenticatedAccount = accountsManager.updateDeviceAuthentication(
               authenticatedAccount,
@@ -128,8 +151,30 @@ public class AccountAuthenticator implements Authenticator<BasicCredentials, Aut
     }
   }
 
+  private boolean verifyCredentials(final UUID accountIdentifier,
+      final byte deviceId,
+      final SaltedTokenHash saltedTokenHash,
+      final String password) {
+
+    // Credentials with an outdated hash get replaced as soon as they're verified, so there's no point in caching them
+    if (saltedTokenHash.getVersion() != SaltedTokenHash.CURRENT_VERSION) {
+      return saltedTokenHash.verify(password);
+    }
+
+    if (verifiedCredentialCache.isVerified(accountIdentifier, deviceId, saltedTokenHash, password)) {
+      return true;
+    }
+
+    if (saltedTokenHash.verify(password)) {
+      verifiedCredentialCache.putVerified(accountIdentifier, deviceId, saltedTokenHash, password);
+      return true;
+    }
+
+    return false;
+  }
+
   @VisibleForTesting
-  public Account updateLastSeen(Account account, Device device) {
+  public void updateLastSeen(Account account, Device device) {
     // compute a non-negative integer between 0 and 86400.
     long n = Util.ensureNonNegativeLong(account.getUuid().getLeastSignificantBits());
     final long lastSeenOffsetSeconds = n % ChronoUnit.DAYS.getDuration().toSeconds();
@@ -147,9 +192,7 @@ public class AccountAuthenticator implements Authenticator<BasicCredentials, Aut
       Metrics.summary(DAYS_SINCE_LAST_SEEN_DISTRIBUTION_NAME, IS_PRIMARY_DEVICE_TAG, String.valueOf(device.isPrimary()))
           .record(Duration.ofMillis(todayInMillisWithOffset - device.getLastSeen()).toDays());
 
-      return accountsManager.updateDeviceLastSeen(account, device, Util.todayInMillis(clock));
+      deviceLastSeenUpdater.updateLastSeen(account, device, Util.todayInMillis(clock));
     }
-
-    return account;
   }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.auth;
+
+import static org.whispersystems.textsecuregcm.metrics.MetricsUtil.name;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.UUID;
+import org.whispersystems.textsecuregcm.util.Pair;
+
+/**
+ * A verified credential cache remembers recent successful verifications of device credentials so that clients that
+ * present the same credentials many times in a short period don't each require a full hash calculation.
+ * <p>
+ * The cache holds a keyed digest of each verified password along with the stored hash and salt against which it was
+ * verified, so a cached verification can only match the same password and stored credentials; if the stored
+ * credentials change (for example, because the device changed its password or was replaced by a newly-linked device),
+ * cached verifications simply stop matching. The digest key is generated randomly at startup and never leaves this
+ * process. Failed verifications are never cached.
+ */
+class VerifiedCredentialCache {
+
+  private final HashFunction digestFunction;
+  private final Cache<Pair<UUID, Byte>, byte[]> verifiedCredentialDigests;
+
+  private static final Counter HIT_COUNTER =
+      Metrics.counter(name(VerifiedCredentialCache.class, "lookup"), "hit", "true");
+
+  private static final Counter MISS_COUNTER =
+      Metrics.counter(name(VerifiedCredentialCache.class, "lookup"), "hit", "false");
+
+  private static final int DIGEST_KEY_LENGTH = 32;
+
+  VerifiedCredentialCache(final int maxSize, final Duration ttl) {
+    this(maxSize, ttl, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  VerifiedCredentialCache(final int maxSize, final Duration ttl, final Ticker ticker) {
+    final byte[] digestKey = new byte[DIGEST_KEY_LENGTH];
+    new SecureRandom().nextBytes(digestKey);
+
+    this.digestFunction = Hashing.hmacSha256(digestKey);
+    this.verifiedCredentialDigests = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(ttl)
+        .ticker(ticker)
+        .build();
+  }
+
+  /**
+   * Checks whether the given password has recently been verified against the given stored credentials for the given
+   * device.
+   *
+   * @param accountIdentifier the identifier of the account to which the device belongs
+   * @param deviceId the identifier of the device
+   * @param saltedTokenHash the device's stored credentials
+   * @param password the password presented by the client
+   *
+   * @return {@code true} if the given password has recently been verified against the given stored credentials or
+   * {@code false} otherwise
+   */
+  boolean isVerified(final UUID accountIdentifier,
+      final byte deviceId,
+      final SaltedTokenHash saltedTokenHash,
+      final String password) {
+
+    final byte[] verifiedCredentialDigest =
+        verifiedCredentialDigests.getIfPresent(new Pair<>(accountIdentifier, deviceId));
+
+    final boolean verified = verifiedCredentialDigest != null &&
+        MessageDigest.isEqual(verifiedCredentialDigest, digest(accountIdentifier, deviceId, saltedTokenHash, password));
+
+    (verified ? HIT_COUNTER : MISS_COUNTER).increment();
+
+    return verified;
+  }
+
+  /**
+   * Records that the given password has been verified against the given stored credentials for the given device.
+   * Callers must only call this method after a successful verification.
+   *
+   * @param accountIdentifier the identifier of the account to which the device belongs
+   * @param deviceId the identifier of the device
+   * @param saltedTokenHash the device's stored credentials
+   * @param password the password that was successfully verified against the stored credentials
+   */
+  void putVerified(final UUID accountIdentifier,
+      final byte deviceId,
+      final SaltedTokenHash saltedTokenHash,
+      final String password) {
+
+    verifiedCredentialDigests.put(new Pair<>(accountIdentifier, deviceId),
+        digest(accountIdentifier, deviceId, saltedTokenHash, password));
+  }
+
+  private byte[] digest(final UUID accountIdentifier,
+      final byte deviceId,
+      final SaltedTokenHash saltedTokenHash,
+      final String password) {
+
+    // Variable-length fields are length-prefixed so that no two sets of fields share an encoding
+    return digestFunction.newHasher()
+        .putLong(accountIdentifier.getMostSignificantBits())
+        .putLong(accountIdentifier.getLeastSignificantBits())
+        .putByte(deviceId)
+        .putInt(saltedTokenHash.hash().length())
+        .putString(saltedTokenHash.hash(), StandardCharsets.UTF_8)
+        .putInt(saltedTokenHash.salt().length())
+        .putString(saltedTokenHash.salt(), StandardCharsets.UTF_8)
+        .putInt(password.length())
+        .putString(password, StandardCharsets.UTF_8)
+        .hash()
+        .asBytes();
+  }
+}
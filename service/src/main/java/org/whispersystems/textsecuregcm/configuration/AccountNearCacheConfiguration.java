@@ -0,0 +1,32 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.configuration;
+
+import java.time.Duration;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
+
+/**
+ * @param enabled whether to keep recently-loaded accounts in memory; servers always publish invalidations for changed
+ * accounts regardless of whether their own near-cache is enabled
+ * @param maxSize the maximum number of accounts (including recently-invalidated accounts) to keep in memory
+ * @param ttl the longest time to keep an account in memory, which bounds the staleness of cached accounts if an
+ * invalidation is lost
+ */
+public record AccountNearCacheConfiguration(boolean enabled,
+                                            @Positive int maxSize,
+                                            @NotNull Duration ttl) {
+
+  public AccountNearCacheConfiguration {
+    if (maxSize == 0) {
+      maxSize = 100_000;
+    }
+
+    if (ttl == null) {
+      ttl = Duration.ofSeconds(10);
+    }
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.configuration;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
+import org.whispersystems.textsecuregcm.util.VirtualThreadExecutors;
+
+/**
+ * @param enabledExecutors the names of executors to back with virtual threads instead of fixed pools of platform
+ * threads; only the executors listed in {@link VirtualThreadExecutors} may be named here
+ * @param maxConcurrency the maximum number of tasks each virtual-thread executor may run at once, by executor name;
+ * executors not named here run at most as many tasks at once as their platform thread pools would have
+ * @param pinnedThreadReportingThreshold the minimum time a virtual thread must pin its carrier thread before the event
+ * is reported
+ */
+public record VirtualThreadConfiguration(@NotNull Set<String> enabledExecutors,
+                                         @NotNull Map<String, @NotNull @Positive Integer> maxConcurrency,
+                                         @NotNull Duration pinnedThreadReportingThreshold) {
+
+  public VirtualThreadConfiguration {
+    if (enabledExecutors == null) {
+      enabledExecutors = Set.of();
+    }
+
+    if (maxConcurrency == null) {
+      maxConcurrency = Map.of();
+    }
+
+    if (pinnedThreadReportingThreshold == null) {
+      pinnedThreadReportingThreshold = Duration.ofMillis(20);
+    }
+  }
+}
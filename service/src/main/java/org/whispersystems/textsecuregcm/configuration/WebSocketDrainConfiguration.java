@@ -0,0 +1,32 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.configuration;
+
+import java.time.Duration;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.PositiveOrZero;
+
+/**
+ * @param drainPeriod the period over which to close authenticated websocket connections when the server shuts down
+ * @param maxReconnectDelay the longest time clients will be asked to wait before reconnecting after being closed by a
+ * draining server or refused by a busy one; each client is asked to wait a random time up to this limit
+ * @param maxConnectionsPerSecond the greatest number of new websocket connections to accept per second; connections in
+ * excess of this rate are refused before authentication. Zero means the rate is unlimited.
+ */
+public record WebSocketDrainConfiguration(@NotNull Duration drainPeriod,
+                                          @NotNull Duration maxReconnectDelay,
+                                          @PositiveOrZero int maxConnectionsPerSecond) {
+
+  public WebSocketDrainConfiguration {
+    if (drainPeriod == null) {
+      drainPeriod = Duration.ofSeconds(20);
+    }
+
+    if (maxReconnectDelay == null) {
+      maxReconnectDelay = Duration.ofSeconds(30);
+    }
+  }
+}
@@ -47,6 +47,14 @@ public class DynamicConfiguration {
   @Valid
   DynamicMessagePersisterConfiguration messagePersister = new DynamicMessagePersisterConfiguration();
 
+  @JsonProperty
+  @Valid
+  DynamicMessageCacheConfiguration messageCache = new DynamicMessageCacheConfiguration();
+
+  @JsonProperty
+  @Valid
+  DynamicMessageDeliveryConfiguration messageDelivery = new DynamicMessageDeliveryConfiguration();
+
   @JsonProperty
   @Valid
   DynamicRateLimitPolicy rateLimitPolicy = new DynamicRateLimitPolicy(false);
@@ -94,6 +102,14 @@ public class DynamicConfiguration {
     return messagePersister;
   }
 
+  public DynamicMessageCacheConfiguration getMessageCacheConfiguration() {
+    return messageCache;
+  }
+
+  public DynamicMessageDeliveryConfiguration getMessageDeliveryConfiguration() {
+    return messageDelivery;
+  }
+
   public DynamicRateLimitPolicy getRateLimitPolicy() {
     return rateLimitPolicy;
   }
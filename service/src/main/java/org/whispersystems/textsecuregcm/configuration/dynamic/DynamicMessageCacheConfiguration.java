@@ -0,0 +1,61 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.configuration.dynamic;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.PositiveOrZero;
+
+public class DynamicMessageCacheConfiguration {
+
+  /**
+   * If true, batches of messages that share a long common content suffix (i.e. multi-recipient messages) store that
+   * suffix once in a reference-counted key instead of once per destination queue. Readers always understand both
+   * formats, so this may be toggled freely.
+   */
+  @JsonProperty
+  private boolean sharedPayloadEnabled = false;
+
+  /**
+   * The minimum length, in bytes, of a common content suffix for it to be stored as a shared payload.
+   */
+  @JsonProperty
+  @PositiveOrZero
+  private int sharedPayloadMinimumBytes = 256;
+
+  /**
+   * The number of pages of messages to fetch ahead of the page currently being delivered when draining a queue. Each
+   * page depends on the last message ID of the previous page, so pages are still fetched one at a time and in order;
+   * read-ahead only allows the next fetch to begin before the current page has been consumed.
+   */
+  @JsonProperty
+  @PositiveOrZero
+  @Max(4)
+  private int readAheadPages = 1;
+
+  /**
+   * If true, envelopes are compressed before being stored in the cache (unless compression wouldn't make them smaller).
+   * Readers always understand both compressed and uncompressed envelopes, so this may be toggled freely.
+   */
+  @JsonProperty
+  private boolean compressionEnabled = false;
+
+  public boolean isSharedPayloadEnabled() {
+    return sharedPayloadEnabled;
+  }
+
+  public int getSharedPayloadMinimumBytes() {
+    return sharedPayloadMinimumBytes;
+  }
+
+  public int getReadAheadPages() {
+    return readAheadPages;
+  }
+
+  public boolean isCompressionEnabled() {
+    return compressionEnabled;
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.configuration.dynamic;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.annotations.VisibleForTesting;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Positive;
+
+public class DynamicMessageDeliveryConfiguration {
+
+  /**
+   * If true, the number of envelopes a websocket connection keeps in flight adapts to each client's measured
+   * acknowledgement latency; otherwise every connection keeps up to {@link #maxWindow} envelopes in flight. Only affects
+   * connections opened after the value changes.
+   */
+  @JsonProperty
+  private boolean adaptiveWindowEnabled = false;
+
+  /**
+   * The smallest number of envelopes an adaptive window will keep in flight, no matter how slowly the client responds.
+   */
+  @JsonProperty
+  @Positive
+  private int minWindow = 4;
+
+  /**
+   * The largest number of envelopes any connection will keep in flight.
+   */
+  @JsonProperty
+  @Positive
+  private int maxWindow = 256;
+
+  /**
+   * The number of envelopes an adaptive window keeps in flight when a connection opens; clamped to the range between
+   * {@link #minWindow} and {@link #maxWindow}.
+   */
+  @JsonProperty
+  @Positive
+  private int initialWindow = 16;
+
+  /**
+   * An adaptive window shrinks when the client takes longer than this multiple of the shortest recently-observed
+   * acknowledgement latency to respond, taking that as a sign that envelopes are queueing rather than being processed.
+   */
+  @JsonProperty
+  @DecimalMin("1.0")
+  private double latencyToleranceRatio = 2.0;
+
+  public boolean isAdaptiveWindowEnabled() {
+    return adaptiveWindowEnabled;
+  }
+
+  @VisibleForTesting
+  public void setAdaptiveWindowEnabled(final boolean adaptiveWindowEnabled) {
+    this.adaptiveWindowEnabled = adaptiveWindowEnabled;
+  }
+
+  public int getMinWindow() {
+    return minWindow;
+  }
+
+  public int getMaxWindow() {
+    return maxWindow;
+  }
+
+  public int getInitialWindow() {
+    return initialWindow;
+  }
+
+  public double getLatencyToleranceRatio() {
+    return latencyToleranceRatio;
+  }
+}
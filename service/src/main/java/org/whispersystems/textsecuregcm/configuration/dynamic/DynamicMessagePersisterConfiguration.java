@@ -6,13 +6,25 @@
 package org.whispersystems.textsecuregcm.configuration.dynamic;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import javax.validation.constraints.Positive;
 
 public class DynamicMessagePersisterConfiguration {
 
   @JsonProperty
   private boolean persistenceEnabled = true;
 
+  /**
+   * The maximum number of queues each persister worker may persist concurrently
+   */
+  @JsonProperty
+  @Positive
+  private int maxConcurrentQueues = 16;
+
   public boolean isPersistenceEnabled() {
     return persistenceEnabled;
   }
+
+  public int getMaxConcurrentQueues() {
+    return maxConcurrentQueues;
+  }
 }
@@ -12,6 +12,7 @@ import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Tags;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.core.Response;
@@ -20,6 +21,8 @@ import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.auth.AuthenticatedAccount;
 import org.whispersystems.textsecuregcm.metrics.UserAgentTagUtil;
 import org.whispersystems.textsecuregcm.push.ClientPresenceManager;
+import org.whispersystems.websocket.routing.WebSocketRouteRequest;
+import org.whispersystems.websocket.routing.WebSocketRouteResponse;
 import org.whispersystems.websocket.session.WebSocketSession;
 import org.whispersystems.websocket.session.WebSocketSessionContext;
 
@@ -43,22 +46,38 @@ public class KeepAliveController {
   public Response getKeepAlive(@Auth Optional<AuthenticatedAccount> maybeAuth,
       @WebSocketSession WebSocketSessionContext context) {
 
-    maybeAuth.ifPresent(auth -> {
-      if (!clientPresenceManager.isLocallyPresent(auth.getAccount().getUuid(), auth.getAuthenticatedDevice().getId())) {
-        logger.debug("***** No local subscription found for {}::{}; age = {}ms, User-Agent = {}",
-            auth.getAccount().getUuid(), auth.getAuthenticatedDevice().getId(),
-            System.currentTimeMillis() - context.getClient().getCreatedTimestamp(),
-            context.getClient().getUserAgent());
+    maybeAuth.ifPresent(auth -> closeIfNotLocallyPresent(auth, context));
 
-        context.getClient().close(1000, "OK");
+    return Response.ok().build();
+  }
+
+  /**
+   * Handles authenticated websocket keepalive requests on the fast path, bypassing Jersey; behaves identically to
+   * {@link #getKeepAlive(Optional, WebSocketSessionContext)}.
+   *
+   * @see org.whispersystems.websocket.routing.WebSocketRoutes
+   */
+  public CompletableFuture<WebSocketRouteResponse> handleKeepAlive(final WebSocketRouteRequest request) {
+    if (request.context().getAuthenticated() instanceof AuthenticatedAccount auth) {
+      closeIfNotLocallyPresent(auth, request.context());
+    }
+
+    return CompletableFuture.completedFuture(WebSocketRouteResponse.ok());
+  }
 
-        Metrics.counter(NO_LOCAL_SUBSCRIPTION_COUNTER_NAME,
-                Tags.of(UserAgentTagUtil.getPlatformTag(context.getClient().getUserAgent())))
-            .increment();
-      }
-    });
+  private void closeIfNotLocallyPresent(final AuthenticatedAccount auth, final WebSocketSessionContext context) {
+    if (!clientPresenceManager.isLocallyPresent(auth.getAccount().getUuid(), auth.getAuthenticatedDevice().getId())) {
+      logger.debug("***** No local subscription found for {}::{}; age = {}ms, User-Agent = {}",
+          auth.getAccount().getUuid(), auth.getAuthenticatedDevice().getId(),
+          System.currentTimeMillis() - context.getClient().getCreatedTimestamp(),
+          context.getClient().getUserAgent());
 
-    return Response.ok().build();
+      context.getClient().close(1000, "OK");
+
+      Metrics.counter(NO_LOCAL_SUBSCRIPTION_COUNTER_NAME,
+              Tags.of(UserAgentTagUtil.getPlatformTag(context.getClient().getUserAgent())))
+          .increment();
+    }
   }
 
   @GET
@@ -30,6 +30,7 @@ import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -124,10 +125,9 @@ import org.whispersystems.textsecuregcm.util.HeaderUtils;
 import org.whispersystems.textsecuregcm.util.Util;
 import org.whispersystems.textsecuregcm.websocket.WebSocketConnection;
 import org.whispersystems.websocket.Stories;
-import reactor.core.publisher.Flux;
-import reactor.core.publisher.Mono;
+import org.whispersystems.websocket.routing.WebSocketRouteRequest;
+import org.whispersystems.websocket.routing.WebSocketRouteResponse;
 import reactor.core.scheduler.Scheduler;
-import reactor.util.function.Tuples;
 
 @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
 @Path("/v1/messages")
@@ -158,8 +158,6 @@ public class MessageController {
   private final DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager;
   private final ServerSecretParams serverSecretParams;
 
-  private static final int MAX_FETCH_ACCOUNT_CONCURRENCY = 8;
-
   private static final CompletableFuture<?>[] EMPTY_FUTURE_ARRAY = new CompletableFuture<?>[0];
 
   private static final String REJECT_OVERSIZE_MESSAGE_COUNTER = name(MessageController.class, "rejectOversizeMessage");
@@ -382,26 +380,45 @@ public class MessageController {
    */
   private Map<ServiceIdentifier, MultiRecipientDeliveryData> buildRecipientMap(
       SealedSenderMultiRecipientMessage multiRecipientMessage, boolean isStory) {
-    return Flux.fromIterable(multiRecipientMessage.getRecipients().entrySet())
-        .switchIfEmpty(Flux.error(BadRequestException::new))
-        .map(e -> Tuples.of(ServiceIdentifier.fromLibsignal(e.getKey()), e.getValue()))
-        .flatMap(
-            t -> Mono.fromFuture(() -> accountsManager.getByServiceIdentifierAsync(t.getT1()))
-                .flatMap(Mono::justOrEmpty)
-                .switchIfEmpty(isStory ? Mono.empty() : Mono.error(NotFoundException::new))
-                .map(
-                    account ->
-                        new MultiRecipientDeliveryData(
-                            t.getT1(),
-                            account,
-                            t.getT2(),
-                            t.getT2().getDevicesAndRegistrationIds().collect(
-                                Collectors.toMap(Pair<Byte, Short>::first, Pair<Byte, Short>::second))))
-                // IllegalStateException is thrown by Collectors#toMap when we have multiple entries for the same device
-                .onErrorMap(e -> e instanceof IllegalStateException ? new BadRequestException() : e),
-            MAX_FETCH_ACCOUNT_CONCURRENCY)
-        .collectMap(MultiRecipientDeliveryData::serviceIdentifier)
-        .block();
+    if (multiRecipientMessage.getRecipients().isEmpty()) {
+      throw new BadRequestException();
+    }
+
+    final Map<ServiceIdentifier, SealedSenderMultiRecipientMessage.Recipient> recipientsByServiceIdentifier =
+        multiRecipientMessage.getRecipients().entrySet().stream()
+            .collect(Collectors.toMap(e -> ServiceIdentifier.fromLibsignal(e.getKey()), Map.Entry::getValue));
+
+    final Map<ServiceIdentifier, Account> accountsByServiceIdentifier =
+        accountsManager.getByServiceIdentifiers(recipientsByServiceIdentifier.keySet()).join();
+
+    final Map<ServiceIdentifier, MultiRecipientDeliveryData> recipients = new HashMap<>();
+
+    recipientsByServiceIdentifier.forEach((serviceIdentifier, recipient) -> {
+      final Account account = accountsByServiceIdentifier.get(serviceIdentifier);
+
+      if (account == null) {
+        if (isStory) {
+          return;
+        }
+
+        throw new NotFoundException();
+      }
+
+      final Map<Byte, Short> registrationIdsByDeviceId;
+
+      try {
+        registrationIdsByDeviceId = recipient.getDevicesAndRegistrationIds()
+            .collect(Collectors.toMap(Pair<Byte, Short>::first, Pair<Byte, Short>::second));
+      } catch (final IllegalStateException e) {
+        // IllegalStateException is thrown by Collectors#toMap when we have multiple entries for the same device
+        throw new BadRequestException();
+      }
+
+      recipients.put(serviceIdentifier,
+          new MultiRecipientDeliveryData(serviceIdentifier, account, recipient, registrationIdsByDeviceId));
+    });
+
+    return recipients;
   }
 
   @Timed
@@ -551,33 +568,54 @@ public class MessageController {
           Tag.of(EPHEMERAL_TAG_NAME, String.valueOf(online)),
           Tag.of(SENDER_TYPE_TAG_NAME, SENDER_TYPE_UNIDENTIFIED)));
 
-      CompletableFuture.allOf(
-          recipients.values().stream()
-              .flatMap(recipientData ->
-                  recipientData.deviceIdToRegistrationId().keySet().stream().map(
-                      deviceId ->CompletableFuture.runAsync(
-                          () -> {
-                            final Account destinationAccount = recipientData.account();
-                            final byte[] payload = multiRecipientMessage.messageForRecipient(recipientData.recipient());
-
-                            // we asserted this must exist in validateCompleteDeviceList
-                            final Device destinationDevice = destinationAccount.getDevice(deviceId).orElseThrow();
-                            try {
-                              sentMessageCounter.increment();
-                              sendCommonPayloadMessage(
-                                  destinationAccount, destinationDevice, recipientData.serviceIdentifier(), timestamp, online,
-                                  isStory, isUrgent, payload);
-                            } catch (NoSuchUserException e) {
-                              // this should never happen, because we already asserted the device is present and enabled
-                              Metrics.counter(
-                                  UNEXPECTED_MISSING_USER_COUNTER_NAME,
-                                  Tags.of("isPrimary", String.valueOf(destinationDevice.isPrimary()))).increment();
-                              uuids404.add(recipientData.serviceIdentifier());
-                            }
-                          },
-                          multiRecipientMessageExecutor)))
-              .toArray(CompletableFuture[]::new))
-          .get();
+      final List<MessageSender.DeviceMessage> deviceMessages = new ArrayList<>();
+      final List<MultiRecipientDeliveryData> deviceMessageRecipients = new ArrayList<>();
+
+      recipients.values().forEach(recipientData -> {
+        final Account destinationAccount = recipientData.account();
+        final byte[] payload = multiRecipientMessage.messageForRecipient(recipientData.recipient());
+
+        recipientData.deviceIdToRegistrationId().keySet().forEach(deviceId -> {
+          // we asserted this must exist in validateCompleteDeviceList
+          final Device destinationDevice = destinationAccount.getDevice(deviceId).orElseThrow();
+
+          deviceMessages.add(new MessageSender.DeviceMessage(destinationAccount, destinationDevice,
+              buildCommonPayloadEnvelope(recipientData.serviceIdentifier(), timestamp, isStory, isUrgent, payload)));
+          deviceMessageRecipients.add(recipientData);
+        });
+      });
+
+      final List<CompletableFuture<Void>> sendFutures =
+          messageSender.sendMessages(deviceMessages, online, multiRecipientMessageExecutor);
+
+      sentMessageCounter.increment(deviceMessages.size());
+
+      final CompletableFuture<?>[] handledSendFutures = new CompletableFuture[sendFutures.size()];
+
+      for (int i = 0; i < sendFutures.size(); i++) {
+        final Device destinationDevice = deviceMessages.get(i).device();
+        final MultiRecipientDeliveryData recipientData = deviceMessageRecipients.get(i);
+
+        handledSendFutures[i] = sendFutures.get(i).exceptionally(throwable -> {
+          if (ExceptionUtils.unwrap(throwable) instanceof NotPushRegisteredException e) {
+            if (destinationDevice.isPrimary()) {
+              // this should never happen, because we already asserted the device is present and enabled
+              Metrics.counter(
+                  UNEXPECTED_MISSING_USER_COUNTER_NAME,
+                  Tags.of("isPrimary", String.valueOf(destinationDevice.isPrimary()))).increment();
+              uuids404.add(recipientData.serviceIdentifier());
+            } else {
+              logger.debug("Not registered", e);
+            }
+
+            return null;
+          }
+
+          throw ExceptionUtils.wrap(throwable);
+        });
+      }
+
+      CompletableFuture.allOf(handledSendFutures).get();
     } catch (InterruptedException e) {
       logger.error("interrupted while delivering multi-recipient messages", e);
       return Response.serverError().entity("interrupted during delivery").build();
@@ -687,6 +725,34 @@ public class MessageController {
   @DELETE
   @Path("/uuid/{uuid}")
   public CompletableFuture<Response> removePendingMessage(@Auth AuthenticatedAccount auth, @PathParam("uuid") UUID uuid) {
+    return acknowledgeMessage(auth, uuid).thenApply(Util.ASYNC_EMPTY_RESPONSE);
+  }
+
+  /**
+   * Handles authenticated websocket message acknowledgements on the fast path, bypassing Jersey; behaves identically to
+   * {@link #removePendingMessage(AuthenticatedAccount, UUID)}.
+   *
+   * @see org.whispersystems.websocket.routing.WebSocketRoutes
+   */
+  public CompletableFuture<WebSocketRouteResponse> handleRemovePendingMessage(final WebSocketRouteRequest request) {
+    if (!(request.context().getAuthenticated() instanceof AuthenticatedAccount auth)) {
+      return CompletableFuture.completedFuture(WebSocketRouteResponse.status(Status.UNAUTHORIZED.getStatusCode()));
+    }
+
+    final UUID uuid;
+
+    try {
+      uuid = UUID.fromString(request.pathParameters().get("uuid"));
+    } catch (final IllegalArgumentException e) {
+      // Jersey responds to path parameters that can't be converted with a 404
+      return CompletableFuture.completedFuture(WebSocketRouteResponse.status(Status.NOT_FOUND.getStatusCode()));
+    }
+
+    return acknowledgeMessage(auth, uuid)
+        .thenApply(ignored -> WebSocketRouteResponse.status(Status.NO_CONTENT.getStatusCode()));
+  }
+
+  private CompletableFuture<Void> acknowledgeMessage(final AuthenticatedAccount auth, final UUID uuid) {
     return messagesManager.delete(
             auth.getAccount().getUuid(),
             auth.getAuthenticatedDevice().getId(),
@@ -708,8 +774,7 @@ public class MessageController {
               }
             }
           });
-        })
-        .thenApply(Util.ASYNC_EMPTY_RESPONSE);
+        });
   }
 
   @Timed
@@ -805,35 +870,23 @@ public class MessageController {
     }
   }
 
-  private void sendCommonPayloadMessage(Account destinationAccount,
-      Device destinationDevice,
-      ServiceIdentifier serviceIdentifier,
+  private static Envelope buildCommonPayloadEnvelope(ServiceIdentifier serviceIdentifier,
       long timestamp,
-      boolean online,
       boolean story,
       boolean urgent,
-      byte[] payload) throws NoSuchUserException {
-    try {
-      Envelope.Builder messageBuilder = Envelope.newBuilder();
-      long serverTimestamp = System.currentTimeMillis();
-
-      messageBuilder
-          .setType(Type.UNIDENTIFIED_SENDER)
-          .setTimestamp(timestamp == 0 ? serverTimestamp : timestamp)
-          .setServerTimestamp(serverTimestamp)
-          .setContent(ByteString.copyFrom(payload))
-          .setStory(story)
-          .setUrgent(urgent)
-          .setDestinationUuid(serviceIdentifier.toServiceIdentifierString());
-
-      messageSender.sendMessage(destinationAccount, destinationDevice, messageBuilder.build(), online);
-    } catch (NotPushRegisteredException e) {
-      if (destinationDevice.isPrimary()) {
-        throw new NoSuchUserException(e);
-      } else {
-        logger.debug("Not registered", e);
-      }
-    }
+      byte[] payload) {
+
+    long serverTimestamp = System.currentTimeMillis();
+
+    return Envelope.newBuilder()
+        .setType(Type.UNIDENTIFIED_SENDER)
+        .setTimestamp(timestamp == 0 ? serverTimestamp : timestamp)
+        .setServerTimestamp(serverTimestamp)
+        .setContent(ByteString.copyFrom(payload))
+        .setStory(story)
+        .setUrgent(urgent)
+        .setDestinationUuid(serviceIdentifier.toServiceIdentifierString())
+        .build();
   }
 
   private void checkMessageRateLimit(AuthenticatedAccount source, Account destination, String userAgent)
@@ -13,7 +13,6 @@ import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Tags;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import io.vavr.Tuple;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.Clock;
@@ -319,57 +318,49 @@ public class ProfileController {
   @Produces(MediaType.APPLICATION_JSON)
   @Path("/identity_check/batch")
   public CompletableFuture<BatchIdentityCheckResponse> runBatchIdentityCheck(@NotNull @Valid BatchIdentityCheckRequest request) {
-    return CompletableFuture.supplyAsync(() -> {
-          List<BatchIdentityCheckResponse.Element> responseElements = Collections.synchronizedList(new ArrayList<>());
-
-          final int targetBatchCount = 10;
-          // clamp the amount per batch to be in the closed range [30, 100]
-          final int batchSize = Math.min(Math.max(request.elements().size() / targetBatchCount, 30), 100);
-          // add 1 extra batch if there is any remainder to consume the final non-full batch
-          final int batchCount =
-              request.elements().size() / batchSize + (request.elements().size() % batchSize != 0 ? 1 : 0);
-
-          @SuppressWarnings("rawtypes") CompletableFuture[] futures = new CompletableFuture[batchCount];
-          for (int i = 0; i < batchCount; ++i) {
-            List<BatchIdentityCheckRequest.Element> batch = request.elements()
-                .subList(i * batchSize, Math.min((i + 1) * batchSize, request.elements().size()));
-            futures[i] = CompletableFuture.runAsync(() -> {
-              MessageDigest sha256;
-              try {
-                sha256 = MessageDigest.getInstance("SHA-256");
-              } catch (NoSuchAlgorithmException e) {
-                throw new AssertionError(e);
-              }
-              for (final BatchIdentityCheckRequest.Element element : batch) {
-                checkFingerprintAndAdd(element, responseElements, sha256);
-              }
-            }, batchIdentityCheckExecutor);
+    final List<ServiceIdentifier> identifiers = request.elements().stream()
+        .map(element -> Objects.requireNonNullElse(element.uuid(), element.aci()))
+        .toList();
+
+    return accountsManager.getByServiceIdentifiers(identifiers)
+        .thenApplyAsync(accountsByServiceIdentifier -> {
+          final MessageDigest sha256;
+          try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+          } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
           }
 
-          return Tuple.of(futures, responseElements);
-        }).thenCompose(tuple2 -> CompletableFuture.allOf(tuple2._1).thenApply((ignored) -> new BatchIdentityCheckResponse(tuple2._2)));
-  }
+          final List<BatchIdentityCheckResponse.Element> responseElements = new ArrayList<>();
 
-  private void checkFingerprintAndAdd(BatchIdentityCheckRequest.Element element,
-      Collection<BatchIdentityCheckResponse.Element> responseElements, MessageDigest md) {
+          for (final BatchIdentityCheckRequest.Element element : request.elements()) {
+            final ServiceIdentifier identifier = Objects.requireNonNullElse(element.uuid(), element.aci());
+            final Account account = accountsByServiceIdentifier.get(identifier);
 
-    final ServiceIdentifier identifier = Objects.requireNonNullElse(element.uuid(), element.aci());
-    final Optional<Account> maybeAccount = accountsManager.getByServiceIdentifier(identifier);
+            if (account != null) {
+              checkFingerprintAndAdd(element, identifier, account, responseElements, sha256);
+            }
+          }
 
-    maybeAccount.ifPresent(account -> {
-      final IdentityKey identityKey = account.getIdentityKey(identifier.identityType());
-      if (identityKey == null) {
-        return;
-      }
+          return new BatchIdentityCheckResponse(responseElements);
+        }, batchIdentityCheckExecutor);
+  }
 
-      md.reset();
-      byte[] digest = md.digest(identityKey.serialize());
-      byte[] fingerprint = Util.truncate(digest, 4);
+  private void checkFingerprintAndAdd(BatchIdentityCheckRequest.Element element, ServiceIdentifier identifier,
+      Account account, Collection<BatchIdentityCheckResponse.Element> responseElements, MessageDigest md) {
 
-      if (!Arrays.equals(fingerprint, element.fingerprint())) {
-        responseElements.add(new BatchIdentityCheckResponse.Element(element.uuid(), element.aci(), identityKey));
-      }
-    });
+    final IdentityKey identityKey = account.getIdentityKey(identifier.identityType());
+    if (identityKey == null) {
+      return;
+    }
+
+    md.reset();
+    byte[] digest = md.digest(identityKey.serialize());
+    byte[] fingerprint = Util.truncate(digest, 4);
+
+    if (!Arrays.equals(fingerprint, element.fingerprint())) {
+      responseElements.add(new BatchIdentityCheckResponse.Element(element.uuid(), element.aci(), identityKey));
+    }
   }
 
   private ExpiringProfileKeyCredentialProfileResponse buildExpiringProfileKeyCredentialProfileResponse(
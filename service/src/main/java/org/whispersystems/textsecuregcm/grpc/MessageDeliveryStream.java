@@ -0,0 +1,180 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.grpc;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.grpc.Status;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.signal.chat.messages.GetMessagesResponse;
+import org.whispersystems.textsecuregcm.metrics.MessageMetrics;
+import org.whispersystems.textsecuregcm.push.DisplacedPresenceListener;
+import org.whispersystems.textsecuregcm.storage.CoalescingMessageDeleter;
+import org.whispersystems.textsecuregcm.storage.MessageAvailabilityListener;
+import org.whispersystems.textsecuregcm.storage.MessagesManager;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * A message delivery stream delivers the messages queued for a single device over a single {@code GetMessages} call.
+ * <p>
+ * A delivery stream first delivers the device's entire queue, then a "queue empty" marker, and then makes another pass
+ * through the queue each time it's notified that new messages are available. Messages stay in the queue until the client
+ * acknowledges them (in a separate call), so each pass skips messages this stream has already delivered. Delivered
+ * messages are forgotten as they're acknowledged or deleted, and the set of delivered messages is trimmed to the messages
+ * still in the queue after each full pass; if a client leaves very many messages unacknowledged, the stream stops
+ * tracking new deliveries and may deliver those messages more than once. Passes never overlap, and notifications that
+ * arrive during a pass are coalesced into a single subsequent pass.
+ */
+class MessageDeliveryStream implements MessageAvailabilityListener, DisplacedPresenceListener {
+
+  private final UUID accountIdentifier;
+  private final byte deviceId;
+  private final boolean receiveStories;
+  private final MessagesManager messagesManager;
+  private final CoalescingMessageDeleter messageDeleter;
+
+  private final Sinks.Many<Boolean> queueUpdates = Sinks.many().unicast().onBackpressureBuffer();
+  private final Sinks.Empty<Void> displacement = Sinks.empty();
+  private final AtomicBoolean persistedMessagesAvailable = new AtomicBoolean(false);
+
+  // Added to only from within queue passes, which never run concurrently, but removed from as messages are acknowledged
+  private final Set<UUID> deliveredMessageGuids = ConcurrentHashMap.newKeySet();
+
+  private volatile boolean closed = false;
+
+  private static final GetMessagesResponse QUEUE_EMPTY_RESPONSE = GetMessagesResponse.newBuilder()
+      .setQueueEmpty(GetMessagesResponse.QueueEmpty.getDefaultInstance())
+      .build();
+
+  private static final Duration EMIT_RETRY_DURATION = Duration.ofMillis(100);
+
+  @VisibleForTesting
+  static final int MAX_TRACKED_MESSAGES = 10_000;
+
+  private static final String CHANNEL = "grpc";
+
+  MessageDeliveryStream(final UUID accountIdentifier,
+      final byte deviceId,
+      final boolean receiveStories,
+      final MessagesManager messagesManager,
+      final CoalescingMessageDeleter messageDeleter) {
+
+    this.accountIdentifier = accountIdentifier;
+    this.deviceId = deviceId;
+    this.receiveStories = receiveStories;
+    this.messagesManager = messagesManager;
+    this.messageDeleter = messageDeleter;
+  }
+
+  /**
+   * @return a publisher of responses for this stream's call; the publisher completes only if this stream's presence is
+   * displaced without the device connecting elsewhere, and fails with an {@code ABORTED} status if the device connects
+   * elsewhere
+   */
+  Flux<GetMessagesResponse> getMessages() {
+    return Flux.concat(
+            deliverQueuedMessages(false),
+            Mono.just(QUEUE_EMPTY_RESPONSE),
+            queueUpdates.asFlux()
+                .onBackpressureLatest()
+                .concatMap(ignored ->
+                    Flux.defer(() -> deliverQueuedMessages(!persistedMessagesAvailable.getAndSet(false))), 1))
+        .takeUntilOther(displacement.asMono());
+  }
+
+  private Flux<GetMessagesResponse> deliverQueuedMessages(final boolean cachedMessagesOnly) {
+    final Set<UUID> queuedMessageGuids = new HashSet<>();
+
+    return Flux.from(messagesManager.getMessagesForDeviceReactive(accountIdentifier, deviceId, cachedMessagesOnly))
+        .filter(envelope -> {
+          final UUID guid = UUID.fromString(envelope.getServerGuid());
+          queuedMessageGuids.add(guid);
+
+          if (deliveredMessageGuids.contains(guid)) {
+            // Already delivered by this stream, and still waiting for an acknowledgement
+            return false;
+          }
+
+          if (deliveredMessageGuids.size() < MAX_TRACKED_MESSAGES) {
+            deliveredMessageGuids.add(guid);
+          }
+
+          if (envelope.getStory() && !receiveStories) {
+            messageDeleter.delete(guid, envelope.getServerTimestamp())
+                .whenComplete((ignored, throwable) -> deliveredMessageGuids.remove(guid));
+
+            return false;
+          }
+
+          return true;
+        })
+        .doOnNext(ignored -> MessageMetrics.measureOutgoingMessages(1, CHANNEL))
+        // clear ephemeral field from the envelope; most stored messages never had it set, and can be sent as-is
+        .map(envelope -> GetMessagesResponse.newBuilder()
+            .setEnvelope(envelope.hasEphemeral() ? envelope.toBuilder().clearEphemeral().build() : envelope)
+            .build())
+        .doOnComplete(() -> {
+          // A pass through the cache alone can't tell which persisted messages are still queued
+          if (!cachedMessagesOnly) {
+            deliveredMessageGuids.retainAll(queuedMessageGuids);
+          }
+        });
+  }
+
+  /**
+   * Stops tracking a message delivered by this stream once it has been removed from the device's queue.
+   *
+   * @param guid the server-assigned GUID of the acknowledged message
+   */
+  void handleMessageAcknowledged(final UUID guid) {
+    deliveredMessageGuids.remove(guid);
+  }
+
+  @VisibleForTesting
+  int getTrackedMessageCount() {
+    return deliveredMessageGuids.size();
+  }
+
+  void close() {
+    closed = true;
+  }
+
+  @Override
+  public boolean handleNewMessagesAvailable() {
+    if (closed) {
+      return false;
+    }
+
+    queueUpdates.emitNext(true, Sinks.EmitFailureHandler.busyLooping(EMIT_RETRY_DURATION));
+    return true;
+  }
+
+  @Override
+  public boolean handleMessagesPersisted() {
+    if (closed) {
+      return false;
+    }
+
+    persistedMessagesAvailable.set(true);
+    queueUpdates.emitNext(true, Sinks.EmitFailureHandler.busyLooping(EMIT_RETRY_DURATION));
+    return true;
+  }
+
+  @Override
+  public void handleDisplacement(final boolean connectedElsewhere) {
+    if (connectedElsewhere) {
+      displacement.tryEmitError(Status.ABORTED.withDescription("Connected elsewhere").asRuntimeException());
+    } else {
+      displacement.tryEmitEmpty();
+    }
+  }
+}
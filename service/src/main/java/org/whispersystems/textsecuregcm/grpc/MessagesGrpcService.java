@@ -0,0 +1,192 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.grpc;
+
+import io.grpc.Status;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.signal.chat.messages.AcknowledgeMessagesRequest;
+import org.signal.chat.messages.AcknowledgeMessagesResponse;
+import org.signal.chat.messages.GetMessagesRequest;
+import org.signal.chat.messages.GetMessagesResponse;
+import org.signal.chat.messages.ReactorMessagesGrpc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.whispersystems.textsecuregcm.auth.grpc.AuthenticatedDevice;
+import org.whispersystems.textsecuregcm.auth.grpc.AuthenticationUtil;
+import org.whispersystems.textsecuregcm.entities.MessageProtos.Envelope;
+import org.whispersystems.textsecuregcm.identity.AciServiceIdentifier;
+import org.whispersystems.textsecuregcm.identity.ServiceIdentifier;
+import org.whispersystems.textsecuregcm.metrics.MessageMetrics;
+import org.whispersystems.textsecuregcm.push.ClientPresenceManager;
+import org.whispersystems.textsecuregcm.push.NotPushRegisteredException;
+import org.whispersystems.textsecuregcm.push.PushNotificationManager;
+import org.whispersystems.textsecuregcm.push.ReceiptSender;
+import org.whispersystems.textsecuregcm.redis.RedisOperation;
+import org.whispersystems.textsecuregcm.storage.Account;
+import org.whispersystems.textsecuregcm.storage.AccountsManager;
+import org.whispersystems.textsecuregcm.storage.ClientReleaseManager;
+import org.whispersystems.textsecuregcm.storage.CoalescingMessageDeleter;
+import org.whispersystems.textsecuregcm.storage.Device;
+import org.whispersystems.textsecuregcm.storage.MessagesManager;
+import org.whispersystems.textsecuregcm.util.ua.UserAgent;
+import org.whispersystems.textsecuregcm.util.ua.UserAgentUtil;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Delivers queued messages to authenticated devices as a stream of protobuf envelopes, an alternative to delivery over
+ * websocket connections. A device holds its presence for as long as its {@code GetMessages} call remains open, and the
+ * call's transport-level flow control limits the rate at which messages are read from the device's queue.
+ */
+public class MessagesGrpcService extends ReactorMessagesGrpc.MessagesImplBase {
+
+  private final AccountsManager accountsManager;
+  private final MessagesManager messagesManager;
+  private final ClientPresenceManager clientPresenceManager;
+  private final PushNotificationManager pushNotificationManager;
+  private final ReceiptSender receiptSender;
+  private final ClientReleaseManager clientReleaseManager;
+  private final Scheduler messageDeliveryScheduler;
+
+  // Acknowledgements arrive in a separate call, and are passed along to the device's open stream, if any
+  private final Map<AuthenticatedDevice, MessageDeliveryStream> streamsByDevice = new ConcurrentHashMap<>();
+
+  private static final int MESSAGE_DELETION_MAX_BATCH_SIZE = 100;
+  private static final int MAX_CONCURRENT_ACKNOWLEDGEMENTS = 256;
+
+  private static final String CHANNEL = "grpc";
+
+  private static final Logger logger = LoggerFactory.getLogger(MessagesGrpcService.class);
+
+  public MessagesGrpcService(final AccountsManager accountsManager,
+      final MessagesManager messagesManager,
+      final ClientPresenceManager clientPresenceManager,
+      final PushNotificationManager pushNotificationManager,
+      final ReceiptSender receiptSender,
+      final ClientReleaseManager clientReleaseManager,
+      final Scheduler messageDeliveryScheduler) {
+
+    this.accountsManager = accountsManager;
+    this.messagesManager = messagesManager;
+    this.clientPresenceManager = clientPresenceManager;
+    this.pushNotificationManager = pushNotificationManager;
+    this.receiptSender = receiptSender;
+    this.clientReleaseManager = clientReleaseManager;
+    this.messageDeliveryScheduler = messageDeliveryScheduler;
+  }
+
+  @Override
+  public Flux<GetMessagesResponse> getMessages(final GetMessagesRequest request) {
+    final AuthenticatedDevice authenticatedDevice = AuthenticationUtil.requireAuthenticatedDevice();
+
+    return Mono.fromFuture(() -> accountsManager.getByAccountIdentifierAsync(authenticatedDevice.accountIdentifier()))
+        .map(maybeAccount -> maybeAccount.orElseThrow(Status.UNAUTHENTICATED::asRuntimeException))
+        // Declaring presence blocks, and so should never happen on an I/O thread
+        .publishOn(messageDeliveryScheduler)
+        .flatMapMany(account -> {
+          final Device device = account.getDevice(authenticatedDevice.deviceId())
+              .orElseThrow(Status.UNAUTHENTICATED::asRuntimeException);
+
+          return Flux.using(() -> openStream(account, device, request.getReceiveStories()),
+              MessageDeliveryStream::getMessages,
+              stream -> closeStream(account, device, stream));
+        });
+  }
+
+  private MessageDeliveryStream openStream(final Account account, final Device device, final boolean receiveStories) {
+    final MessageDeliveryStream stream = new MessageDeliveryStream(account.getUuid(), device.getId(), receiveStories,
+        messagesManager,
+        new CoalescingMessageDeleter(messagesManager, account.getUuid(), device.getId(), MESSAGE_DELETION_MAX_BATCH_SIZE));
+
+    pushNotificationManager.handleMessagesRetrieved(account, device, null);
+    clientPresenceManager.setPresent(account.getUuid(), device.getId(), stream);
+    messagesManager.addMessageAvailabilityListener(account.getUuid(), device.getId(), stream);
+    streamsByDevice.put(new AuthenticatedDevice(account.getUuid(), device.getId()), stream);
+
+    return stream;
+  }
+
+  private void closeStream(final Account account, final Device device, final MessageDeliveryStream stream) {
+    stream.close();
+    streamsByDevice.remove(new AuthenticatedDevice(account.getUuid(), device.getId()), stream);
+
+    // Streams are closed on gRPC's threads when calls are cancelled, so the blocking cleanup happens elsewhere
+    messageDeliveryScheduler.schedule(() -> {
+      RedisOperation.unchecked(() -> clientPresenceManager.clearPresence(account.getUuid(), device.getId(), stream));
+      RedisOperation.unchecked(() -> {
+        messagesManager.removeMessageAvailabilityListener(stream);
+
+        if (messagesManager.hasCachedMessages(account.getUuid(), device.getId())) {
+          try {
+            pushNotificationManager.sendNewMessageNotification(account, device.getId(), true);
+          } catch (final NotPushRegisteredException ignored) {
+          }
+        }
+      });
+    });
+  }
+
+  @Override
+  public Mono<AcknowledgeMessagesResponse> acknowledgeMessages(final Flux<AcknowledgeMessagesRequest> requests) {
+    final AuthenticatedDevice authenticatedDevice = AuthenticationUtil.requireAuthenticatedDevice();
+    final UserAgent userAgent = UserAgentUtil.userAgentFromGrpcContext();
+
+    final CoalescingMessageDeleter messageDeleter = new CoalescingMessageDeleter(messagesManager,
+        authenticatedDevice.accountIdentifier(), authenticatedDevice.deviceId(), MESSAGE_DELETION_MAX_BATCH_SIZE);
+
+    return requests
+        .flatMap(request -> {
+          final UUID guid;
+
+          try {
+            guid = UUID.fromString(request.getServerGuid());
+          } catch (final IllegalArgumentException e) {
+            throw Status.INVALID_ARGUMENT.withDescription("Invalid server GUID").asRuntimeException();
+          }
+
+          return Mono.fromFuture(() ->
+                  messageDeleter.delete(guid, request.getServerTimestamp() > 0 ? request.getServerTimestamp() : null))
+              .doOnSuccess(ignored -> {
+                final MessageDeliveryStream stream = streamsByDevice.get(authenticatedDevice);
+
+                if (stream != null) {
+                  stream.handleMessageAcknowledged(guid);
+                }
+              });
+        }, MAX_CONCURRENT_ACKNOWLEDGEMENTS)
+        .flatMap(Mono::justOrEmpty)
+        // Only measure and send receipts for messages we actually removed so that repeated acknowledgements don't repeat
+        // receipts
+        .doOnNext(envelope -> {
+          MessageMetrics.measureOutgoingMessageLatency(envelope.getServerTimestamp(), CHANNEL, userAgent,
+              clientReleaseManager);
+
+          if (envelope.getType() != Envelope.Type.SERVER_DELIVERY_RECEIPT) {
+            sendDeliveryReceipt(envelope, authenticatedDevice.deviceId());
+          }
+        })
+        .count()
+        .map(removed -> AcknowledgeMessagesResponse.newBuilder().setRemoved(removed.intValue()).build());
+  }
+
+  private void sendDeliveryReceipt(final Envelope envelope, final byte deviceId) {
+    if (!envelope.hasSourceUuid()) {
+      return;
+    }
+
+    try {
+      receiptSender.sendReceipt(ServiceIdentifier.valueOf(envelope.getDestinationUuid()), deviceId,
+          AciServiceIdentifier.valueOf(envelope.getSourceUuid()), envelope.getTimestamp());
+    } catch (final IllegalArgumentException e) {
+      logger.error("Could not parse UUID: {}", envelope.getSourceUuid());
+    } catch (final Exception e) {
+      logger.warn("Failed to send receipt", e);
+    }
+  }
+}
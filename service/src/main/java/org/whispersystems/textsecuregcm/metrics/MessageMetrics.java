@@ -14,6 +14,7 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.entities.MessageProtos;
@@ -21,6 +22,9 @@ import org.whispersystems.textsecuregcm.entities.OutgoingMessageEntity;
 import org.whispersystems.textsecuregcm.identity.ServiceIdentifier;
 import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.ClientReleaseManager;
+import org.whispersystems.textsecuregcm.util.ua.UnrecognizedUserAgentException;
+import org.whispersystems.textsecuregcm.util.ua.UserAgent;
+import org.whispersystems.textsecuregcm.util.ua.UserAgentUtil;
 
 public final class MessageMetrics {
 
@@ -31,6 +35,8 @@ public final class MessageMetrics {
 
   public static final String DELIVERY_LATENCY_TIMER_NAME = name(MessageMetrics.class, "deliveryLatency");
 
+  public static final String SENT_MESSAGE_COUNTER_NAME = name(MessageMetrics.class, "sentMessages");
+
   public static void measureAccountOutgoingMessageUuidMismatches(final Account account,
       final OutgoingMessageEntity outgoingMessage) {
     measureAccountDestinationUuidMismatches(account, outgoingMessage.destinationUuid());
@@ -56,16 +62,39 @@ public final class MessageMetrics {
     }
   }
 
+  public static void measureOutgoingMessages(final int count, final String channel) {
+    Metrics.counter(SENT_MESSAGE_COUNTER_NAME, "channel", channel).increment(count);
+  }
+
   public static void measureOutgoingMessageLatency(final long serverTimestamp,
       final String channel,
       final String userAgent,
       final ClientReleaseManager clientReleaseManager) {
 
+    UserAgent parsedUserAgent;
+
+    try {
+      parsedUserAgent = UserAgentUtil.parseUserAgentString(userAgent);
+    } catch (final UnrecognizedUserAgentException e) {
+      parsedUserAgent = null;
+    }
+
+    measureOutgoingMessageLatency(serverTimestamp, channel, parsedUserAgent, clientReleaseManager);
+  }
+
+  public static void measureOutgoingMessageLatency(final long serverTimestamp,
+      final String channel,
+      @Nullable final UserAgent userAgent,
+      final ClientReleaseManager clientReleaseManager) {
+
     final List<Tag> tags = new ArrayList<>(3);
-    tags.add(UserAgentTagUtil.getPlatformTag(userAgent));
+    tags.add(Tag.of(UserAgentTagUtil.PLATFORM_TAG,
+        userAgent != null ? userAgent.getPlatform().name().toLowerCase() : "unrecognized"));
     tags.add(Tag.of("channel", channel));
 
-    UserAgentTagUtil.getClientVersionTag(userAgent, clientReleaseManager).ifPresent(tags::add);
+    if (userAgent != null && clientReleaseManager.isVersionActive(userAgent.getPlatform(), userAgent.getVersion())) {
+      tags.add(Tag.of(UserAgentTagUtil.VERSION_TAG, userAgent.getVersion().toString()));
+    }
 
     Timer.builder(DELIVERY_LATENCY_TIMER_NAME)
         .publishPercentileHistogram(true)
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.metrics;
+
+import io.dropwizard.lifecycle.Managed;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import java.time.Duration;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.whispersystems.textsecuregcm.util.VirtualThreadExecutors;
+
+/**
+ * A managed monitor that listens for the JDK's {@code jdk.VirtualThreadPinned} flight recorder events, which the JVM
+ * emits when a virtual thread blocks while pinned to its carrier thread (typically because it's holding a monitor), and
+ * reports them as metrics tagged by the executor that owns the pinned thread. Pinned virtual threads occupy a carrier
+ * thread just as platform threads would, and enough of them can stall every virtual thread in the process.
+ */
+public class VirtualThreadPinnedEventMonitor implements Managed {
+
+  private static final String PINNED_EVENT_NAME = "jdk.VirtualThreadPinned";
+
+  private static final String PINNED_TIMER_NAME = MetricsUtil.name(VirtualThreadPinnedEventMonitor.class, "pinned");
+
+  private final Duration threshold;
+
+  private RecordingStream recordingStream;
+
+  private static final Logger logger = LoggerFactory.getLogger(VirtualThreadPinnedEventMonitor.class);
+
+  /**
+   * @param threshold the minimum time a virtual thread must be pinned before the event is reported
+   */
+  public VirtualThreadPinnedEventMonitor(final Duration threshold) {
+    this.threshold = threshold;
+  }
+
+  @Override
+  public synchronized void start() {
+    recordingStream = new RecordingStream();
+    recordingStream.enable(PINNED_EVENT_NAME).withThreshold(threshold).withStackTrace();
+    recordingStream.onEvent(PINNED_EVENT_NAME, VirtualThreadPinnedEventMonitor::handlePinnedEvent);
+    recordingStream.startAsync();
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (recordingStream != null) {
+      recordingStream.close();
+      recordingStream = null;
+    }
+  }
+
+  private static void handlePinnedEvent(final RecordedEvent event) {
+    final RecordedThread thread = event.getThread();
+    final String executor = thread != null && thread.getJavaName() != null
+        ? VirtualThreadExecutors.getExecutorName(thread.getJavaName())
+        : "other";
+
+    Metrics.timer(PINNED_TIMER_NAME, Tags.of("executor", executor)).record(event.getDuration());
+
+    if (logger.isDebugEnabled()) {
+      logger.debug("Virtual thread in {} pinned for {}: {}", executor, event.getDuration(), event.getStackTrace());
+    }
+  }
+}
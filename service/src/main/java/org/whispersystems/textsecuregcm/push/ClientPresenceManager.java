@@ -7,40 +7,55 @@ package org.whispersystems.textsecuregcm.push;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 import com.codahale.metrics.Timer;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.dropwizard.lifecycle.Managed;
 import io.lettuce.core.LettuceFutures;
 import io.lettuce.core.RedisFuture;
 import io.lettuce.core.ScriptOutputType;
 import io.lettuce.core.cluster.SlotHash;
-import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
 import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
 import io.lettuce.core.cluster.pubsub.RedisClusterPubSubAdapter;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.redis.ClusterLuaScript;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantPubSubConnection;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
 import org.whispersystems.textsecuregcm.storage.Device;
+import org.whispersystems.textsecuregcm.util.ExceptionUtils;
 import org.whispersystems.textsecuregcm.util.Constants;
 
 /**
@@ -49,7 +64,17 @@ import org.whispersystems.textsecuregcm.util.Constants;
  * its presence, the previous client is displaced.
  * <p/>
  * The client presence manager depends on Redis keyspace notifications and requires that the Redis instance support at
- * least the following notification types: {@code K$z}.
+ * least the following notification types: {@code K$gx}. Presence keys are written with {@code SETEX} ({@code $}),
+ * removed with {@code DEL} and renewed with {@code EXPIRE} ({@code g}), and may expire ({@code x}). Presence managers
+ * check each node's notification settings at startup and log a warning if any of these types are missing.
+ * <p/>
+ * Presence managers renew the presences of their own clients on a bucketed schedule, and register presences for clients
+ * that connect at about the same time in batches.
+ * <p/>
+ * Presence checks are served from a small local cache whenever possible. Cached entries expire after a short time, but
+ * are normally invalidated much sooner: presence managers announce the presence keys they set or clear on a single
+ * shared channel, to which every presence manager subscribes once at startup, and discard cached entries for the
+ * announced keys.
  */
 public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, String> implements Managed {
 
@@ -65,23 +90,70 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
   private final ExecutorService keyspaceNotificationExecutorService;
   private final ScheduledExecutorService scheduledExecutorService;
   private ScheduledFuture<?> pruneMissingPeersFuture;
+  private ScheduledFuture<?> renewPresencesFuture;
+  private int nextRenewalBucket;
+
+  private final Queue<PendingRegistration> pendingRegistrations = new ConcurrentLinkedQueue<>();
+  private final Object registrationLock = new Object();
 
   private final Map<String, DisplacedPresenceListener> displacementListenersByPresenceKey = new ConcurrentHashMap<>();
 
+  private final Cache<String, CachedPresence> presenceCache;
+
+  // Counts invalidations by presence key stripe so that a presence check can tell whether an invalidation arrived while
+  // it was waiting for Redis, in which case the value it read may already be stale
+  private final AtomicLongArray presenceInvalidationCounts = new AtomicLongArray(PRESENCE_INVALIDATION_STRIPES);
+
   private final Timer checkPresenceTimer;
   private final Timer setPresenceTimer;
   private final Timer clearPresenceTimer;
   private final Timer prunePeersTimer;
+  private final Timer renewPresencesTimer;
+  private final Histogram registrationBatchSizeHistogram;
   private final Meter pruneClientMeter;
   private final Meter remoteDisplacementMeter;
   private final Meter pubSubMessageMeter;
   private final Counter displacementListenerAlreadyRemovedCounter;
+  private final Counter presenceCacheHitCounter;
+  private final Counter presenceCacheMissCounter;
 
   private static final int PRUNE_PEERS_INTERVAL_SECONDS = (int) Duration.ofSeconds(30).toSeconds();
   private static final int PRESENCE_EXPIRATION_SECONDS = (int) Duration.ofMinutes(11).toSeconds();
 
+  // Every local presence is renewed once per interval; presences are divided among buckets by slot, and one bucket is
+  // renewed per tick
+  private static final Duration RENEW_PRESENCE_INTERVAL = Duration.ofMinutes(5);
+
+  @VisibleForTesting
+  static final int RENEWAL_BUCKET_COUNT = 60;
+
+  private static final int MAX_RENEWAL_BATCH_SIZE = 1024;
+
+  @VisibleForTesting
+  static final Duration PRESENT_CACHE_TTL = Duration.ofSeconds(2);
+
+  @VisibleForTesting
+  static final Duration ABSENT_CACHE_TTL = Duration.ofSeconds(5);
+
+  private static final int MAX_CACHED_PRESENCES = 100_000;
+  private static final int PRESENCE_INVALIDATION_STRIPES = 1024;
+
+  // Cache hits are occasionally checked against Redis to measure how often the cache disagrees with the source of truth
+  private static final double PRESENCE_CACHE_VERIFICATION_PROBABILITY = 0.01;
+
   static final String MANAGER_SET_KEY = "presence::managers";
 
+  @VisibleForTesting
+  static final String PRESENCE_CHANGES_CHANNEL = "presence::changes";
+
+  private static final String PRESENCE_CHANGES_DELIMITER = "\n";
+
+  private static final String KEYSPACE_NOTIFICATION_PREFIX = "__keyspace@0__:";
+  private static final String PRESENCE_KEYSPACE_PREFIX = KEYSPACE_NOTIFICATION_PREFIX + "presence::{";
+
+  private static final String KEYSPACE_NOTIFICATION_CONFIG_PARAMETER = "notify-keyspace-events";
+  private static final String REQUIRED_KEYSPACE_NOTIFICATION_FLAGS = "K$gx";
+
   private static final Logger log = LoggerFactory.getLogger(ClientPresenceManager.class);
 
   public ClientPresenceManager(final FaultTolerantRedisCluster presenceCluster,
@@ -103,11 +175,33 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
     this.setPresenceTimer = metricRegistry.timer(name(getClass(), "setPresence"));
     this.clearPresenceTimer = metricRegistry.timer(name(getClass(), "clearPresence"));
     this.prunePeersTimer = metricRegistry.timer(name(getClass(), "prunePeers"));
+    this.renewPresencesTimer = metricRegistry.timer(name(getClass(), "renewPresences"));
+    this.registrationBatchSizeHistogram = metricRegistry.histogram(name(getClass(), "registrationBatchSize"));
     this.pruneClientMeter = metricRegistry.meter(name(getClass(), "pruneClient"));
     this.remoteDisplacementMeter = metricRegistry.meter(name(getClass(), "remoteDisplacement"));
     this.pubSubMessageMeter = metricRegistry.meter(name(getClass(), "pubSubMessage"));
     this.displacementListenerAlreadyRemovedCounter = Metrics.counter(
         name(getClass(), "displacementListenerAlreadyRemoved"));
+
+    this.presenceCache = CacheBuilder.newBuilder()
+        .maximumSize(MAX_CACHED_PRESENCES)
+        // Entries track their own (possibly shorter) expiration; this just keeps expired entries from lingering
+        .expireAfterWrite(ABSENT_CACHE_TTL)
+        .build();
+
+    this.presenceCacheHitCounter = Metrics.counter(name(getClass(), "presenceCacheLookup"), "hit", "true");
+    this.presenceCacheMissCounter = Metrics.counter(name(getClass(), "presenceCacheLookup"), "hit", "false");
+    metricRegistry.gauge(name(getClass(), "presenceCacheSize"), () -> presenceCache::size);
+  }
+
+  private record PendingRegistration(String presenceKey, CompletableFuture<Void> future) {
+  }
+
+  private record CachedPresence(boolean present, long expirationNanos) {
+
+    boolean isExpired(final long nowNanos) {
+      return nowNanos - expirationNanos >= 0;
+    }
   }
 
   @VisibleForTesting
@@ -128,6 +222,10 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
           .subscribe(presenceChannel);
     });
 
+    subscribeForPresenceChanges();
+
+    checkKeyspaceNotificationFlags();
+
     pubSubConnection.subscribeToClusterTopologyChangedEvents(this::resubscribeAll);
 
     presenceCluster.useCluster(connection -> connection.sync().sadd(MANAGER_SET_KEY, managerId));
@@ -139,6 +237,18 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
         log.warn("Failed to prune missing peers", t);
       }
     }, new Random().nextInt(PRUNE_PEERS_INTERVAL_SECONDS), PRUNE_PEERS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+    final long renewalTickMillis = RENEW_PRESENCE_INTERVAL.toMillis() / RENEWAL_BUCKET_COUNT;
+
+    renewPresencesFuture = scheduledExecutorService.scheduleWithFixedDelay(() -> {
+      try {
+        renewPresences(nextRenewalBucket);
+      } catch (final Throwable t) {
+        log.warn("Failed to renew presences", t);
+      } finally {
+        nextRenewalBucket = (nextRenewalBucket + 1) % RENEWAL_BUCKET_COUNT;
+      }
+    }, renewalTickMillis, renewalTickMillis, TimeUnit.MILLISECONDS);
   }
 
   @Override
@@ -149,6 +259,10 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
       pruneMissingPeersFuture.cancel(false);
     }
 
+    if (renewPresencesFuture != null) {
+      renewPresencesFuture.cancel(false);
+    }
+
     for (final String presenceKey : displacementListenersByPresenceKey.keySet()) {
       clearPresence(presenceKey);
     }
@@ -158,8 +272,33 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
       connection.sync().del(getConnectedClientSetKey(managerId));
     });
 
-    pubSubConnection.usePubSubConnection(
-        connection -> connection.sync().upstream().commands().unsubscribe(getManagerPresenceChannel(managerId)));
+    pubSubConnection.usePubSubConnection(connection -> connection.sync().upstream().commands().unsubscribe());
+
+    presenceCache.invalidateAll();
+  }
+
+  private void checkKeyspaceNotificationFlags() {
+    try {
+      presenceCluster.useCluster(connection -> connection.sync().upstream().asMap().forEach((node, commands) -> {
+        final String flags = commands.configGet(KEYSPACE_NOTIFICATION_CONFIG_PARAMETER)
+            .getOrDefault(KEYSPACE_NOTIFICATION_CONFIG_PARAMETER, "");
+
+        if (!hasRequiredKeyspaceNotificationFlags(flags)) {
+          log.warn("Presence cluster node {} has keyspace notification flags \"{}\", but at least \"{}\" are required; "
+                  + "remote displacement and presence cache invalidation will not work as expected",
+              node.getUri(), flags, REQUIRED_KEYSPACE_NOTIFICATION_FLAGS);
+        }
+      }));
+    } catch (final Exception e) {
+      log.warn("Failed to check keyspace notification flags", e);
+    }
+  }
+
+  @VisibleForTesting
+  static boolean hasRequiredKeyspaceNotificationFlags(final String flags) {
+    // "A" is an alias for all event types (but not for "K" or "E", which select the channels on which events appear)
+    return REQUIRED_KEYSPACE_NOTIFICATION_FLAGS.chars()
+        .allMatch(flag -> flags.indexOf(flag) >= 0 || (flag != 'K' && flags.indexOf('A') >= 0));
   }
 
   public void setPresent(final UUID accountUuid, final byte deviceId,
@@ -172,20 +311,104 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
 
       displacementListenersByPresenceKey.put(presenceKey, displacementListener);
 
-      presenceCluster.useCluster(connection -> {
-        final RedisAdvancedClusterCommands<String, String> commands = connection.sync();
+      final PendingRegistration registration = new PendingRegistration(presenceKey, new CompletableFuture<>());
+      pendingRegistrations.add(registration);
+
+      registerPendingPresences();
+
+      try {
+        registration.future().join();
+      } catch (final CompletionException e) {
+        if (ExceptionUtils.unwrap(e) instanceof RuntimeException runtimeException) {
+          throw runtimeException;
+        }
 
-        commands.sadd(connectedClientSetKey, presenceKey);
-        commands.setex(presenceKey, PRESENCE_EXPIRATION_SECONDS, managerId);
-      });
+        throw e;
+      }
 
-      subscribeForRemotePresenceChanges(presenceKey);
+      invalidateCachedPresence(presenceKey);
     }
   }
 
-  public void renewPresence(final UUID accountUuid, final byte deviceId) {
-    renewPresenceScript.execute(List.of(getPresenceKey(accountUuid, deviceId)),
-        List.of(managerId, String.valueOf(PRESENCE_EXPIRATION_SECONDS)));
+  /**
+   * Registers all pending presences in a single batch. Callers that arrive while another batch is being registered wait
+   * their turn, and by then, the first of them to get the lock will register everything that accumulated in the
+   * meantime; the rest will find their own registrations already complete.
+   */
+  private void registerPendingPresences() {
+    synchronized (registrationLock) {
+      final List<PendingRegistration> registrations = new ArrayList<>();
+
+      PendingRegistration registration;
+
+      while ((registration = pendingRegistrations.poll()) != null) {
+        registrations.add(registration);
+      }
+
+      if (registrations.isEmpty()) {
+        return;
+      }
+
+      registrationBatchSizeHistogram.update(registrations.size());
+
+      final List<String> presenceKeys = registrations.stream().map(PendingRegistration::presenceKey).toList();
+
+      try {
+        presenceCluster.useCluster(connection -> {
+          final RedisAdvancedClusterAsyncCommands<String, String> commands = connection.async();
+          final List<RedisFuture<?>> futures = new ArrayList<>(presenceKeys.size() + 1);
+
+          futures.add(commands.sadd(connectedClientSetKey, presenceKeys.toArray(String[]::new)));
+          presenceKeys.forEach(presenceKey ->
+              futures.add(commands.setex(presenceKey, PRESENCE_EXPIRATION_SECONDS, managerId)));
+
+          LettuceFutures.awaitAll(connection.getTimeout(), futures.toArray(new RedisFuture[0]));
+        });
+
+        publishPresenceChanges(presenceKeys);
+        subscribeForRemotePresenceChanges(presenceKeys);
+
+        registrations.forEach(r -> r.future().complete(null));
+      } catch (final Exception e) {
+        registrations.forEach(r -> r.future().completeExceptionally(e));
+      }
+    }
+  }
+
+  /**
+   * Renews all local presences in the given renewal bucket. Renewals are issued in slot order and in batches, so each
+   * batch is pipelined over a small number of connections.
+   *
+   * @param bucket the renewal bucket to renew
+   */
+  @VisibleForTesting
+  void renewPresences(final int bucket) {
+    try (final Timer.Context ignored = renewPresencesTimer.time()) {
+      final List<String> presenceKeys = displacementListenersByPresenceKey.keySet().stream()
+          .filter(presenceKey -> getRenewalBucket(presenceKey) == bucket)
+          .sorted(Comparator.comparingInt(SlotHash::getSlot))
+          .toList();
+
+      final byte[] managerIdBytes = managerId.getBytes(StandardCharsets.UTF_8);
+      final byte[] expirationBytes = String.valueOf(PRESENCE_EXPIRATION_SECONDS).getBytes(StandardCharsets.UTF_8);
+
+      for (int i = 0; i < presenceKeys.size(); i += MAX_RENEWAL_BATCH_SIZE) {
+        final List<ClusterLuaScript.BinaryInvocation> invocations =
+            presenceKeys.subList(i, Math.min(i + MAX_RENEWAL_BATCH_SIZE, presenceKeys.size())).stream()
+                .map(presenceKey -> new ClusterLuaScript.BinaryInvocation(
+                    List.of(presenceKey.getBytes(StandardCharsets.UTF_8)),
+                    List.of(managerIdBytes, expirationBytes)))
+                .toList();
+
+        CompletableFuture.allOf(renewPresenceScript.executeBinaryAsync(invocations).toArray(CompletableFuture[]::new))
+            .join();
+      }
+    }
+  }
+
+  @VisibleForTesting
+  static int getRenewalBucket(final String presenceKey) {
+    return SlotHash.getSlot(presenceKey) % RENEWAL_BUCKET_COUNT;
   }
 
   public void disconnectAllPresences(final UUID accountUuid, final List<Byte> deviceIds) {
@@ -203,6 +426,9 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
       List<RedisFuture<Long>> futures = presenceKeys.stream().map(key -> connection.async().del(key)).toList();
       LettuceFutures.awaitAll(connection.getTimeout(), futures.toArray(new RedisFuture[0]));
     });
+
+    publishPresenceChanges(presenceKeys);
+    presenceKeys.forEach(this::invalidateCachedPresence);
   }
 
   public void disconnectAllPresencesForUuid(final UUID accountUuid) {
@@ -223,11 +449,92 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
     clearPresence(presenceKey);
   }
 
+  /**
+   * Checks whether the given device is present on any presence manager. Results may be served from a local cache and
+   * may lag changes made by other presence managers by up to a few seconds in the worst case, though announcements of
+   * those changes normally invalidate cached results much sooner.
+   *
+   * @param accountUuid the account identifier for the device to check
+   * @param deviceId the identifier of the device to check
+   *
+   * @return {@code true} if the device is present or {@code false} otherwise
+   */
   public boolean isPresent(final UUID accountUuid, final byte deviceId) {
     try (final Timer.Context ignored = checkPresenceTimer.time()) {
-      return presenceCluster.withCluster(connection ->
-          connection.sync().exists(getPresenceKey(accountUuid, deviceId))) == 1;
+      final String presenceKey = getPresenceKey(accountUuid, deviceId);
+      final CachedPresence cachedPresence = presenceCache.getIfPresent(presenceKey);
+
+      if (cachedPresence != null && !cachedPresence.isExpired(System.nanoTime())) {
+        presenceCacheHitCounter.increment();
+
+        if (ThreadLocalRandom.current().nextDouble() < PRESENCE_CACHE_VERIFICATION_PROBABILITY) {
+          verifyCachedPresence(presenceKey, cachedPresence.present());
+        }
+
+        return cachedPresence.present();
+      }
+
+      presenceCacheMissCounter.increment();
+
+      final int stripe = getInvalidationStripe(presenceKey);
+      final long invalidationCount = presenceInvalidationCounts.get(stripe);
+
+      final boolean present = presenceCluster.withCluster(connection -> connection.sync().exists(presenceKey)) == 1;
+
+      presenceCache.put(presenceKey, new CachedPresence(present,
+          System.nanoTime() + (present ? PRESENT_CACHE_TTL : ABSENT_CACHE_TTL).toNanos()));
+
+      // If an invalidation arrived after we started reading from Redis, it may have been for a change we didn't observe.
+      // Checking after the put covers invalidations that arrive in the meantime, too; anything later removes the entry on
+      // its own.
+      if (presenceInvalidationCounts.get(stripe) != invalidationCount) {
+        presenceCache.invalidate(presenceKey);
+      }
+
+      return present;
+    }
+  }
+
+  private void verifyCachedPresence(final String presenceKey, final boolean cachedPresent) {
+    presenceCluster.withCluster(connection -> connection.async().exists(presenceKey))
+        .thenAccept(exists -> Metrics.counter(name(getClass(), "presenceCacheVerification"), Tags.of(
+                "cachedPresent", String.valueOf(cachedPresent),
+                "stale", String.valueOf(cachedPresent != (exists == 1))))
+            .increment());
+  }
+
+  private void invalidateCachedPresence(final String presenceKey) {
+    // Count the invalidation before removing the entry; see isPresent
+    presenceInvalidationCounts.incrementAndGet(getInvalidationStripe(presenceKey));
+    presenceCache.invalidate(presenceKey);
+  }
+
+  /**
+   * Announces changes to the given presence keys to all presence managers so they can discard cached results for those
+   * keys. Announcements must only be made after the changes have been written.
+   */
+  private void publishPresenceChanges(final Collection<String> presenceKeys) {
+    if (presenceKeys.isEmpty()) {
+      return;
     }
+
+    // A lost announcement only leaves stale cache entries in place until they expire, so don't wait for the result
+    presenceCluster.useCluster(connection -> connection.async()
+        .publish(PRESENCE_CHANGES_CHANNEL, String.join(PRESENCE_CHANGES_DELIMITER, presenceKeys)));
+  }
+
+  private void subscribeForPresenceChanges() {
+    final int slot = SlotHash.getSlot(PRESENCE_CHANGES_CHANNEL);
+
+    // Messages published to any node are forwarded to every node in the cluster, so one subscription is enough
+    pubSubConnection.usePubSubConnection(connection -> connection.sync()
+        .nodes(node -> node.is(RedisClusterNode.NodeFlag.UPSTREAM) && node.hasSlot(slot))
+        .commands()
+        .subscribe(PRESENCE_CHANGES_CHANNEL));
+  }
+
+  private static int getInvalidationStripe(final String presenceKey) {
+    return Math.floorMod(presenceKey.hashCode(), PRESENCE_INVALIDATION_STRIPES);
   }
 
   public boolean isLocallyPresent(final UUID accountUuid, final byte deviceId) {
@@ -252,23 +559,43 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
       final boolean removed = clearPresenceScript.execute(List.of(presenceKey), List.of(managerId)) != null;
       presenceCluster.useCluster(connection -> connection.sync().srem(connectedClientSetKey, presenceKey));
 
+      if (removed) {
+        publishPresenceChanges(List.of(presenceKey));
+      }
+
+      invalidateCachedPresence(presenceKey);
+
       return removed;
     }
   }
 
-  private void subscribeForRemotePresenceChanges(final String presenceKey) {
-    final int slot = SlotHash.getSlot(presenceKey);
+  private void subscribeForRemotePresenceChanges(final Collection<String> presenceKeys) {
+    pubSubConnection.usePubSubConnection(connection -> {
+      // Subscribe to all channels hosted by the same node with a single command
+      final Map<String, List<String>> channelsByNodeId = new HashMap<>();
 
-    pubSubConnection.usePubSubConnection(
-        connection -> connection.sync().nodes(node -> node.is(RedisClusterNode.NodeFlag.UPSTREAM) && node.hasSlot(slot))
-            .commands()
-            .subscribe(getKeyspaceNotificationChannel(presenceKey)));
+      for (final String presenceKey : presenceKeys) {
+        final RedisClusterNode node = connection.getPartitions().getMasterBySlot(SlotHash.getSlot(presenceKey));
+
+        if (node != null) {
+          channelsByNodeId.computeIfAbsent(node.getNodeId(), ignored -> new ArrayList<>())
+              .add(getKeyspaceNotificationChannel(presenceKey));
+        }
+      }
+
+      channelsByNodeId.forEach((nodeId, channels) -> connection.sync()
+          .nodes(node -> node.is(RedisClusterNode.NodeFlag.UPSTREAM) && node.getNodeId().equals(nodeId))
+          .commands()
+          .subscribe(channels.toArray(String[]::new)));
+    });
   }
 
   private void resubscribeAll() {
-    for (final String presenceKey : displacementListenersByPresenceKey.keySet()) {
-      subscribeForRemotePresenceChanges(presenceKey);
-    }
+    // Announcements may have been missed while the presence changes channel's node was unavailable
+    presenceCache.invalidateAll();
+
+    subscribeForPresenceChanges();
+    subscribeForRemotePresenceChanges(List.copyOf(displacementListenersByPresenceKey.keySet()));
   }
 
   private void unsubscribeFromRemotePresenceChanges(final String presenceKey) {
@@ -290,15 +617,20 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
           log.debug("Presence manager {} did not respond to ping", peerId);
 
           final String connectedClientsKey = getConnectedClientSetKey(peerId);
+          final List<String> prunedPresenceKeys = new ArrayList<>();
 
           String presenceKey;
 
           while ((presenceKey = presenceCluster.withCluster(connection -> connection.sync().spop(connectedClientsKey)))
               != null) {
             clearPresenceScript.execute(List.of(presenceKey), List.of(peerId));
+            invalidateCachedPresence(presenceKey);
+            prunedPresenceKeys.add(presenceKey);
             pruneClientMeter.mark();
           }
 
+          publishPresenceChanges(prunedPresenceKeys);
+
           presenceCluster.useCluster(connection -> {
             connection.sync().del(connectedClientsKey);
             connection.sync().srem(MANAGER_SET_KEY, peerId);
@@ -312,8 +644,19 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
   public void message(final RedisClusterNode node, final String channel, final String message) {
     pubSubMessageMeter.mark();
 
-    if (channel.startsWith("__keyspace@0__:presence::{")) {
-      if ("set".equals(message) || "del".equals(message)) {
+    if (PRESENCE_CHANGES_CHANNEL.equals(channel)) {
+      // Invalidation doesn't touch Redis, so it's safe to do right here on the Lettuce IO thread
+      for (final String presenceKey : message.split(PRESENCE_CHANGES_DELIMITER)) {
+        invalidateCachedPresence(presenceKey);
+      }
+    } else if (channel.startsWith(PRESENCE_KEYSPACE_PREFIX)) {
+      final String presenceKey = channel.substring(KEYSPACE_NOTIFICATION_PREFIX.length());
+
+      // Expirations aren't announced on the presence changes channel
+      invalidateCachedPresence(presenceKey);
+
+      // A notification may arrive after the presence has already been cleared locally
+      if (("set".equals(message) || "del".equals(message)) && displacementListenersByPresenceKey.containsKey(presenceKey)) {
         // for "set", another process has overwritten this presence key, which means the client has connected to another host.
         // for "del", another process has indicated the client should be disconnected
         final boolean connectedElsewhere = "set".equals(message);
@@ -322,7 +665,7 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
         // synchronous Lettuce calls to avoid deadlocking.
         keyspaceNotificationExecutorService.execute(() -> {
           try {
-            displacePresence(channel.substring("__keyspace@0__:".length()), connectedElsewhere);
+            displacePresence(presenceKey, connectedElsewhere);
             remoteDisplacementMeter.mark();
           } catch (final Exception e) {
             log.warn("Error displacing presence", e);
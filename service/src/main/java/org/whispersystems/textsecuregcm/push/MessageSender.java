@@ -8,6 +8,13 @@ import static com.codahale.metrics.MetricRegistry.name;
 import static org.whispersystems.textsecuregcm.entities.MessageProtos.Envelope;
 
 import io.micrometer.core.instrument.Metrics;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import org.apache.commons.lang3.StringUtils;
 import org.whispersystems.textsecuregcm.redis.RedisOperation;
 import org.whispersystems.textsecuregcm.storage.Account;
@@ -56,17 +63,7 @@ public class MessageSender {
   public void sendMessage(final Account account, final Device device, final Envelope message, final boolean online)
       throws NotPushRegisteredException {
 
-    final String channel;
-
-    if (device.getGcmId() != null) {
-      channel = "gcm";
-    } else if (device.getApnId() != null) {
-      channel = "apn";
-    } else if (device.getFetchesMessages()) {
-      channel = "websocket";
-    } else {
-      throw new AssertionError();
-    }
+    final String channel = getDeliveryChannel(device);
 
     final boolean clientPresent;
 
@@ -85,19 +82,138 @@ public class MessageSender {
       clientPresent = clientPresenceManager.isPresent(account.getUuid(), device.getId());
 
       if (!clientPresent) {
-        try {
-          pushNotificationManager.sendNewMessageNotification(account, device.getId(), message.getUrgent());
-
-          final boolean useVoip = StringUtils.isNotBlank(device.getVoipApnId());
-          RedisOperation.unchecked(() -> pushLatencyManager.recordPushSent(account.getUuid(), device.getId(), useVoip, message.getUrgent()));
-        } catch (final NotPushRegisteredException e) {
-          if (!device.getFetchesMessages()) {
-            throw e;
+        sendNewMessageNotification(account, device, message);
+      }
+    }
+
+    incrementSendCounter(channel, message, online, clientPresent);
+  }
+
+  /**
+   * Sends a batch of messages, potentially to many different devices. Messages are written to their destination queues
+   * with a single bulk insert; presence checks and push notifications are then handled per device on the given
+   * executor, just as {@link #sendMessage(Account, Device, Envelope, boolean)} would handle them for a single message.
+   *
+   * @param messages the messages to send and their destinations
+   * @param online whether the messages should only be delivered to devices that are currently online
+   * @param executor the executor on which to perform per-device presence checks and notifications
+   *
+   * @return a list of futures, in the same order as the given messages, that complete when each message has been sent;
+   * a future will fail with a {@link NotPushRegisteredException} under the same conditions that
+   * {@link #sendMessage(Account, Device, Envelope, boolean)} would throw one
+   */
+  public List<CompletableFuture<Void>> sendMessages(final List<DeviceMessage> messages, final boolean online,
+      final Executor executor) {
+
+    final List<String> channels = messages.stream()
+        .map(message -> getDeliveryChannel(message.device()))
+        .toList();
+
+    final List<CompletableFuture<Void>> sendFutures = new ArrayList<>(messages.size());
+
+    if (online) {
+      final List<CompletableFuture<Boolean>> presenceFutures = messages.stream()
+          .map(message -> CompletableFuture.supplyAsync(() ->
+              clientPresenceManager.isPresent(message.account().getUuid(), message.device().getId()), executor))
+          .toList();
+
+      // Ephemeral messages are only inserted for devices that are present, so we need to wait for all presence checks
+      // before we can assemble the batch
+      final CompletableFuture<List<CompletableFuture<UUID>>> insertFuture =
+          CompletableFuture.allOf(presenceFutures.toArray(CompletableFuture[]::new))
+              .thenApply(ignored -> {
+                final List<MessagesManager.DestinationMessage> presentMessages = new ArrayList<>();
+
+                for (int i = 0; i < messages.size(); i++) {
+                  if (presenceFutures.get(i).join()) {
+                    final DeviceMessage message = messages.get(i);
+
+                    presentMessages.add(new MessagesManager.DestinationMessage(message.account().getUuid(),
+                        message.device().getId(), message.envelope().toBuilder().setEphemeral(true).build()));
+                  }
+                }
+
+                final Iterator<CompletableFuture<UUID>> presentInsertFutures =
+                    messagesManager.insert(presentMessages).iterator();
+
+                return presenceFutures.stream()
+                    .map(presenceFuture -> presenceFuture.join()
+                        ? presentInsertFutures.next()
+                        : CompletableFuture.<UUID>completedFuture(null))
+                    .toList();
+              });
+
+      for (int i = 0; i < messages.size(); i++) {
+        final int index = i;
+
+        sendFutures.add(insertFuture
+            .thenCompose(insertFutures -> insertFutures.get(index))
+            .thenRun(() -> incrementSendCounter(channels.get(index), messages.get(index).envelope(), true,
+                presenceFutures.get(index).join())));
+      }
+    } else {
+      final List<CompletableFuture<UUID>> insertFutures = messagesManager.insert(messages.stream()
+          .map(message -> new MessagesManager.DestinationMessage(message.account().getUuid(), message.device().getId(),
+              message.envelope()))
+          .toList());
+
+      for (int i = 0; i < messages.size(); i++) {
+        final DeviceMessage message = messages.get(i);
+        final String channel = channels.get(i);
+
+        sendFutures.add(insertFutures.get(i).thenRunAsync(() -> {
+          // As with single messages, check for presence only after the message has been inserted
+          final boolean clientPresent =
+              clientPresenceManager.isPresent(message.account().getUuid(), message.device().getId());
+
+          if (!clientPresent) {
+            try {
+              sendNewMessageNotification(message.account(), message.device(), message.envelope());
+            } catch (final NotPushRegisteredException e) {
+              throw new CompletionException(e);
+            }
           }
-        }
+
+          incrementSendCounter(channel, message.envelope(), false, clientPresent);
+        }, executor));
       }
     }
 
+    return sendFutures;
+  }
+
+  private static String getDeliveryChannel(final Device device) {
+    if (device.getGcmId() != null) {
+      return "gcm";
+    } else if (device.getApnId() != null) {
+      return "apn";
+    } else if (device.getFetchesMessages()) {
+      return "websocket";
+    } else {
+      throw new AssertionError();
+    }
+  }
+
+  private void sendNewMessageNotification(final Account account, final Device device, final Envelope message)
+      throws NotPushRegisteredException {
+
+    try {
+      pushNotificationManager.sendNewMessageNotification(account, device.getId(), message.getUrgent());
+
+      final boolean useVoip = StringUtils.isNotBlank(device.getVoipApnId());
+      RedisOperation.unchecked(() -> pushLatencyManager.recordPushSent(account.getUuid(), device.getId(), useVoip, message.getUrgent()));
+    } catch (final NotPushRegisteredException e) {
+      if (!device.getFetchesMessages()) {
+        throw e;
+      }
+    }
+  }
+
+  private static void incrementSendCounter(final String channel,
+      final Envelope message,
+      final boolean online,
+      final boolean clientPresent) {
+
     Metrics.counter(SEND_COUNTER_NAME,
             CHANNEL_TAG_NAME, channel,
             EPHEMERAL_TAG_NAME, String.valueOf(online),
@@ -108,4 +224,12 @@ public class MessageSender {
             HAS_SPAM_REPORTING_TOKEN_TAG_NAME, String.valueOf(message.getReportSpamToken() != null && !message.getReportSpamToken().isEmpty()))
         .increment();
   }
+
+  /**
+   * A message and the account and device to which it should be sent.
+   *
+   * @see #sendMessages(List, boolean, Executor)
+   */
+  public record DeviceMessage(Account account, Device device, Envelope envelope) {
+  }
 }
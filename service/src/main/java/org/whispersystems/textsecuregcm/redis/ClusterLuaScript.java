@@ -15,6 +15,7 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.HexFormat;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -97,11 +98,43 @@ public class ClusterLuaScript {
         executeAsync(connection, keys.toArray(BYTE_ARRAY_ARRAY), args.toArray(BYTE_ARRAY_ARRAY)));
   }
 
+  /**
+   * Executes this script once for each of the given invocations. All invocations are dispatched before any response is
+   * awaited, so invocations that map to the same cluster node are pipelined over that node's connection rather than
+   * paying a network round trip each. Callers that want to minimize the number of distinct write bursts per node should
+   * order invocations by slot.
+   *
+   * @param invocations the keys and arguments for each execution of this script
+   *
+   * @return a list of futures, in the same order as the given invocations, that yield the result of each execution
+   */
+  public List<CompletableFuture<Object>> executeBinaryAsync(final List<BinaryInvocation> invocations) {
+    return redisCluster.withBinaryCluster(connection -> {
+      final List<CompletableFuture<Object>> futures = new ArrayList<>(invocations.size());
+
+      for (final BinaryInvocation invocation : invocations) {
+        futures.add(executeAsync(connection,
+            invocation.keys().toArray(BYTE_ARRAY_ARRAY),
+            invocation.args().toArray(BYTE_ARRAY_ARRAY)));
+      }
+
+      return futures;
+    });
+  }
+
   public Flux<Object> executeBinaryReactive(final List<byte[]> keys, final List<byte[]> args) {
     return redisCluster.withBinaryCluster(connection ->
         executeReactive(connection, keys.toArray(BYTE_ARRAY_ARRAY), args.toArray(BYTE_ARRAY_ARRAY)));
   }
 
+  /**
+   * The keys and arguments for a single execution of a script within a batch.
+   *
+   * @see #executeBinaryAsync(List)
+   */
+  public record BinaryInvocation(List<byte[]> keys, List<byte[]> args) {
+  }
+
   private <T> Object execute(final StatefulRedisClusterConnection<T, T> connection, final T[] keys, final T[] args) {
     try {
       try {
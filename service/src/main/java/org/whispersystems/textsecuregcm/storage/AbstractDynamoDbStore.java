@@ -9,20 +9,37 @@ import static com.codahale.metrics.MetricRegistry.name;
 import static io.micrometer.core.instrument.Metrics.counter;
 import static io.micrometer.core.instrument.Metrics.timer;
 
+import com.google.common.annotations.VisibleForTesting;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.whispersystems.textsecuregcm.util.ExceptionUtils;
+import org.whispersystems.textsecuregcm.util.Util;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.retry.RetryUtils;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
 import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
 import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
 import javax.annotation.Nonnull;
@@ -33,8 +50,23 @@ public abstract class AbstractDynamoDbStore {
 
   public static final int DYNAMO_DB_MAX_BATCH_SIZE = 25;  // This limit comes from Amazon Dynamo DB itself. It will reject batch writes larger than this.
 
+  public static final int DYNAMO_DB_MAX_BATCH_GET_SIZE = 100;  // This limit also comes from Amazon Dynamo DB itself.
+
   public static final int RESULT_SET_CHUNK_SIZE = 100;
 
+  @VisibleForTesting
+  static final int MAX_ATTEMPTS_TO_GET_BATCH = 5;
+
+  public static final int MAX_ASYNC_BATCH_WRITE_CONCURRENCY = 8;  // The most async batch writes a store has in flight at once
+
+  // The most items a store will write concurrently; callers that buffer writes can use this to size their flushes
+  public static final int MAX_ASYNC_BATCH_WRITE_ITEMS = DYNAMO_DB_MAX_BATCH_SIZE * MAX_ASYNC_BATCH_WRITE_CONCURRENCY;
+
+  @VisibleForTesting
+  static final Duration ASYNC_BATCH_WRITE_RETRY_BASE_DELAY = Duration.ofMillis(25);
+
+  private static final Duration ASYNC_BATCH_WRITE_RETRY_MAX_DELAY = Duration.ofSeconds(1);
+
   private final Logger logger = LoggerFactory.getLogger(getClass());
 
   private final Timer batchWriteItemsFirstPass = timer(name(getClass(), "batchWriteItems"), "firstAttempt", "true");
@@ -43,8 +75,19 @@ public abstract class AbstractDynamoDbStore {
 
   private final Counter batchWriteItemsUnprocessed = counter(name(getClass(), "batchWriteItemsUnprocessed"));
 
+  private final Counter batchWriteItemsThrottled = counter(name(getClass(), "batchWriteItemsThrottled"));
+
+  private final Timer batchGetItemsFirstPass = timer(name(getClass(), "batchGetItems"), "firstAttempt", "true");
+
+  private final Timer batchGetItemsRetryPass = timer(name(getClass(), "batchGetItems"), "firstAttempt", "false");
+
+  private final Counter batchGetItemsUnprocessed = counter(name(getClass(), "batchGetItemsUnprocessed"));
+
   private final DynamoDbClient dynamoDbClient;
 
+  private final AdaptiveConcurrencyLimiter asyncBatchWriteLimiter =
+      new AdaptiveConcurrencyLimiter(MAX_ASYNC_BATCH_WRITE_CONCURRENCY);
+
 
   public AbstractDynamoDbStore(final DynamoDbClient dynamoDbClient) {
     this.dynamoDbClient = dynamoDbClient;
@@ -71,6 +114,179 @@ public abstract class AbstractDynamoDbStore {
     }
   }
 
+  /**
+   * Asynchronously writes the given items to a single table. Items are written in batches of at most
+   * {@link #DYNAMO_DB_MAX_BATCH_SIZE}, and several batches may be in flight at once. Unprocessed items are retried with
+   * jittered exponential backoff. The number of batches in flight is shared by all callers of this store; it shrinks
+   * when DynamoDB throttles requests and recovers gradually as batches succeed.
+   *
+   * @param dynamoDbAsyncClient the client with which to write items
+   * @param tableName the name of the table to which to write items
+   * @param items the items to write
+   *
+   * @return a future that completes when all items have been written, or fails if any items could not be written after
+   * {@value #MAX_ATTEMPTS_TO_SAVE_BATCH_WRITE} attempts
+   */
+  protected CompletableFuture<Void> executeTableWriteItemsUntilCompleteAsync(
+      final DynamoDbAsyncClient dynamoDbAsyncClient,
+      final String tableName,
+      final Collection<WriteRequest> items) {
+
+    final List<CompletableFuture<Void>> batchFutures = new ArrayList<>();
+
+    writeInBatches(items, batch ->
+        batchFutures.add(writeBatchAsync(dynamoDbAsyncClient, Map.of(tableName, List.copyOf(batch)), 1)));
+
+    return CompletableFuture.allOf(batchFutures.toArray(CompletableFuture[]::new));
+  }
+
+  private CompletableFuture<Void> writeBatchAsync(final DynamoDbAsyncClient dynamoDbAsyncClient,
+      final Map<String, List<WriteRequest>> items,
+      final int attempt) {
+
+    final Timer timer = attempt == 1 ? batchWriteItemsFirstPass : batchWriteItemsRetryPass;
+    final AtomicLong decreaseEpochAtStart = new AtomicLong();
+
+    return asyncBatchWriteLimiter.submit(() -> {
+          decreaseEpochAtStart.set(asyncBatchWriteLimiter.getDecreaseEpoch());
+          final Timer.Sample sample = Timer.start();
+
+          return dynamoDbAsyncClient.batchWriteItem(BatchWriteItemRequest.builder().requestItems(items).build())
+              .whenComplete((response, throwable) -> sample.stop(timer));
+        })
+        .handle((response, throwable) -> {
+          final Map<String, List<WriteRequest>> remainingItems;
+
+          if (throwable != null) {
+            if (!(ExceptionUtils.unwrap(throwable) instanceof SdkException sdkException)
+                || !RetryUtils.isThrottlingException(sdkException)) {
+
+              return CompletableFuture.<Void>failedFuture(ExceptionUtils.unwrap(throwable));
+            }
+
+            remainingItems = items;
+          } else if (response.hasUnprocessedItems() && !response.unprocessedItems().isEmpty()) {
+            remainingItems = response.unprocessedItems();
+          } else {
+            asyncBatchWriteLimiter.onSuccess();
+            return CompletableFuture.<Void>completedFuture(null);
+          }
+
+          // Both throttling exceptions and unprocessed items mean DynamoDB can't keep up with the current request rate
+          asyncBatchWriteLimiter.onThrottle(decreaseEpochAtStart.get());
+
+          final int remainingItemCount = remainingItems.values().stream().mapToInt(List::size).sum();
+          batchWriteItemsThrottled.increment(remainingItemCount);
+
+          if (attempt >= MAX_ATTEMPTS_TO_SAVE_BATCH_WRITE) {
+            logger.error("Attempt count ({}) reached max ({}) before applying all batch writes to dynamo. {} unprocessed items remain.",
+                attempt, MAX_ATTEMPTS_TO_SAVE_BATCH_WRITE, remainingItemCount);
+            batchWriteItemsUnprocessed.increment(remainingItemCount);
+
+            return CompletableFuture.<Void>failedFuture(new IllegalStateException(
+                remainingItemCount + " items remain unprocessed after " + attempt + " attempts"));
+          }
+
+          return CompletableFuture.runAsync(Util.NOOP,
+                  CompletableFuture.delayedExecutor(getRetryDelayMillis(attempt), TimeUnit.MILLISECONDS))
+              .thenCompose(ignored -> writeBatchAsync(dynamoDbAsyncClient, remainingItems, attempt + 1));
+        })
+        .thenCompose(Function.identity());
+  }
+
+  /**
+   * Asynchronously retrieves the items with the given keys from a single table with strongly-consistent reads. Keys are
+   * requested in batches of at most {@link #DYNAMO_DB_MAX_BATCH_GET_SIZE}, all of which may be in flight at once, and
+   * unprocessed keys are retried with jittered exponential backoff.
+   *
+   * @param dynamoDbAsyncClient the client with which to retrieve items
+   * @param tableName the name of the table from which to retrieve items
+   * @param keys the primary keys of the items to retrieve; duplicate keys are requested only once
+   *
+   * @return a future that yields all the requested items that exist in no particular order, or fails if any batch fails
+   * or any keys remain unprocessed after {@value #MAX_ATTEMPTS_TO_GET_BATCH} attempts
+   */
+  protected CompletableFuture<List<Map<String, AttributeValue>>> getItemsAsync(
+      final DynamoDbAsyncClient dynamoDbAsyncClient,
+      final String tableName,
+      final Collection<Map<String, AttributeValue>> keys) {
+
+    final List<Map<String, AttributeValue>> distinctKeys = keys.stream().distinct().toList();
+    final List<CompletableFuture<List<Map<String, AttributeValue>>>> batchFutures = new ArrayList<>();
+
+    for (int i = 0; i < distinctKeys.size(); i += DYNAMO_DB_MAX_BATCH_GET_SIZE) {
+      batchFutures.add(getBatchAsync(dynamoDbAsyncClient, tableName,
+          distinctKeys.subList(i, Math.min(i + DYNAMO_DB_MAX_BATCH_GET_SIZE, distinctKeys.size())), 1));
+    }
+
+    return CompletableFuture.allOf(batchFutures.toArray(CompletableFuture[]::new))
+        .thenApply(ignored -> batchFutures.stream()
+            .flatMap(batchFuture -> batchFuture.join().stream())
+            .toList());
+  }
+
+  private CompletableFuture<List<Map<String, AttributeValue>>> getBatchAsync(
+      final DynamoDbAsyncClient dynamoDbAsyncClient,
+      final String tableName,
+      final List<Map<String, AttributeValue>> keys,
+      final int attempt) {
+
+    final Timer timer = attempt == 1 ? batchGetItemsFirstPass : batchGetItemsRetryPass;
+    final Timer.Sample sample = Timer.start();
+
+    return dynamoDbAsyncClient.batchGetItem(BatchGetItemRequest.builder()
+            .requestItems(Map.of(tableName, KeysAndAttributes.builder()
+                .keys(keys)
+                .consistentRead(true)
+                .build()))
+            .build())
+        .whenComplete((response, throwable) -> sample.stop(timer))
+        .thenCompose(response -> {
+          final List<Map<String, AttributeValue>> items = response.responses().getOrDefault(tableName, List.of());
+
+          final List<Map<String, AttributeValue>> unprocessedKeys =
+              response.hasUnprocessedKeys() && response.unprocessedKeys().containsKey(tableName)
+                  ? response.unprocessedKeys().get(tableName).keys()
+                  : List.of();
+
+          if (unprocessedKeys.isEmpty()) {
+            return CompletableFuture.completedFuture(items);
+          }
+
+          if (attempt >= MAX_ATTEMPTS_TO_GET_BATCH) {
+            logger.warn("Attempt count ({}) reached max ({}) before retrieving all batch items. {} keys remain unprocessed.",
+                attempt, MAX_ATTEMPTS_TO_GET_BATCH, unprocessedKeys.size());
+            batchGetItemsUnprocessed.increment(unprocessedKeys.size());
+
+            return CompletableFuture.failedFuture(new IllegalStateException(
+                unprocessedKeys.size() + " keys remain unprocessed after " + attempt + " attempts"));
+          }
+
+          return CompletableFuture.runAsync(Util.NOOP,
+                  CompletableFuture.delayedExecutor(getRetryDelayMillis(attempt), TimeUnit.MILLISECONDS))
+              .thenCompose(ignored -> getBatchAsync(dynamoDbAsyncClient, tableName, unprocessedKeys, attempt + 1))
+              .thenApply(retriedItems -> {
+                final List<Map<String, AttributeValue>> allItems = new ArrayList<>(items.size() + retriedItems.size());
+                allItems.addAll(items);
+                allItems.addAll(retriedItems);
+
+                return allItems;
+              });
+        });
+  }
+
+  private static long getRetryDelayMillis(final int attempt) {
+    final long maxDelayMillis = Math.min(ASYNC_BATCH_WRITE_RETRY_MAX_DELAY.toMillis(),
+        ASYNC_BATCH_WRITE_RETRY_BASE_DELAY.toMillis() << Math.min(attempt - 1, 16));
+
+    return ThreadLocalRandom.current().nextLong(maxDelayMillis + 1);
+  }
+
+  @VisibleForTesting
+  int getAsyncBatchWriteConcurrencyLimit() {
+    return asyncBatchWriteLimiter.getLimit();
+  }
+
   @Nonnull
   protected List<Map<String, AttributeValue>> scan(final ScanRequest scanRequest, final int max) {
     return db().scanPaginator(scanRequest)
@@ -104,4 +320,119 @@ public abstract class AbstractDynamoDbStore {
       action.accept(batch);
     }
   }
+
+  /**
+   * Limits the number of asynchronous operations in flight, adjusting the limit with an additive-increase,
+   * multiplicative-decrease policy. Operations submitted while the limit is reached are started in submission order as
+   * capacity becomes available.
+   * <p>
+   * Operations that were already in flight when the limit was decreased were started under the old limit, so their
+   * throttled responses say nothing about whether the new limit is low enough. Only throttled operations started after
+   * the most recent decrease may decrease the limit again, so a burst of concurrent throttles halves the limit once
+   * rather than once per operation.
+   */
+  private static class AdaptiveConcurrencyLimiter {
+
+    private final int maxLimit;
+
+    private int limit;
+    private int inFlight = 0;
+    private long decreaseEpoch = 0;
+    private final Queue<Runnable> pendingOperations = new ArrayDeque<>();
+
+    private AdaptiveConcurrencyLimiter(final int maxLimit) {
+      this.maxLimit = maxLimit;
+      this.limit = maxLimit;
+    }
+
+    <T> CompletableFuture<T> submit(final Supplier<CompletableFuture<T>> operation) {
+      final CompletableFuture<T> result = new CompletableFuture<>();
+
+      final Runnable runnable = () -> {
+        CompletableFuture<T> operationFuture;
+
+        try {
+          operationFuture = operation.get();
+        } catch (final RuntimeException e) {
+          operationFuture = CompletableFuture.failedFuture(e);
+        }
+
+        operationFuture.whenComplete((value, throwable) -> {
+          release();
+
+          if (throwable != null) {
+            result.completeExceptionally(throwable);
+          } else {
+            result.complete(value);
+          }
+        });
+      };
+
+      final boolean startNow;
+
+      synchronized (this) {
+        startNow = inFlight < limit;
+
+        if (startNow) {
+          inFlight++;
+        } else {
+          pendingOperations.add(runnable);
+        }
+      }
+
+      if (startNow) {
+        runnable.run();
+      }
+
+      return result;
+    }
+
+    synchronized int getLimit() {
+      return limit;
+    }
+
+    void onSuccess() {
+      synchronized (this) {
+        limit = Math.min(maxLimit, limit + 1);
+      }
+
+      startPendingOperations();
+    }
+
+    /**
+     * Returns the number of times the limit has been decreased. Callers should note the epoch when an operation starts
+     * and pass it to {@link #onThrottle(long)} if that operation is throttled.
+     */
+    synchronized long getDecreaseEpoch() {
+      return decreaseEpoch;
+    }
+
+    synchronized void onThrottle(final long operationDecreaseEpoch) {
+      if (operationDecreaseEpoch == decreaseEpoch) {
+        limit = Math.max(1, limit / 2);
+        decreaseEpoch++;
+      }
+    }
+
+    private void release() {
+      synchronized (this) {
+        inFlight--;
+      }
+
+      startPendingOperations();
+    }
+
+    private void startPendingOperations() {
+      final List<Runnable> operationsToStart = new ArrayList<>();
+
+      synchronized (this) {
+        while (inFlight < limit && !pendingOperations.isEmpty()) {
+          inFlight++;
+          operationsToStart.add(pendingOperations.remove());
+        }
+      }
+
+      operationsToStart.forEach(Runnable::run);
+    }
+  }
 }
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import static org.whispersystems.textsecuregcm.metrics.MetricsUtil.name;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.dropwizard.lifecycle.Managed;
+import io.lettuce.core.cluster.pubsub.RedisClusterPubSubAdapter;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.whispersystems.textsecuregcm.configuration.AccountNearCacheConfiguration;
+import org.whispersystems.textsecuregcm.redis.FaultTolerantPubSubConnection;
+import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
+import org.whispersystems.textsecuregcm.util.SystemMapper;
+
+/**
+ * An account near-cache keeps recently-loaded accounts in memory so that frequent lookups of the same account (most
+ * notably, authenticating every request from an active client) don't each need a round trip to Redis and a full parse
+ * of the account's JSON.
+ * <p>
+ * Whenever an account changes, the server that changed it publishes an invalidation with the account's version to a
+ * channel on the accounts cache cluster, and every server evicts its copy of the account if it's older than the
+ * published version (or, if the account was removed from the accounts cache, regardless of version). To keep a lookup
+ * that started before an invalidation from caching an account that the invalidation should have evicted, lookups leave
+ * a placeholder while they load an account, invalidations leave the invalidated version behind, and accounts older
+ * than a placeholder's version are never cached. Invalidations are delivered on a best-effort basis, and entries expire
+ * after a short, fixed time so that a lost invalidation can't leave a stale account in memory indefinitely.
+ * <p>
+ * Accounts are mutable, and callers routinely modify the accounts they retrieve, so the near-cache holds a tokenized
+ * snapshot of each account and returns a new {@link Account} instance for each hit.
+ */
+public class AccountNearCache extends RedisClusterPubSubAdapter<String, String> implements Managed {
+
+  private final boolean enabled;
+  private final FaultTolerantRedisCluster cacheCluster;
+  private final Cache<UUID, CacheEntry> entries;
+  private final Ticker ticker;
+
+  @Nullable
+  private final FaultTolerantPubSubConnection<String, String> pubSubConnection;
+
+  @VisibleForTesting
+  static final String INVALIDATION_CHANNEL = "account::invalidation";
+
+  private static final ObjectMapper MAPPER = SystemMapper.jsonMapper();
+
+  private static final Counter HIT_COUNTER = Metrics.counter(name(AccountNearCache.class, "lookup"), "hit", "true");
+  private static final Counter MISS_COUNTER = Metrics.counter(name(AccountNearCache.class, "lookup"), "hit", "false");
+  private static final Counter STALE_ACCOUNT_REJECTED_COUNTER =
+      Metrics.counter(name(AccountNearCache.class, "staleAccountRejected"));
+  private static final Counter INVALIDATION_COUNTER = Metrics.counter(name(AccountNearCache.class, "invalidation"));
+  private static final DistributionSummary HIT_AGE_DISTRIBUTION =
+      DistributionSummary.builder(name(AccountNearCache.class, "hitAge"))
+          .baseUnit("milliseconds")
+          .publishPercentiles(0.5, 0.75, 0.95, 0.99)
+          .register(Metrics.globalRegistry);
+
+  private static final Logger logger = LoggerFactory.getLogger(AccountNearCache.class);
+
+  /**
+   * A cached account snapshot or, if {@code snapshot} is {@code null}, a placeholder that rejects any account older
+   * than the given version.
+   */
+  private record CacheEntry(int version, @Nullable TokenBuffer snapshot, long createdNanos) {
+  }
+
+  public AccountNearCache(final FaultTolerantRedisCluster cacheCluster,
+      final AccountNearCacheConfiguration configuration) {
+
+    this(cacheCluster, configuration, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  AccountNearCache(final FaultTolerantRedisCluster cacheCluster,
+      final AccountNearCacheConfiguration configuration,
+      final Ticker ticker) {
+
+    this.enabled = configuration.enabled();
+    this.cacheCluster = cacheCluster;
+    this.ticker = ticker;
+
+    this.entries = CacheBuilder.newBuilder()
+        .maximumSize(configuration.maxSize())
+        .expireAfterWrite(configuration.ttl())
+        .ticker(ticker)
+        .build();
+
+    this.pubSubConnection = enabled ? cacheCluster.createPubSubConnection() : null;
+
+    Metrics.gauge(name(AccountNearCache.class, "size"), entries, Cache::size);
+  }
+
+  @Override
+  public void start() {
+    if (pubSubConnection != null) {
+      pubSubConnection.usePubSubConnection(connection -> {
+        connection.addListener(this);
+        connection.sync().subscribe(INVALIDATION_CHANNEL);
+      });
+
+      // The node we were subscribed to may have left the cluster
+      pubSubConnection.subscribeToClusterTopologyChangedEvents(() -> {
+        entries.invalidateAll();
+        pubSubConnection.usePubSubConnection(connection -> connection.sync().subscribe(INVALIDATION_CHANNEL));
+      });
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (pubSubConnection != null) {
+      pubSubConnection.usePubSubConnection(connection -> {
+        connection.sync().unsubscribe(INVALIDATION_CHANNEL);
+        connection.removeListener(this);
+      });
+    }
+  }
+
+  /**
+   * Returns a cached copy of the account with the given identifier if present. If not, leaves a placeholder so that
+   * invalidations that arrive while the caller loads the account will prevent the caller from caching a stale copy.
+   *
+   * @param accountIdentifier the identifier of the account to retrieve
+   *
+   * @return a new copy of the identified account if present in this near-cache or empty otherwise
+   */
+  Optional<Account> get(final UUID accountIdentifier) {
+    if (!enabled) {
+      return Optional.empty();
+    }
+
+    final CacheEntry entry = entries.asMap().putIfAbsent(accountIdentifier,
+        new CacheEntry(Integer.MIN_VALUE, null, ticker.read()));
+
+    if (entry == null || entry.snapshot() == null) {
+      MISS_COUNTER.increment();
+      return Optional.empty();
+    }
+
+    try (final JsonParser parser = entry.snapshot().asParser()) {
+      final Account account = MAPPER.readValue(parser, Account.class);
+      account.setUuid(accountIdentifier);
+
+      HIT_COUNTER.increment();
+      HIT_AGE_DISTRIBUTION.record(TimeUnit.NANOSECONDS.toMillis(ticker.read() - entry.createdNanos()));
+
+      return Optional.of(account);
+    } catch (final IOException e) {
+      logger.warn("Failed to read cached account", e);
+      entries.invalidate(accountIdentifier);
+
+      MISS_COUNTER.increment();
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Caches a snapshot of the given account unless it's older than a version that has been invalidated since the
+   * caller's most recent call to {@link #get(UUID)}.
+   *
+   * @param account the account to cache
+   */
+  void put(final Account account) {
+    if (!enabled) {
+      return;
+    }
+
+    final TokenBuffer snapshot = new TokenBuffer(MAPPER, false);
+
+    try {
+      MAPPER.writeValue(snapshot, account);
+    } catch (final IOException e) {
+      logger.warn("Failed to write account snapshot", e);
+      return;
+    }
+
+    final UUID accountIdentifier = account.getUuid();
+    final int version = account.getVersion();
+
+    entries.asMap().compute(accountIdentifier, (ignored, existingEntry) -> {
+      if (existingEntry != null && version < existingEntry.version()) {
+        STALE_ACCOUNT_REJECTED_COUNTER.increment();
+        return existingEntry;
+      }
+
+      return new CacheEntry(version, snapshot, ticker.read());
+    });
+  }
+
+  /**
+   * Evicts cached copies of the given account from this and all other servers' near-caches. If the account has been
+   * removed from the accounts cache (because it has been deleted or is about to change), all copies are evicted;
+   * otherwise, only copies older than the given account are evicted.
+   *
+   * @param account the account that has changed
+   * @param deleted {@code true} if the account has been removed from the accounts cache or {@code false} if the
+   * account has been written to the accounts cache
+   */
+  void invalidate(final Account account, final boolean deleted) {
+    final String message = encodeInvalidation(account.getUuid(), account.getVersion(), deleted);
+
+    invalidateLocally(account.getUuid(), account.getVersion(), deleted);
+
+    try {
+      cacheCluster.withCluster(connection -> connection.async().publish(INVALIDATION_CHANNEL, message))
+          .whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+              logger.warn("Failed to publish account invalidation", throwable);
+            }
+          });
+    } catch (final Exception e) {
+      logger.warn("Failed to publish account invalidation", e);
+    }
+  }
+
+  private void invalidateLocally(final UUID accountIdentifier, final int version, final boolean deleted) {
+    if (!enabled) {
+      return;
+    }
+
+    INVALIDATION_COUNTER.increment();
+
+    // Only accounts we've recently looked up can be affected, and tracking others would crowd them out
+    entries.asMap().computeIfPresent(accountIdentifier, (ignored, existingEntry) -> {
+      if (deleted || existingEntry.version() < version || existingEntry.snapshot() == null) {
+        // A deleted version remains acceptable (the change that followed the deletion may have failed), but must be
+        // reloaded
+        return new CacheEntry(Math.max(version, existingEntry.version()), null, existingEntry.createdNanos());
+      }
+
+      return existingEntry;
+    });
+  }
+
+  @Override
+  public void message(final RedisClusterNode node, final String channel, final String message) {
+    if (!INVALIDATION_CHANNEL.equals(channel)) {
+      return;
+    }
+
+    // Invalidation doesn't touch Redis, so it's safe to do right here on the Lettuce IO thread
+    try {
+      final String[] parts = message.split(":", 3);
+
+      invalidateLocally(UUID.fromString(parts[2]), Integer.parseInt(parts[1]), "d".equals(parts[0]));
+    } catch (final RuntimeException e) {
+      logger.warn("Failed to parse account invalidation: {}", message, e);
+    }
+  }
+
+  @VisibleForTesting
+  static String encodeInvalidation(final UUID accountIdentifier, final int version, final boolean deleted) {
+    return (deleted ? "d" : "s") + ":" + version + ":" + accountIdentifier;
+  }
+}
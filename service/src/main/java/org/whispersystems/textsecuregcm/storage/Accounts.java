@@ -97,6 +97,8 @@ public class Accounts extends AbstractDynamoDbStore {
   private static final Timer GET_BY_USERNAME_LINK_HANDLE_TIMER = Metrics.timer(name(Accounts.class, "getByUsernameLinkHandle"));
   private static final Timer GET_BY_PNI_TIMER = Metrics.timer(name(Accounts.class, "getByPni"));
   private static final Timer GET_BY_UUID_TIMER = Metrics.timer(name(Accounts.class, "getByUuid"));
+  private static final Timer GET_BY_PNIS_TIMER = Metrics.timer(name(Accounts.class, "getByPnis"));
+  private static final Timer GET_BY_UUIDS_TIMER = Metrics.timer(name(Accounts.class, "getByUuids"));
   private static final Timer DELETE_TIMER = Metrics.timer(name(Accounts.class, "delete"));
 
   private static final String CONDITIONAL_CHECK_FAILED = "ConditionalCheckFailed";
@@ -947,6 +949,47 @@ public class Accounts extends AbstractDynamoDbStore {
     return getByIndirectLookupAsync(GET_BY_PNI_TIMER, phoneNumberIdentifierConstraintTableName, ATTR_PNI_UUID, AttributeValues.fromUUID(phoneNumberIdentifier));
   }
 
+  /**
+   * Retrieves the accounts with the given phone number identifiers in bulk.
+   *
+   * @param phoneNumberIdentifiers the phone number identifiers of the accounts to retrieve
+   *
+   * @return a future that yields a map of phone number identifiers to accounts; phone number identifiers with no
+   * associated account are absent from the map
+   */
+  @Nonnull
+  public CompletableFuture<Map<UUID, Account>> getByPhoneNumberIdentifiersAsync(
+      final Collection<UUID> phoneNumberIdentifiers) {
+
+    return AsyncTimerUtil.record(GET_BY_PNIS_TIMER, () -> getItemsAsync(asyncClient,
+            phoneNumberIdentifierConstraintTableName,
+            phoneNumberIdentifiers.stream()
+                .map(pni -> Map.of(ATTR_PNI_UUID, AttributeValues.fromUUID(pni)))
+                .toList())
+            .thenCompose(constraintItems -> {
+              final Map<UUID, UUID> accountIdentifiersByPhoneNumberIdentifier = constraintItems.stream()
+                  .collect(Collectors.toMap(
+                      item -> AttributeValues.getUUID(item, ATTR_PNI_UUID, null),
+                      item -> AttributeValues.getUUID(item, KEY_ACCOUNT_UUID, null)));
+
+              return getAccountsByAccountIdentifiersAsync(accountIdentifiersByPhoneNumberIdentifier.values())
+                  .thenApply(accountsByAccountIdentifier -> {
+                    final Map<UUID, Account> accountsByPhoneNumberIdentifier = new HashMap<>();
+
+                    accountIdentifiersByPhoneNumberIdentifier.forEach((pni, aci) -> {
+                      final Account account = accountsByAccountIdentifier.get(aci);
+
+                      if (account != null) {
+                        accountsByPhoneNumberIdentifier.put(pni, account);
+                      }
+                    });
+
+                    return accountsByPhoneNumberIdentifier;
+                  });
+            }))
+        .toCompletableFuture();
+  }
+
   @Nonnull
   public CompletableFuture<Optional<Account>> getByUsernameHash(final byte[] usernameHash) {
     return getByIndirectLookupAsync(GET_BY_USERNAME_HASH_TIMER,
@@ -1001,6 +1044,29 @@ public class Accounts extends AbstractDynamoDbStore {
         .toCompletableFuture();
   }
 
+  /**
+   * Retrieves the accounts with the given account identifiers in bulk.
+   *
+   * @param uuids the identifiers of the accounts to retrieve
+   *
+   * @return a future that yields a map of account identifiers to accounts; identifiers with no associated account are
+   * absent from the map
+   */
+  @Nonnull
+  public CompletableFuture<Map<UUID, Account>> getByAccountIdentifiersAsync(final Collection<UUID> uuids) {
+    return AsyncTimerUtil.record(GET_BY_UUIDS_TIMER, () -> getAccountsByAccountIdentifiersAsync(uuids))
+        .toCompletableFuture();
+  }
+
+  private CompletableFuture<Map<UUID, Account>> getAccountsByAccountIdentifiersAsync(final Collection<UUID> uuids) {
+    return getItemsAsync(asyncClient, accountsTableName, uuids.stream()
+        .map(uuid -> Map.of(KEY_ACCOUNT_UUID, AttributeValues.fromUUID(uuid)))
+        .toList())
+        .thenApply(items -> items.stream()
+            .map(Accounts::fromItem)
+            .collect(Collectors.toMap(Account::getUuid, account -> account)));
+  }
+
   public Optional<UUID> findRecentlyDeletedAccountIdentifier(final String e164) {
     final GetItemResponse response = db().getItem(GetItemRequest.builder()
         .tableName(deletedAccountsTableName)
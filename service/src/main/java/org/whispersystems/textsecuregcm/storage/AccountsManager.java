@@ -11,15 +11,15 @@ import static java.util.Objects.requireNonNull;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 import com.codahale.metrics.Timer;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import io.lettuce.core.RedisException;
-import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
 import io.micrometer.core.instrument.Metrics;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.time.Duration;
 import java.util.ArrayDeque;
@@ -28,10 +28,14 @@ import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
@@ -44,7 +48,6 @@ import java.util.function.Supplier;
 import java.util.stream.Stream;
 import javax.annotation.Nullable;
 import org.apache.commons.lang3.ObjectUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.signal.libsignal.protocol.IdentityKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -80,26 +83,35 @@ public class AccountsManager {
   private static final Timer getByUsernameHashTimer = metricRegistry.timer(name(AccountsManager.class, "getByUsernameHash"));
   private static final Timer getByUsernameLinkHandleTimer = metricRegistry.timer(name(AccountsManager.class, "getByUsernameLinkHandle"));
   private static final Timer getByUuidTimer = metricRegistry.timer(name(AccountsManager.class, "getByUuid"));
+  private static final Timer getByServiceIdentifiersTimer = metricRegistry.timer(name(AccountsManager.class, "getByServiceIdentifiers"));
   private static final Timer deleteTimer = metricRegistry.timer(name(AccountsManager.class, "delete"));
 
   private static final Timer redisSetTimer = metricRegistry.timer(name(AccountsManager.class, "redisSet"));
   private static final Timer redisPniGetTimer = metricRegistry.timer(name(AccountsManager.class, "redisPniGet"));
   private static final Timer redisUuidGetTimer = metricRegistry.timer(name(AccountsManager.class, "redisUuidGet"));
+  private static final Timer redisPniMultiGetTimer = metricRegistry.timer(name(AccountsManager.class, "redisPniMultiGet"));
+  private static final Timer redisUuidMultiGetTimer = metricRegistry.timer(name(AccountsManager.class, "redisUuidMultiGet"));
   private static final Timer redisDeleteTimer = metricRegistry.timer(name(AccountsManager.class, "redisDelete"));
 
   private static final String CREATE_COUNTER_NAME       = name(AccountsManager.class, "createCounter");
   private static final String DELETE_COUNTER_NAME       = name(AccountsManager.class, "deleteCounter");
   private static final String COUNTRY_CODE_TAG_NAME     = "country";
   private static final String DELETION_REASON_TAG_NAME  = "reason";
+  private static final String REDIS_ACCOUNT_SIZE_DISTRIBUTION_NAME = name(AccountsManager.class, "redisAccountSize");
+  private static final String REDIS_ACCOUNT_FORMAT_TAG_NAME = "format";
 
   @VisibleForTesting
   public static final String USERNAME_EXPERIMENT_NAME  = "usernames";
 
+  @VisibleForTesting
+  static final String BINARY_ACCOUNT_CACHE_EXPERIMENT_NAME = "binaryAccountCache";
+
   private static final Logger logger = LoggerFactory.getLogger(AccountsManager.class);
 
   private final Accounts accounts;
   private final PhoneNumberIdentifiers phoneNumberIdentifiers;
   private final FaultTolerantRedisCluster cacheCluster;
+  private final AccountNearCache accountNearCache;
   private final AccountLockManager accountLockManager;
   private final KeysManager keysManager;
   private final MessagesManager messagesManager;
@@ -116,6 +128,15 @@ public class AccountsManager {
   private static final ObjectWriter ACCOUNT_REDIS_JSON_WRITER = SystemMapper.jsonMapper()
       .writer(SystemMapper.excludingField(Account.class, List.of("uuid")));
 
+  private static final ObjectWriter ACCOUNT_REDIS_CBOR_WRITER = SystemMapper.cborMapper()
+      .writer(SystemMapper.excludingField(Account.class, List.of("uuid")));
+
+  // Accounts in the binary format start with a format version byte, which can never be the first byte of a JSON-encoded
+  // account (always '{'). Accounts are written in the binary format only for accounts enrolled in the binary account
+  // cache experiment, but may be read in either format.
+  @VisibleForTesting
+  static final byte REDIS_ACCOUNT_CBOR_FORMAT_VERSION = 1;
+
   // An account that's used at least daily will get reset in the cache at least once per day when its "last seen"
   // timestamp updates; expiring entries after two days will help clear out "zombie" cache entries that are read
   // frequently (e.g. the account is in an active group and receives messages frequently), but aren't actively used by
@@ -141,6 +162,7 @@ public class AccountsManager {
   public AccountsManager(final Accounts accounts,
       final PhoneNumberIdentifiers phoneNumberIdentifiers,
       final FaultTolerantRedisCluster cacheCluster,
+      final AccountNearCache accountNearCache,
       final AccountLockManager accountLockManager,
       final KeysManager keysManager,
       final MessagesManager messagesManager,
@@ -156,6 +178,7 @@ public class AccountsManager {
     this.accounts = accounts;
     this.phoneNumberIdentifiers = phoneNumberIdentifiers;
     this.cacheCluster = cacheCluster;
+    this.accountNearCache = accountNearCache;
     this.accountLockManager = accountLockManager;
     this.keysManager = keysManager;
     this.messagesManager = messagesManager;
@@ -258,6 +281,7 @@ public class AccountsManager {
         }
 
         redisSet(account);
+        accountNearCache.invalidate(account, false);
 
         Metrics.counter(CREATE_COUNTER_NAME, "type", accountCreationType).increment();
 
@@ -658,9 +682,22 @@ public class AccountsManager {
    * redundant updates of {@code device.lastSeen}
    */
   public Account updateDeviceLastSeen(Account account, Device device, final long lastSeen) {
-    return update(account, a -> {
+    return update(account, deviceLastSeenUpdater(device.getId(), lastSeen));
+  }
+
+  /**
+   * Asynchronous version of {@link #updateDeviceLastSeen(Account, Device, long)}
+   */
+  public CompletableFuture<Account> updateDeviceLastSeenAsync(final Account account, final byte deviceId,
+      final long lastSeen) {
+
+    return updateAsync(account, deviceLastSeenUpdater(deviceId, lastSeen));
+  }
 
-      final Optional<Device> maybeDevice = a.getDevice(device.getId());
+  private static Function<Account, Boolean> deviceLastSeenUpdater(final byte deviceId, final long lastSeen) {
+    return a -> {
+
+      final Optional<Device> maybeDevice = a.getDevice(deviceId);
 
       return maybeDevice.map(d -> {
         if (d.getLastSeen() >= lastSeen) {
@@ -672,7 +709,7 @@ public class AccountsManager {
         return true;
 
       }).orElse(false);
-    });
+    };
   }
 
   public Account updateDeviceAuthentication(final Account account, final Device device, final SaltedTokenHash credentials) {
@@ -701,6 +738,7 @@ public class AccountsManager {
           AccountChangeValidator.GENERAL_CHANGE_VALIDATOR);
 
       redisSet(updatedAccount);
+      accountNearCache.invalidate(updatedAccount, false);
     }
 
     return updatedAccount;
@@ -722,6 +760,10 @@ public class AccountsManager {
               MAX_UPDATE_ATTEMPTS);
         })
         .thenCompose(updatedAccount -> redisSetAsync(updatedAccount).thenApply(ignored -> updatedAccount))
+        .thenApply(updatedAccount -> {
+          accountNearCache.invalidate(updatedAccount, false);
+          return updatedAccount;
+        })
         .whenComplete((ignored, throwable) -> timerContext.close());
   }
 
@@ -907,20 +949,153 @@ public class AccountsManager {
     };
   }
 
+  /**
+   * Retrieves the accounts with the given service identifiers in bulk. Accounts are read from the near-cache where
+   * possible, then from the accounts cache with a handful of multi-key reads, and finally from the accounts table with
+   * batched reads; accounts read from the accounts table are written back to the accounts cache.
+   * <p>
+   * Failures to read from or write to the accounts cache are treated as cache misses. Any failure to read from the
+   * accounts table fails the whole lookup.
+   *
+   * @param serviceIdentifiers the service identifiers of the accounts to retrieve
+   *
+   * @return a future that yields a map of service identifiers to accounts whose iteration order matches the iteration
+   * order of the given service identifiers; service identifiers with no associated account are absent from the map
+   */
+  public CompletableFuture<Map<ServiceIdentifier, Account>> getByServiceIdentifiers(
+      final Collection<ServiceIdentifier> serviceIdentifiers) {
+
+    @SuppressWarnings("resource") final Timer.Context timerContext = getByServiceIdentifiersTimer.time();
+
+    final Set<UUID> accountIdentifiers = new HashSet<>();
+    final Set<UUID> phoneNumberIdentifiers = new HashSet<>();
+
+    serviceIdentifiers.forEach(serviceIdentifier -> {
+      switch (serviceIdentifier.identityType()) {
+        case ACI -> accountIdentifiers.add(serviceIdentifier.uuid());
+        case PNI -> phoneNumberIdentifiers.add(serviceIdentifier.uuid());
+      }
+    });
+
+    return redisGetAccountIdentifiersByPhoneNumberIdentifiers(phoneNumberIdentifiers)
+        .thenCompose(cachedAccountIdentifiersByPni -> {
+          final Set<UUID> resolvedAccountIdentifiers = new HashSet<>(accountIdentifiers);
+          resolvedAccountIdentifiers.addAll(cachedAccountIdentifiersByPni.values());
+
+          return getByAccountIdentifiers(resolvedAccountIdentifiers)
+              .thenCompose(accountsByAci -> {
+                final Map<UUID, Account> accountsByPni = new HashMap<>();
+
+                cachedAccountIdentifiersByPni.forEach((pni, aci) -> {
+                  final Account account = accountsByAci.get(aci);
+
+                  if (account != null) {
+                    accountsByPni.put(pni, account);
+                  }
+                });
+
+                // As with single lookups, phone number identifiers that don't resolve to an account via the accounts
+                // cache get a second chance in the accounts table
+                final Set<UUID> unresolvedPnis = new HashSet<>(phoneNumberIdentifiers);
+                unresolvedPnis.removeAll(accountsByPni.keySet());
+
+                return (unresolvedPnis.isEmpty()
+                    ? CompletableFuture.completedFuture(Collections.<UUID, Account>emptyMap())
+                    : accounts.getByPhoneNumberIdentifiersAsync(unresolvedPnis)
+                        .thenCompose(accountsFromTable ->
+                            redisSetAllAsync(accountsFromTable.values()).thenApply(ignored -> accountsFromTable)))
+                    .thenApply(accountsFromTable -> {
+                      accountsByPni.putAll(accountsFromTable);
+
+                      final Map<ServiceIdentifier, Account> accountsByServiceIdentifier = new LinkedHashMap<>();
+
+                      serviceIdentifiers.forEach(serviceIdentifier -> {
+                        final Account account = switch (serviceIdentifier.identityType()) {
+                          case ACI -> accountsByAci.get(serviceIdentifier.uuid());
+                          case PNI -> accountsByPni.get(serviceIdentifier.uuid());
+                        };
+
+                        if (account != null) {
+                          accountsByServiceIdentifier.put(serviceIdentifier, account);
+                        }
+                      });
+
+                      return accountsByServiceIdentifier;
+                    });
+              });
+        })
+        .whenComplete((ignored, throwable) -> timerContext.close());
+  }
+
+  private CompletableFuture<Map<UUID, Account>> getByAccountIdentifiers(final Set<UUID> uuids) {
+    final Map<UUID, Account> accountsByAci = new HashMap<>();
+    final List<UUID> uncachedAccountIdentifiers = new ArrayList<>();
+
+    uuids.forEach(uuid -> accountNearCache.get(uuid).ifPresentOrElse(
+        account -> accountsByAci.put(uuid, account),
+        () -> uncachedAccountIdentifiers.add(uuid)));
+
+    if (uncachedAccountIdentifiers.isEmpty()) {
+      return CompletableFuture.completedFuture(accountsByAci);
+    }
+
+    return redisGetByAccountIdentifiers(uncachedAccountIdentifiers)
+        .thenCompose(accountsFromRedis -> {
+          final List<UUID> missingAccountIdentifiers = uncachedAccountIdentifiers.stream()
+              .filter(uuid -> !accountsFromRedis.containsKey(uuid))
+              .toList();
+
+          final CompletableFuture<Map<UUID, Account>> accountsFromTableFuture = missingAccountIdentifiers.isEmpty()
+              ? CompletableFuture.completedFuture(Collections.emptyMap())
+              : accounts.getByAccountIdentifiersAsync(missingAccountIdentifiers)
+                  .thenCompose(accountsFromTable ->
+                      redisSetAllAsync(accountsFromTable.values()).thenApply(ignored -> accountsFromTable));
+
+          return accountsFromTableFuture.thenApply(accountsFromTable -> {
+            accountsFromRedis.values().forEach(accountNearCache::put);
+            accountsFromTable.values().forEach(accountNearCache::put);
+
+            accountsByAci.putAll(accountsFromRedis);
+            accountsByAci.putAll(accountsFromTable);
+
+            return accountsByAci;
+          });
+        });
+  }
+
   public Optional<Account> getByAccountIdentifier(final UUID uuid) {
-    return checkRedisThenAccounts(
+    final Optional<Account> maybeCachedAccount = accountNearCache.get(uuid);
+
+    if (maybeCachedAccount.isPresent()) {
+      return maybeCachedAccount;
+    }
+
+    final Optional<Account> maybeAccount = checkRedisThenAccounts(
         getByUuidTimer,
         () -> redisGetByAccountIdentifier(uuid),
         () -> accounts.getByAccountIdentifier(uuid)
     );
+
+    maybeAccount.ifPresent(accountNearCache::put);
+
+    return maybeAccount;
   }
 
   public CompletableFuture<Optional<Account>> getByAccountIdentifierAsync(final UUID uuid) {
+    final Optional<Account> maybeCachedAccount = accountNearCache.get(uuid);
+
+    if (maybeCachedAccount.isPresent()) {
+      return CompletableFuture.completedFuture(maybeCachedAccount);
+    }
+
     return checkRedisThenAccountsAsync(
         getByUuidTimer,
         () -> redisGetByAccountIdentifierAsync(uuid),
         () -> accounts.getByAccountIdentifierAsync(uuid)
-    );
+    ).thenApply(maybeAccount -> {
+      maybeAccount.ifPresent(accountNearCache::put);
+      return maybeAccount;
+    });
   }
 
   public UUID getPhoneNumberIdentifier(String e164) {
@@ -993,37 +1168,59 @@ public class AccountsManager {
     return "Account3::" + uuid.toString();
   }
 
+  private byte[] getAccountEntityKeyBytes(final UUID uuid) {
+    return getAccountEntityKey(uuid).getBytes(StandardCharsets.UTF_8);
+  }
+
   private void redisSet(Account account) {
     try (Timer.Context ignored = redisSetTimer.time()) {
-      final String accountJson = writeRedisAccountJson(account);
-
-      cacheCluster.useCluster(connection -> {
-        final RedisAdvancedClusterCommands<String, String> commands = connection.sync();
-
-        commands.setex(getAccountMapKey(account.getPhoneNumberIdentifier().toString()), CACHE_TTL_SECONDS, account.getUuid().toString());
-        commands.setex(getAccountEntityKey(account.getUuid()), CACHE_TTL_SECONDS, accountJson);
-      });
-    } catch (JsonProcessingException e) {
+      final byte[] encodedAccount = writeRedisAccount(account, useBinaryAccountCacheFormat(account));
+
+      // The PNI mapping and the account entity are written on separate (string and binary) connections, so other
+      // readers may see the two writes in either order; a PNI lookup may briefly find a mapping to a stale or missing
+      // entity, or an updated entity may briefly sit behind a stale mapping
+      cacheCluster.useCluster(connection -> connection.sync().setex(
+          getAccountMapKey(account.getPhoneNumberIdentifier().toString()), CACHE_TTL_SECONDS,
+          account.getUuid().toString()));
+
+      cacheCluster.useBinaryCluster(connection -> connection.sync().setex(
+          getAccountEntityKeyBytes(account.getUuid()), CACHE_TTL_SECONDS, encodedAccount));
+    } catch (IOException e) {
       throw new IllegalStateException(e);
     }
   }
 
   private CompletableFuture<Void> redisSetAsync(final Account account) {
-    final String accountJson;
+    final byte[] encodedAccount;
 
     try {
-      accountJson = writeRedisAccountJson(account);
-    } catch (final JsonProcessingException e) {
+      encodedAccount = writeRedisAccount(account, useBinaryAccountCacheFormat(account));
+    } catch (final IOException e) {
       throw new UncheckedIOException(e);
     }
 
-    return cacheCluster.withCluster(connection -> CompletableFuture.allOf(
-        connection.async().setex(
+    // As in redisSet, the two writes go over separate connections and may be seen in either order
+    return CompletableFuture.allOf(
+        cacheCluster.withCluster(connection -> connection.async().setex(
                 getAccountMapKey(account.getPhoneNumberIdentifier().toString()), CACHE_TTL_SECONDS,
-                account.getUuid().toString())
+                account.getUuid().toString()))
             .toCompletableFuture(),
-        connection.async().setex(getAccountEntityKey(account.getUuid()), CACHE_TTL_SECONDS, accountJson)
-            .toCompletableFuture()));
+        cacheCluster.withBinaryCluster(connection -> connection.async().setex(
+                getAccountEntityKeyBytes(account.getUuid()), CACHE_TTL_SECONDS, encodedAccount))
+            .toCompletableFuture());
+  }
+
+  private CompletableFuture<Void> redisSetAllAsync(final Collection<Account> accountsToCache) {
+    return CompletableFuture.allOf(accountsToCache.stream()
+            .map(account -> redisSetAsync(account).exceptionally(throwable -> {
+              logger.warn("Failed to write account to Redis", throwable);
+              return null;
+            }))
+            .toArray(CompletableFuture[]::new));
+  }
+
+  private boolean useBinaryAccountCacheFormat(final Account account) {
+    return experimentEnrollmentManager.isEnrolled(account.getUuid(), BINARY_ACCOUNT_CACHE_EXPERIMENT_NAME);
   }
 
   private Optional<Account> checkRedisThenAccounts(
@@ -1092,9 +1289,10 @@ public class AccountsManager {
 
   private Optional<Account> redisGetByAccountIdentifier(UUID uuid) {
     try (Timer.Context ignored = redisUuidGetTimer.time()) {
-      final String json = cacheCluster.withCluster(connection -> connection.sync().get(getAccountEntityKey(uuid)));
+      final byte[] encodedAccount =
+          cacheCluster.withBinaryCluster(connection -> connection.sync().get(getAccountEntityKeyBytes(uuid)));
 
-      return parseAccountJson(json, uuid);
+      return parseRedisAccount(encodedAccount, uuid);
     } catch (final RedisException e) {
       logger.warn("Redis failure", e);
       return Optional.empty();
@@ -1102,8 +1300,8 @@ public class AccountsManager {
   }
 
   private CompletableFuture<Optional<Account>> redisGetByAccountIdentifierAsync(final UUID uuid) {
-    return cacheCluster.withCluster(connection -> connection.async().get(getAccountEntityKey(uuid)))
-        .thenApply(accountJson -> parseAccountJson(accountJson, uuid))
+    return cacheCluster.withBinaryCluster(connection -> connection.async().get(getAccountEntityKeyBytes(uuid)))
+        .thenApply(encodedAccount -> parseRedisAccount(encodedAccount, uuid))
         .exceptionally(throwable -> {
           logger.warn("Failed to retrieve account from Redis", throwable);
           return Optional.empty();
@@ -1111,11 +1309,77 @@ public class AccountsManager {
         .toCompletableFuture();
   }
 
+  private CompletableFuture<Map<UUID, UUID>> redisGetAccountIdentifiersByPhoneNumberIdentifiers(
+      final Collection<UUID> pnis) {
+
+    if (pnis.isEmpty()) {
+      return CompletableFuture.completedFuture(Collections.emptyMap());
+    }
+
+    final List<UUID> orderedPnis = List.copyOf(pnis);
+    final String[] keys = orderedPnis.stream()
+        .map(pni -> getAccountMapKey(pni.toString()))
+        .toArray(String[]::new);
+
+    @SuppressWarnings("resource") final Timer.Context timerContext = redisPniMultiGetTimer.time();
+
+    // The cluster client splits multi-key reads by slot and sends them to each node in parallel
+    return cacheCluster.withCluster(connection -> connection.async().mget(keys))
+        .thenApply(keyValues -> {
+          final Map<UUID, UUID> accountIdentifiersByPni = new HashMap<>();
+
+          for (int i = 0; i < keyValues.size(); i++) {
+            if (keyValues.get(i).hasValue()) {
+              accountIdentifiersByPni.put(orderedPnis.get(i), UUID.fromString(keyValues.get(i).getValue()));
+            }
+          }
+
+          return accountIdentifiersByPni;
+        })
+        .exceptionally(throwable -> {
+          logger.warn("Failed to retrieve account identifiers from Redis", throwable);
+          return Collections.emptyMap();
+        })
+        .whenComplete((ignored, throwable) -> timerContext.close())
+        .toCompletableFuture();
+  }
+
+  private CompletableFuture<Map<UUID, Account>> redisGetByAccountIdentifiers(final List<UUID> uuids) {
+    final byte[][] keys = uuids.stream()
+        .map(this::getAccountEntityKeyBytes)
+        .toArray(byte[][]::new);
+
+    @SuppressWarnings("resource") final Timer.Context timerContext = redisUuidMultiGetTimer.time();
+
+    return cacheCluster.withBinaryCluster(connection -> connection.async().mget(keys))
+        .thenApply(keyValues -> {
+          final Map<UUID, Account> accountsByAci = new HashMap<>();
+
+          for (int i = 0; i < keyValues.size(); i++) {
+            final UUID uuid = uuids.get(i);
+
+            parseRedisAccount(keyValues.get(i).getValueOrElse(null), uuid)
+                .ifPresent(account -> accountsByAci.put(uuid, account));
+          }
+
+          return accountsByAci;
+        })
+        .exceptionally(throwable -> {
+          logger.warn("Failed to retrieve accounts from Redis", throwable);
+          return new HashMap<>();
+        })
+        .whenComplete((ignored, throwable) -> timerContext.close())
+        .toCompletableFuture();
+  }
+
   @VisibleForTesting
-  static Optional<Account> parseAccountJson(@Nullable final String accountJson, final UUID uuid) {
+  static Optional<Account> parseRedisAccount(@Nullable final byte[] encodedAccount, final UUID uuid) {
     try {
-      if (StringUtils.isNotBlank(accountJson)) {
-        Account account = SystemMapper.jsonMapper().readValue(accountJson, Account.class);
+      if (encodedAccount != null && encodedAccount.length > 0) {
+        final Account account = encodedAccount[0] == REDIS_ACCOUNT_CBOR_FORMAT_VERSION
+            ? SystemMapper.cborMapper().readValue(encodedAccount, 1, encodedAccount.length - 1, Account.class)
+            : SystemMapper.jsonMapper().readValue(encodedAccount, Account.class);
+
         account.setUuid(uuid);
 
         if (account.getPhoneNumberIdentifier() == null) {
@@ -1133,8 +1397,23 @@ public class AccountsManager {
   }
 
   @VisibleForTesting
-  static String writeRedisAccountJson(final Account account) throws JsonProcessingException {
-    return ACCOUNT_REDIS_JSON_WRITER.writeValueAsString(account);
+  static byte[] writeRedisAccount(final Account account, final boolean binary) throws IOException {
+    final byte[] encodedAccount;
+
+    if (binary) {
+      final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      outputStream.write(REDIS_ACCOUNT_CBOR_FORMAT_VERSION);
+      ACCOUNT_REDIS_CBOR_WRITER.writeValue(outputStream, account);
+
+      encodedAccount = outputStream.toByteArray();
+    } else {
+      encodedAccount = ACCOUNT_REDIS_JSON_WRITER.writeValueAsBytes(account);
+    }
+
+    Metrics.summary(REDIS_ACCOUNT_SIZE_DISTRIBUTION_NAME, REDIS_ACCOUNT_FORMAT_TAG_NAME, binary ? "cbor" : "json")
+        .record(encodedAccount.length);
+
+    return encodedAccount;
   }
 
   private void redisDelete(final Account account) {
@@ -1145,6 +1424,8 @@ public class AccountsManager {
             getAccountEntityKey(account.getUuid()));
       });
     }
+
+    accountNearCache.invalidate(account, true);
   }
 
   private CompletableFuture<Void> redisDeleteAsync(final Account account) {
@@ -1158,6 +1439,6 @@ public class AccountsManager {
     return cacheCluster.withCluster(connection -> connection.async().del(keysToDelete))
         .toCompletableFuture()
         .whenComplete((ignoredResult, ignoredException) -> timerContext.close())
-        .thenRun(Util.NOOP);
+        .thenRun(() -> accountNearCache.invalidate(account, true));
   }
 }
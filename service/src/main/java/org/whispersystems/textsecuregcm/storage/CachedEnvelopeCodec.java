@@ -0,0 +1,172 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UnsafeByteOperations;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.whispersystems.textsecuregcm.entities.MessageProtos;
+
+/**
+ * Encodes envelopes for storage in the message cache, optionally compressing them.
+ * <p>
+ * A compressed envelope begins with a zero byte, which can never begin a serialized envelope (protobuf field numbers
+ * start at 1), followed by a format version, the length of the uncompressed envelope, and the compressed envelope
+ * itself. Anything else is a plain serialized envelope. Readers understand both forms, so a single queue may freely
+ * mix compressed and uncompressed envelopes.
+ */
+final class CachedEnvelopeCodec {
+
+  private static final byte COMPRESSED_ENVELOPE_MARKER = 0x00;
+  private static final byte DEFLATE_V1 = 0x01;
+
+  // The marker byte, the version byte, and a four-byte uncompressed length
+  private static final int COMPRESSED_HEADER_LENGTH = 6;
+
+  // Serialized envelopes are dominated by service identifier strings, which share an alphabet but no common substrings,
+  // so the dictionary only primes the encoder with that alphabet. The dictionary for a version must never change; a new
+  // dictionary requires a new format version.
+  private static final byte[] DEFLATE_V1_DICTIONARY = "PNI:0123456789abcdef-".getBytes(StandardCharsets.US_ASCII);
+
+  private static final ThreadLocal<Deflater> DEFLATER =
+      ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+
+  private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+  private CachedEnvelopeCodec() {
+  }
+
+  /**
+   * Encodes the given envelope for storage in the message cache.
+   *
+   * @param envelope the envelope to encode
+   * @param compress whether to attempt to compress the envelope; envelopes that would not get smaller (as is typical
+   * for short envelopes or envelopes with large, already-encrypted content) are stored uncompressed regardless
+   *
+   * @return the encoded envelope
+   */
+  static byte[] encode(final MessageProtos.Envelope envelope, final boolean compress) {
+    final byte[] serialized = envelope.toByteArray();
+
+    if (!compress || serialized.length <= COMPRESSED_HEADER_LENGTH) {
+      return serialized;
+    }
+
+    final Deflater deflater = DEFLATER.get();
+    deflater.reset();
+    deflater.setDictionary(DEFLATE_V1_DICTIONARY);
+    deflater.setInput(serialized);
+    deflater.finish();
+
+    // Anything that doesn't fit in the same space as the uncompressed envelope isn't worth keeping
+    final byte[] compressed = new byte[serialized.length];
+    final ByteBuffer compressedBuffer = ByteBuffer.wrap(compressed)
+        .put(COMPRESSED_ENVELOPE_MARKER)
+        .put(DEFLATE_V1)
+        .putInt(serialized.length);
+
+    while (!deflater.finished() && compressedBuffer.hasRemaining()) {
+      deflater.deflate(compressedBuffer);
+    }
+
+    if (!deflater.finished()) {
+      return serialized;
+    }
+
+    final byte[] trimmed = new byte[compressedBuffer.position()];
+    System.arraycopy(compressed, 0, trimmed, 0, trimmed.length);
+
+    return trimmed;
+  }
+
+  /**
+   * Decodes an envelope stored in the message cache in either compressed or uncompressed form. The returned envelope
+   * may share the given array, which must not be modified afterward.
+   *
+   * @param encoded the encoded envelope
+   *
+   * @return the decoded envelope
+   *
+   * @throws InvalidProtocolBufferException if the given bytes could not be decoded as an envelope
+   */
+  static MessageProtos.Envelope decode(final byte[] encoded) throws InvalidProtocolBufferException {
+    return parseWithAliasing(isCompressed(encoded) ? decompress(encoded) : encoded);
+  }
+
+  static boolean isCompressed(final byte[] encoded) {
+    return encoded.length > 0 && encoded[0] == COMPRESSED_ENVELOPE_MARKER;
+  }
+
+  private static byte[] decompress(final byte[] encoded) throws InvalidProtocolBufferException {
+    if (encoded.length < COMPRESSED_HEADER_LENGTH) {
+      throw new InvalidProtocolBufferException("Compressed envelope is truncated");
+    }
+
+    final ByteBuffer encodedBuffer = ByteBuffer.wrap(encoded);
+    encodedBuffer.get();
+
+    final byte version = encodedBuffer.get();
+
+    if (version != DEFLATE_V1) {
+      throw new InvalidProtocolBufferException("Unrecognized compressed envelope version: " + version);
+    }
+
+    final int uncompressedLength = encodedBuffer.getInt();
+
+    if (uncompressedLength < 0) {
+      throw new InvalidProtocolBufferException("Invalid uncompressed envelope length: " + uncompressedLength);
+    }
+
+    final Inflater inflater = INFLATER.get();
+    inflater.reset();
+    inflater.setDictionary(DEFLATE_V1_DICTIONARY);
+    inflater.setInput(encodedBuffer);
+
+    final byte[] uncompressed = new byte[uncompressedLength];
+
+    try {
+      int inflatedLength = 0;
+
+      while (!inflater.finished() && inflatedLength < uncompressedLength) {
+        final int inflated = inflater.inflate(uncompressed, inflatedLength, uncompressedLength - inflatedLength);
+
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+
+        inflatedLength += inflated;
+      }
+
+      if (inflatedLength != uncompressedLength || !inflater.finished()) {
+        throw new InvalidProtocolBufferException("Compressed envelope did not match its declared length");
+      }
+    } catch (final DataFormatException e) {
+      throw new InvalidProtocolBufferException(e);
+    }
+
+    return uncompressed;
+  }
+
+  /**
+   * Parses a serialized envelope without copying its {@code bytes} fields; the returned envelope's content shares the
+   * given array. This is safe only if the array is never modified afterward, which holds for arrays returned by Lettuce
+   * because each reply element is allocated fresh, and for arrays freshly allocated by {@link #decompress(byte[])}.
+   */
+  private static MessageProtos.Envelope parseWithAliasing(final byte[] serialized)
+      throws InvalidProtocolBufferException {
+
+    // aliasing only applies to input streams over immutable buffers, which requires going through a wrapping ByteString
+    final CodedInputStream inputStream = UnsafeByteOperations.unsafeWrap(serialized).newCodedInput();
+    inputStream.enableAliasing(true);
+
+    return MessageProtos.Envelope.parser().parseFrom(inputStream);
+  }
+}
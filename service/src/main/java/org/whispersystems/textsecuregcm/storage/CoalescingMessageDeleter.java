@@ -0,0 +1,151 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import static org.whispersystems.textsecuregcm.metrics.MetricsUtil.name;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import javax.annotation.Nullable;
+import org.whispersystems.textsecuregcm.entities.MessageProtos.Envelope;
+
+/**
+ * A coalescing message deleter gathers deletions for a single device's message queue and submits them to the
+ * {@link MessagesManager} in batches. At most one batch is in flight at a time; deletions requested while a batch is in
+ * flight are held until that batch finishes and are then submitted together (up to a maximum batch size). A device
+ * acknowledging messages one at a time therefore sees no added latency, while a device acknowledging many messages in
+ * quick succession has its deletions removed from the cache with far fewer operations.
+ */
+public class CoalescingMessageDeleter {
+
+  private final MessagesManager messagesManager;
+  private final UUID destinationUuid;
+  private final byte destinationDeviceId;
+  private final int maxBatchSize;
+
+  private final List<PendingDeletion> pendingDeletions = new ArrayList<>();
+  private boolean batchInFlight = false;
+
+  private static final DistributionSummary BATCH_SIZE_DISTRIBUTION_SUMMARY = DistributionSummary
+      .builder(name(CoalescingMessageDeleter.class, "batchSize"))
+      .publishPercentiles(0.5, 0.75, 0.95, 0.99)
+      .distributionStatisticExpiry(Duration.ofMinutes(10))
+      .register(Metrics.globalRegistry);
+
+  private record PendingDeletion(MessagesManager.DeleteRequest deleteRequest,
+                                 CompletableFuture<Optional<Envelope>> future) {
+  }
+
+  public CoalescingMessageDeleter(final MessagesManager messagesManager,
+      final UUID destinationUuid,
+      final byte destinationDeviceId,
+      final int maxBatchSize) {
+
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("Maximum batch size must be positive");
+    }
+
+    this.messagesManager = messagesManager;
+    this.destinationUuid = destinationUuid;
+    this.destinationDeviceId = destinationDeviceId;
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * Requests deletion of a message from this deleter's queue.
+   *
+   * @param guid the server-assigned identifier of the message to delete
+   * @param serverTimestamp the server timestamp of the message, if known
+   *
+   * @return a future that completes with the deleted message, if it could be found, once the batch containing the
+   * deletion has been processed
+   *
+   * @see MessagesManager#delete(UUID, byte, List)
+   */
+  public CompletableFuture<Optional<Envelope>> delete(final UUID guid, @Nullable final Long serverTimestamp) {
+    final CompletableFuture<Optional<Envelope>> future = new CompletableFuture<>();
+
+    final List<PendingDeletion> batch;
+
+    synchronized (this) {
+      pendingDeletions.add(new PendingDeletion(new MessagesManager.DeleteRequest(guid, serverTimestamp), future));
+      batch = takeBatch();
+    }
+
+    submitBatch(batch);
+
+    return future;
+  }
+
+  /**
+   * Removes the next batch of pending deletions if no batch is currently in flight and marks the returned batch as in
+   * flight. Callers must hold this object's monitor.
+   *
+   * @return the next batch of deletions to submit, or an empty list if nothing should be submitted now
+   */
+  private List<PendingDeletion> takeBatch() {
+    if (batchInFlight || pendingDeletions.isEmpty()) {
+      return List.of();
+    }
+
+    final List<PendingDeletion> head = pendingDeletions.subList(0, Math.min(maxBatchSize, pendingDeletions.size()));
+    final List<PendingDeletion> batch = new ArrayList<>(head);
+    head.clear();
+
+    batchInFlight = true;
+
+    return batch;
+  }
+
+  private void submitBatch(final List<PendingDeletion> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    BATCH_SIZE_DISTRIBUTION_SUMMARY.record(batch.size());
+
+    CompletableFuture<Void> batchFuture;
+
+    try {
+      final List<CompletableFuture<Optional<Envelope>>> results = messagesManager.delete(destinationUuid,
+          destinationDeviceId, batch.stream().map(PendingDeletion::deleteRequest).toList());
+
+      for (int i = 0; i < batch.size(); i++) {
+        final CompletableFuture<Optional<Envelope>> pendingFuture = batch.get(i).future();
+
+        results.get(i).whenComplete((maybeEnvelope, throwable) -> {
+          if (throwable != null) {
+            pendingFuture.completeExceptionally(throwable);
+          } else {
+            pendingFuture.complete(maybeEnvelope);
+          }
+        });
+      }
+
+      batchFuture = CompletableFuture.allOf(results.toArray(CompletableFuture[]::new));
+    } catch (final RuntimeException e) {
+      batch.forEach(pendingDeletion -> pendingDeletion.future().completeExceptionally(e));
+      batchFuture = CompletableFuture.completedFuture(null);
+    }
+
+    batchFuture.whenComplete((ignored, throwable) -> {
+      final List<PendingDeletion> nextBatch;
+
+      synchronized (this) {
+        batchInFlight = false;
+        nextBatch = takeBatch();
+      }
+
+      submitBatch(nextBatch);
+    });
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import static org.whispersystems.textsecuregcm.metrics.MetricsUtil.name;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.dropwizard.lifecycle.Managed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.whispersystems.textsecuregcm.util.Pair;
+import org.whispersystems.textsecuregcm.util.Util;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * A device "last seen" updater moves updates to devices' "last seen" timestamps off of the request path. Callers queue
+ * updates, which are coalesced per device and periodically written to the accounts table with bounded concurrency.
+ * <p>
+ * Queued updates are best-effort. If the queue is full, new updates are dropped, and updates that have not been flushed
+ * are lost if the server stops abruptly. In either case, the device's "last seen" timestamp remains behind and so will
+ * be queued again the next time the device authenticates.
+ */
+public class DeviceLastSeenUpdater implements Managed {
+
+  private final AccountsManager accountsManager;
+  private final ScheduledExecutorService scheduledExecutorService;
+  private final Duration flushInterval;
+  private final int maxPendingUpdates;
+  private final int maxConcurrency;
+
+  private final Map<Pair<UUID, Byte>, Long> pendingUpdates = new ConcurrentHashMap<>();
+
+  @Nullable
+  private ScheduledFuture<?> flushFuture;
+
+  private static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(5);
+  private static final int DEFAULT_MAX_PENDING_UPDATES = 100_000;
+  private static final int DEFAULT_MAX_CONCURRENCY = 16;
+
+  private static final Counter QUEUED_COUNTER = Metrics.counter(name(DeviceLastSeenUpdater.class, "queued"));
+  private static final Counter DROPPED_COUNTER = Metrics.counter(name(DeviceLastSeenUpdater.class, "dropped"));
+  private static final Counter FLUSHED_COUNTER = Metrics.counter(name(DeviceLastSeenUpdater.class, "flushed"));
+  private static final Counter FAILED_COUNTER = Metrics.counter(name(DeviceLastSeenUpdater.class, "failed"));
+
+  private static final Logger logger = LoggerFactory.getLogger(DeviceLastSeenUpdater.class);
+
+  private record PendingUpdate(UUID accountIdentifier, byte deviceId, long lastSeen) {
+  }
+
+  public DeviceLastSeenUpdater(final AccountsManager accountsManager,
+      final ScheduledExecutorService scheduledExecutorService) {
+
+    this(accountsManager, scheduledExecutorService, DEFAULT_FLUSH_INTERVAL, DEFAULT_MAX_PENDING_UPDATES,
+        DEFAULT_MAX_CONCURRENCY);
+  }
+
+  @VisibleForTesting
+  DeviceLastSeenUpdater(final AccountsManager accountsManager,
+      final ScheduledExecutorService scheduledExecutorService,
+      final Duration flushInterval,
+      final int maxPendingUpdates,
+      final int maxConcurrency) {
+
+    this.accountsManager = accountsManager;
+    this.scheduledExecutorService = scheduledExecutorService;
+    this.flushInterval = flushInterval;
+    this.maxPendingUpdates = maxPendingUpdates;
+    this.maxConcurrency = maxConcurrency;
+
+    Metrics.gaugeMapSize(name(DeviceLastSeenUpdater.class, "pendingUpdates"), List.of(), pendingUpdates);
+  }
+
+  @Override
+  public synchronized void start() {
+    flushFuture = scheduledExecutorService.scheduleWithFixedDelay(() -> {
+      try {
+        flush();
+      } catch (final Exception e) {
+        logger.warn("Failed to flush device last seen updates", e);
+      }
+    }, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (flushFuture != null) {
+      flushFuture.cancel(false);
+    }
+
+    flush();
+  }
+
+  /**
+   * Queues an update to the given device's "last seen" timestamp. If an update for the device is already queued, the
+   * later of the two timestamps wins.
+   *
+   * @param account the account to which the device belongs
+   * @param device the device to update
+   * @param lastSeen the device's new "last seen" timestamp
+   */
+  public void updateLastSeen(final Account account, final Device device, final long lastSeen) {
+    final Pair<UUID, Byte> deviceKey = new Pair<>(account.getUuid(), device.getId());
+
+    // Size checks on a concurrent map are approximate, but that's fine for a soft bound
+    if (pendingUpdates.size() >= maxPendingUpdates && !pendingUpdates.containsKey(deviceKey)) {
+      DROPPED_COUNTER.increment();
+      return;
+    }
+
+    pendingUpdates.merge(deviceKey, lastSeen, Math::max);
+    QUEUED_COUNTER.increment();
+  }
+
+  @VisibleForTesting
+  void flush() {
+    final List<PendingUpdate> updates = new ArrayList<>(pendingUpdates.size());
+
+    // Updates queued while we drain the map will either be picked up by this flush or left for the next one
+    for (final Pair<UUID, Byte> deviceKey : pendingUpdates.keySet()) {
+      final Long lastSeen = pendingUpdates.remove(deviceKey);
+
+      if (lastSeen != null) {
+        updates.add(new PendingUpdate(deviceKey.first(), deviceKey.second(), lastSeen));
+      }
+    }
+
+    Flux.fromIterable(updates)
+        .flatMap(update -> Mono.fromFuture(() -> applyUpdate(update))
+                .doOnSuccess(ignored -> FLUSHED_COUNTER.increment())
+                .onErrorResume(throwable -> {
+                  logger.debug("Failed to update last seen timestamp for device", throwable);
+                  FAILED_COUNTER.increment();
+
+                  return Mono.empty();
+                }),
+            maxConcurrency)
+        .then()
+        .block();
+  }
+
+  private CompletableFuture<Void> applyUpdate(final PendingUpdate update) {
+    return accountsManager.getByAccountIdentifierAsync(update.accountIdentifier())
+        .thenCompose(maybeAccount -> maybeAccount
+            .map(account -> accountsManager.updateDeviceLastSeenAsync(account, update.deviceId(), update.lastSeen())
+                .thenRun(Util.NOOP))
+            .orElseGet(() -> CompletableFuture.completedFuture(null)));
+  }
+}
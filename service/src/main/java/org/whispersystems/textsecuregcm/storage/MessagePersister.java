@@ -16,23 +16,27 @@ import com.codahale.metrics.Timer;
 import com.google.common.annotations.VisibleForTesting;
 import io.dropwizard.lifecycle.Managed;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicConfiguration;
-import org.whispersystems.textsecuregcm.entities.MessageProtos;
 import org.whispersystems.textsecuregcm.push.ClientPresenceManager;
 import org.whispersystems.textsecuregcm.util.Constants;
+import org.whispersystems.textsecuregcm.util.ExceptionUtils;
 import org.whispersystems.textsecuregcm.util.Util;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.util.function.Tuple2;
 import reactor.util.function.Tuples;
 import software.amazon.awssdk.services.dynamodb.model.ItemCollectionSizeLimitExceededException;
@@ -59,7 +63,11 @@ public class MessagePersister implements Managed {
   private final Counter oversizedQueueCounter = counter(name(MessagePersister.class, "persistQueueOversized"));
   private final Histogram queueCountHistogram = metricRegistry.histogram(name(MessagePersister.class, "queueCount"));
   private final Histogram queueSizeHistogram = metricRegistry.histogram(name(MessagePersister.class, "queueSize"));
+  private final Counter persistQueueRetryCounter = counter(name(MessagePersister.class, "persistQueueRetry"));
+  private final io.micrometer.core.instrument.Timer backlogAgeTimer =
+      Metrics.timer(name(MessagePersister.class, "backlogAge"));
   private final ExecutorService executor;
+  private final DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager;
 
   static final int QUEUE_BATCH_LIMIT = 100;
   static final int MESSAGE_BATCH_LIMIT = 100;
@@ -69,6 +77,11 @@ public class MessagePersister implements Managed {
 
   private static final int CONSECUTIVE_EMPTY_CACHE_REMOVAL_LIMIT = 3;
 
+  private static final int MAX_PERSIST_QUEUE_ATTEMPTS = 3;
+
+  @VisibleForTesting
+  static final Duration PERSIST_QUEUE_RETRY_BASE_DELAY = Duration.ofMillis(250);
+
   private static final Logger logger = LoggerFactory.getLogger(MessagePersister.class);
 
   public MessagePersister(final MessagesCache messagesCache, final MessagesManager messagesManager,
@@ -88,6 +101,7 @@ public class MessagePersister implements Managed {
     this.workerThreads = new Thread[dedicatedProcessWorkerThreadCount];
     this.dedicatedProcess = true;
     this.executor = executor;
+    this.dynamicConfigurationManager = dynamicConfigurationManager;
 
     for (int i = 0; i < workerThreads.length; i++) {
       workerThreads[i] = new Thread(() -> {
@@ -143,80 +157,162 @@ public class MessagePersister implements Managed {
   @VisibleForTesting
   int persistNextQueues(final Instant currentTime) {
     final int slot = messagesCache.getNextSlotToPersist();
+    final Instant maxTime = currentTime.minus(persistDelay);
+
+    // The backlog age of a slot is how long its oldest queue has been eligible for persistence
+    messagesCache.getOldestQueueToPersistTimestamp(slot)
+        .map(oldestQueueTimestamp -> Duration.between(oldestQueueTimestamp, maxTime))
+        .map(backlogAge -> backlogAge.isNegative() ? Duration.ZERO : backlogAge)
+        .ifPresent(backlogAgeTimer::record);
+
+    final int maxConcurrentQueues =
+        dynamicConfigurationManager.getConfiguration().getMessagePersisterConfiguration().getMaxConcurrentQueues();
+
+    // Pages of queues are only claimed as in-flight capacity frees up, so a failing or slow queue never holds up the
+    // rest of the slot, and a worker's throughput is bounded by its in-flight limit rather than by round-trip time.
+    final Long queuesPersisted = Mono.fromFuture(() -> getQueuesToPersistAsync(slot, maxTime))
+        .repeat()
+        .takeUntil(queues -> queues.size() < QUEUE_BATCH_LIMIT)
+        .flatMapIterable(Function.identity(), 1)
+        .flatMap(queue -> Mono.fromFuture(() -> persistQueue(queue)), maxConcurrentQueues)
+        .count()
+        .block();
+
+    return queuesPersisted == null ? 0 : queuesPersisted.intValue();
+  }
 
-    List<String> queuesToPersist;
-    int queuesPersisted = 0;
-
-    do {
-      try (final Timer.Context ignored = getQueuesTimer.time()) {
-        queuesToPersist = messagesCache.getQueuesToPersist(slot, currentTime.minus(persistDelay), QUEUE_BATCH_LIMIT);
-      }
+  private CompletableFuture<List<String>> getQueuesToPersistAsync(final int slot, final Instant maxTime) {
+    final Timer.Context timerContext = getQueuesTimer.time();
 
-      for (final String queue : queuesToPersist) {
-        final UUID accountUuid = MessagesCache.getAccountUuidFromQueueName(queue);
-        final byte deviceId = MessagesCache.getDeviceIdFromQueueName(queue);
+    return messagesCache.getQueuesToPersistAsync(slot, maxTime, QUEUE_BATCH_LIMIT)
+        .whenComplete((ignored, throwable) -> timerContext.stop());
+  }
 
-        final Optional<Account> maybeAccount = accountsManager.getByAccountIdentifier(accountUuid);
-        if (maybeAccount.isEmpty()) {
-          logger.error("No account record found for account {}", accountUuid);
-          continue;
-        }
-        try {
-          persistQueue(maybeAccount.get(), deviceId);
-        } catch (final Exception e) {
+  /**
+   * Persists the named queue, retrying with backoff on failure. If the queue still can't be persisted, it is returned
+   * to the persistence index to be tried again on a later pass.
+   *
+   * @return a future that completes when the queue has been persisted or rescheduled; the future never fails
+   */
+  private CompletableFuture<Void> persistQueue(final String queue) {
+    final UUID accountUuid = MessagesCache.getAccountUuidFromQueueName(queue);
+    final byte deviceId = MessagesCache.getDeviceIdFromQueueName(queue);
+
+    return accountsManager.getByAccountIdentifierAsync(accountUuid)
+        .thenCompose(maybeAccount -> maybeAccount
+            .map(account -> persistQueueWithRetries(account, deviceId, 1))
+            .orElseGet(() -> {
+              logger.error("No account record found for account {}", accountUuid);
+              return CompletableFuture.completedFuture(null);
+            }))
+        .exceptionallyCompose(throwable -> {
           persistQueueExceptionMeter.mark();
-          logger.warn("Failed to persist queue {}::{}; will schedule for retry", accountUuid, deviceId, e);
+          logger.warn("Failed to persist queue {}::{}; will schedule for retry", accountUuid, deviceId, throwable);
 
-          messagesCache.addQueueToPersist(accountUuid, deviceId);
+          return messagesCache.addQueueToPersistAsync(accountUuid, deviceId);
+        })
+        .exceptionally(throwable -> {
+          logger.error("Failed to reschedule queue {}::{} for persistence", accountUuid, deviceId, throwable);
+          return null;
+        });
+  }
 
-          Util.sleep(EXCEPTION_PAUSE_MILLIS);
-        }
-      }
+  private CompletableFuture<Void> persistQueueWithRetries(final Account account, final byte deviceId,
+      final int attempt) {
+
+    return persistQueueAsync(account, deviceId)
+        .exceptionallyCompose(throwable -> {
+          final Throwable cause = ExceptionUtils.unwrap(throwable);
+
+          // Persistence exceptions describe conditions (like a full queue with no unlinkable devices) that won't
+          // resolve themselves within a few seconds
+          if (cause instanceof MessagePersistenceException || attempt >= MAX_PERSIST_QUEUE_ATTEMPTS) {
+            return CompletableFuture.failedFuture(cause);
+          }
+
+          persistQueueRetryCounter.increment();
 
-      queuesPersisted += queuesToPersist.size();
-    } while (queuesToPersist.size() >= QUEUE_BATCH_LIMIT);
+          final long delayMillis = (PERSIST_QUEUE_RETRY_BASE_DELAY.toMillis() << (attempt - 1))
+              + ThreadLocalRandom.current().nextLong(PERSIST_QUEUE_RETRY_BASE_DELAY.toMillis());
 
-    return queuesPersisted;
+          return CompletableFuture.runAsync(Util.NOOP,
+                  CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS))
+              .thenCompose(ignored -> persistQueueWithRetries(account, deviceId, attempt + 1));
+        });
   }
 
   @VisibleForTesting
   void persistQueue(final Account account, final byte deviceId) throws MessagePersistenceException {
-    final UUID accountUuid = account.getUuid();
-    try (final Timer.Context ignored = persistQueueTimer.time()) {
-      messagesCache.lockQueueForPersistence(accountUuid, deviceId);
-
-      try {
-        int messageCount = 0;
-        List<MessageProtos.Envelope> messages;
+    try {
+      persistQueueAsync(account, deviceId).join();
+    } catch (final CompletionException e) {
+      if (ExceptionUtils.unwrap(e) instanceof MessagePersistenceException messagePersistenceException) {
+        throw messagePersistenceException;
+      }
 
-        int consecutiveEmptyCacheRemovals = 0;
+      throw e;
+    }
+  }
 
-        do {
-          messages = messagesCache.getMessagesToPersist(accountUuid, deviceId, MESSAGE_BATCH_LIMIT);
+  private CompletableFuture<Void> persistQueueAsync(final Account account, final byte deviceId) {
+    final UUID accountUuid = account.getUuid();
+    final Timer.Context timerContext = persistQueueTimer.time();
+
+    return messagesCache.lockQueueForPersistenceAsync(accountUuid, deviceId)
+        .thenCompose(locked -> persistMessagePages(accountUuid, deviceId, 0, 0)
+            .thenAccept(queueSizeHistogram::update)
+            .exceptionallyCompose(throwable -> {
+              if (ExceptionUtils.unwrap(throwable) instanceof ItemCollectionSizeLimitExceededException) {
+                oversizedQueueCounter.increment();
+
+                // this will either do a deferred reschedule for retry or throw
+                return CompletableFuture.runAsync(() -> {
+                  try {
+                    unlinkLeastActiveDevice(account, deviceId);
+                  } catch (final MessagePersistenceException e) {
+                    throw ExceptionUtils.wrap(e);
+                  }
+                }, executor);
+              }
 
-          int messagesRemovedFromCache = messagesManager.persistMessages(accountUuid, deviceId, messages);
-          messageCount += messages.size();
+              return CompletableFuture.failedFuture(throwable);
+            })
+            .handle((ignored, throwable) -> messagesCache.unlockQueueForPersistenceAsync(accountUuid, deviceId)
+                .thenCompose(unlocked -> throwable == null
+                    ? CompletableFuture.<Void>completedFuture(null)
+                    : CompletableFuture.<Void>failedFuture(throwable)))
+            .thenCompose(Function.identity()))
+        .whenComplete((ignored, throwable) -> timerContext.stop());
+  }
 
-          if (messagesRemovedFromCache == 0) {
-            consecutiveEmptyCacheRemovals += 1;
-          } else {
-            consecutiveEmptyCacheRemovals = 0;
+  /**
+   * Persists pages of messages from the given queue until the queue is empty.
+   *
+   * @return a future that completes with the total number of messages persisted
+   */
+  private CompletableFuture<Integer> persistMessagePages(final UUID accountUuid, final byte deviceId,
+      final int messageCount, final int consecutiveEmptyCacheRemovals) {
+
+    return messagesCache.getMessagesToPersistAsync(accountUuid, deviceId, MESSAGE_BATCH_LIMIT)
+        .thenCompose(messages -> {
+          if (messages.isEmpty()) {
+            return CompletableFuture.completedFuture(messageCount);
           }
 
-          if (consecutiveEmptyCacheRemovals > CONSECUTIVE_EMPTY_CACHE_REMOVAL_LIMIT) {
-            throw new MessagePersistenceException("persistence failure loop detected");
-          }
+          return messagesManager.persistMessages(accountUuid, deviceId, messages)
+              .thenCompose(messagesRemovedFromCache -> {
+                final int updatedConsecutiveEmptyCacheRemovals =
+                    messagesRemovedFromCache == 0 ? consecutiveEmptyCacheRemovals + 1 : 0;
 
-        } while (!messages.isEmpty());
+                if (updatedConsecutiveEmptyCacheRemovals > CONSECUTIVE_EMPTY_CACHE_REMOVAL_LIMIT) {
+                  return CompletableFuture.failedFuture(
+                      new MessagePersistenceException("persistence failure loop detected"));
+                }
 
-        queueSizeHistogram.update(messageCount);
-      } catch (ItemCollectionSizeLimitExceededException e) {
-        oversizedQueueCounter.increment();
-        unlinkLeastActiveDevice(account, deviceId); // this will either do a deferred reschedule for retry or throw
-      } finally {
-        messagesCache.unlockQueueForPersistence(accountUuid, deviceId);
-      }
-    }
+                return persistMessagePages(accountUuid, deviceId, messageCount + messages.size(),
+                    updatedConsecutiveEmptyCacheRemovals);
+              });
+        });
   }
 
   @VisibleForTesting
@@ -8,6 +8,7 @@ package org.whispersystems.textsecuregcm.storage;
 import static com.codahale.metrics.MetricRegistry.name;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import io.dropwizard.lifecycle.Managed;
 import io.lettuce.core.ScoredValue;
@@ -18,6 +19,7 @@ import io.lettuce.core.cluster.SlotHash;
 import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
 import io.lettuce.core.cluster.pubsub.RedisClusterPubSubAdapter;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Timer;
 import java.io.IOException;
@@ -27,6 +29,7 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
@@ -36,13 +39,19 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import javax.annotation.Nullable;
 import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicConfiguration;
+import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicMessageCacheConfiguration;
 import org.whispersystems.textsecuregcm.entities.MessageProtos;
 import org.whispersystems.textsecuregcm.metrics.MetricsUtil;
 import org.whispersystems.textsecuregcm.redis.ClusterLuaScript;
@@ -74,11 +83,18 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
   private final ClusterLuaScript getItemsScript;
   private final ClusterLuaScript removeQueueScript;
   private final ClusterLuaScript getQueuesToPersistScript;
+  private final ClusterLuaScript insertSharedPayloadScript;
+  private final ClusterLuaScript releaseSharedPayloadScript;
+
+  private final DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager;
 
   private final Map<String, MessageAvailabilityListener> messageListenersByQueueName = new HashMap<>();
   private final Map<MessageAvailabilityListener, String> queueNamesByMessageListener = new IdentityHashMap<>();
 
   private final Timer insertTimer = Metrics.timer(name(MessagesCache.class, "insert"));
+  private final Timer insertBatchTimer = Metrics.timer(name(MessagesCache.class, "insertBatch"));
+  private final DistributionSummary insertBatchSizeDistributionSummary =
+      Metrics.summary(name(MessagesCache.class, "insertBatchSize"));
   private final Timer getMessagesTimer = Metrics.timer(name(MessagesCache.class, "get"));
   private final Timer getQueuesToPersistTimer = Metrics.timer(name(MessagesCache.class, "getQueuesToPersist"));
   private final Timer clearQueueTimer = Metrics.timer(name(MessagesCache.class, "clear"));
@@ -93,9 +109,31 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
       name(MessagesCache.class, "messageAvailabilityListenerRemovedAfterAdd"));
   private final Counter prunedStaleSubscriptionCounter = Metrics.counter(
       name(MessagesCache.class, "prunedStaleSubscription"));
+  private final Counter sharedPayloadInsertedCounter = Metrics.counter(
+      name(MessagesCache.class, "sharedPayloadInserted"));
+  private final Counter sharedPayloadBytesSavedCounter = Metrics.counter(
+      name(MessagesCache.class, "sharedPayloadBytesSaved"));
+  private final Counter sharedPayloadMissingCounter = Metrics.counter(
+      name(MessagesCache.class, "sharedPayloadMissing"));
+  private final Counter pagePrefetchHitCounter = Metrics.counter(
+      name(MessagesCache.class, "pagePrefetch"), "hit", "true");
+  private final Counter pagePrefetchMissCounter = Metrics.counter(
+      name(MessagesCache.class, "pagePrefetch"), "hit", "false");
+  private final Timer drainQueueTimer = Metrics.timer(name(MessagesCache.class, "drainQueue"));
+  private final DistributionSummary compressionRatioDistributionSummary = DistributionSummary
+      .builder(name(MessagesCache.class, "compressionRatio"))
+      .publishPercentiles(0.5, 0.75, 0.95, 0.99)
+      .distributionStatisticExpiry(Duration.ofMinutes(10))
+      .register(Metrics.globalRegistry);
+  private final Counter uncompressedBytesCounter = Metrics.counter(
+      name(MessagesCache.class, "envelopeBytes"), "compressed", "false");
+  private final Counter compressedBytesCounter = Metrics.counter(
+      name(MessagesCache.class, "envelopeBytes"), "compressed", "true");
 
   static final String NEXT_SLOT_TO_PERSIST_KEY = "user_queue_persist_slot";
   private static final byte[] LOCK_VALUE = "1".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] SHARED_PAYLOAD_FIELD = "payload".getBytes(StandardCharsets.UTF_8);
+
 
   private static final String QUEUE_KEYSPACE_PREFIX = "__keyspace@0__:user_queue::";
   private static final String PERSISTING_KEYSPACE_PREFIX = "__keyspace@0__:user_queue_persisting::";
@@ -110,7 +148,8 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
 
   public MessagesCache(final FaultTolerantRedisCluster insertCluster, final FaultTolerantRedisCluster readDeleteCluster,
       final ExecutorService notificationExecutorService, final Scheduler messageDeliveryScheduler,
-      final ExecutorService messageDeletionExecutorService, final Clock clock) throws IOException {
+      final ExecutorService messageDeletionExecutorService, final Clock clock,
+      final DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager) throws IOException {
 
     this.readDeleteCluster = readDeleteCluster;
     this.pubSubConnection = readDeleteCluster.createPubSubConnection();
@@ -126,9 +165,15 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
         ScriptOutputType.MULTI);
     this.getItemsScript = ClusterLuaScript.fromResource(readDeleteCluster, "lua/get_items.lua", ScriptOutputType.MULTI);
     this.removeQueueScript = ClusterLuaScript.fromResource(readDeleteCluster, "lua/remove_queue.lua",
-        ScriptOutputType.STATUS);
+        ScriptOutputType.MULTI);
     this.getQueuesToPersistScript = ClusterLuaScript.fromResource(readDeleteCluster, "lua/get_queues_to_persist.lua",
         ScriptOutputType.MULTI);
+    this.insertSharedPayloadScript = ClusterLuaScript.fromResource(insertCluster, "lua/insert_shared_payload.lua",
+        ScriptOutputType.STATUS);
+    this.releaseSharedPayloadScript = ClusterLuaScript.fromResource(readDeleteCluster,
+        "lua/release_shared_payload.lua", ScriptOutputType.VALUE);
+
+    this.dynamicConfigurationManager = dynamicConfigurationManager;
   }
 
   @Override
@@ -139,7 +184,7 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
 
   @Override
   public void stop() {
-    pubSubConnection.usePubSubConnection(connection -> connection.sync().upstream().commands().unsubscribe());
+    pubSubConnection.usePubSubConnection(connection -> connection.sync().unsubscribe());
   }
 
   private void resubscribeAll() {
@@ -152,20 +197,197 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
 
     for (final String queueName : queueNames) {
       // avoid overwhelming a newly recovered node by processing synchronously, rather than using CompletableFuture.allOf()
-      subscribeForKeyspaceNotifications(queueName).join();
+      subscribeForNotifications(queueName).join();
     }
   }
 
   public long insert(final UUID guid, final UUID destinationUuid, final byte destinationDevice,
       final MessageProtos.Envelope message) {
     final MessageProtos.Envelope messageWithGuid = message.toBuilder().setServerGuid(guid.toString()).build();
+    final boolean compress =
+        dynamicConfigurationManager.getConfiguration().getMessageCacheConfiguration().isCompressionEnabled();
+
     return (long) insertTimer.record(() ->
         insertScript.executeBinary(List.of(getMessageQueueKey(destinationUuid, destinationDevice),
                 getMessageQueueMetadataKey(destinationUuid, destinationDevice),
                 getQueueIndexKey(destinationUuid, destinationDevice)),
-            List.of(messageWithGuid.toByteArray(),
-                String.valueOf(message.getServerTimestamp()).getBytes(StandardCharsets.UTF_8),
-                guid.toString().getBytes(StandardCharsets.UTF_8))));
+            getInsertArguments(messageWithGuid, destinationUuid, destinationDevice, compress)));
+  }
+
+  private List<byte[]> getInsertArguments(final MessageProtos.Envelope messageWithGuid,
+      final UUID destinationUuid,
+      final byte destinationDevice,
+      final boolean compress) {
+
+    return List.of(encodeEnvelope(messageWithGuid, compress),
+        String.valueOf(messageWithGuid.getServerTimestamp()).getBytes(StandardCharsets.UTF_8),
+        messageWithGuid.getServerGuid().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private byte[] encodeEnvelope(final MessageProtos.Envelope envelope, final boolean compress) {
+    final byte[] encoded = CachedEnvelopeCodec.encode(envelope, compress);
+
+    if (compress) {
+      compressionRatioDistributionSummary.record((double) encoded.length / envelope.getSerializedSize());
+    }
+
+    (CachedEnvelopeCodec.isCompressed(encoded) ? compressedBytesCounter : uncompressedBytesCounter)
+        .increment(encoded.length);
+
+    return encoded;
+  }
+
+  /**
+   * Inserts a batch of messages, potentially destined for many different queues, into the cache. Insertions are ordered
+   * by the cluster slot of their destination queue and dispatched without waiting for one another, so all of the
+   * insertions bound for a given node are pipelined over a single connection instead of each paying its own round trip.
+   * <p>
+   * If shared payloads are enabled and every message in the batch ends with the same sufficiently-long run of content
+   * bytes (as is the case for the copies of a multi-recipient message), that common suffix is stored once under a
+   * reference-counted key and each queue entry holds only its distinct prefix and a reference to the shared suffix.
+   * Readers reassemble the full content transparently.
+   *
+   * @param insertRequests the messages to insert
+   *
+   * @return a list of futures, in the same order as the given requests, that yield the ID of each inserted message
+   * within its destination queue or fail with the error that prevented that particular insertion
+   */
+  public List<CompletableFuture<Long>> insert(final List<InsertRequest> insertRequests) {
+    if (insertRequests.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    final Timer.Sample sample = Timer.start();
+    insertBatchSizeDistributionSummary.record(insertRequests.size());
+
+    final DynamicMessageCacheConfiguration configuration =
+        dynamicConfigurationManager.getConfiguration().getMessageCacheConfiguration();
+
+    final int sharedPayloadLength = insertRequests.size() > 1 && configuration.isSharedPayloadEnabled()
+        ? getCommonContentSuffixLength(insertRequests)
+        : 0;
+
+    final List<CompletableFuture<Long>> insertFutures;
+
+    if (sharedPayloadLength > 0 && sharedPayloadLength >= configuration.getSharedPayloadMinimumBytes()) {
+      insertFutures = insertWithSharedPayload(insertRequests, sharedPayloadLength, configuration.isCompressionEnabled());
+    } else {
+      insertFutures = dispatchInserts(insertRequests, configuration.isCompressionEnabled());
+    }
+
+    CompletableFuture.allOf(insertFutures.toArray(CompletableFuture[]::new))
+        .whenComplete((ignored, throwable) -> sample.stop(insertBatchTimer));
+
+    return insertFutures;
+  }
+
+  private List<CompletableFuture<Long>> insertWithSharedPayload(final List<InsertRequest> insertRequests,
+      final int sharedPayloadLength,
+      final boolean compress) {
+
+    final ByteString firstContent = insertRequests.get(0).message().getContent();
+    final ByteString sharedPayload = firstContent.substring(firstContent.size() - sharedPayloadLength);
+    final byte[] sharedPayloadKey = getSharedPayloadKey(UUID.randomUUID());
+
+    final List<InsertRequest> referencingInsertRequests = insertRequests.stream()
+        .map(insertRequest -> {
+          final ByteString content = insertRequest.message().getContent();
+
+          return new InsertRequest(insertRequest.guid(), insertRequest.destinationUuid(),
+              insertRequest.destinationDevice(),
+              insertRequest.message().toBuilder()
+                  .setContent(content.substring(0, content.size() - sharedPayloadLength))
+                  .setSharedPayloadKey(ByteString.copyFrom(sharedPayloadKey))
+                  .build());
+        })
+        .toList();
+
+    // The shared payload must exist before any queue entry that refers to it becomes visible to readers
+    final CompletableFuture<List<CompletableFuture<Long>>> dispatchFuture = insertSharedPayloadScript
+        .executeBinaryAsync(List.of(sharedPayloadKey),
+            List.of(sharedPayload.toByteArray(), String.valueOf(insertRequests.size()).getBytes(StandardCharsets.UTF_8)))
+        .thenApply(ignored -> {
+          sharedPayloadInsertedCounter.increment();
+          sharedPayloadBytesSavedCounter.increment((double) (insertRequests.size() - 1) * sharedPayloadLength);
+
+          return dispatchInserts(referencingInsertRequests, compress);
+        });
+
+    return IntStream.range(0, referencingInsertRequests.size())
+        .mapToObj(i -> dispatchFuture.thenCompose(insertFutures -> insertFutures.get(i)
+            .whenComplete((ignored, throwable) -> {
+              if (throwable != null) {
+                // Nothing will ever remove this reference, so release it now
+                releaseSharedPayloadReferences(Map.of(ByteString.copyFrom(sharedPayloadKey), 1));
+              }
+            })))
+        .toList();
+  }
+
+  private List<CompletableFuture<Long>> dispatchInserts(final List<InsertRequest> insertRequests,
+      final boolean compress) {
+    final List<byte[]> queueKeys = insertRequests.stream()
+        .map(insertRequest -> getMessageQueueKey(insertRequest.destinationUuid(), insertRequest.destinationDevice()))
+        .toList();
+
+    final int[] slots = queueKeys.stream().mapToInt(SlotHash::getSlot).toArray();
+
+    final List<Integer> dispatchOrder = IntStream.range(0, insertRequests.size())
+        .boxed()
+        .sorted(Comparator.comparingInt(i -> slots[i]))
+        .toList();
+
+    final List<ClusterLuaScript.BinaryInvocation> invocations = dispatchOrder.stream()
+        .map(i -> {
+          final InsertRequest insertRequest = insertRequests.get(i);
+          final MessageProtos.Envelope messageWithGuid = insertRequest.message().toBuilder()
+              .setServerGuid(insertRequest.guid().toString())
+              .build();
+
+          return new ClusterLuaScript.BinaryInvocation(List.of(queueKeys.get(i),
+                  getMessageQueueMetadataKey(insertRequest.destinationUuid(), insertRequest.destinationDevice()),
+                  getQueueIndexKey(slots[i])),
+              getInsertArguments(messageWithGuid, insertRequest.destinationUuid(), insertRequest.destinationDevice(),
+                  compress));
+        })
+        .toList();
+
+    final List<CompletableFuture<Object>> dispatchedFutures = insertScript.executeBinaryAsync(invocations);
+
+    @SuppressWarnings("unchecked") final CompletableFuture<Long>[] insertFutures =
+        new CompletableFuture[insertRequests.size()];
+
+    for (int i = 0; i < dispatchOrder.size(); i++) {
+      insertFutures[dispatchOrder.get(i)] = dispatchedFutures.get(i).thenApply(messageId -> (long) messageId);
+    }
+
+    return List.of(insertFutures);
+  }
+
+  @VisibleForTesting
+  static int getCommonContentSuffixLength(final List<InsertRequest> insertRequests) {
+    final ByteString firstContent = insertRequests.get(0).message().getContent();
+    int commonSuffixLength = firstContent.size();
+
+    for (int i = 1; i < insertRequests.size() && commonSuffixLength > 0; i++) {
+      final ByteString content = insertRequests.get(i).message().getContent();
+
+      // Copies of a multi-recipient message for different devices of the same recipient are usually identical
+      if (content.equals(firstContent)) {
+        continue;
+      }
+
+      commonSuffixLength = Math.min(commonSuffixLength, content.size());
+
+      for (int j = 1; j <= commonSuffixLength; j++) {
+        if (firstContent.byteAt(firstContent.size() - j) != content.byteAt(content.size() - j)) {
+          commonSuffixLength = j - 1;
+          break;
+        }
+      }
+    }
+
+    return commonSuffixLength;
   }
 
   public CompletableFuture<Optional<MessageProtos.Envelope>> remove(final UUID destinationUuid,
@@ -186,21 +408,145 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
                 getQueueIndexKey(destinationUuid, destinationDevice)),
             messageGuids.stream().map(guid -> guid.toString().getBytes(StandardCharsets.UTF_8))
                 .collect(Collectors.toList()))
-        .thenApplyAsync(result -> {
-          List<byte[]> serialized = (List<byte[]>) result;
+        .thenApplyAsync(result -> decodeEnvelopes((List<byte[]>) result), messageDeletionExecutorService)
+        .thenCompose(this::releaseSharedPayloads);
+  }
 
-          final List<MessageProtos.Envelope> removedMessages = new ArrayList<>(serialized.size());
+  private static List<MessageProtos.Envelope> decodeEnvelopes(final List<byte[]> serialized) {
+    final List<MessageProtos.Envelope> envelopes = new ArrayList<>(serialized.size());
 
-          for (final byte[] bytes : serialized) {
-            try {
-              removedMessages.add(MessageProtos.Envelope.parseFrom(bytes));
-            } catch (final InvalidProtocolBufferException e) {
-              logger.warn("Failed to parse envelope", e);
-            }
+    for (final byte[] bytes : serialized) {
+      try {
+        envelopes.add(CachedEnvelopeCodec.decode(bytes));
+      } catch (final InvalidProtocolBufferException e) {
+        logger.warn("Failed to parse envelope", e);
+      }
+    }
+
+    return envelopes;
+  }
+
+  /**
+   * Releases one reference to the shared payload of each of the given (just-removed) messages, and resolves the full
+   * content of those messages.
+   */
+  private CompletableFuture<List<MessageProtos.Envelope>> releaseSharedPayloads(
+      final List<MessageProtos.Envelope> removedMessages) {
+
+    final Map<ByteString, Integer> releaseCountsByKey = new HashMap<>();
+
+    for (final MessageProtos.Envelope removedMessage : removedMessages) {
+      if (removedMessage.hasSharedPayloadKey()) {
+        releaseCountsByKey.merge(removedMessage.getSharedPayloadKey(), 1, Integer::sum);
+      }
+    }
+
+    if (releaseCountsByKey.isEmpty()) {
+      return CompletableFuture.completedFuture(removedMessages);
+    }
+
+    // Messages whose shared payload is missing have already been removed from the queue, so there's nothing left to
+    // clean up beyond counting them
+    return releaseSharedPayloadReferences(releaseCountsByKey)
+        .thenApplyAsync(sharedPayloadsByKey ->
+                assembleSharedPayloads(removedMessages, sharedPayloadsByKey, new ArrayList<>()),
+            messageDeletionExecutorService);
+  }
+
+  private CompletableFuture<Map<ByteString, byte[]>> releaseSharedPayloadReferences(
+      final Map<ByteString, Integer> releaseCountsByKey) {
+
+    final Map<ByteString, byte[]> sharedPayloadsByKey = new ConcurrentHashMap<>();
+
+    return CompletableFuture.allOf(releaseCountsByKey.entrySet().stream()
+            .map(entry -> releaseSharedPayloadScript.executeBinaryAsync(List.of(entry.getKey().toByteArray()),
+                    List.of(String.valueOf(entry.getValue()).getBytes(StandardCharsets.UTF_8)))
+                .thenAccept(sharedPayload -> {
+                  if (sharedPayload != null) {
+                    sharedPayloadsByKey.put(entry.getKey(), (byte[]) sharedPayload);
+                  }
+                }))
+            .toArray(CompletableFuture[]::new))
+        .thenApply(ignored -> sharedPayloadsByKey);
+  }
+
+  /**
+   * Resolves the full content of any of the given messages that refer to a shared payload, without releasing any
+   * references. Messages whose shared payload no longer exists can never be delivered, and are removed from the queue
+   * and omitted from the returned list.
+   */
+  private CompletableFuture<List<MessageProtos.Envelope>> resolveSharedPayloads(final UUID destinationUuid,
+      final byte destinationDevice,
+      final List<MessageProtos.Envelope> messages) {
+
+    final Set<ByteString> sharedPayloadKeys = messages.stream()
+        .filter(MessageProtos.Envelope::hasSharedPayloadKey)
+        .map(MessageProtos.Envelope::getSharedPayloadKey)
+        .collect(Collectors.toSet());
+
+    if (sharedPayloadKeys.isEmpty()) {
+      return CompletableFuture.completedFuture(messages);
+    }
+
+    final Map<ByteString, byte[]> sharedPayloadsByKey = new ConcurrentHashMap<>();
+
+    return readDeleteCluster.withBinaryCluster(connection -> CompletableFuture.allOf(sharedPayloadKeys.stream()
+                .map(sharedPayloadKey -> connection.async().hget(sharedPayloadKey.toByteArray(), SHARED_PAYLOAD_FIELD)
+                    .thenAccept(sharedPayload -> {
+                      if (sharedPayload != null) {
+                        sharedPayloadsByKey.put(sharedPayloadKey, sharedPayload);
+                      }
+                    })
+                    .toCompletableFuture())
+                .toArray(CompletableFuture[]::new)))
+        .thenCompose(ignored -> {
+          final List<UUID> orphanedMessageGuids = new ArrayList<>();
+          final List<MessageProtos.Envelope> assembledMessages =
+              assembleSharedPayloads(messages, sharedPayloadsByKey, orphanedMessageGuids);
+
+          if (orphanedMessageGuids.isEmpty()) {
+            return CompletableFuture.completedFuture(assembledMessages);
           }
 
-          return removedMessages;
-        }, messageDeletionExecutorService);
+          return remove(destinationUuid, destinationDevice, orphanedMessageGuids)
+              .handle((removedMessages, throwable) -> {
+                if (throwable != null) {
+                  logger.warn("Failed to remove messages with missing shared payloads", throwable);
+                }
+
+                return assembledMessages;
+              });
+        });
+  }
+
+  private List<MessageProtos.Envelope> assembleSharedPayloads(final List<MessageProtos.Envelope> messages,
+      final Map<ByteString, byte[]> sharedPayloadsByKey,
+      final List<UUID> orphanedMessageGuids) {
+
+    final List<MessageProtos.Envelope> assembledMessages = new ArrayList<>(messages.size());
+
+    for (final MessageProtos.Envelope message : messages) {
+      if (!message.hasSharedPayloadKey()) {
+        assembledMessages.add(message);
+        continue;
+      }
+
+      @Nullable final byte[] sharedPayload = sharedPayloadsByKey.get(message.getSharedPayloadKey());
+
+      if (sharedPayload == null) {
+        sharedPayloadMissingCounter.increment();
+        logger.warn("Shared payload missing for message {}; discarding message", message.getServerGuid());
+        orphanedMessageGuids.add(UUID.fromString(message.getServerGuid()));
+        continue;
+      }
+
+      assembledMessages.add(message.toBuilder()
+          .setContent(message.getContent().concat(ByteString.copyFrom(sharedPayload)))
+          .clearSharedPayloadKey()
+          .build());
+    }
+
+    return assembledMessages;
   }
 
   public boolean hasMessages(final UUID destinationUuid, final byte destinationDevice) {
@@ -253,6 +599,24 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
 
   @VisibleForTesting
   Flux<MessageProtos.Envelope> getAllMessages(final UUID destinationUuid, final byte destinationDevice) {
+    final int readAheadPages =
+        dynamicConfigurationManager.getConfiguration().getMessageCacheConfiguration().getReadAheadPages();
+
+    // Used to judge whether the next page had already arrived by the time the current page was handed downstream
+    final AtomicLong pagesFetched = new AtomicLong();
+    final AtomicLong pagesConsumed = new AtomicLong();
+
+    final Timer.Sample drainSample = Timer.start();
+
+    return getAllMessages(destinationUuid, destinationDevice, readAheadPages, pagesFetched, pagesConsumed)
+        .doOnComplete(() -> drainSample.stop(drainQueueTimer));
+  }
+
+  private Flux<MessageProtos.Envelope> getAllMessages(final UUID destinationUuid,
+      final byte destinationDevice,
+      final int readAheadPages,
+      final AtomicLong pagesFetched,
+      final AtomicLong pagesConsumed) {
 
     // fetch messages by page
     return getNextMessagePage(destinationUuid, destinationDevice, -1)
@@ -264,16 +628,29 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
 
           return getNextMessagePage(destinationUuid, destinationDevice, queueItemsAndLastMessageId.second());
         })
-        .limitRate(1)
-        // we want to ensure we don’t accidentally block the Lettuce/netty i/o executors
-        .publishOn(messageDeliveryScheduler)
+        .doOnNext(ignored -> pagesFetched.incrementAndGet())
+        // Each page's query depends on the last message ID of the page before it, so pages are always fetched
+        // sequentially; allowing more than one outstanding page lets the next query run while the current page is
+        // still being delivered. Replenishing after every page keeps exactly `readAheadPages` fetched ahead.
+        .limitRate(readAheadPages + 1, 1)
+        // we want to ensure we don’t accidentally block the Lettuce/netty i/o executors; publishOn has its own
+        // prefetch, which would otherwise request pages far beyond the read-ahead limit
+        .publishOn(messageDeliveryScheduler, readAheadPages + 1)
         .map(Pair::first)
-        .flatMapIterable(queueItems -> {
+        .concatMap(queueItems -> {
+          if (!queueItems.isEmpty()) {
+            if (pagesFetched.get() > pagesConsumed.incrementAndGet()) {
+              pagePrefetchHitCounter.increment();
+            } else {
+              pagePrefetchMissCounter.increment();
+            }
+          }
+
           final List<MessageProtos.Envelope> envelopes = new ArrayList<>(queueItems.size() / 2);
 
           for (int i = 0; i < queueItems.size() - 1; i += 2) {
             try {
-              final MessageProtos.Envelope message = MessageProtos.Envelope.parseFrom(queueItems.get(i));
+              final MessageProtos.Envelope message = CachedEnvelopeCodec.decode(queueItems.get(i));
 
               envelopes.add(message);
             } catch (InvalidProtocolBufferException e) {
@@ -281,8 +658,11 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
             }
           }
 
-          return envelopes;
-        });
+          return Mono.fromFuture(() -> resolveSharedPayloads(destinationUuid, destinationDevice, envelopes));
+        }, 1)
+        // resolving shared payloads may complete on a Lettuce/netty i/o thread
+        .publishOn(messageDeliveryScheduler, 1)
+        .flatMapIterable(Function.identity(), 1);
   }
 
   private Flux<Pair<List<byte[]>, Long>> getNextMessagePage(final UUID destinationUuid, final byte destinationDevice,
@@ -318,22 +698,33 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
   @VisibleForTesting
   List<MessageProtos.Envelope> getMessagesToPersist(final UUID accountUuid, final byte destinationDevice,
       final int limit) {
-    return getMessagesTimer.record(() -> {
-      final List<ScoredValue<byte[]>> scoredMessages = readDeleteCluster.withBinaryCluster(
-          connection -> connection.sync()
-              .zrangeWithScores(getMessageQueueKey(accountUuid, destinationDevice), 0, limit));
-      final List<MessageProtos.Envelope> envelopes = new ArrayList<>(scoredMessages.size());
 
-      for (final ScoredValue<byte[]> scoredMessage : scoredMessages) {
-        try {
-          envelopes.add(MessageProtos.Envelope.parseFrom(scoredMessage.getValue()));
-        } catch (InvalidProtocolBufferException e) {
-          logger.warn("Failed to parse envelope", e);
-        }
-      }
+    return getMessagesToPersistAsync(accountUuid, destinationDevice, limit).join();
+  }
+
+  CompletableFuture<List<MessageProtos.Envelope>> getMessagesToPersistAsync(final UUID accountUuid,
+      final byte destinationDevice,
+      final int limit) {
+
+    final Timer.Sample sample = Timer.start();
+
+    return readDeleteCluster.withBinaryCluster(connection -> connection.async()
+            .zrangeWithScores(getMessageQueueKey(accountUuid, destinationDevice), 0, limit))
+        .toCompletableFuture()
+        .thenCompose(scoredMessages -> {
+          final List<MessageProtos.Envelope> envelopes = new ArrayList<>(scoredMessages.size());
+
+          for (final ScoredValue<byte[]> scoredMessage : scoredMessages) {
+            try {
+              envelopes.add(CachedEnvelopeCodec.decode(scoredMessage.getValue()));
+            } catch (InvalidProtocolBufferException e) {
+              logger.warn("Failed to parse envelope", e);
+            }
+          }
 
-      return envelopes;
-    });
+          return resolveSharedPayloads(accountUuid, destinationDevice, envelopes);
+        })
+        .whenComplete((ignored, throwable) -> sample.stop(getMessagesTimer));
   }
 
   public CompletableFuture<Void> clear(final UUID destinationUuid) {
@@ -344,6 +735,7 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
             .toArray(CompletableFuture[]::new));
   }
 
+  @SuppressWarnings("unchecked")
   public CompletableFuture<Void> clear(final UUID destinationUuid, final byte deviceId) {
     final Timer.Sample sample = Timer.start();
 
@@ -351,6 +743,9 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
                 getMessageQueueMetadataKey(destinationUuid, deviceId),
                 getQueueIndexKey(destinationUuid, deviceId)),
             Collections.emptyList())
+        .thenApplyAsync(result -> decodeEnvelopes((List<byte[]>) result), messageDeletionExecutorService)
+        // The removed messages' shared payloads would otherwise linger until they expire
+        .thenCompose(this::releaseSharedPayloads)
         .thenRun(() -> sample.stop(clearQueueTimer));
   }
 
@@ -359,28 +754,72 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
         % SlotHash.SLOT_COUNT);
   }
 
+  @VisibleForTesting
   List<String> getQueuesToPersist(final int slot, final Instant maxTime, final int limit) {
-    //noinspection unchecked
-    return getQueuesToPersistTimer.record(() -> (List<String>) getQueuesToPersistScript.execute(
-        List.of(new String(getQueueIndexKey(slot), StandardCharsets.UTF_8)),
-        List.of(String.valueOf(maxTime.toEpochMilli()),
-            String.valueOf(limit))));
+    return getQueuesToPersistAsync(slot, maxTime, limit).join();
+  }
+
+  @SuppressWarnings("unchecked")
+  CompletableFuture<List<String>> getQueuesToPersistAsync(final int slot, final Instant maxTime, final int limit) {
+    final Timer.Sample sample = Timer.start();
+
+    return getQueuesToPersistScript.executeAsync(
+            List.of(new String(getQueueIndexKey(slot), StandardCharsets.UTF_8)),
+            List.of(String.valueOf(maxTime.toEpochMilli()),
+                String.valueOf(limit)))
+        .thenApply(queues -> (List<String>) queues)
+        .whenComplete((ignored, throwable) -> sample.stop(getQueuesToPersistTimer));
   }
 
   void addQueueToPersist(final UUID accountUuid, final byte deviceId) {
-    readDeleteCluster.useBinaryCluster(connection -> connection.sync()
-        .zadd(getQueueIndexKey(accountUuid, deviceId), ZAddArgs.Builder.nx(), System.currentTimeMillis(),
-            getMessageQueueKey(accountUuid, deviceId)));
+    addQueueToPersistAsync(accountUuid, deviceId).join();
+  }
+
+  CompletableFuture<Void> addQueueToPersistAsync(final UUID accountUuid, final byte deviceId) {
+    return readDeleteCluster.withBinaryCluster(connection -> connection.async()
+            .zadd(getQueueIndexKey(accountUuid, deviceId), ZAddArgs.Builder.nx(), System.currentTimeMillis(),
+                getMessageQueueKey(accountUuid, deviceId)))
+        .toCompletableFuture()
+        .thenRun(Util.NOOP);
+  }
+
+  /**
+   * Returns the time at which the oldest queue in the given slot's persistence index was added to the index.
+   *
+   * @param slot the slot to inspect
+   *
+   * @return the time the oldest queue in the slot was added to the index, or empty if no queues in the slot are
+   * waiting to be persisted
+   */
+  Optional<Instant> getOldestQueueToPersistTimestamp(final int slot) {
+    final List<ScoredValue<byte[]>> oldestQueue = readDeleteCluster.withBinaryCluster(
+        connection -> connection.sync().zrangeWithScores(getQueueIndexKey(slot), 0, 0));
+
+    return oldestQueue.stream()
+        .findFirst()
+        .map(scoredValue -> Instant.ofEpochMilli((long) scoredValue.getScore()));
   }
 
   void lockQueueForPersistence(final UUID accountUuid, final byte deviceId) {
-    readDeleteCluster.useBinaryCluster(
-        connection -> connection.sync().setex(getPersistInProgressKey(accountUuid, deviceId), 30, LOCK_VALUE));
+    lockQueueForPersistenceAsync(accountUuid, deviceId).join();
+  }
+
+  CompletableFuture<Void> lockQueueForPersistenceAsync(final UUID accountUuid, final byte deviceId) {
+    return readDeleteCluster.withBinaryCluster(connection -> connection.async()
+            .setex(getPersistInProgressKey(accountUuid, deviceId), 30, LOCK_VALUE))
+        .toCompletableFuture()
+        .thenRun(Util.NOOP);
   }
 
   void unlockQueueForPersistence(final UUID accountUuid, final byte deviceId) {
-    readDeleteCluster.useBinaryCluster(
-        connection -> connection.sync().del(getPersistInProgressKey(accountUuid, deviceId)));
+    unlockQueueForPersistenceAsync(accountUuid, deviceId).join();
+  }
+
+  CompletableFuture<Void> unlockQueueForPersistenceAsync(final UUID accountUuid, final byte deviceId) {
+    return readDeleteCluster.withBinaryCluster(connection -> connection.async()
+            .del(getPersistInProgressKey(accountUuid, deviceId)))
+        .toCompletableFuture()
+        .thenRun(Util.NOOP);
   }
 
   boolean lockAccountForMessagePersisterCleanup(final UUID accountUuid) {
@@ -397,6 +836,14 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
         connection -> connection.sync().del(getUnlinkInProgressKey(accountUuid)));
   }
 
+  /**
+   * Registers a listener for new messages and persistence events for the given queue, replacing any listener
+   * previously registered for that queue.
+   * <p>
+   * Notifications come from the keyspace notification channels of the queue and its persistence lock. Keyspace
+   * notifications are only delivered by the node that owns the key, so this cache subscribes to them only on the node
+   * that owns the queue's slot, and inserts don't need to publish anything that would be broadcast to the whole cluster.
+   */
   public void addMessageAvailabilityListener(final UUID destinationUuid, final byte deviceId,
       final MessageAvailabilityListener listener) {
     final String queueName = getQueueName(destinationUuid, deviceId);
@@ -406,7 +853,7 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
       messageListenersByQueueName.put(queueName, listener);
       queueNamesByMessageListener.put(listener, queueName);
       // Submit to the Redis queue within the synchronized block, but don’t wait until exiting
-      subscribeFuture = subscribeForKeyspaceNotifications(queueName);
+      subscribeFuture = subscribeForNotifications(queueName);
     }
 
     subscribeFuture.join();
@@ -425,7 +872,7 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
         queueNamesByMessageListener.remove(listener);
         if (messageListenersByQueueName.remove(queueName, listener)) {
           // Submit to the Redis queue within the synchronized block, but don’t wait until exiting
-          unsubscribeFuture = unsubscribeFromKeyspaceNotifications(queueName);
+          unsubscribeFuture = unsubscribeFromNotifications(queueName);
         } else {
           messageAvailabilityListenerRemovedAfterAddCounter.increment();
           unsubscribeFuture = CompletableFuture.completedFuture(null);
@@ -436,29 +883,30 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
     }
   }
 
-  private void pruneStaleSubscription(final String channel) {
-    unsubscribeFromKeyspaceNotifications(getQueueNameFromKeyspaceChannel(channel))
+  private void pruneStaleSubscription(final String queueName) {
+    unsubscribeFromNotifications(queueName)
         .thenRun(prunedStaleSubscriptionCounter::increment);
   }
 
-  private CompletableFuture<Void> subscribeForKeyspaceNotifications(final String queueName) {
+  private CompletableFuture<Void> subscribeForNotifications(final String queueName) {
     final int slot = SlotHash.getSlot(queueName);
 
     return pubSubConnection.withPubSubConnection(
             connection -> connection.async()
                 .nodes(node -> node.is(RedisClusterNode.NodeFlag.UPSTREAM) && node.hasSlot(slot))
-            .commands()
-                .subscribe(getKeyspaceChannels(queueName))).toCompletableFuture()
+                .commands()
+                .subscribe(getKeyspaceChannels(queueName)))
+        .toCompletableFuture()
         .thenRun(Util.NOOP);
   }
 
-  private CompletableFuture<Void> unsubscribeFromKeyspaceNotifications(final String queueName) {
+  private CompletableFuture<Void> unsubscribeFromNotifications(final String queueName) {
     final int slot = SlotHash.getSlot(queueName);
 
     return pubSubConnection.withPubSubConnection(
             connection -> connection.async()
                 .nodes(node -> node.is(RedisClusterNode.NodeFlag.UPSTREAM) && node.hasSlot(slot))
-            .commands()
+                .commands()
                 .unsubscribe(getKeyspaceChannels(queueName)))
         .toCompletableFuture()
         .thenRun(Util.NOOP);
@@ -475,28 +923,40 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
   public void message(final RedisClusterNode node, final String channel, final String message) {
     pubSubMessageCounter.increment();
 
+    final boolean newMessages;
+
     if (channel.startsWith(QUEUE_KEYSPACE_PREFIX) && "zadd".equals(message)) {
+      newMessages = true;
+    } else if (channel.startsWith(PERSISTING_KEYSPACE_PREFIX) && "del".equals(message)) {
+      newMessages = false;
+    } else {
+      return;
+    }
+
+    final String queueName = getQueueNameFromChannel(channel);
+
+    if (newMessages) {
       newMessageNotificationCounter.increment();
       notificationExecutorService.execute(() -> {
         try {
-          findListener(channel).ifPresentOrElse(listener -> {
+          findListener(queueName).ifPresentOrElse(listener -> {
             if (!listener.handleNewMessagesAvailable()) {
               removeMessageAvailabilityListener(listener);
             }
-          }, () -> pruneStaleSubscription(channel));
+          }, () -> pruneStaleSubscription(queueName));
         } catch (final Exception e) {
           logger.warn("Unexpected error handling new message", e);
         }
       });
-    } else if (channel.startsWith(PERSISTING_KEYSPACE_PREFIX) && "del".equals(message)) {
+    } else {
       queuePersistedNotificationCounter.increment();
       notificationExecutorService.execute(() -> {
         try {
-          findListener(channel).ifPresentOrElse(listener -> {
+          findListener(queueName).ifPresentOrElse(listener -> {
             if (!listener.handleMessagesPersisted()) {
               removeMessageAvailabilityListener(listener);
             }
-          }, () -> pruneStaleSubscription(channel));
+          }, () -> pruneStaleSubscription(queueName));
         } catch (final Exception e) {
           logger.warn("Unexpected error handling messages persisted", e);
         }
@@ -504,9 +964,7 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
     }
   }
 
-  private Optional<MessageAvailabilityListener> findListener(final String keyspaceChannel) {
-    final String queueName = getQueueNameFromKeyspaceChannel(keyspaceChannel);
-
+  private Optional<MessageAvailabilityListener> findListener(final String queueName) {
     synchronized (messageListenersByQueueName) {
       return Optional.ofNullable(messageListenersByQueueName.get(queueName));
     }
@@ -518,7 +976,7 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
   }
 
   @VisibleForTesting
-  static String getQueueNameFromKeyspaceChannel(final String channel) {
+  static String getQueueNameFromChannel(final String channel) {
     final int startOfHashTag = channel.indexOf('{');
     final int endOfHashTag = channel.lastIndexOf('}');
 
@@ -542,6 +1000,18 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
     return ("user_queue_index::{" + RedisClusterUtil.getMinimalHashTag(slot) + "}").getBytes(StandardCharsets.UTF_8);
   }
 
+  /**
+   * A single message to be inserted as part of a batch.
+   *
+   * @see #insert(List)
+   */
+  public record InsertRequest(UUID guid, UUID destinationUuid, byte destinationDevice, MessageProtos.Envelope message) {
+  }
+
+  private static byte[] getSharedPayloadKey(final UUID sharedPayloadId) {
+    return ("user_queue_shared_payload::{" + sharedPayloadId + "}").getBytes(StandardCharsets.UTF_8);
+  }
+
   private static byte[] getPersistInProgressKey(final UUID accountUuid, final byte deviceId) {
     return ("user_queue_persisting::{" + accountUuid + "::" + deviceId + "}").getBytes(StandardCharsets.UTF_8);
   }
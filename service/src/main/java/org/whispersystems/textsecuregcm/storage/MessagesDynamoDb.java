@@ -88,6 +88,33 @@ public class MessagesDynamoDb extends AbstractDynamoDbStore {
     storeTimer.record(() -> writeInBatches(messages, (messageBatch) -> storeBatch(messageBatch, destinationAccountUuid, destinationDeviceId)));
   }
 
+  /**
+   * Asynchronously stores the given messages. Messages are written in concurrent batches of at most
+   * {@link #DYNAMO_DB_MAX_BATCH_SIZE}, and unprocessed items are retried.
+   *
+   * @param messages the messages to store
+   * @param destinationAccountUuid the account identifier of the messages' destination
+   * @param destinationDeviceId the device identifier of the messages' destination
+   *
+   * @return a future that completes when all messages have been stored
+   *
+   * @see #executeTableWriteItemsUntilCompleteAsync(DynamoDbAsyncClient, String, java.util.Collection)
+   */
+  public CompletableFuture<Void> storeAsync(final List<MessageProtos.Envelope> messages,
+      final UUID destinationAccountUuid,
+      final byte destinationDeviceId) {
+
+    final Timer.Sample sample = Timer.start();
+    final AttributeValue partitionKey = convertPartitionKey(destinationAccountUuid);
+
+    final List<WriteRequest> writeRequests = messages.stream()
+        .map(message -> buildStoreWriteRequest(message, partitionKey, destinationDeviceId))
+        .toList();
+
+    return executeTableWriteItemsUntilCompleteAsync(dbAsyncClient, tableName, writeRequests)
+        .whenComplete((ignored, throwable) -> sample.stop(storeTimer));
+  }
+
   private void storeBatch(final List<MessageProtos.Envelope> messages, final UUID destinationAccountUuid,
       final byte destinationDeviceId) {
     if (messages.size() > DYNAMO_DB_MAX_BATCH_SIZE) {
@@ -97,23 +124,30 @@ public class MessagesDynamoDb extends AbstractDynamoDbStore {
     final AttributeValue partitionKey = convertPartitionKey(destinationAccountUuid);
     List<WriteRequest> writeItems = new ArrayList<>();
     for (MessageProtos.Envelope message : messages) {
-      final UUID messageUuid = UUID.fromString(message.getServerGuid());
-
-      final ImmutableMap.Builder<String, AttributeValue> item = ImmutableMap.<String, AttributeValue>builder()
-          .put(KEY_PARTITION, partitionKey)
-          .put(KEY_SORT, convertSortKey(destinationDeviceId, message.getServerTimestamp(), messageUuid))
-          .put(LOCAL_INDEX_MESSAGE_UUID_KEY_SORT, convertLocalIndexMessageUuidSortKey(messageUuid))
-          .put(KEY_TTL, AttributeValues.fromLong(getTtlForMessage(message)))
-          .put(KEY_ENVELOPE_BYTES, AttributeValue.builder().b(SdkBytes.fromByteArray(message.toByteArray())).build());
-
-      writeItems.add(WriteRequest.builder().putRequest(PutRequest.builder()
-          .item(item.build())
-          .build()).build());
+      writeItems.add(buildStoreWriteRequest(message, partitionKey, destinationDeviceId));
     }
 
     executeTableWriteItemsUntilComplete(Map.of(tableName, writeItems));
   }
 
+  private WriteRequest buildStoreWriteRequest(final MessageProtos.Envelope message,
+      final AttributeValue partitionKey,
+      final byte destinationDeviceId) {
+
+    final UUID messageUuid = UUID.fromString(message.getServerGuid());
+
+    final ImmutableMap.Builder<String, AttributeValue> item = ImmutableMap.<String, AttributeValue>builder()
+        .put(KEY_PARTITION, partitionKey)
+        .put(KEY_SORT, convertSortKey(destinationDeviceId, message.getServerTimestamp(), messageUuid))
+        .put(LOCAL_INDEX_MESSAGE_UUID_KEY_SORT, convertLocalIndexMessageUuidSortKey(messageUuid))
+        .put(KEY_TTL, AttributeValues.fromLong(getTtlForMessage(message)))
+        .put(KEY_ENVELOPE_BYTES, AttributeValue.builder().b(SdkBytes.fromByteArray(message.toByteArray())).build());
+
+    return WriteRequest.builder().putRequest(PutRequest.builder()
+        .item(item.build())
+        .build()).build();
+  }
+
   public Publisher<MessageProtos.Envelope> load(final UUID destinationAccountUuid, final byte destinationDeviceId,
       final Integer limit) {
 
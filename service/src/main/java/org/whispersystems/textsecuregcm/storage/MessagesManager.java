@@ -10,14 +10,15 @@ import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 import io.micrometer.core.instrument.Metrics;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.reactivestreams.Publisher;
@@ -70,6 +71,53 @@ public class MessagesManager {
     }
   }
 
+  /**
+   * Inserts a batch of messages, potentially destined for many different devices, into the message cache with a single
+   * pipelined bulk operation.
+   *
+   * @param messages the messages to insert and their destinations
+   *
+   * @return a list of futures, in the same order as the given messages, that yield the GUID assigned to each message
+   * or fail with the error that prevented that particular message from being inserted
+   *
+   * @see MessagesCache#insert(List)
+   */
+  public List<CompletableFuture<UUID>> insert(final List<DestinationMessage> messages) {
+    final List<UUID> messageGuids = new ArrayList<>(messages.size());
+    final List<MessagesCache.InsertRequest> insertRequests = new ArrayList<>(messages.size());
+
+    for (final DestinationMessage message : messages) {
+      final UUID messageGuid = UUID.randomUUID();
+
+      messageGuids.add(messageGuid);
+      insertRequests.add(new MessagesCache.InsertRequest(messageGuid,
+          message.destinationUuid(), message.destinationDevice(), message.envelope()));
+    }
+
+    final List<CompletableFuture<Long>> insertFutures = messagesCache.insert(insertRequests);
+
+    // Report hashes are only ever used to look up messages that were actually received, so storing a hash for a message
+    // whose insertion ultimately fails is harmless; store them here rather than blocking a Redis I/O thread later.
+    for (int i = 0; i < messages.size(); i++) {
+      final DestinationMessage message = messages.get(i);
+
+      if (message.envelope().hasSourceUuid()
+          && !message.destinationUuid().toString().equals(message.envelope().getSourceUuid())) {
+
+        reportMessageManager.store(message.envelope().getSourceUuid(), messageGuids.get(i));
+      }
+    }
+
+    final List<CompletableFuture<UUID>> guidFutures = new ArrayList<>(messages.size());
+
+    for (int i = 0; i < messages.size(); i++) {
+      final UUID messageGuid = messageGuids.get(i);
+      guidFutures.add(insertFutures.get(i).thenApply(ignored -> messageGuid));
+    }
+
+    return guidFutures;
+  }
+
   public boolean hasCachedMessages(final UUID destinationUuid, final byte destinationDevice) {
     return messagesCache.hasMessages(destinationUuid, destinationDevice);
   }
@@ -140,9 +188,67 @@ public class MessagesManager {
   }
 
   /**
-   * @return the number of messages successfully removed from the cache.
+   * Deletes a batch of messages from a single device's queue. Messages are removed from the cache in a single
+   * operation, and any messages not found in the cache are deleted individually from DynamoDB.
+   *
+   * @param destinationUuid the account identifier of the queue's owner
+   * @param destinationDeviceId the device identifier of the queue's owner
+   * @param deleteRequests the messages to delete
+   *
+   * @return a list of futures, in the same order as the given requests, each of which completes with the deleted
+   * message if it could be found
+   *
+   * @see #delete(UUID, byte, UUID, Long)
+   */
+  public List<CompletableFuture<Optional<Envelope>>> delete(final UUID destinationUuid,
+      final byte destinationDeviceId,
+      final List<DeleteRequest> deleteRequests) {
+
+    final CompletableFuture<Map<UUID, Envelope>> removedByGuidFuture =
+        messagesCache.remove(destinationUuid, destinationDeviceId,
+                deleteRequests.stream().map(DeleteRequest::guid).distinct().toList())
+            .thenApply(removed -> removed.stream()
+                .collect(Collectors.toMap(envelope -> UUID.fromString(envelope.getServerGuid()), Function.identity(),
+                    (a, b) -> a)));
+
+    return deleteRequests.stream()
+        .map(deleteRequest -> removedByGuidFuture.thenComposeAsync(removedByGuid -> {
+          final Envelope removed = removedByGuid.get(deleteRequest.guid());
+
+          if (removed != null) {
+            cacheHitByGuidMeter.mark();
+            return CompletableFuture.completedFuture(Optional.of(removed));
+          }
+
+          cacheMissByGuidMeter.mark();
+
+          if (deleteRequest.serverTimestamp() == null) {
+            return messagesDynamoDb.deleteMessageByDestinationAndGuid(destinationUuid, deleteRequest.guid());
+          } else {
+            return messagesDynamoDb.deleteMessage(destinationUuid, destinationDeviceId, deleteRequest.guid(),
+                deleteRequest.serverTimestamp());
+          }
+        }, messageDeletionExecutor))
+        .toList();
+  }
+
+  /**
+   * A single message to be deleted as part of a batch.
+   *
+   * @param guid the server-assigned identifier of the message to delete
+   * @param serverTimestamp the server timestamp of the message, if known
+   *
+   * @see #delete(UUID, byte, List)
    */
-  public int persistMessages(
+  public record DeleteRequest(UUID guid, @Nullable Long serverTimestamp) {
+  }
+
+  /**
+   * Stores the given messages in DynamoDB and then removes them from the cache.
+   *
+   * @return a future that completes with the number of messages successfully removed from the cache
+   */
+  public CompletableFuture<Integer> persistMessages(
       final UUID destinationUuid,
       final byte destinationDeviceId,
       final List<Envelope> messages) {
@@ -151,20 +257,20 @@ public class MessagesManager {
         .filter(envelope -> !envelope.getEphemeral())
         .collect(Collectors.toList());
 
-    messagesDynamoDb.store(nonEphemeralMessages, destinationUuid, destinationDeviceId);
-
     final List<UUID> messageGuids = messages.stream().map(message -> UUID.fromString(message.getServerGuid()))
         .collect(Collectors.toList());
-    int messagesRemovedFromCache = 0;
-    try {
-      messagesRemovedFromCache = messagesCache.remove(destinationUuid, destinationDeviceId, messageGuids)
-          .get(30, TimeUnit.SECONDS).size();
-      persistMessageMeter.mark(nonEphemeralMessages.size());
-
-    } catch (InterruptedException | ExecutionException | TimeoutException e) {
-      logger.warn("Failed to remove messages from cache", e);
-    }
-    return messagesRemovedFromCache;
+
+    return messagesDynamoDb.storeAsync(nonEphemeralMessages, destinationUuid, destinationDeviceId)
+        .thenCompose(ignored -> messagesCache.remove(destinationUuid, destinationDeviceId, messageGuids)
+            .orTimeout(30, TimeUnit.SECONDS)
+            .thenApply(removedMessages -> {
+              persistMessageMeter.mark(nonEphemeralMessages.size());
+              return removedMessages.size();
+            })
+            .exceptionally(throwable -> {
+              logger.warn("Failed to remove messages from cache", throwable);
+              return 0;
+            }));
   }
 
   public void addMessageAvailabilityListener(
@@ -178,4 +284,12 @@ public class MessagesManager {
     messagesCache.removeMessageAvailabilityListener(listener);
   }
 
+  /**
+   * A message and the device to which it should be delivered.
+   *
+   * @see #insert(List)
+   */
+  public record DestinationMessage(UUID destinationUuid, byte destinationDevice, Envelope envelope) {
+  }
+
 }
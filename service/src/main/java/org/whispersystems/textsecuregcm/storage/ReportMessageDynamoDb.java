@@ -3,23 +3,31 @@ package org.whispersystems.textsecuregcm.storage;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Timer;
 import org.whispersystems.textsecuregcm.util.AttributeValues;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
 import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
 import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static org.whispersystems.textsecuregcm.metrics.MetricsUtil.name;
 
-public class ReportMessageDynamoDb {
+public class ReportMessageDynamoDb extends AbstractDynamoDbStore {
 
   static final String KEY_HASH = "H";
   static final String ATTR_TTL = "E";
 
   private final DynamoDbClient db;
+  private final DynamoDbAsyncClient asyncDb;
   private final String tableName;
   private final Duration ttl;
 
@@ -30,8 +38,15 @@ public class ReportMessageDynamoDb {
       .distributionStatisticExpiry(Duration.ofDays(1))
       .register(Metrics.globalRegistry);
 
-  public ReportMessageDynamoDb(final DynamoDbClient dynamoDB, final String tableName, final Duration ttl) {
+  public ReportMessageDynamoDb(final DynamoDbClient dynamoDB,
+      final DynamoDbAsyncClient dynamoDbAsyncClient,
+      final String tableName,
+      final Duration ttl) {
+
+    super(dynamoDB);
+
     this.db = dynamoDB;
+    this.asyncDb = dynamoDbAsyncClient;
     this.tableName = tableName;
     this.ttl = ttl;
   }
@@ -39,13 +54,36 @@ public class ReportMessageDynamoDb {
   public void store(byte[] hash) {
     db.putItem(PutItemRequest.builder()
         .tableName(tableName)
-        .item(Map.of(
-            KEY_HASH, AttributeValues.fromByteArray(hash),
-            ATTR_TTL, AttributeValues.fromLong(Instant.now().plus(ttl).getEpochSecond())
-        ))
+        .item(getItem(hash, Instant.now()))
         .build());
   }
 
+  /**
+   * Stores the given hashes with as few {@code BatchWriteItem} calls as possible. Hashes must be distinct, since
+   * DynamoDB rejects batches that contain duplicate keys.
+   *
+   * @param hashes the hashes to store
+   *
+   * @return a future that completes when all hashes have been stored
+   */
+  public CompletableFuture<Void> store(final Collection<byte[]> hashes) {
+    final Instant now = Instant.now();
+
+    final List<WriteRequest> writeRequests = hashes.stream()
+        .map(hash -> WriteRequest.builder()
+            .putRequest(PutRequest.builder().item(getItem(hash, now)).build())
+            .build())
+        .toList();
+
+    return executeTableWriteItemsUntilCompleteAsync(asyncDb, tableName, writeRequests);
+  }
+
+  private Map<String, AttributeValue> getItem(final byte[] hash, final Instant now) {
+    return Map.of(
+        KEY_HASH, AttributeValues.fromByteArray(hash),
+        ATTR_TTL, AttributeValues.fromLong(now.plus(ttl).getEpochSecond()));
+  }
+
   public boolean remove(byte[] hash) {
     final DeleteItemResponse deleteItemResponse = db.deleteItem(DeleteItemRequest.builder()
         .tableName(tableName)
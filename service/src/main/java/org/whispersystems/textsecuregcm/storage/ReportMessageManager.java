@@ -5,16 +5,25 @@
 
 package org.whispersystems.textsecuregcm.storage;
 
+import com.google.common.annotations.VisibleForTesting;
+import io.dropwizard.lifecycle.Managed;
 import io.lettuce.core.RedisException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Tags;
 import org.slf4j.Logger;
@@ -24,7 +33,15 @@ import org.whispersystems.textsecuregcm.metrics.UserAgentTagUtil;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
 import org.whispersystems.textsecuregcm.util.UUIDUtil;
 
-public class ReportMessageManager {
+/**
+ * Stores hashes of sent messages so that recipients can later report them as spam, and records those reports.
+ * <p>
+ * Hashes are stored on the send path, so rather than writing each one to DynamoDB as it arrives, the report message
+ * manager collects them in a bounded buffer and writes them in batches from a background thread. If hashes arrive
+ * faster than they can be written, the oldest pending hashes are discarded; a discarded hash only means that a
+ * report of the corresponding message won't be attributed to its sender.
+ */
+public class ReportMessageManager implements Managed {
 
   private final ReportMessageDynamoDb reportMessageDynamoDb;
   private final FaultTolerantRedisCluster rateLimitCluster;
@@ -33,37 +50,163 @@ public class ReportMessageManager {
 
   private final List<ReportedMessageListener> reportedMessageListeners = new ArrayList<>();
 
+  private final BlockingQueue<byte[]> pendingHashes;
+  private final Duration storeTimeout;
+  private final Thread flushThread;
+  private volatile boolean running;
+
+  @VisibleForTesting
+  static final int MAX_PENDING_HASHES = 65_536;
+
+  @VisibleForTesting
+  static final int MAX_HASHES_PER_FLUSH = AbstractDynamoDbStore.MAX_ASYNC_BATCH_WRITE_ITEMS;
+
+  private static final long FLUSH_POLL_TIMEOUT_MILLIS = 100;
+
+  private static final Duration STORE_TIMEOUT = Duration.ofSeconds(30);
+
   private static final String REPORT_MESSAGE_COUNTER_NAME = MetricsUtil.name(ReportMessageManager.class, "reportMessage");
   private static final String FOUND_MESSAGE_TAG = "foundMessage";
   private static final String TOKEN_PRESENT_TAG = "hasReportSpamToken";
 
+  private static final String PENDING_HASHES_GAUGE_NAME = MetricsUtil.name(ReportMessageManager.class, "pendingHashes");
+  private static final Counter STORED_HASHES_COUNTER =
+      Metrics.counter(MetricsUtil.name(ReportMessageManager.class, "storedHashes"));
+  private static final Counter DROPPED_HASHES_COUNTER =
+      Metrics.counter(MetricsUtil.name(ReportMessageManager.class, "droppedHashes"));
+  private static final Counter FAILED_HASHES_COUNTER =
+      Metrics.counter(MetricsUtil.name(ReportMessageManager.class, "failedHashes"));
+
   private static final Logger logger = LoggerFactory.getLogger(ReportMessageManager.class);
 
   public ReportMessageManager(final ReportMessageDynamoDb reportMessageDynamoDb,
       final FaultTolerantRedisCluster rateLimitCluster,
       final Duration counterTtl) {
 
+    this(reportMessageDynamoDb, rateLimitCluster, counterTtl, MAX_PENDING_HASHES, STORE_TIMEOUT);
+  }
+
+  @VisibleForTesting
+  ReportMessageManager(final ReportMessageDynamoDb reportMessageDynamoDb,
+      final FaultTolerantRedisCluster rateLimitCluster,
+      final Duration counterTtl,
+      final int maxPendingHashes,
+      final Duration storeTimeout) {
+
     this.reportMessageDynamoDb = reportMessageDynamoDb;
     this.rateLimitCluster = rateLimitCluster;
 
     this.counterTtl = counterTtl;
+
+    this.pendingHashes = Metrics.gaugeCollectionSize(PENDING_HASHES_GAUGE_NAME, Tags.empty(),
+        new ArrayBlockingQueue<>(maxPendingHashes));
+    this.storeTimeout = storeTimeout;
+
+    this.flushThread = new Thread(() -> {
+      while (running) {
+        try {
+          flushPendingHashes(FLUSH_POLL_TIMEOUT_MILLIS);
+        } catch (final InterruptedException e) {
+          logger.warn("Interrupted while waiting for hashes to flush");
+        }
+      }
+    }, "ReportMessageHashWriter");
+  }
+
+  @Override
+  public void start() {
+    running = true;
+    flushThread.start();
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+
+    try {
+      flushThread.join();
+    } catch (final InterruptedException e) {
+      logger.warn("Interrupted while waiting for hash writer thread to complete current operation");
+    }
+
+    // Write out anything that arrived while the writer thread was winding down
+    try {
+      while (!pendingHashes.isEmpty()) {
+        flushPendingHashes(0);
+      }
+    } catch (final InterruptedException e) {
+      logger.warn("Interrupted while flushing pending hashes");
+    }
   }
 
   public void addListener(final ReportedMessageListener listener) {
     this.reportedMessageListeners.add(listener);
   }
 
+  /**
+   * Queues a hash of the given message for storage so it may be reported later. Hashes are written asynchronously and
+   * may be discarded under sustained overload.
+   *
+   * @param sourceAci the identifier of the message's sender
+   * @param messageGuid the server-assigned GUID of the message
+   */
   public void store(String sourceAci, UUID messageGuid) {
 
     try {
       Objects.requireNonNull(sourceAci);
 
-      reportMessageDynamoDb.store(hash(messageGuid, sourceAci));
+      final byte[] hash = hash(messageGuid, sourceAci);
+
+      while (!pendingHashes.offer(hash)) {
+        if (pendingHashes.poll() != null) {
+          DROPPED_HASHES_COUNTER.increment();
+        }
+      }
     } catch (final Exception e) {
       logger.warn("Failed to store hash", e);
     }
   }
 
+  /**
+   * Writes up to {@link #MAX_HASHES_PER_FLUSH} pending hashes, waiting up to the given timeout for the first hash to
+   * arrive if none are pending. A write that doesn't finish within the store timeout is counted as failed so that the
+   * writer can move on to the next batch.
+   *
+   * @return the number of hashes removed from the pending queue, whether or not they were stored successfully
+   */
+  @VisibleForTesting
+  int flushPendingHashes(final long timeoutMillis) throws InterruptedException {
+    final byte[] firstHash = pendingHashes.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+
+    if (firstHash == null) {
+      return 0;
+    }
+
+    final List<byte[]> hashes = new ArrayList<>(MAX_HASHES_PER_FLUSH);
+    hashes.add(firstHash);
+    pendingHashes.drainTo(hashes, MAX_HASHES_PER_FLUSH - 1);
+
+    // The same message may be stored more than once (e.g. when a send is retried), and DynamoDB rejects an entire
+    // batch if it contains duplicate keys
+    final Set<ByteBuffer> distinctHashes = new LinkedHashSet<>(hashes.size());
+    hashes.forEach(hash -> distinctHashes.add(ByteBuffer.wrap(hash)));
+
+    try {
+      reportMessageDynamoDb.store(distinctHashes.stream().map(ByteBuffer::array).toList())
+          .get(storeTimeout.toMillis(), TimeUnit.MILLISECONDS);
+
+      STORED_HASHES_COUNTER.increment(distinctHashes.size());
+    } catch (final InterruptedException e) {
+      FAILED_HASHES_COUNTER.increment(distinctHashes.size());
+      throw e;
+    } catch (final Exception e) {
+      FAILED_HASHES_COUNTER.increment(distinctHashes.size());
+      logger.warn("Failed to store {} hashes", distinctHashes.size(), e);
+    }
+
+    return hashes.size();
+  }
+
   public void report(final Optional<String> sourceNumber,
       final Optional<UUID> sourceAci,
       final Optional<UUID> sourcePni,
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.util;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An executor that runs each task in its own virtual thread, but runs no more than a fixed number of tasks at once.
+ * Tasks submitted while the limit is reached wait, in submission order, in parked virtual threads rather than in a work
+ * queue, so blocking tasks never hold a platform thread while they wait for I/O and the number of threads never caps
+ * the number of tasks that may be waiting to run.
+ */
+public class BoundedVirtualThreadExecutor extends AbstractExecutorService {
+
+  private final ExecutorService delegate;
+  private final Semaphore semaphore;
+
+  /**
+   * @param name a prefix for the names of this executor's threads; threads are named {@code name-N}
+   * @param maxConcurrency the maximum number of tasks this executor may run at once
+   */
+  public BoundedVirtualThreadExecutor(final String name, final int maxConcurrency) {
+    if (maxConcurrency < 1) {
+      throw new IllegalArgumentException("Maximum concurrency must be positive");
+    }
+
+    this.delegate = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+    this.semaphore = new Semaphore(maxConcurrency, true);
+  }
+
+  @Override
+  public void execute(final Runnable command) {
+    delegate.execute(() -> {
+      try {
+        semaphore.acquire();
+      } catch (final InterruptedException e) {
+        // The executor is shutting down, and the task never started
+        return;
+      }
+
+      try {
+        command.run();
+      } finally {
+        semaphore.release();
+      }
+    });
+  }
+
+  /**
+   * @return the number of tasks that have been submitted, but are waiting for other tasks to finish before they can run
+   */
+  public int getQueuedTaskCount() {
+    return semaphore.getQueueLength();
+  }
+
+  @Override
+  public void shutdown() {
+    delegate.shutdown();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    return delegate.shutdownNow();
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return delegate.isShutdown();
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return delegate.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+    return delegate.awaitTermination(timeout, unit);
+  }
+}
@@ -24,6 +24,12 @@ public final class HeaderUtils {
 
   public static final String TIMESTAMP_HEADER = "X-Signal-Timestamp";
 
+  /**
+   * Sent by websocket clients at connect time to indicate that they accept batches of envelopes, and the maximum number
+   * of envelopes they accept in a single batch.
+   */
+  public static final String X_SIGNAL_RECEIVE_MESSAGE_BATCHES = "X-Signal-Receive-Message-Batches";
+
   public static final String UNIDENTIFIED_ACCESS_KEY = "Unidentified-Access-Key";
 
   public static final String GROUP_SEND_CREDENTIAL = "Group-Send-Credential";
@@ -13,6 +13,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ser.FilterProvider;
 import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
 import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
@@ -28,6 +29,8 @@ public class SystemMapper {
 
   private static final ObjectMapper YAML_MAPPER = configureMapper(new YAMLMapper());
 
+  private static final ObjectMapper CBOR_MAPPER = configureMapper(new CBORMapper());
+
 
   @Nonnull
   public static ObjectMapper jsonMapper() {
@@ -39,6 +42,11 @@ public class SystemMapper {
     return YAML_MAPPER;
   }
 
+  @Nonnull
+  public static ObjectMapper cborMapper() {
+    return CBOR_MAPPER;
+  }
+
   public static ObjectMapper configureMapper(final ObjectMapper mapper) {
     return mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
         .setFilterProvider(new SimpleFilterProvider().setDefaultFilter(SimpleBeanPropertyFilter.serializeAll()))
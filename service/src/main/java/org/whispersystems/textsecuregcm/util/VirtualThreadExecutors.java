@@ -0,0 +1,121 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.util;
+
+import io.dropwizard.lifecycle.ExecutorServiceManager;
+import io.dropwizard.lifecycle.setup.LifecycleEnvironment;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+import org.whispersystems.textsecuregcm.configuration.VirtualThreadConfiguration;
+import org.whispersystems.textsecuregcm.metrics.MetricsUtil;
+
+/**
+ * Chooses, per executor, between a fixed pool of platform threads and a {@link BoundedVirtualThreadExecutor} according
+ * to a {@link VirtualThreadConfiguration}.
+ * <p>
+ * Only executors whose tasks spend most of their time blocked on network I/O, and that don't rely on the behavior of a
+ * particular work queue, are eligible:
+ *
+ * <ul>
+ *   <li>{@value #BATCH_IDENTITY_CHECK} checks identity keys with blocking DynamoDB reads</li>
+ *   <li>{@value #MULTI_RECIPIENT_MESSAGE} resolves and delivers to the recipients of multi-recipient messages</li>
+ *   <li>{@value #ACCOUNT_LOCK} acquires and releases DynamoDB-backed account locks</li>
+ *   <li>{@value #CLIENT_PRESENCE} disconnects clients with blocking Redis commands</li>
+ *   <li>{@value #FCM_SENDER} makes blocking HTTP calls to FCM</li>
+ * </ul>
+ *
+ * Other executors must stay on platform threads. Notably, the receipt sender relies on a bounded queue and a
+ * caller-runs policy to push back on callers, the APNs sender's client is already asynchronous and expects a single
+ * thread, and the message delivery, message deletion, and keyspace notification executors run short, non-blocking
+ * tasks for which virtual threads offer no benefit.
+ * <p>
+ * Virtual threads that block while holding a monitor pin their carrier threads; see
+ * {@link org.whispersystems.textsecuregcm.metrics.VirtualThreadPinnedEventMonitor}.
+ */
+public class VirtualThreadExecutors {
+
+  public static final String BATCH_IDENTITY_CHECK = "batchIdentityCheck";
+  public static final String MULTI_RECIPIENT_MESSAGE = "multiRecipientMessage";
+  public static final String ACCOUNT_LOCK = "accountLock";
+  public static final String CLIENT_PRESENCE = "clientPresence";
+  public static final String FCM_SENDER = "fcmSender";
+
+  public static final Set<String> ELIGIBLE_EXECUTORS =
+      Set.of(BATCH_IDENTITY_CHECK, MULTI_RECIPIENT_MESSAGE, ACCOUNT_LOCK, CLIENT_PRESENCE, FCM_SENDER);
+
+  private static final String QUEUED_TASKS_GAUGE_NAME =
+      MetricsUtil.name(VirtualThreadExecutors.class, "queuedTasks");
+
+  private static final io.dropwizard.util.Duration SHUTDOWN_PERIOD = io.dropwizard.util.Duration.seconds(5);
+
+  private final VirtualThreadConfiguration configuration;
+  private final LifecycleEnvironment lifecycleEnvironment;
+
+  public VirtualThreadExecutors(final VirtualThreadConfiguration configuration,
+      final LifecycleEnvironment lifecycleEnvironment) {
+
+    final Set<String> ineligibleExecutors = new HashSet<>(configuration.enabledExecutors());
+    ineligibleExecutors.removeAll(ELIGIBLE_EXECUTORS);
+
+    if (!ineligibleExecutors.isEmpty()) {
+      throw new IllegalArgumentException("Executors may not use virtual threads: " + ineligibleExecutors);
+    }
+
+    this.configuration = configuration;
+    this.lifecycleEnvironment = lifecycleEnvironment;
+  }
+
+  /**
+   * Returns an executor for the given name, backed by virtual threads if enabled for that executor or built by the given
+   * supplier otherwise.
+   *
+   * @param name the name of the executor; must be one of {@link #ELIGIBLE_EXECUTORS}
+   * @param platformThreads the number of threads in the executor's platform thread pool, which is also the number of
+   * tasks a virtual-thread executor may run at once unless configured otherwise
+   * @param platformExecutorSupplier builds the executor's platform thread pool
+   *
+   * @return an executor for the given name
+   */
+  public ExecutorService executorService(final String name, final int platformThreads,
+      final Supplier<ExecutorService> platformExecutorSupplier) {
+
+    if (!ELIGIBLE_EXECUTORS.contains(name)) {
+      throw new IllegalArgumentException("Executor may not use virtual threads: " + name);
+    }
+
+    if (!configuration.enabledExecutors().contains(name)) {
+      return platformExecutorSupplier.get();
+    }
+
+    final BoundedVirtualThreadExecutor executor = new BoundedVirtualThreadExecutor(name,
+        configuration.maxConcurrency().getOrDefault(name, platformThreads));
+
+    Metrics.gauge(QUEUED_TASKS_GAUGE_NAME, Tags.of("executor", name), executor,
+        BoundedVirtualThreadExecutor::getQueuedTaskCount);
+
+    lifecycleEnvironment.manage(new ExecutorServiceManager(executor, SHUTDOWN_PERIOD, name));
+
+    return executor;
+  }
+
+  /**
+   * @return the name of the virtual-thread executor that owns the thread with the given name, or "other" if the thread
+   * doesn't belong to a virtual-thread executor
+   */
+  public static String getExecutorName(final String threadName) {
+    final int separator = threadName.lastIndexOf('-');
+
+    if (separator > 0 && ELIGIBLE_EXECUTORS.contains(threadName.substring(0, separator))) {
+      return threadName.substring(0, separator);
+    }
+
+    return "other";
+  }
+}
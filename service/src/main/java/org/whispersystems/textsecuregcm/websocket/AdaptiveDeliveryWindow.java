@@ -0,0 +1,258 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.websocket;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+
+/**
+ * Limits the number of requests a connection keeps in flight to a single client, adapting the limit to the client's
+ * acknowledgement latency.
+ * <p>
+ * The window grows by one for each prompt acknowledgement until it first shrinks ("slow start"), and by roughly one per
+ * window's worth of prompt acknowledgements thereafter. It halves, but never drops below its floor, when a request
+ * fails or times out, or when a request takes longer than a fixed multiple of the shortest recently-observed latency to
+ * be acknowledged; a client that takes longer to respond as more requests are in flight is queueing requests rather than
+ * processing them faster. The window shrinks at most once for any group of requests that were in flight together, since
+ * they will typically all see the same delay.
+ * <p>
+ * The window doesn't queue requests itself. Instead, {@link #flatMapWithinWindow(Flux, Function)} requests elements
+ * from upstream only as the window has room to send them, so requests that don't fit in the window are never created
+ * and their elements stay wherever they came from.
+ */
+class AdaptiveDeliveryWindow {
+
+  // The shortest latency is re-measured every so often so that the window can recover after a client's latency rises
+  // permanently (for example, after moving from Wi-Fi to a cellular network)
+  @VisibleForTesting
+  static final int MIN_LATENCY_SAMPLE_COUNT = 128;
+
+  private final int minWindow;
+  private final int maxWindow;
+  private final double latencyToleranceRatio;
+  private final LongSupplier nanoClock;
+
+  private double window;
+  private boolean slowStart = true;
+
+  private long minLatencyNanos = Long.MAX_VALUE;
+  private long nextMinLatencyNanos = Long.MAX_VALUE;
+  private int latencySamples = 0;
+
+  private long lastDecreaseNanos;
+
+  AdaptiveDeliveryWindow(final int minWindow, final int maxWindow, final int initialWindow,
+      final double latencyToleranceRatio) {
+
+    this(minWindow, maxWindow, initialWindow, latencyToleranceRatio, System::nanoTime);
+  }
+
+  @VisibleForTesting
+  AdaptiveDeliveryWindow(final int minWindow, final int maxWindow, final int initialWindow,
+      final double latencyToleranceRatio, final LongSupplier nanoClock) {
+
+    this.minWindow = Math.max(1, minWindow);
+    this.maxWindow = Math.max(this.minWindow, maxWindow);
+    this.window = Math.max(this.minWindow, Math.min(this.maxWindow, initialWindow));
+    this.latencyToleranceRatio = latencyToleranceRatio;
+    this.nanoClock = nanoClock;
+    this.lastDecreaseNanos = nanoClock.getAsLong();
+  }
+
+  /**
+   * Starts a request immediately and adjusts the window according to how long the client takes to acknowledge it.
+   * Callers are responsible for keeping no more than {@link #getWindowSize()} requests in flight, usually by starting
+   * requests from within {@link #flatMapWithinWindow(Flux, Function)}.
+   *
+   * @param request a supplier that starts the request and returns a future that completes when the client has
+   * acknowledged it
+   *
+   * @return a future that completes with the result of the request
+   */
+  <T> CompletableFuture<T> track(final Supplier<CompletableFuture<T>> request) {
+    final long start = nanoClock.getAsLong();
+    CompletableFuture<T> requestFuture;
+
+    try {
+      requestFuture = request.get();
+    } catch (final RuntimeException e) {
+      requestFuture = CompletableFuture.failedFuture(e);
+    }
+
+    return requestFuture.whenComplete((value, throwable) ->
+        adjustWindow(start, nanoClock.getAsLong() - start, throwable == null));
+  }
+
+  /**
+   * Maps each element of the given flux to an asynchronous send, keeping no more sends in progress at once than the
+   * window currently allows. Elements are requested from upstream only when the window has room for them. Sends begin
+   * as soon as their elements arrive, so any timeouts applied by the mapper cover only the send itself.
+   * <p>
+   * The returned flux completes when the upstream flux has completed and all sends have finished. It fails with the
+   * first error from upstream or from any send, at which point it cancels the upstream flux; sends already in progress
+   * are left to finish on their own.
+   *
+   * @param elements the elements to send
+   * @param send a function that starts sending a single element
+   *
+   * @return a flux that completes when all elements have been sent
+   */
+  <T> Flux<Void> flatMapWithinWindow(final Flux<T> elements, final Function<T, Mono<Void>> send) {
+    return Flux.create(sink -> {
+      final WindowedSubscriber<T> subscriber = new WindowedSubscriber<>(sink, send);
+      sink.onDispose(subscriber);
+
+      elements.subscribe(subscriber);
+    });
+  }
+
+  /**
+   * @return the number of requests that may currently be in flight
+   */
+  synchronized int getWindowSize() {
+    return (int) window;
+  }
+
+  private synchronized void adjustWindow(final long start, final long latencyNanos, final boolean success) {
+    if (success && !isCongested(latencyNanos)) {
+      window = Math.min(maxWindow, slowStart ? window + 1 : window + 1 / window);
+    } else if (start - lastDecreaseNanos >= 0) {
+      // only requests started after the last decrease can tell us whether that decrease was enough
+      window = Math.max(minWindow, window / 2);
+      slowStart = false;
+      lastDecreaseNanos = nanoClock.getAsLong();
+    }
+  }
+
+  private boolean isCongested(final long latencyNanos) {
+    nextMinLatencyNanos = Math.min(nextMinLatencyNanos, latencyNanos);
+
+    if (++latencySamples >= MIN_LATENCY_SAMPLE_COUNT) {
+      minLatencyNanos = nextMinLatencyNanos;
+      nextMinLatencyNanos = Long.MAX_VALUE;
+      latencySamples = 0;
+    } else {
+      minLatencyNanos = Math.min(minLatencyNanos, latencyNanos);
+    }
+
+    return latencyNanos > minLatencyNanos * latencyToleranceRatio;
+  }
+
+  private class WindowedSubscriber<T> extends BaseSubscriber<T> {
+
+    private final FluxSink<Void> sink;
+    private final Function<T, Mono<Void>> send;
+
+    // Elements requested from upstream but not yet received, and sends started but not yet finished
+    private int requested = 0;
+    private int sending = 0;
+
+    private boolean upstreamComplete = false;
+    private boolean terminated = false;
+
+    private WindowedSubscriber(final FluxSink<Void> sink, final Function<T, Mono<Void>> send) {
+      this.sink = sink;
+      this.send = send;
+    }
+
+    @Override
+    protected void hookOnSubscribe(final Subscription subscription) {
+      requestAvailable();
+    }
+
+    @Override
+    protected void hookOnNext(final T element) {
+      synchronized (this) {
+        requested--;
+        sending++;
+      }
+
+      send.apply(element).subscribe(null, this::onSendError, this::onSendComplete);
+    }
+
+    @Override
+    protected void hookOnComplete() {
+      synchronized (this) {
+        upstreamComplete = true;
+      }
+
+      completeIfDone();
+    }
+
+    @Override
+    protected void hookOnError(final Throwable throwable) {
+      terminate(throwable);
+    }
+
+    private void onSendComplete() {
+      synchronized (this) {
+        sending--;
+      }
+
+      if (!completeIfDone()) {
+        requestAvailable();
+      }
+    }
+
+    private void onSendError(final Throwable throwable) {
+      synchronized (this) {
+        sending--;
+      }
+
+      cancel();
+      terminate(throwable);
+    }
+
+    private void requestAvailable() {
+      // Requests to the subscription must not overlap, so issue them while holding the lock
+      synchronized (this) {
+        if (terminated || upstreamComplete) {
+          return;
+        }
+
+        final int available = getWindowSize() - sending - requested;
+
+        if (available > 0) {
+          requested += available;
+          request(available);
+        }
+      }
+    }
+
+    private boolean completeIfDone() {
+      synchronized (this) {
+        if (terminated || !upstreamComplete || sending > 0) {
+          return false;
+        }
+
+        terminated = true;
+      }
+
+      sink.complete();
+      return true;
+    }
+
+    private void terminate(final Throwable throwable) {
+      synchronized (this) {
+        if (terminated) {
+          return;
+        }
+
+        terminated = true;
+      }
+
+      sink.error(throwable);
+    }
+  }
+}
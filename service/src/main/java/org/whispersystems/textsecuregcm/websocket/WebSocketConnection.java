@@ -12,14 +12,19 @@ import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.InvalidProtocolBufferException;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
@@ -32,13 +37,20 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
 import org.apache.commons.lang3.StringUtils;
 import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.auth.AuthenticatedAccount;
+import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicMessageDeliveryConfiguration;
 import org.whispersystems.textsecuregcm.controllers.MessageController;
 import org.whispersystems.textsecuregcm.entities.MessageProtos.Envelope;
+import org.whispersystems.textsecuregcm.entities.MessageProtos.EnvelopeBatch;
+import org.whispersystems.textsecuregcm.entities.MessageProtos.EnvelopeBatchAcknowledgement;
 import org.whispersystems.textsecuregcm.identity.AciServiceIdentifier;
 import org.whispersystems.textsecuregcm.identity.ServiceIdentifier;
 import org.whispersystems.textsecuregcm.metrics.MessageMetrics;
@@ -47,6 +59,7 @@ import org.whispersystems.textsecuregcm.metrics.UserAgentTagUtil;
 import org.whispersystems.textsecuregcm.push.DisplacedPresenceListener;
 import org.whispersystems.textsecuregcm.push.ReceiptSender;
 import org.whispersystems.textsecuregcm.storage.ClientReleaseManager;
+import org.whispersystems.textsecuregcm.storage.CoalescingMessageDeleter;
 import org.whispersystems.textsecuregcm.storage.Device;
 import org.whispersystems.textsecuregcm.storage.MessageAvailabilityListener;
 import org.whispersystems.textsecuregcm.storage.MessagesManager;
@@ -90,6 +103,16 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
       "sendMessages");
   private static final String SEND_MESSAGE_ERROR_COUNTER = MetricsUtil.name(WebSocketConnection.class,
       "sendMessageError");
+  private static final String MESSAGE_BATCH_SIZE_DISTRIBUTION_NAME = MetricsUtil.name(WebSocketConnection.class,
+      "messageBatchSize");
+  private static final String UNACKNOWLEDGED_BATCH_MESSAGE_COUNTER_NAME = MetricsUtil.name(WebSocketConnection.class,
+      "unacknowledgedBatchMessage");
+  private static final String INVALID_BATCH_ACKNOWLEDGEMENT_COUNTER_NAME = MetricsUtil.name(WebSocketConnection.class,
+      "invalidBatchAcknowledgement");
+  private static final String DELIVERY_WINDOW_SIZE_DISTRIBUTION_NAME = MetricsUtil.name(WebSocketConnection.class,
+      "deliveryWindowSize");
+  private static final String ACKNOWLEDGEMENT_LATENCY_TIMER_NAME = MetricsUtil.name(WebSocketConnection.class,
+      "acknowledgementLatency");
   private static final String STATUS_CODE_TAG = "status";
   private static final String STATUS_MESSAGE_TAG = "message";
   private static final String ERROR_TYPE_TAG = "errorType";
@@ -100,7 +123,14 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
   static final int MESSAGE_PUBLISHER_LIMIT_RATE = 100;
 
   @VisibleForTesting
-  static final int MESSAGE_SENDER_MAX_CONCURRENCY = 256;
+  static final int MESSAGE_DELETION_MAX_BATCH_SIZE = 100;
+
+  @VisibleForTesting
+  static final int MAX_MESSAGE_BATCH_SIZE = 32;
+
+  // Batches may exceed this size only if they contain a single envelope
+  @VisibleForTesting
+  static final int MAX_MESSAGE_BATCH_BYTES = 1024 * 1024;
 
   @VisibleForTesting
   static final int MAX_CONSECUTIVE_RETRIES = 5;
@@ -109,16 +139,26 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
 
   private static final int DEFAULT_SEND_FUTURES_TIMEOUT_MILLIS = 5 * 60 * 1000;
 
+  // Asks the client to reconnect, preferably to another server, after the delay given in the close reason
+  @VisibleForTesting
+  static final int RECONNECT_LATER_CLOSE_CODE = 4503;
+
   private static final Logger logger = LoggerFactory.getLogger(WebSocketConnection.class);
 
   private final ReceiptSender receiptSender;
   private final MessagesManager messagesManager;
+  private final CoalescingMessageDeleter messageDeleter;
 
   private final AuthenticatedAccount auth;
   private final Device device;
   private final WebSocketClient client;
 
   private final int sendFuturesTimeoutMillis;
+  private final int messageBatchSize;
+  private final int maxRequestsInFlight;
+
+  @Nullable
+  private final AdaptiveDeliveryWindow deliveryWindow;
 
   private final ScheduledExecutorService scheduledExecutorService;
 
@@ -131,6 +171,7 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
   private final AtomicInteger consecutiveRetries = new AtomicInteger();
   private final AtomicReference<ScheduledFuture<?>> retryFuture = new AtomicReference<>();
   private final AtomicReference<Disposable> messageSubscription = new AtomicReference<>();
+  private volatile long lastActivityMillis = System.currentTimeMillis();
 
   private final Random random = new Random();
   private final Scheduler messageDeliveryScheduler;
@@ -152,6 +193,27 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
       Scheduler messageDeliveryScheduler,
       ClientReleaseManager clientReleaseManager) {
 
+    this(receiptSender,
+        messagesManager,
+        auth,
+        device,
+        client,
+        scheduledExecutorService,
+        messageDeliveryScheduler,
+        clientReleaseManager,
+        new DynamicMessageDeliveryConfiguration());
+  }
+
+  public WebSocketConnection(ReceiptSender receiptSender,
+      MessagesManager messagesManager,
+      AuthenticatedAccount auth,
+      Device device,
+      WebSocketClient client,
+      ScheduledExecutorService scheduledExecutorService,
+      Scheduler messageDeliveryScheduler,
+      ClientReleaseManager clientReleaseManager,
+      DynamicMessageDeliveryConfiguration messageDeliveryConfiguration) {
+
     this(receiptSender,
         messagesManager,
         auth,
@@ -160,7 +222,8 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
         DEFAULT_SEND_FUTURES_TIMEOUT_MILLIS,
         scheduledExecutorService,
         messageDeliveryScheduler,
-        clientReleaseManager);
+        clientReleaseManager,
+        messageDeliveryConfiguration);
   }
 
   @VisibleForTesting
@@ -172,14 +235,28 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
       int sendFuturesTimeoutMillis,
       ScheduledExecutorService scheduledExecutorService,
       Scheduler messageDeliveryScheduler,
-      ClientReleaseManager clientReleaseManager) {
+      ClientReleaseManager clientReleaseManager,
+      DynamicMessageDeliveryConfiguration messageDeliveryConfiguration) {
 
     this.receiptSender = receiptSender;
     this.messagesManager = messagesManager;
+    this.messageDeleter = new CoalescingMessageDeleter(messagesManager, auth.getAccount().getUuid(), device.getId(),
+        MESSAGE_DELETION_MAX_BATCH_SIZE);
     this.auth = auth;
     this.device = device;
     this.client = client;
     this.sendFuturesTimeoutMillis = sendFuturesTimeoutMillis;
+    this.messageBatchSize =
+        getMessageBatchSize(client.getUpgradeRequestHeader(HeaderUtils.X_SIGNAL_RECEIVE_MESSAGE_BATCHES));
+
+    // Windows are measured in envelopes, but each batch is a single request
+    this.maxRequestsInFlight = Math.max(1, messageDeliveryConfiguration.getMaxWindow() / messageBatchSize);
+    this.deliveryWindow = messageDeliveryConfiguration.isAdaptiveWindowEnabled()
+        ? new AdaptiveDeliveryWindow(Math.max(1, messageDeliveryConfiguration.getMinWindow() / messageBatchSize),
+        maxRequestsInFlight,
+        Math.max(1, messageDeliveryConfiguration.getInitialWindow() / messageBatchSize),
+        messageDeliveryConfiguration.getLatencyToleranceRatio())
+        : null;
     this.scheduledExecutorService = scheduledExecutorService;
     this.messageDeliveryScheduler = messageDeliveryScheduler;
     this.clientReleaseManager = clientReleaseManager;
@@ -206,17 +283,17 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
   }
 
   private CompletableFuture<Void> sendMessage(final Envelope message, StoredMessageInfo storedMessageInfo) {
-    // clear ephemeral field from the envelope
-    final Optional<byte[]> body = Optional.ofNullable(message.toBuilder().clearEphemeral().build().toByteArray());
+    // clear ephemeral field from the envelope; most stored messages never had it set, and can be serialized as-is
+    final Envelope messageToSend = message.hasEphemeral() ? message.toBuilder().clearEphemeral().build() : message;
+    final Optional<byte[]> body = Optional.of(messageToSend.toByteArray());
 
     sendMessageMeter.mark();
+    MessageMetrics.measureOutgoingMessages(1, "websocket");
     sentMessageCounter.increment();
     bytesSentMeter.mark(body.map(bytes -> bytes.length).orElse(0));
     MessageMetrics.measureAccountEnvelopeUuidMismatches(auth.getAccount(), message);
 
-    // X-Signal-Key: false must be sent until Android stops assuming it missing means true
-    return client.sendRequest("PUT", "/api/v1/message",
-            List.of(HeaderUtils.X_SIGNAL_KEY + ": false", HeaderUtils.getTimestampHeader()), body)
+    return sendDeliveryRequest("/api/v1/message", body)
         .whenComplete((ignored, throwable) -> {
           if (throwable != null) {
             sendFailuresMeter.mark();
@@ -227,8 +304,7 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
           final CompletableFuture<Void> result;
           if (isSuccessResponse(response)) {
 
-            result = messagesManager.delete(auth.getAccount().getUuid(), device.getId(),
-                    storedMessageInfo.guid(), storedMessageInfo.serverTimestamp())
+            result = messageDeleter.delete(storedMessageInfo.guid(), storedMessageInfo.serverTimestamp())
                 .thenApply(ignored -> null);
 
             if (message.getType() != Envelope.Type.SERVER_DELIVERY_RECEIPT) {
@@ -236,26 +312,166 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
               sendDeliveryReceiptFor(message);
             }
           } else {
-              final List<Tag> tags = new ArrayList<>(
-                  List.of(
-                      Tag.of(STATUS_CODE_TAG, String.valueOf(response.getStatus())),
-                      UserAgentTagUtil.getPlatformTag(client.getUserAgent())
-                  ));
-
-              // TODO Remove this once we've identified the cause of message rejections from desktop clients
-              if (StringUtils.isNotBlank(response.getMessage())) {
-                tags.add(Tag.of(STATUS_MESSAGE_TAG, response.getMessage()));
-              }
+            recordNonSuccessResponse(response);
+            result = CompletableFuture.completedFuture(null);
+          }
+
+          return result;
+        });
+  }
 
-              Metrics.counter(NON_SUCCESS_RESPONSE_COUNTER_NAME, tags).increment();
+  /**
+   * Sends several envelopes to the client in a single request. The client acknowledges the batch with a single response
+   * listing the envelopes it accepted; accepted envelopes are removed from the queue, and any others remain queued and
+   * will be sent again on a later pass through the queue.
+   */
+  private CompletableFuture<Void> sendMessageBatch(final List<Envelope> messages) {
+    final EnvelopeBatch.Builder batchBuilder = EnvelopeBatch.newBuilder();
+
+    for (final Envelope message : messages) {
+      // clear ephemeral field from the envelope; most stored messages never had it set, and can be serialized as-is
+      batchBuilder.addEnvelopes(message.hasEphemeral() ? message.toBuilder().clearEphemeral().build() : message);
+      MessageMetrics.measureAccountEnvelopeUuidMismatches(auth.getAccount(), message);
+    }
+
+    final byte[] body = batchBuilder.build().toByteArray();
+
+    sendMessageMeter.mark(messages.size());
+    MessageMetrics.measureOutgoingMessages(messages.size(), "websocket");
+    sentMessageCounter.add(messages.size());
+    bytesSentMeter.mark(body.length);
+    Metrics.summary(MESSAGE_BATCH_SIZE_DISTRIBUTION_NAME).record(messages.size());
+
+    return sendDeliveryRequest("/api/v1/messages", Optional.of(body))
+        .whenComplete((ignored, throwable) -> {
+          if (throwable != null) {
+            sendFailuresMeter.mark(messages.size());
+          } else {
+            messages.forEach(message -> MessageMetrics.measureOutgoingMessageLatency(message.getServerTimestamp(),
+                "websocket", client.getUserAgent(), clientReleaseManager));
+          }
+        }).thenCompose(response -> {
+          if (!isSuccessResponse(response)) {
+            recordNonSuccessResponse(response);
+            return CompletableFuture.completedFuture(null);
+          }
+
+          final Set<String> acceptedGuids;
+
+          try {
+            acceptedGuids = new HashSet<>(EnvelopeBatchAcknowledgement.parseFrom(response.getBody().orElse(new byte[0]))
+                .getAcceptedServerGuidsList());
+          } catch (final InvalidProtocolBufferException e) {
+            Metrics.counter(INVALID_BATCH_ACKNOWLEDGEMENT_COUNTER_NAME,
+                Tags.of(UserAgentTagUtil.getPlatformTag(client.getUserAgent()))).increment();
+
+            return CompletableFuture.completedFuture(null);
+          }
+
+          final List<CompletableFuture<?>> deleteFutures = new ArrayList<>(messages.size());
+
+          for (final Envelope message : messages) {
+            if (acceptedGuids.contains(message.getServerGuid())) {
+              deleteFutures.add(
+                  messageDeleter.delete(UUID.fromString(message.getServerGuid()), message.getServerTimestamp()));
 
-              result = CompletableFuture.completedFuture(null);
+              if (message.getType() != Envelope.Type.SERVER_DELIVERY_RECEIPT) {
+                recordMessageDeliveryDuration(message.getTimestamp(), device);
+                sendDeliveryReceiptFor(message);
+              }
             }
+          }
 
-          return result;
+          if (deleteFutures.size() < messages.size()) {
+            Metrics.counter(UNACKNOWLEDGED_BATCH_MESSAGE_COUNTER_NAME,
+                    Tags.of(UserAgentTagUtil.getPlatformTag(client.getUserAgent())))
+                .increment(messages.size() - deleteFutures.size());
+          }
+
+          return CompletableFuture.allOf(deleteFutures.toArray(CompletableFuture[]::new));
         });
   }
 
+  /**
+   * Sends a request carrying one or more envelopes to the client, waiting for room in this connection's delivery window
+   * first if it has one.
+   *
+   * @return a future that completes with the client's response
+   */
+  private CompletableFuture<WebSocketResponseMessage> sendDeliveryRequest(final String path,
+      final Optional<byte[]> body) {
+
+    // X-Signal-Key: false must be sent until Android stops assuming it missing means true
+    final List<String> headers = List.of(HeaderUtils.X_SIGNAL_KEY + ": false", HeaderUtils.getTimestampHeader());
+    final Tags tags = Tags.of(UserAgentTagUtil.getPlatformTag(client.getUserAgent()));
+
+    // Requests that are never acknowledged time out in the client's pending request table, which also gives their
+    // place in the delivery window back
+    final Duration timeout = Duration.ofMillis(sendFuturesTimeoutMillis);
+
+    lastActivityMillis = System.currentTimeMillis();
+
+    if (deliveryWindow == null) {
+      final Timer.Sample sample = Timer.start();
+
+      return client.sendRequest("PUT", path, headers, body, timeout)
+          .whenComplete((response, throwable) -> {
+            if (throwable == null) {
+              sample.stop(Metrics.timer(ACKNOWLEDGEMENT_LATENCY_TIMER_NAME, tags));
+            }
+          });
+    }
+
+    return deliveryWindow.track(() -> {
+      final Timer.Sample sample = Timer.start();
+
+      return client.sendRequest("PUT", path, headers, body, timeout)
+          .whenComplete((response, throwable) -> {
+            if (throwable == null) {
+              sample.stop(Metrics.timer(ACKNOWLEDGEMENT_LATENCY_TIMER_NAME, tags));
+            }
+
+            Metrics.summary(DELIVERY_WINDOW_SIZE_DISTRIBUTION_NAME, tags).record(deliveryWindow.getWindowSize());
+          });
+    });
+  }
+
+  private void recordNonSuccessResponse(final WebSocketResponseMessage response) {
+    final List<Tag> tags = new ArrayList<>(
+        List.of(
+            Tag.of(STATUS_CODE_TAG, String.valueOf(response.getStatus())),
+            UserAgentTagUtil.getPlatformTag(client.getUserAgent())
+        ));
+
+    // TODO Remove this once we've identified the cause of message rejections from desktop clients
+    if (StringUtils.isNotBlank(response.getMessage())) {
+      tags.add(Tag.of(STATUS_MESSAGE_TAG, response.getMessage()));
+    }
+
+    Metrics.counter(NON_SUCCESS_RESPONSE_COUNTER_NAME, tags).increment();
+  }
+
+  /**
+   * Interprets the value of a client's {@link HeaderUtils#X_SIGNAL_RECEIVE_MESSAGE_BATCHES} header.
+   *
+   * @param header the value of the header, if present
+   *
+   * @return the maximum number of envelopes to send to the client in a single batch, or 1 if the client doesn't accept
+   * batches
+   */
+  @VisibleForTesting
+  static int getMessageBatchSize(@Nullable final String header) {
+    if (StringUtils.isBlank(header)) {
+      return 1;
+    }
+
+    try {
+      return Math.max(1, Math.min(MAX_MESSAGE_BATCH_SIZE, Integer.parseInt(header.trim())));
+    } catch (final NumberFormatException e) {
+      return 1;
+    }
+  }
+
   public static void recordMessageDeliveryDuration(long timestamp, Device messageDestinationDevice) {
     final long messageDeliveryDuration = System.currentTimeMillis() - timestamp;
     messageTime.update(messageDeliveryDuration);
@@ -358,24 +574,30 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
 
     final AtomicBoolean hasErrored = new AtomicBoolean();
 
-    final Disposable subscription = Flux.from(messages)
+    Flux<Envelope> envelopes = Flux.from(messages)
         .name(SEND_MESSAGES_FLUX_NAME)
-        .tap(Micrometer.metrics(Metrics.globalRegistry))
-        .limitRate(MESSAGE_PUBLISHER_LIMIT_RATE)
-        .flatMapSequential(envelope ->
-            Mono.fromFuture(() -> sendMessage(envelope)
-                    .orTimeout(sendFuturesTimeoutMillis, TimeUnit.MILLISECONDS))
-                .onErrorResume(
-                    // let the first error pass through to terminate the subscription
-                    e -> {
-                      final boolean firstError = !hasErrored.getAndSet(true);
-                      measureSendMessageErrors(e, firstError);
-
-                      return !firstError;
-                    },
-                    // otherwise just emit nothing
-                    e -> Mono.empty()
-                ), MESSAGE_SENDER_MAX_CONCURRENCY)
+        .tap(Micrometer.metrics(Metrics.globalRegistry));
+
+    // With an adaptive window, demand comes from the window, and prefetching a fixed number of envelopes would hold them
+    // in memory for clients that can't keep up anyhow
+    if (deliveryWindow == null) {
+      envelopes = envelopes.limitRate(MESSAGE_PUBLISHER_LIMIT_RATE);
+    }
+
+    final Flux<Void> sentMessages;
+
+    if (messageBatchSize > 1) {
+      // Keep roughly as many envelopes in flight as we would if we were sending them individually
+      sentMessages = sendWithinWindow(envelopes
+              .filter(this::shouldDeliver)
+              .bufferUntil(new MessageBatchBoundary(messageBatchSize, MAX_MESSAGE_BATCH_BYTES), true),
+          batch -> sendWithErrorHandling(() -> sendMessageBatch(batch), hasErrored));
+    } else {
+      sentMessages = sendWithinWindow(envelopes,
+          envelope -> sendWithErrorHandling(() -> sendMessage(envelope), hasErrored));
+    }
+
+    final Disposable subscription = sentMessages
         .subscribeOn(messageDeliveryScheduler)
         .subscribe(
             // no additional consumer of values - it is Flux<Void> by now
@@ -389,6 +611,29 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
     messageSubscription.set(subscription);
   }
 
+  private <T> Flux<Void> sendWithinWindow(final Flux<T> elements, final Function<T, Mono<Void>> send) {
+    return deliveryWindow != null
+        ? deliveryWindow.flatMapWithinWindow(elements, send)
+        : elements.flatMapSequential(send, maxRequestsInFlight);
+  }
+
+  private Mono<Void> sendWithErrorHandling(final Supplier<CompletableFuture<Void>> sendFutureSupplier,
+      final AtomicBoolean hasErrored) {
+
+    return Mono.fromFuture(sendFutureSupplier)
+        .onErrorResume(
+            // let the first error pass through to terminate the subscription
+            e -> {
+              final boolean firstError = !hasErrored.getAndSet(true);
+              measureSendMessageErrors(e, firstError);
+
+              return !firstError;
+            },
+            // otherwise just emit nothing
+            e -> Mono.empty()
+        );
+  }
+
   private void measureSendMessageErrors(Throwable e, final boolean terminal) {
     final String errorType;
     if (e instanceof TimeoutException) {
@@ -408,15 +653,24 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
   }
 
   private CompletableFuture<Void> sendMessage(Envelope envelope) {
-    final UUID messageGuid = UUID.fromString(envelope.getServerGuid());
+    if (shouldDeliver(envelope)) {
+      return sendMessage(envelope,
+          new StoredMessageInfo(UUID.fromString(envelope.getServerGuid()), envelope.getServerTimestamp()));
+    } else {
+      return CompletableFuture.completedFuture(null);
+    }
+  }
 
+  /**
+   * Checks whether an envelope should be delivered to the client at all, discarding it if not.
+   */
+  private boolean shouldDeliver(final Envelope envelope) {
     if (envelope.getStory() && !client.shouldDeliverStories()) {
-      messagesManager.delete(auth.getAccount().getUuid(), device.getId(), messageGuid, envelope.getServerTimestamp());
-
-      return CompletableFuture.completedFuture(null);
-    } else {
-      return sendMessage(envelope, new StoredMessageInfo(messageGuid, envelope.getServerTimestamp()));
+      messageDeleter.delete(UUID.fromString(envelope.getServerGuid()), envelope.getServerTimestamp());
+      return false;
     }
+
+    return true;
   }
 
   @Override
@@ -481,7 +735,73 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
     }
   }
 
+  /**
+   * @return the time, in milliseconds since the epoch, at which this connection last sent messages to its client (or
+   * opened, if it has never sent any messages)
+   */
+  long getLastActivityMillis() {
+    return lastActivityMillis;
+  }
+
+  /**
+   * Closes this connection at the server's request (for example, because the server is shutting down), asking the
+   * client to wait before reconnecting. The delay is given in the close reason in the form of an HTTP
+   * {@code Retry-After} header measured in whole seconds.
+   *
+   * @param reconnectDelay the time the client should wait before reconnecting
+   */
+  void closeWithReconnectDelay(final Duration reconnectDelay) {
+    final String reason = "Retry-After: " + (reconnectDelay.toMillis() + 999) / 1000;
+
+    try {
+      client.close(RECONNECT_LATER_CLOSE_CODE, reason);
+    } catch (final Exception e) {
+      logger.warn("Orderly close failed", e);
+
+      client.hardDisconnectQuietly();
+    }
+  }
+
   private record StoredMessageInfo(UUID guid, long serverTimestamp) {
 
   }
+
+  /**
+   * Decides where one batch of envelopes ends and the next begins, given envelopes in order; a batch ends when it
+   * reaches the maximum number of envelopes or when adding the next envelope would exceed the maximum batch size in
+   * bytes. Boundaries are stateful, and each may only be used by a single subscription.
+   */
+  @VisibleForTesting
+  static class MessageBatchBoundary implements Predicate<Envelope> {
+
+    private final int maxEnvelopes;
+    private final int maxBytes;
+
+    private int envelopes;
+    private int bytes;
+
+    MessageBatchBoundary(final int maxEnvelopes, final int maxBytes) {
+      this.maxEnvelopes = maxEnvelopes;
+      this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return {@code true} if the given envelope should begin a new batch
+     */
+    @Override
+    public boolean test(final Envelope envelope) {
+      final int envelopeBytes = envelope.getSerializedSize();
+      final boolean startBatch = envelopes > 0 && (envelopes >= maxEnvelopes || bytes + envelopeBytes > maxBytes);
+
+      if (startBatch) {
+        envelopes = 0;
+        bytes = 0;
+      }
+
+      envelopes += 1;
+      bytes += envelopeBytes;
+
+      return startBatch;
+    }
+  }
 }
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.websocket;
+
+import static org.whispersystems.textsecuregcm.metrics.MetricsUtil.name;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.websocket.api.UpgradeRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.whispersystems.textsecuregcm.configuration.WebSocketDrainConfiguration;
+import org.whispersystems.websocket.setup.WebSocketAdmissionController;
+
+/**
+ * Spreads the load of reconnecting clients when a server shuts down or is flooded with new connections.
+ * <p>
+ * Every reconnecting client declares its presence, subscribes to keyspace notifications, and loads its account and
+ * message queue, so a server that closes all of its connections at once when it stops can overwhelm the servers (and
+ * Redis clusters) that absorb them. Instead, when the server begins to stop, the drainer closes authenticated
+ * connections one at a time over a configurable period, least-recently-active first, and asks each client to wait a
+ * random time before reconnecting. While draining, and whenever new connections arrive faster than a configurable rate,
+ * the drainer refuses new connections before they're authenticated, again asking clients to wait before retrying.
+ */
+public class WebSocketConnectionDrainer implements WebSocketAdmissionController, LifeCycle.Listener {
+
+  private static final String REMAINING_CONNECTIONS_GAUGE_NAME =
+      name(WebSocketConnectionDrainer.class, "remainingConnections");
+  private static final String DRAINED_CONNECTIONS_COUNTER_NAME =
+      name(WebSocketConnectionDrainer.class, "drainedConnections");
+  private static final String REFUSED_CONNECTIONS_COUNTER_NAME =
+      name(WebSocketConnectionDrainer.class, "refusedConnections");
+  private static final String DRAIN_TIMER_NAME = name(WebSocketConnectionDrainer.class, "drain");
+
+  private static final String REASON_TAG_NAME = "reason";
+
+  private final Duration drainPeriod;
+  private final Duration maxReconnectDelay;
+  private final int maxConnectionsPerSecond;
+  private final Clock clock;
+
+  private final Set<WebSocketConnection> connections = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger remainingConnections = new AtomicInteger();
+
+  private volatile boolean draining = false;
+
+  private double availableConnectionPermits;
+  private long lastPermitRefillMillis;
+
+  private static final Logger logger = LoggerFactory.getLogger(WebSocketConnectionDrainer.class);
+
+  public WebSocketConnectionDrainer(final WebSocketDrainConfiguration configuration, final Clock clock) {
+    this.drainPeriod = configuration.drainPeriod();
+    this.maxReconnectDelay = configuration.maxReconnectDelay();
+    this.maxConnectionsPerSecond = configuration.maxConnectionsPerSecond();
+    this.clock = clock;
+
+    this.availableConnectionPermits = maxConnectionsPerSecond;
+    this.lastPermitRefillMillis = clock.millis();
+
+    Metrics.gauge(REMAINING_CONNECTIONS_GAUGE_NAME, remainingConnections);
+  }
+
+  /**
+   * Registers an open, authenticated connection to be closed when this drainer drains.
+   */
+  public void register(final WebSocketConnection connection) {
+    connections.add(connection);
+  }
+
+  /**
+   * Removes a connection that has closed from this drainer.
+   */
+  public void unregister(final WebSocketConnection connection) {
+    connections.remove(connection);
+  }
+
+  @Override
+  public Optional<Duration> checkAdmission(final UpgradeRequest request) {
+    final String refusalReason;
+
+    if (draining) {
+      refusalReason = "draining";
+    } else if (maxConnectionsPerSecond > 0 && !tryAcquireConnectionPermit()) {
+      refusalReason = "rateLimited";
+    } else {
+      return Optional.empty();
+    }
+
+    Metrics.counter(REFUSED_CONNECTIONS_COUNTER_NAME, Tags.of(REASON_TAG_NAME, refusalReason)).increment();
+
+    return Optional.of(getReconnectDelay());
+  }
+
+  private synchronized boolean tryAcquireConnectionPermit() {
+    final long now = clock.millis();
+
+    // Allow bursts of up to a second's worth of connections
+    availableConnectionPermits = Math.min(maxConnectionsPerSecond,
+        availableConnectionPermits + (now - lastPermitRefillMillis) * maxConnectionsPerSecond / 1000.0);
+
+    lastPermitRefillMillis = now;
+
+    if (availableConnectionPermits >= 1) {
+      availableConnectionPermits -= 1;
+      return true;
+    }
+
+    return false;
+  }
+
+  @Override
+  public void lifeCycleStopping(final LifeCycle event) {
+    drain();
+  }
+
+  /**
+   * Closes all registered connections, spread evenly over the drain period, and refuses all new connections from then
+   * on. Blocks until all connections registered when draining began have been closed.
+   */
+  @VisibleForTesting
+  void drain() {
+    draining = true;
+
+    final List<WebSocketConnection> connectionsToClose = connections.stream()
+        .sorted(Comparator.comparingLong(WebSocketConnection::getLastActivityMillis))
+        .toList();
+
+    logger.info("Draining {} websocket connections over {}", connectionsToClose.size(), drainPeriod);
+
+    remainingConnections.set(connectionsToClose.size());
+
+    final Timer.Sample sample = Timer.start();
+    final long drainStartMillis = clock.millis();
+    boolean interrupted = false;
+
+    for (int i = 0; i < connectionsToClose.size(); i++) {
+      if (!interrupted) {
+        final long closeTimeMillis = drainStartMillis + drainPeriod.toMillis() * i / connectionsToClose.size();
+        final long sleepMillis = closeTimeMillis - clock.millis();
+
+        if (sleepMillis > 0) {
+          try {
+            Thread.sleep(sleepMillis);
+          } catch (final InterruptedException e) {
+            // Close everything that's left right away
+            logger.warn("Interrupted while draining websocket connections", e);
+            interrupted = true;
+          }
+        }
+      }
+
+      try {
+        connectionsToClose.get(i).closeWithReconnectDelay(getReconnectDelay());
+      } catch (final Exception e) {
+        logger.warn("Failed to close websocket connection", e);
+      }
+
+      remainingConnections.decrementAndGet();
+      Metrics.counter(DRAINED_CONNECTIONS_COUNTER_NAME).increment();
+    }
+
+    sample.stop(Metrics.timer(DRAIN_TIMER_NAME));
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @VisibleForTesting
+  boolean isDraining() {
+    return draining;
+  }
+
+  private Duration getReconnectDelay() {
+    return Duration.ofMillis(ThreadLocalRandom.current().nextLong(maxReconnectDelay.toMillis() + 1));
+  }
+}
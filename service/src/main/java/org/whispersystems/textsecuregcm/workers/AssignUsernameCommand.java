@@ -25,6 +25,7 @@ import net.sourceforge.argparse4j.inf.Subparser;
 import org.whispersystems.textsecuregcm.WhisperServerConfiguration;
 import org.whispersystems.textsecuregcm.WhisperServerService;
 import org.whispersystems.textsecuregcm.auth.ExternalServiceCredentialsGenerator;
+import org.whispersystems.textsecuregcm.configuration.AccountNearCacheConfiguration;
 import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicConfiguration;
 import org.whispersystems.textsecuregcm.controllers.SecureStorageController;
 import org.whispersystems.textsecuregcm.controllers.SecureValueRecovery2Controller;
@@ -35,6 +36,7 @@ import org.whispersystems.textsecuregcm.securestorage.SecureStorageClient;
 import org.whispersystems.textsecuregcm.securevaluerecovery.SecureValueRecovery2Client;
 import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.AccountLockManager;
+import org.whispersystems.textsecuregcm.storage.AccountNearCache;
 import org.whispersystems.textsecuregcm.storage.Accounts;
 import org.whispersystems.textsecuregcm.storage.AccountsManager;
 import org.whispersystems.textsecuregcm.storage.DynamicConfigurationManager;
@@ -190,9 +192,11 @@ public class AssignUsernameCommand extends EnvironmentCommand<WhisperServerConfi
     ClientPresenceManager clientPresenceManager = new ClientPresenceManager(clientPresenceCluster,
         Executors.newSingleThreadScheduledExecutor(), keyspaceNotificationDispatchExecutor);
     MessagesCache messagesCache = new MessagesCache(messageInsertCacheCluster, messageReadDeleteCluster,
-        keyspaceNotificationDispatchExecutor, messageDeliveryScheduler, messageDeletionExecutor, Clock.systemUTC());
+        keyspaceNotificationDispatchExecutor, messageDeliveryScheduler, messageDeletionExecutor, Clock.systemUTC(),
+        dynamicConfigurationManager);
     ProfilesManager profilesManager = new ProfilesManager(profiles, cacheCluster);
     ReportMessageDynamoDb reportMessageDynamoDb = new ReportMessageDynamoDb(dynamoDbClient,
+        dynamoDbAsyncClient,
         configuration.getDynamoDbTables().getReportMessage().getTableName(),
         configuration.getReportMessageConfiguration().getReportTtl());
     ReportMessageManager reportMessageManager = new ReportMessageManager(reportMessageDynamoDb, rateLimitersCluster,
@@ -201,7 +205,11 @@ public class AssignUsernameCommand extends EnvironmentCommand<WhisperServerConfi
         reportMessageManager, messageDeletionExecutor);
     AccountLockManager accountLockManager = new AccountLockManager(dynamoDbClient,
         configuration.getDynamoDbTables().getDeletedAccountsLock().getTableName());
+    // Commands don't live long enough to benefit from a near-cache, but still need to publish account invalidations
+    AccountNearCache accountNearCache = new AccountNearCache(cacheCluster,
+        new AccountNearCacheConfiguration(false, 0, null));
     AccountsManager accountsManager = new AccountsManager(accounts, phoneNumberIdentifiers, cacheCluster,
+        accountNearCache,
         accountLockManager, keys, messagesManager, profilesManager,
             secureStorageClient, secureValueRecovery2Client, clientPresenceManager,
         experimentEnrollmentManager, registrationRecoveryPasswordsManager, accountLockExecutor, clientPresenceExecutor,
@@ -211,30 +219,38 @@ public class AssignUsernameCommand extends EnvironmentCommand<WhisperServerConfi
     final String encryptedUsername = namespace.getString("encryptedUsername");
     final UUID accountIdentifier = UUID.fromString(namespace.getString("aci"));
 
-    accountsManager.getByAccountIdentifier(accountIdentifier).ifPresentOrElse(account -> {
-          try {
-            final AccountsManager.UsernameReservation reservation = accountsManager.reserveUsernameHash(account,
-                List.of(Base64.getUrlDecoder().decode(usernameHash))).join();
-            final Account result = accountsManager.confirmReservedUsernameHash(
-                account,
-                reservation.reservedUsernameHash(),
-                encryptedUsername == null ? null : Base64.getUrlDecoder().decode(encryptedUsername)).join();
-            System.out.println("New username hash: " + Base64.getUrlEncoder().encodeToString(result.getUsernameHash().orElseThrow()));
-            System.out.println("New username link handle: " + result.getUsernameLinkHandle().toString());
-          } catch (final CompletionException e) {
-            if (ExceptionUtils.unwrap(e) instanceof UsernameHashNotAvailableException) {
-              throw new IllegalArgumentException("Username hash already taken");
-            }
+    // This command doesn't start the environment's lifecycle, so the report message manager must be started and
+    // stopped explicitly to make sure any hashes it buffers are written
+    reportMessageManager.start();
 
-            if (ExceptionUtils.unwrap(e) instanceof UsernameReservationNotFoundException) {
-              throw new IllegalArgumentException("Username hash reservation not found");
-            }
+    try {
+      accountsManager.getByAccountIdentifier(accountIdentifier).ifPresentOrElse(account -> {
+            try {
+              final AccountsManager.UsernameReservation reservation = accountsManager.reserveUsernameHash(account,
+                  List.of(Base64.getUrlDecoder().decode(usernameHash))).join();
+              final Account result = accountsManager.confirmReservedUsernameHash(
+                  account,
+                  reservation.reservedUsernameHash(),
+                  encryptedUsername == null ? null : Base64.getUrlDecoder().decode(encryptedUsername)).join();
+              System.out.println("New username hash: " + Base64.getUrlEncoder().encodeToString(result.getUsernameHash().orElseThrow()));
+              System.out.println("New username link handle: " + result.getUsernameLinkHandle().toString());
+            } catch (final CompletionException e) {
+              if (ExceptionUtils.unwrap(e) instanceof UsernameHashNotAvailableException) {
+                throw new IllegalArgumentException("Username hash already taken");
+              }
+
+              if (ExceptionUtils.unwrap(e) instanceof UsernameReservationNotFoundException) {
+                throw new IllegalArgumentException("Username hash reservation not found");
+              }
 
-            throw e;
-          }
-        },
-        () -> {
-          throw new IllegalArgumentException("Account not found");
-        });
+              throw e;
+            }
+          },
+          () -> {
+            throw new IllegalArgumentException("Account not found");
+          });
+    } finally {
+      reportMessageManager.stop();
+    }
   }
 }
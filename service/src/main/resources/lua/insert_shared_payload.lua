@@ -0,0 +1,6 @@
+local sharedPayloadKey = KEYS[1]
+local payload          = ARGV[1]
+local references       = ARGV[2]
+
+redis.call("HSET", sharedPayloadKey, "payload", payload, "references", references)
+redis.call("EXPIRE", sharedPayloadKey, 7776000) -- 90 days
@@ -0,0 +1,14 @@
+local sharedPayloadKey = KEYS[1]
+local releaseCount     = ARGV[1]
+
+local payload = redis.call("HGET", sharedPayloadKey, "payload")
+
+if not payload then
+    return nil
+end
+
+if redis.call("HINCRBY", sharedPayloadKey, "references", -releaseCount) <= 0 then
+    redis.call("DEL", sharedPayloadKey)
+end
+
+return payload
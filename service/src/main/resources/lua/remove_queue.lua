@@ -2,6 +2,11 @@ local queueKey           = KEYS[1]
 local queueMetadataKey   = KEYS[2]
 local queueTotalIndexKey = KEYS[3]
 
+-- Shared payloads live in other slots, so the caller releases the references held by the removed messages
+local removedMessages = redis.call("ZRANGE", queueKey, 0, -1)
+
 redis.call("DEL", queueKey)
 redis.call("DEL", queueMetadataKey)
 redis.call("ZREM", queueTotalIndexKey, queueKey)
+
+return removedMessages
@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Stream;
+import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -34,6 +35,7 @@ import org.junitpioneer.jupiter.cartesian.CartesianTest;
 import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.AccountsManager;
 import org.whispersystems.textsecuregcm.storage.Device;
+import org.whispersystems.textsecuregcm.storage.DeviceLastSeenUpdater;
 import org.whispersystems.textsecuregcm.tests.util.AccountsHelper;
 import org.whispersystems.textsecuregcm.util.Pair;
 import org.whispersystems.textsecuregcm.util.TestClock;
@@ -46,6 +48,7 @@ class AccountAuthenticatorTest {
   private final long               currentTime  = today + 68_000_000L;
 
   private AccountsManager          accountsManager;
+  private DeviceLastSeenUpdater    deviceLastSeenUpdater;
   private AccountAuthenticator accountAuthenticator;
   private TestClock                clock;
   private Account                  acct1;
@@ -55,8 +58,9 @@ class AccountAuthenticatorTest {
   @BeforeEach
   void setup() {
     accountsManager = mock(AccountsManager.class);
+    deviceLastSeenUpdater = mock(DeviceLastSeenUpdater.class);
     clock = TestClock.now();
-    accountAuthenticator = new AccountAuthenticator(accountsManager, clock);
+    accountAuthenticator = new AccountAuthenticator(accountsManager, deviceLastSeenUpdater, clock);
 
     // We use static UUIDs here because the UUID affects the "date last seen" offset
     acct1 = AccountsHelper.generateTestAccount("+14088675309", UUID.fromString("c139cb3e-f70c-4460-b221-815e8bdf778f"), UUID.randomUUID(), List.of(generateTestDevice(yesterday)), null);
@@ -66,6 +70,14 @@ class AccountAuthenticatorTest {
     AccountsHelper.setupMockUpdate(accountsManager);
   }
 
+  private static SaltedTokenHash mockSaltedTokenHash() {
+    final SaltedTokenHash saltedTokenHash = mock(SaltedTokenHash.class);
+    when(saltedTokenHash.hash()).thenReturn(RandomStringUtils.randomAlphanumeric(16));
+    when(saltedTokenHash.salt()).thenReturn(RandomStringUtils.randomAlphanumeric(16));
+
+    return saltedTokenHash;
+  }
+
   private static Device generateTestDevice(final long lastSeen) {
     final Device device = new Device();
     device.setId(Device.PRIMARY_ID);
@@ -81,17 +93,12 @@ class AccountAuthenticatorTest {
     final Device device1 = acct1.getDevices().stream().findFirst().get();
     final Device device2 = acct2.getDevices().stream().findFirst().get();
 
-    final Account updatedAcct1 = accountAuthenticator.updateLastSeen(acct1, device1);
-    final Account updatedAcct2 = accountAuthenticator.updateLastSeen(acct2, device2);
-
-    verify(accountsManager, never()).updateDeviceLastSeen(eq(acct1), any(), anyLong());
-    verify(accountsManager).updateDeviceLastSeen(eq(acct2), eq(device2), anyLong());
-
-    assertThat(device1.getLastSeen()).isEqualTo(yesterday);
-    assertThat(device2.getLastSeen()).isEqualTo(today);
+    accountAuthenticator.updateLastSeen(acct1, device1);
+    accountAuthenticator.updateLastSeen(acct2, device2);
 
-    assertThat(acct1).isSameAs(updatedAcct1);
-    assertThat(acct2).isNotSameAs(updatedAcct2);
+    verify(deviceLastSeenUpdater, never()).updateLastSeen(eq(acct1), any(), anyLong());
+    verify(deviceLastSeenUpdater).updateLastSeen(acct2, device2, today);
+    verify(accountsManager, never()).updateDeviceLastSeen(any(), any(), anyLong());
   }
 
   @Test
@@ -101,17 +108,10 @@ class AccountAuthenticatorTest {
     final Device device1 = acct1.getDevices().stream().findFirst().get();
     final Device device2 = acct2.getDevices().stream().findFirst().get();
 
-    final Account updatedAcct1 = accountAuthenticator.updateLastSeen(acct1, device1);
-    final Account updatedAcct2 = accountAuthenticator.updateLastSeen(acct2, device2);
+    accountAuthenticator.updateLastSeen(acct1, device1);
+    accountAuthenticator.updateLastSeen(acct2, device2);
 
-    verify(accountsManager, never()).updateDeviceLastSeen(eq(acct1), any(), anyLong());
-    verify(accountsManager, never()).updateDeviceLastSeen(eq(acct2), any(), anyLong());
-
-    assertThat(device1.getLastSeen()).isEqualTo(yesterday);
-    assertThat(device2.getLastSeen()).isEqualTo(yesterday);
-
-    assertThat(acct1).isSameAs(updatedAcct1);
-    assertThat(acct2).isSameAs(updatedAcct2);
+    verify(deviceLastSeenUpdater, never()).updateLastSeen(any(), any(), anyLong());
   }
 
   @Test
@@ -121,17 +121,12 @@ class AccountAuthenticatorTest {
     final Device device1 = acct1.getDevices().stream().findFirst().get();
     final Device device2 = acct2.getDevices().stream().findFirst().get();
 
-    final Account updatedAcct1 = accountAuthenticator.updateLastSeen(acct1, device1);
-    final Account updatedAcct2 = accountAuthenticator.updateLastSeen(acct2, device2);
-
-    verify(accountsManager).updateDeviceLastSeen(eq(acct1), eq(device1), anyLong());
-    verify(accountsManager).updateDeviceLastSeen(eq(acct2), eq(device2), anyLong());
-
-    assertThat(device1.getLastSeen()).isEqualTo(today);
-    assertThat(device2.getLastSeen()).isEqualTo(today);
+    accountAuthenticator.updateLastSeen(acct1, device1);
+    accountAuthenticator.updateLastSeen(acct2, device2);
 
-    assertThat(updatedAcct1).isNotSameAs(acct1);
-    assertThat(updatedAcct2).isNotSameAs(acct2);
+    verify(deviceLastSeenUpdater).updateLastSeen(acct1, device1, today);
+    verify(deviceLastSeenUpdater).updateLastSeen(acct2, device2, today);
+    verify(accountsManager, never()).updateDeviceLastSeen(any(), any(), anyLong());
   }
 
   @Test
@@ -142,9 +137,7 @@ class AccountAuthenticatorTest {
 
     accountAuthenticator.updateLastSeen(oldAccount, device);
 
-    verify(accountsManager).updateDeviceLastSeen(eq(oldAccount), eq(device), anyLong());
-
-    assertThat(device.getLastSeen()).isEqualTo(today);
+    verify(deviceLastSeenUpdater).updateLastSeen(oldAccount, device, today);
   }
 
   @Test
@@ -155,7 +148,7 @@ class AccountAuthenticatorTest {
 
     final Account account = mock(Account.class);
     final Device device = mock(Device.class);
-    final SaltedTokenHash credentials = mock(SaltedTokenHash.class);
+    final SaltedTokenHash credentials = mockSaltedTokenHash();
 
     clock.unpin();
     when(accountsManager.getByAccountIdentifier(uuid)).thenReturn(Optional.of(account));
@@ -185,7 +178,7 @@ class AccountAuthenticatorTest {
 
     final Account account = mock(Account.class);
     final Device device = mock(Device.class);
-    final SaltedTokenHash credentials = mock(SaltedTokenHash.class);
+    final SaltedTokenHash credentials = mockSaltedTokenHash();
 
     clock.unpin();
     when(accountsManager.getByAccountIdentifier(uuid)).thenReturn(Optional.of(account));
@@ -218,7 +211,7 @@ class AccountAuthenticatorTest {
 
     final Account account = mock(Account.class);
     final Device authenticatedDevice = mock(Device.class);
-    final SaltedTokenHash credentials = mock(SaltedTokenHash.class);
+    final SaltedTokenHash credentials = mockSaltedTokenHash();
 
     clock.unpin();
     when(accountsManager.getByAccountIdentifier(uuid)).thenReturn(Optional.of(account));
@@ -254,7 +247,7 @@ class AccountAuthenticatorTest {
 
     final Account account = mock(Account.class);
     final Device device = mock(Device.class);
-    final SaltedTokenHash credentials = mock(SaltedTokenHash.class);
+    final SaltedTokenHash credentials = mockSaltedTokenHash();
 
     clock.unpin();
     when(accountsManager.getByAccountIdentifier(uuid)).thenReturn(Optional.of(account));
@@ -273,10 +266,46 @@ class AccountAuthenticatorTest {
     assertThat(maybeAuthenticatedAccount).isPresent();
     assertThat(maybeAuthenticatedAccount.get().getAccount().getUuid()).isEqualTo(uuid);
     assertThat(maybeAuthenticatedAccount.get().getAuthenticatedDevice()).isEqualTo(device);
-    verify(accountsManager, times(1)).updateDeviceAuthentication(
-        any(), // this won't be 'account', because it'll already be updated by updateDeviceLastSeen
-        eq(device), any());
+    verify(accountsManager, times(1)).updateDeviceAuthentication(eq(account), eq(device), any());
   }
+
+  @Test
+  void testAuthenticateCachedVerification() {
+    final UUID uuid = UUID.randomUUID();
+    final byte deviceId = 1;
+    final String password = "12345";
+
+    final Account account = mock(Account.class);
+    final Device device = mock(Device.class);
+    final SaltedTokenHash credentials = mockSaltedTokenHash();
+
+    clock.unpin();
+    when(accountsManager.getByAccountIdentifier(uuid)).thenReturn(Optional.of(account));
+    when(account.getUuid()).thenReturn(uuid);
+    when(account.getDevice(deviceId)).thenReturn(Optional.of(device));
+    when(device.getId()).thenReturn(deviceId);
+    when(device.getAuthTokenHash()).thenReturn(credentials);
+    when(credentials.verify(password)).thenReturn(true);
+    when(credentials.getVersion()).thenReturn(SaltedTokenHash.CURRENT_VERSION);
+
+    assertThat(accountAuthenticator.authenticate(new BasicCredentials(uuid.toString(), password))).isPresent();
+    assertThat(accountAuthenticator.authenticate(new BasicCredentials(uuid.toString(), password))).isPresent();
+    verify(credentials, times(1)).verify(password);
+
+    // Failed verifications should never be cached, and a cached verification should never match another password
+    final String incorrectPassword = password + "incorrect";
+
+    assertThat(accountAuthenticator.authenticate(new BasicCredentials(uuid.toString(), incorrectPassword))).isEmpty();
+    assertThat(accountAuthenticator.authenticate(new BasicCredentials(uuid.toString(), incorrectPassword))).isEmpty();
+    verify(credentials, times(2)).verify(incorrectPassword);
+
+    // Changing the stored credentials should invalidate cached verifications
+    when(credentials.hash()).thenReturn("changed");
+
+    assertThat(accountAuthenticator.authenticate(new BasicCredentials(uuid.toString(), password))).isPresent();
+    verify(credentials, times(2)).verify(password);
+  }
+
   @Test
   void testAuthenticateAccountNotFound() {
     assertThat(accountAuthenticator.authenticate(new BasicCredentials(UUID.randomUUID().toString(), "password")))
@@ -291,7 +320,7 @@ class AccountAuthenticatorTest {
 
     final Account account = mock(Account.class);
     final Device device = mock(Device.class);
-    final SaltedTokenHash credentials = mock(SaltedTokenHash.class);
+    final SaltedTokenHash credentials = mockSaltedTokenHash();
 
     clock.unpin();
     when(accountsManager.getByAccountIdentifier(uuid)).thenReturn(Optional.of(account));
@@ -319,7 +348,7 @@ class AccountAuthenticatorTest {
 
     final Account account = mock(Account.class);
     final Device device = mock(Device.class);
-    final SaltedTokenHash credentials = mock(SaltedTokenHash.class);
+    final SaltedTokenHash credentials = mockSaltedTokenHash();
 
     clock.unpin();
     when(accountsManager.getByAccountIdentifier(uuid)).thenReturn(Optional.of(account));
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.auth;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.base.Ticker;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class VerifiedCredentialCacheTest {
+
+  private AtomicLong nanos;
+  private VerifiedCredentialCache verifiedCredentialCache;
+
+  private static final Duration TTL = Duration.ofMinutes(5);
+
+  private static final UUID ACCOUNT_IDENTIFIER = UUID.randomUUID();
+  private static final byte DEVICE_ID = 1;
+  private static final String PASSWORD = "password";
+  private static final SaltedTokenHash SALTED_TOKEN_HASH = SaltedTokenHash.generateFor(PASSWORD);
+
+  @BeforeEach
+  void setUp() {
+    nanos = new AtomicLong(0);
+
+    verifiedCredentialCache = new VerifiedCredentialCache(100, TTL, new Ticker() {
+      @Override
+      public long read() {
+        return nanos.get();
+      }
+    });
+  }
+
+  @Test
+  void isVerified() {
+    assertFalse(verifiedCredentialCache.isVerified(ACCOUNT_IDENTIFIER, DEVICE_ID, SALTED_TOKEN_HASH, PASSWORD));
+
+    verifiedCredentialCache.putVerified(ACCOUNT_IDENTIFIER, DEVICE_ID, SALTED_TOKEN_HASH, PASSWORD);
+
+    assertTrue(verifiedCredentialCache.isVerified(ACCOUNT_IDENTIFIER, DEVICE_ID, SALTED_TOKEN_HASH, PASSWORD));
+    assertFalse(verifiedCredentialCache.isVerified(ACCOUNT_IDENTIFIER, DEVICE_ID, SALTED_TOKEN_HASH, PASSWORD + "x"));
+    assertFalse(verifiedCredentialCache.isVerified(ACCOUNT_IDENTIFIER, (byte) (DEVICE_ID + 1), SALTED_TOKEN_HASH,
+        PASSWORD));
+    assertFalse(verifiedCredentialCache.isVerified(UUID.randomUUID(), DEVICE_ID, SALTED_TOKEN_HASH, PASSWORD));
+  }
+
+  @Test
+  void isVerifiedCredentialsChanged() {
+    verifiedCredentialCache.putVerified(ACCOUNT_IDENTIFIER, DEVICE_ID, SALTED_TOKEN_HASH, PASSWORD);
+
+    // Same password, but new stored credentials
+    assertFalse(verifiedCredentialCache.isVerified(ACCOUNT_IDENTIFIER, DEVICE_ID, SaltedTokenHash.generateFor(PASSWORD),
+        PASSWORD));
+  }
+
+  @Test
+  void isVerifiedExpired() {
+    verifiedCredentialCache.putVerified(ACCOUNT_IDENTIFIER, DEVICE_ID, SALTED_TOKEN_HASH, PASSWORD);
+    assertTrue(verifiedCredentialCache.isVerified(ACCOUNT_IDENTIFIER, DEVICE_ID, SALTED_TOKEN_HASH, PASSWORD));
+
+    nanos.addAndGet(TTL.plusSeconds(1).toNanos());
+    assertFalse(verifiedCredentialCache.isVerified(ACCOUNT_IDENTIFIER, DEVICE_ID, SALTED_TOKEN_HASH, PASSWORD));
+  }
+
+  @Test
+  void isVerifiedAmbiguousFields() {
+    final SaltedTokenHash saltedTokenHash = new SaltedTokenHash("hash", "salt");
+    verifiedCredentialCache.putVerified(ACCOUNT_IDENTIFIER, DEVICE_ID, saltedTokenHash, PASSWORD);
+
+    // Moving characters between fields shouldn't produce the same digest
+    assertFalse(verifiedCredentialCache.isVerified(ACCOUNT_IDENTIFIER, DEVICE_ID, new SaltedTokenHash("hashs", "alt"),
+        PASSWORD));
+    assertFalse(verifiedCredentialCache.isVerified(ACCOUNT_IDENTIFIER, DEVICE_ID, new SaltedTokenHash("hash", "saltp"),
+        PASSWORD.substring(1)));
+  }
+}
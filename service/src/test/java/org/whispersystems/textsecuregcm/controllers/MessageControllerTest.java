@@ -19,7 +19,8 @@ import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.anyBoolean;
 import static org.mockito.Mockito.anyString;
-import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
@@ -29,7 +30,6 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 import static org.whispersystems.textsecuregcm.tests.util.JsonHelpers.asJson;
 import static org.whispersystems.textsecuregcm.tests.util.JsonHelpers.jsonFixture;
-import static org.whispersystems.textsecuregcm.util.MockUtils.exactly;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -46,7 +46,9 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -138,6 +140,8 @@ import org.whispersystems.textsecuregcm.util.Pair;
 import org.whispersystems.textsecuregcm.util.SystemMapper;
 import org.whispersystems.textsecuregcm.util.UUIDUtil;
 import org.whispersystems.websocket.Stories;
+import org.whispersystems.websocket.routing.WebSocketRouteRequest;
+import org.whispersystems.websocket.session.WebSocketSessionContext;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
@@ -195,6 +199,11 @@ class MessageControllerTest {
   private static final DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager = mock(DynamicConfigurationManager.class);
   private static final ServerSecretParams serverSecretParams = ServerSecretParams.generate();
 
+  private static final MessageController messageController = new MessageController(rateLimiters, cardinalityEstimator,
+      messageSender, receiptSender, accountsManager, messagesManager, pushNotificationManager, reportMessageManager,
+      multiRecipientMessageExecutor, messageDeliveryScheduler, ReportSpamTokenProvider.noop(),
+      mock(ClientReleaseManager.class), dynamicConfigurationManager, serverSecretParams);
+
   private static final ResourceExtension resources = ResourceExtension.builder()
       .addProperty(ServerProperties.UNWRAP_COMPLETION_STAGE_IN_WRITER_ENABLE, Boolean.TRUE)
       .addProvider(AuthHelper.getAuthFilter())
@@ -202,11 +211,7 @@ class MessageControllerTest {
       .addProvider(RateLimitExceededExceptionMapper.class)
       .addProvider(MultiRecipientMessageProvider.class)
       .setTestContainerFactory(new GrizzlyWebTestContainerFactory())
-      .addResource(
-          new MessageController(rateLimiters, cardinalityEstimator, messageSender, receiptSender, accountsManager,
-              messagesManager, pushNotificationManager, reportMessageManager, multiRecipientMessageExecutor,
-              messageDeliveryScheduler, ReportSpamTokenProvider.noop(), mock(ClientReleaseManager.class), dynamicConfigurationManager,
-              serverSecretParams))
+      .addResource(messageController)
       .build();
 
   @BeforeEach
@@ -245,6 +250,17 @@ class MessageControllerTest {
     when(accountsManager.getByServiceIdentifierAsync(MULTI_DEVICE_PNI_ID)).thenReturn(CompletableFuture.completedFuture(Optional.of(multiDeviceAccount)));
     when(accountsManager.getByServiceIdentifierAsync(new AciServiceIdentifier(INTERNATIONAL_UUID))).thenReturn(CompletableFuture.completedFuture(Optional.of(internationalAccount)));
 
+    // Bulk lookups resolve each identifier with the single-account lookups stubbed above
+    when(accountsManager.getByServiceIdentifiers(any())).thenAnswer(invocation -> {
+      final Map<ServiceIdentifier, Account> accountsByServiceIdentifier = new HashMap<>();
+
+      invocation.<Collection<ServiceIdentifier>>getArgument(0).forEach(serviceIdentifier ->
+          accountsManager.getByServiceIdentifierAsync(serviceIdentifier).join()
+              .ifPresent(account -> accountsByServiceIdentifier.put(serviceIdentifier, account)));
+
+      return CompletableFuture.completedFuture(accountsByServiceIdentifier);
+    });
+
     final DynamicInboundMessageByteLimitConfiguration inboundMessageByteLimitConfiguration =
         mock(DynamicInboundMessageByteLimitConfiguration.class);
 
@@ -260,6 +276,21 @@ class MessageControllerTest {
     when(rateLimiters.getInboundMessageBytes()).thenReturn(rateLimiter);
 
     when(rateLimiter.validateAsync(any(UUID.class))).thenReturn(CompletableFuture.completedFuture(null));
+
+    when(messageSender.sendMessages(any(), anyBoolean(), any())).thenAnswer(invocation ->
+        ((List<?>) invocation.getArgument(0)).stream()
+            .map(ignored -> CompletableFuture.completedFuture(null))
+            .toList());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<MessageSender.DeviceMessage> getSentDeviceMessages(final boolean online) {
+    final ArgumentCaptor<List<MessageSender.DeviceMessage>> captor = ArgumentCaptor.forClass(List.class);
+    verify(messageSender, atLeast(0)).sendMessages(captor.capture(), eq(online), any());
+
+    return captor.getAllValues().stream()
+        .flatMap(List::stream)
+        .toList();
   }
 
   private static Device generateTestDevice(final byte id, final int registrationId, final int pniRegistrationId,
@@ -708,6 +739,44 @@ class MessageControllerTest {
 
   }
 
+  @Test
+  void testHandleRemovePendingMessage() {
+    final long timestamp = System.currentTimeMillis();
+    final UUID sourceUuid = UUID.randomUUID();
+    final UUID messageGuid = UUID.randomUUID();
+
+    when(messagesManager.delete(AuthHelper.VALID_UUID, (byte) 1, messageGuid, null))
+        .thenReturn(CompletableFuture.completedFuture(Optional.of(generateEnvelope(messageGuid,
+            Envelope.Type.CIPHERTEXT_VALUE, timestamp, sourceUuid, (byte) 1, AuthHelper.VALID_UUID, null,
+            "hi".getBytes(), 0))));
+
+    final WebSocketSessionContext context = mock(WebSocketSessionContext.class);
+    when(context.getAuthenticated())
+        .thenReturn(new AuthenticatedAccount(() -> new Pair<>(AuthHelper.VALID_ACCOUNT, AuthHelper.VALID_DEVICE)));
+
+    assertEquals(204, messageController.handleRemovePendingMessage(
+        buildRouteRequest(context, messageGuid.toString())).join().status());
+
+    verify(receiptSender).sendReceipt(eq(new AciServiceIdentifier(AuthHelper.VALID_UUID)), eq((byte) 1),
+        eq(new AciServiceIdentifier(sourceUuid)), eq(timestamp));
+
+    assertEquals(404, messageController.handleRemovePendingMessage(
+        buildRouteRequest(context, "not-a-uuid")).join().status());
+
+    final WebSocketSessionContext unauthenticatedContext = mock(WebSocketSessionContext.class);
+
+    assertEquals(401, messageController.handleRemovePendingMessage(
+        buildRouteRequest(unauthenticatedContext, messageGuid.toString())).join().status());
+
+    verify(messagesManager).delete(AuthHelper.VALID_UUID, (byte) 1, messageGuid, null);
+    verifyNoMoreInteractions(receiptSender);
+  }
+
+  private static WebSocketRouteRequest buildRouteRequest(final WebSocketSessionContext context, final String uuid) {
+    return new WebSocketRouteRequest(context, "DELETE", "/v1/messages/uuid/" + uuid, Map.of("uuid", uuid),
+        Optional.empty(), Map.of(), Optional.empty());
+  }
+
   @Test
   void testReportMessageByE164() {
 
@@ -1073,7 +1142,7 @@ class MessageControllerTest {
         .put(entity);
 
     assertThat(response.readEntity(String.class), response.getStatus(), is(equalTo(200)));
-    verify(messageSender, times(nRecipients * devicesPerRecipient)).sendMessage(any(), any(), any(), eq(true));
+    assertEquals(nRecipients * devicesPerRecipient, getSentDeviceMessages(true).size());
   }
 
   // see testMultiRecipientMessageNoPni and testMultiRecipientMessagePni below for actual invocations
@@ -1122,13 +1191,10 @@ class MessageControllerTest {
         .put(entity);
 
     assertThat("Unexpected response", response.getStatus(), is(equalTo(expectedStatus)));
-    verify(messageSender,
-        exactly(expectedMessagesSent))
-        .sendMessage(
-            any(),
-            any(),
-            argThat(env -> env.getUrgent() == urgent && !env.hasSourceUuid() && !env.hasSourceDevice()),
-            eq(true));
+    assertEquals(expectedMessagesSent, getSentDeviceMessages(true).stream()
+        .map(MessageSender.DeviceMessage::envelope)
+        .filter(env -> env.getUrgent() == urgent && !env.hasSourceUuid() && !env.hasSourceDevice())
+        .count());
     if (expectedStatus == 200) {
       SendMultiRecipientMessageResponse smrmr = response.readEntity(SendMultiRecipientMessageResponse.class);
       assertThat(smrmr.uuids404(), is(empty()));
@@ -1303,13 +1369,10 @@ class MessageControllerTest {
         .put(Entity.entity(stream, MultiRecipientMessageProvider.MEDIA_TYPE));
 
     assertThat("Unexpected response", response.getStatus(), is(equalTo(expectedStatus)));
-    verify(messageSender,
-        exactly(expectedMessagesSent))
-        .sendMessage(
-            any(),
-            any(),
-            argThat(env -> !env.hasSourceUuid() && !env.hasSourceDevice()),
-            eq(true));
+    assertEquals(expectedMessagesSent, getSentDeviceMessages(true).stream()
+        .map(MessageSender.DeviceMessage::envelope)
+        .filter(env -> !env.hasSourceUuid() && !env.hasSourceDevice())
+        .count());
     if (expectedStatus == 200) {
       SendMultiRecipientMessageResponse smrmr = response.readEntity(SendMultiRecipientMessageResponse.class);
       assertThat(smrmr.uuids404(), is(empty()));
@@ -1621,8 +1684,10 @@ class MessageControllerTest {
         .header(HttpHeaders.USER_AGENT, "FIXME")
         .header(HeaderUtils.UNIDENTIFIED_ACCESS_KEY, Base64.getEncoder().encodeToString(UNIDENTIFIED_ACCESS_BYTES));
 
-    doThrow(NotPushRegisteredException.class)
-        .when(messageSender).sendMessage(any(), any(), any(), anyBoolean());
+    doAnswer(invocation -> ((List<?>) invocation.getArgument(0)).stream()
+        .map(ignored -> CompletableFuture.failedFuture(new NotPushRegisteredException()))
+        .toList())
+        .when(messageSender).sendMessages(any(), anyBoolean(), any());
 
     // make the PUT request
     final SendMultiRecipientMessageResponse response = invocationBuilder.put(entity, SendMultiRecipientMessageResponse.class);
@@ -1669,7 +1734,7 @@ class MessageControllerTest {
 
   private void checkBadMultiRecipientResponse(Response response, int expectedCode) throws Exception {
     assertThat("Unexpected response", response.getStatus(), is(equalTo(expectedCode)));
-    verify(messageSender, never()).sendMessage(any(), any(), any(), anyBoolean());
+    verify(messageSender, never()).sendMessages(any(), anyBoolean(), any());
   }
 
   private static Envelope generateEnvelope(UUID guid, int type, long timestamp, UUID sourceUuid,
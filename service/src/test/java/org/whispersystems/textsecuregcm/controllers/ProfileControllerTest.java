@@ -33,7 +33,9 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
@@ -221,6 +223,17 @@ class ProfileControllerTest {
     when(accountsManager.getByAccountIdentifier(AuthHelper.VALID_UUID)).thenReturn(Optional.of(capabilitiesAccount));
     when(accountsManager.getByServiceIdentifier(new AciServiceIdentifier(AuthHelper.VALID_UUID))).thenReturn(Optional.of(capabilitiesAccount));
 
+    // Bulk lookups resolve each identifier with the single-account lookups stubbed above
+    when(accountsManager.getByServiceIdentifiers(any())).thenAnswer(invocation -> {
+      final Map<ServiceIdentifier, Account> accountsByServiceIdentifier = new HashMap<>();
+
+      invocation.<Collection<ServiceIdentifier>>getArgument(0).forEach(serviceIdentifier ->
+          accountsManager.getByServiceIdentifier(serviceIdentifier)
+              .ifPresent(account -> accountsByServiceIdentifier.put(serviceIdentifier, account)));
+
+      return CompletableFuture.completedFuture(accountsByServiceIdentifier);
+    });
+
     final byte[] name = TestRandomUtil.nextBytes(81);
     final byte[] emoji = TestRandomUtil.nextBytes(60);
     final byte[] about = TestRandomUtil.nextBytes(156);
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.grpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.whispersystems.textsecuregcm.entities.MessageProtos.Envelope;
+import org.whispersystems.textsecuregcm.storage.CoalescingMessageDeleter;
+import org.whispersystems.textsecuregcm.storage.Device;
+import org.whispersystems.textsecuregcm.storage.MessagesManager;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+class MessageDeliveryStreamTest {
+
+  private MessagesManager messagesManager;
+  private CoalescingMessageDeleter messageDeleter;
+
+  private static final UUID ACCOUNT_IDENTIFIER = UUID.randomUUID();
+  private static final byte DEVICE_ID = Device.PRIMARY_ID;
+
+  @BeforeEach
+  void setUp() {
+    messagesManager = mock(MessagesManager.class);
+    messageDeleter = mock(CoalescingMessageDeleter.class);
+  }
+
+  @Test
+  void newMessagesAvailable() {
+    final Envelope firstEnvelope = generateEnvelope(false);
+    final Envelope secondEnvelope = generateEnvelope(false);
+    final Envelope thirdEnvelope = generateEnvelope(false);
+    final Envelope fourthEnvelope = generateEnvelope(false);
+
+    when(messagesManager.getMessagesForDeviceReactive(ACCOUNT_IDENTIFIER, DEVICE_ID, false))
+        .thenReturn(Flux.just(firstEnvelope, secondEnvelope));
+
+    final MessageDeliveryStream stream = new MessageDeliveryStream(ACCOUNT_IDENTIFIER, DEVICE_ID, true,
+        messagesManager, messageDeleter);
+
+    StepVerifier.create(stream.getMessages())
+        .assertNext(response -> assertEquals(firstEnvelope, response.getEnvelope()))
+        .assertNext(response -> assertEquals(secondEnvelope, response.getEnvelope()))
+        .assertNext(response -> assertTrue(response.hasQueueEmpty()))
+        .then(() -> {
+          // A notification about new messages only needs a pass through the cache
+          when(messagesManager.getMessagesForDeviceReactive(ACCOUNT_IDENTIFIER, DEVICE_ID, true))
+              .thenReturn(Flux.just(firstEnvelope, secondEnvelope, thirdEnvelope));
+
+          assertTrue(stream.handleNewMessagesAvailable());
+        })
+        .assertNext(response -> assertEquals(thirdEnvelope, response.getEnvelope()))
+        .then(() -> {
+          // ...but messages may have moved out of the cache after they've been persisted
+          when(messagesManager.getMessagesForDeviceReactive(ACCOUNT_IDENTIFIER, DEVICE_ID, false))
+              .thenReturn(Flux.just(secondEnvelope, thirdEnvelope, fourthEnvelope));
+
+          assertTrue(stream.handleMessagesPersisted());
+        })
+        .assertNext(response -> assertEquals(fourthEnvelope, response.getEnvelope()))
+        .then(() -> {
+          // The first message left the queue, so the full pass should have trimmed it from the delivered messages
+          assertEquals(3, stream.getTrackedMessageCount());
+
+          stream.close();
+          assertFalse(stream.handleNewMessagesAvailable());
+        })
+        .thenCancel()
+        .verify(Duration.ofSeconds(5));
+  }
+
+  @Test
+  void acknowledgedMessagesForgotten() {
+    final Envelope envelope = generateEnvelope(false);
+
+    when(messagesManager.getMessagesForDeviceReactive(ACCOUNT_IDENTIFIER, DEVICE_ID, false))
+        .thenReturn(Flux.just(envelope));
+
+    final MessageDeliveryStream stream = new MessageDeliveryStream(ACCOUNT_IDENTIFIER, DEVICE_ID, true,
+        messagesManager, messageDeleter);
+
+    StepVerifier.create(stream.getMessages())
+        .assertNext(response -> assertEquals(envelope, response.getEnvelope()))
+        .assertNext(response -> assertTrue(response.hasQueueEmpty()))
+        .then(() -> {
+          assertEquals(1, stream.getTrackedMessageCount());
+
+          stream.handleMessageAcknowledged(UUID.fromString(envelope.getServerGuid()));
+          assertEquals(0, stream.getTrackedMessageCount());
+        })
+        .thenCancel()
+        .verify(Duration.ofSeconds(5));
+  }
+
+  @Test
+  void deletedStoriesForgotten() {
+    final Envelope story = generateEnvelope(true);
+    final CompletableFuture<Optional<Envelope>> deleteFuture = new CompletableFuture<>();
+
+    when(messagesManager.getMessagesForDeviceReactive(ACCOUNT_IDENTIFIER, DEVICE_ID, false))
+        .thenReturn(Flux.just(story));
+
+    when(messageDeleter.delete(any(), anyLong())).thenReturn(deleteFuture);
+
+    final MessageDeliveryStream stream = new MessageDeliveryStream(ACCOUNT_IDENTIFIER, DEVICE_ID, false,
+        messagesManager, messageDeleter);
+
+    StepVerifier.create(stream.getMessages())
+        .assertNext(response -> assertTrue(response.hasQueueEmpty()))
+        .then(() -> {
+          verify(messageDeleter).delete(UUID.fromString(story.getServerGuid()), story.getServerTimestamp());
+
+          // Until the story is gone, later passes shouldn't try to delete it again
+          assertEquals(1, stream.getTrackedMessageCount());
+
+          deleteFuture.complete(Optional.of(story));
+          assertEquals(0, stream.getTrackedMessageCount());
+        })
+        .thenCancel()
+        .verify(Duration.ofSeconds(5));
+  }
+
+  @Test
+  void trackedMessagesLimited() {
+    final List<Envelope> envelopes = IntStream.range(0, MessageDeliveryStream.MAX_TRACKED_MESSAGES + 1)
+        .mapToObj(ignored -> generateEnvelope(false))
+        .toList();
+
+    when(messagesManager.getMessagesForDeviceReactive(ACCOUNT_IDENTIFIER, DEVICE_ID, false))
+        .thenReturn(Flux.fromIterable(envelopes));
+
+    final MessageDeliveryStream stream = new MessageDeliveryStream(ACCOUNT_IDENTIFIER, DEVICE_ID, true,
+        messagesManager, messageDeleter);
+
+    StepVerifier.create(stream.getMessages())
+        .expectNextCount(envelopes.size())
+        .assertNext(response -> assertTrue(response.hasQueueEmpty()))
+        .then(() -> {
+          assertEquals(MessageDeliveryStream.MAX_TRACKED_MESSAGES, stream.getTrackedMessageCount());
+
+          when(messagesManager.getMessagesForDeviceReactive(ACCOUNT_IDENTIFIER, DEVICE_ID, true))
+              .thenReturn(Flux.fromIterable(envelopes));
+
+          assertTrue(stream.handleNewMessagesAvailable());
+        })
+        // Only the message that didn't fit in the set of delivered messages should be delivered again
+        .assertNext(response -> assertEquals(envelopes.getLast(), response.getEnvelope()))
+        .thenCancel()
+        .verify(Duration.ofSeconds(5));
+  }
+
+  private static Envelope generateEnvelope(final boolean story) {
+    return Envelope.newBuilder()
+        .setType(Envelope.Type.CIPHERTEXT)
+        .setServerGuid(UUID.randomUUID().toString())
+        .setServerTimestamp(System.currentTimeMillis())
+        .setTimestamp(System.currentTimeMillis())
+        .setSourceUuid(UUID.randomUUID().toString())
+        .setSourceDevice(Device.PRIMARY_ID)
+        .setDestinationUuid(ACCOUNT_IDENTIFIER.toString())
+        .setStory(story)
+        .build();
+  }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.grpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyByte;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.whispersystems.textsecuregcm.grpc.GrpcTestUtils.assertStatusException;
+
+import io.grpc.Status;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.signal.chat.messages.AcknowledgeMessagesRequest;
+import org.signal.chat.messages.AcknowledgeMessagesResponse;
+import org.signal.chat.messages.GetMessagesRequest;
+import org.signal.chat.messages.GetMessagesResponse;
+import org.signal.chat.messages.MessagesGrpc;
+import org.signal.chat.messages.ReactorMessagesGrpc;
+import org.whispersystems.textsecuregcm.entities.MessageProtos.Envelope;
+import org.whispersystems.textsecuregcm.identity.AciServiceIdentifier;
+import org.whispersystems.textsecuregcm.push.ClientPresenceManager;
+import org.whispersystems.textsecuregcm.push.NotPushRegisteredException;
+import org.whispersystems.textsecuregcm.push.PushNotificationManager;
+import org.whispersystems.textsecuregcm.push.ReceiptSender;
+import org.whispersystems.textsecuregcm.storage.Account;
+import org.whispersystems.textsecuregcm.storage.AccountsManager;
+import org.whispersystems.textsecuregcm.storage.ClientReleaseManager;
+import org.whispersystems.textsecuregcm.storage.Device;
+import org.whispersystems.textsecuregcm.storage.MessageAvailabilityListener;
+import org.whispersystems.textsecuregcm.storage.MessagesManager;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+class MessagesGrpcServiceTest extends SimpleBaseGrpcTest<MessagesGrpcService, MessagesGrpc.MessagesBlockingStub> {
+
+  private static final GetMessagesResponse QUEUE_EMPTY_RESPONSE = GetMessagesResponse.newBuilder()
+      .setQueueEmpty(GetMessagesResponse.QueueEmpty.getDefaultInstance())
+      .build();
+
+  @Mock
+  private AccountsManager accountsManager;
+
+  @Mock
+  private MessagesManager messagesManager;
+
+  @Mock
+  private ClientPresenceManager clientPresenceManager;
+
+  @Mock
+  private PushNotificationManager pushNotificationManager;
+
+  @Mock
+  private ReceiptSender receiptSender;
+
+  @Mock
+  private ClientReleaseManager clientReleaseManager;
+
+  @Mock
+  private Account authenticatedAccount;
+
+  @Mock
+  private Device authenticatedDevice;
+
+  @Override
+  protected MessagesGrpcService createServiceBeforeEachTest() {
+    when(authenticatedAccount.getUuid()).thenReturn(AUTHENTICATED_ACI);
+    when(authenticatedAccount.getDevice(AUTHENTICATED_DEVICE_ID)).thenReturn(Optional.of(authenticatedDevice));
+    when(authenticatedDevice.getId()).thenReturn(AUTHENTICATED_DEVICE_ID);
+
+    when(accountsManager.getByAccountIdentifierAsync(AUTHENTICATED_ACI))
+        .thenReturn(CompletableFuture.completedFuture(Optional.of(authenticatedAccount)));
+
+    when(messagesManager.getMessagesForDeviceReactive(any(), anyByte(), anyBoolean())).thenReturn(Flux.empty());
+
+    return new MessagesGrpcService(accountsManager, messagesManager, clientPresenceManager, pushNotificationManager,
+        receiptSender, clientReleaseManager, Schedulers.immediate());
+  }
+
+  @Test
+  void getMessages() {
+    final Envelope firstEnvelope = generateEnvelope(Envelope.Type.CIPHERTEXT, false);
+    final Envelope secondEnvelope = generateEnvelope(Envelope.Type.CIPHERTEXT, false);
+    final Envelope thirdEnvelope = generateEnvelope(Envelope.Type.CIPHERTEXT, false);
+
+    when(messagesManager.getMessagesForDeviceReactive(AUTHENTICATED_ACI, AUTHENTICATED_DEVICE_ID, false))
+        .thenReturn(Flux.just(firstEnvelope, secondEnvelope));
+
+    final ArgumentCaptor<MessageAvailabilityListener> listenerCaptor =
+        ArgumentCaptor.forClass(MessageAvailabilityListener.class);
+
+    StepVerifier.create(reactorStub().getMessages(GetMessagesRequest.newBuilder().build()))
+        .assertNext(response -> assertEquals(firstEnvelope, response.getEnvelope()))
+        .assertNext(response -> assertEquals(secondEnvelope, response.getEnvelope()))
+        .assertNext(response -> assertTrue(response.hasQueueEmpty()))
+        .then(() -> {
+          verify(clientPresenceManager).setPresent(eq(AUTHENTICATED_ACI), eq(AUTHENTICATED_DEVICE_ID), any());
+          verify(pushNotificationManager).handleMessagesRetrieved(authenticatedAccount, authenticatedDevice, null);
+          verify(messagesManager).addMessageAvailabilityListener(eq(AUTHENTICATED_ACI), eq(AUTHENTICATED_DEVICE_ID),
+              listenerCaptor.capture());
+
+          // Unacknowledged messages are still in the queue, but shouldn't be delivered again by the same stream
+          when(messagesManager.getMessagesForDeviceReactive(AUTHENTICATED_ACI, AUTHENTICATED_DEVICE_ID, true))
+              .thenReturn(Flux.just(firstEnvelope, secondEnvelope, thirdEnvelope));
+
+          assertTrue(listenerCaptor.getValue().handleNewMessagesAvailable());
+        })
+        .assertNext(response -> assertEquals(thirdEnvelope, response.getEnvelope()))
+        .thenCancel()
+        .verify(Duration.ofSeconds(5));
+  }
+
+  @Test
+  void getMessagesStories() {
+    final Envelope story = generateEnvelope(Envelope.Type.CIPHERTEXT, true);
+    final Envelope message = generateEnvelope(Envelope.Type.CIPHERTEXT, false);
+
+    when(messagesManager.getMessagesForDeviceReactive(AUTHENTICATED_ACI, AUTHENTICATED_DEVICE_ID, false))
+        .thenReturn(Flux.just(story, message));
+
+    when(messagesManager.delete(eq(AUTHENTICATED_ACI), eq(AUTHENTICATED_DEVICE_ID), anyList()))
+        .thenAnswer(invocation -> {
+          final List<?> deleteRequests = invocation.getArgument(2);
+
+          return deleteRequests.stream()
+              .map(ignored -> CompletableFuture.completedFuture(Optional.empty()))
+              .toList();
+        });
+
+    final List<GetMessagesResponse> responses =
+        reactorStub().getMessages(GetMessagesRequest.newBuilder().setReceiveStories(false).build())
+            .take(2)
+            .collectList()
+            .block();
+
+    assertEquals(List.of(GetMessagesResponse.newBuilder().setEnvelope(message).build(), QUEUE_EMPTY_RESPONSE),
+        responses);
+
+    verify(messagesManager).delete(AUTHENTICATED_ACI, AUTHENTICATED_DEVICE_ID,
+        List.of(new MessagesManager.DeleteRequest(UUID.fromString(story.getServerGuid()), story.getServerTimestamp())));
+  }
+
+  @Test
+  void getMessagesDisplaced() {
+    final Iterator<GetMessagesResponse> responses =
+        authenticatedServiceStub().getMessages(GetMessagesRequest.newBuilder().build());
+
+    assertTrue(responses.next().hasQueueEmpty());
+
+    final ArgumentCaptor<MessageDeliveryStream> streamCaptor = ArgumentCaptor.forClass(MessageDeliveryStream.class);
+    verify(clientPresenceManager).setPresent(eq(AUTHENTICATED_ACI), eq(AUTHENTICATED_DEVICE_ID), streamCaptor.capture());
+
+    streamCaptor.getValue().handleDisplacement(true);
+
+    assertStatusException(Status.ABORTED, responses::hasNext);
+
+    verify(clientPresenceManager, timeout(1_000))
+        .clearPresence(AUTHENTICATED_ACI, AUTHENTICATED_DEVICE_ID, streamCaptor.getValue());
+
+    verify(messagesManager, timeout(1_000)).removeMessageAvailabilityListener(streamCaptor.getValue());
+    assertFalse(streamCaptor.getValue().handleNewMessagesAvailable());
+  }
+
+  @Test
+  void getMessagesCancelled() throws NotPushRegisteredException {
+    when(messagesManager.hasCachedMessages(AUTHENTICATED_ACI, AUTHENTICATED_DEVICE_ID)).thenReturn(true);
+
+    final List<GetMessagesResponse> responses = reactorStub().getMessages(GetMessagesRequest.newBuilder().build())
+        .take(1)
+        .collectList()
+        .block();
+
+    assertEquals(List.of(QUEUE_EMPTY_RESPONSE), responses);
+
+    verify(clientPresenceManager, timeout(1_000)).clearPresence(eq(AUTHENTICATED_ACI), eq(AUTHENTICATED_DEVICE_ID), any());
+    verify(pushNotificationManager, timeout(1_000))
+        .sendNewMessageNotification(authenticatedAccount, AUTHENTICATED_DEVICE_ID, true);
+  }
+
+  @Test
+  void getMessagesUnauthenticated() {
+    GrpcTestUtils.assertStatusUnauthenticated(() ->
+        unauthenticatedServiceStub().getMessages(GetMessagesRequest.newBuilder().build()).hasNext());
+
+    verify(clientPresenceManager, never()).setPresent(any(), anyByte(), any());
+  }
+
+  @Test
+  void acknowledgeMessages() {
+    final Envelope message = generateEnvelope(Envelope.Type.CIPHERTEXT, false);
+    final Envelope deliveryReceipt = generateEnvelope(Envelope.Type.SERVER_DELIVERY_RECEIPT, false);
+    final Envelope missingMessage = generateEnvelope(Envelope.Type.CIPHERTEXT, false);
+
+    final Map<UUID, Envelope> queuedMessagesByGuid = Stream.of(message, deliveryReceipt)
+        .collect(Collectors.toMap(envelope -> UUID.fromString(envelope.getServerGuid()), Function.identity()));
+
+    when(messagesManager.delete(eq(AUTHENTICATED_ACI), eq(AUTHENTICATED_DEVICE_ID), anyList()))
+        .thenAnswer(invocation -> {
+          final List<MessagesManager.DeleteRequest> deleteRequests = invocation.getArgument(2);
+
+          return deleteRequests.stream()
+              .map(deleteRequest ->
+                  CompletableFuture.completedFuture(Optional.ofNullable(queuedMessagesByGuid.get(deleteRequest.guid()))))
+              .toList();
+        });
+
+    final AcknowledgeMessagesResponse response = reactorStub()
+        .acknowledgeMessages(Flux.just(message, deliveryReceipt, missingMessage)
+            .map(envelope -> AcknowledgeMessagesRequest.newBuilder()
+                .setServerGuid(envelope.getServerGuid())
+                .setServerTimestamp(envelope.getServerTimestamp())
+                .build()))
+        .block();
+
+    assertEquals(2, response.getRemoved());
+
+    verify(receiptSender).sendReceipt(AciServiceIdentifier.valueOf(message.getDestinationUuid()),
+        AUTHENTICATED_DEVICE_ID, AciServiceIdentifier.valueOf(message.getSourceUuid()), message.getTimestamp());
+
+    verify(receiptSender, never()).sendReceipt(any(), anyByte(),
+        eq(AciServiceIdentifier.valueOf(deliveryReceipt.getSourceUuid())), anyLong());
+  }
+
+  @Test
+  void acknowledgeMessagesOpenStream() {
+    final Envelope message = generateEnvelope(Envelope.Type.CIPHERTEXT, false);
+
+    when(messagesManager.getMessagesForDeviceReactive(AUTHENTICATED_ACI, AUTHENTICATED_DEVICE_ID, false))
+        .thenReturn(Flux.just(message));
+
+    when(messagesManager.delete(eq(AUTHENTICATED_ACI), eq(AUTHENTICATED_DEVICE_ID), anyList()))
+        .thenReturn(List.of(CompletableFuture.completedFuture(Optional.of(message))));
+
+    final ArgumentCaptor<MessageDeliveryStream> streamCaptor = ArgumentCaptor.forClass(MessageDeliveryStream.class);
+
+    StepVerifier.create(reactorStub().getMessages(GetMessagesRequest.newBuilder().build()))
+        .assertNext(response -> assertEquals(message, response.getEnvelope()))
+        .assertNext(response -> assertTrue(response.hasQueueEmpty()))
+        .then(() -> {
+          verify(clientPresenceManager)
+              .setPresent(eq(AUTHENTICATED_ACI), eq(AUTHENTICATED_DEVICE_ID), streamCaptor.capture());
+
+          assertEquals(1, streamCaptor.getValue().getTrackedMessageCount());
+
+          final AcknowledgeMessagesResponse response = reactorStub()
+              .acknowledgeMessages(Flux.just(AcknowledgeMessagesRequest.newBuilder()
+                  .setServerGuid(message.getServerGuid())
+                  .setServerTimestamp(message.getServerTimestamp())
+                  .build()))
+              .block();
+
+          assertEquals(1, response.getRemoved());
+
+          // The open stream no longer needs to remember that it delivered the acknowledged message
+          assertEquals(0, streamCaptor.getValue().getTrackedMessageCount());
+        })
+        .thenCancel()
+        .verify(Duration.ofSeconds(5));
+  }
+
+  @Test
+  void acknowledgeMessagesInvalidGuid() {
+    assertStatusException(Status.INVALID_ARGUMENT, () ->
+        reactorStub()
+            .acknowledgeMessages(Flux.just(AcknowledgeMessagesRequest.newBuilder().setServerGuid("not a GUID").build()))
+            .block());
+
+    verify(messagesManager, never()).delete(any(), anyByte(), anyList());
+  }
+
+  private static ReactorMessagesGrpc.ReactorMessagesStub reactorStub() {
+    // The blocking stub can't make client-streaming calls or cancel server-streaming calls
+    return ReactorMessagesGrpc.newReactorStub(GRPC_SERVER_EXTENSION_AUTHENTICATED.getChannel());
+  }
+
+  private static Envelope generateEnvelope(final Envelope.Type type, final boolean story) {
+    return Envelope.newBuilder()
+        .setType(type)
+        .setServerGuid(UUID.randomUUID().toString())
+        .setServerTimestamp(System.currentTimeMillis())
+        .setTimestamp(System.currentTimeMillis())
+        .setSourceUuid(UUID.randomUUID().toString())
+        .setSourceDevice(Device.PRIMARY_ID)
+        .setDestinationUuid(AUTHENTICATED_ACI.toString())
+        .setStory(story)
+        .build();
+  }
+}
@@ -16,7 +16,9 @@ import static org.mockito.Mockito.mock;
 import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
 import io.lettuce.core.cluster.event.ClusterTopologyChangedEvent;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
@@ -30,6 +32,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.whispersystems.textsecuregcm.redis.RedisClusterExtension;
 
 class ClientPresenceManagerTest {
@@ -50,7 +54,7 @@ class ClientPresenceManagerTest {
 
     REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection -> {
       connection.sync().flushall();
-      connection.sync().upstream().commands().configSet("notify-keyspace-events", "K$glz");
+      connection.sync().upstream().commands().configSet("notify-keyspace-events", "K$glxz");
     });
 
     presenceRenewalExecutorService = Executors.newSingleThreadScheduledExecutor();
@@ -223,29 +227,81 @@ class ClientPresenceManagerTest {
   }
 
   @Test
-  void testRenewPresence() {
-    final UUID accountUuid = UUID.randomUUID();
-    final byte deviceId = 1;
+  void testRenewPresences() {
+    final List<String> presenceKeys = new ArrayList<>();
 
-    final String presenceKey = ClientPresenceManager.getPresenceKey(accountUuid, deviceId);
+    for (int i = 0; i < 100; i++) {
+      final UUID accountUuid = UUID.randomUUID();
+      final byte deviceId = 1;
 
-    REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection ->
-        connection.sync().set(presenceKey, clientPresenceManager.getManagerId()));
+      clientPresenceManager.setPresent(accountUuid, deviceId, NO_OP);
+      presenceKeys.add(ClientPresenceManager.getPresenceKey(accountUuid, deviceId));
+    }
 
-    {
-      final int ttl = REDIS_CLUSTER_EXTENSION.getRedisCluster().withCluster(connection ->
-          connection.sync().ttl(presenceKey).intValue());
+    // A presence owned by some other presence manager should never be renewed
+    final String remotePresenceKey = ClientPresenceManager.getPresenceKey(UUID.randomUUID(), (byte) 1);
+
+    REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection -> {
+      connection.sync().setex(remotePresenceKey, 10, UUID.randomUUID().toString());
+      presenceKeys.forEach(presenceKey -> connection.sync().expire(presenceKey, 10));
+    });
+
+    final String renewedPresenceKey = presenceKeys.get(0);
+    clientPresenceManager.renewPresences(ClientPresenceManager.getRenewalBucket(renewedPresenceKey));
 
-      assertEquals(-1, ttl);
+    REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection -> {
+      for (final String presenceKey : presenceKeys) {
+        final long ttl = connection.sync().ttl(presenceKey);
+
+        if (ClientPresenceManager.getRenewalBucket(presenceKey)
+            == ClientPresenceManager.getRenewalBucket(renewedPresenceKey)) {
+          assertTrue(ttl > 10);
+        } else {
+          assertTrue(ttl <= 10);
+        }
+      }
+    });
+
+    for (int bucket = 0; bucket < ClientPresenceManager.RENEWAL_BUCKET_COUNT; bucket++) {
+      clientPresenceManager.renewPresences(bucket);
     }
 
-    clientPresenceManager.renewPresence(accountUuid, deviceId);
+    REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection -> {
+      presenceKeys.forEach(presenceKey -> assertTrue(connection.sync().ttl(presenceKey) > 10));
+      assertTrue(connection.sync().ttl(remotePresenceKey) <= 10);
+    });
+  }
 
-    {
-      final int ttl = REDIS_CLUSTER_EXTENSION.getRedisCluster().withCluster(connection ->
-          connection.sync().ttl(presenceKey).intValue());
+  @Test
+  void testSetPresentConcurrently() throws InterruptedException {
+    final int presenceCount = 64;
+    final List<UUID> accountUuids = new ArrayList<>(presenceCount);
+    final ExecutorService executor = Executors.newFixedThreadPool(16);
 
-      assertTrue(ttl > 0);
+    try {
+      final List<CompletableFuture<Void>> futures = new ArrayList<>(presenceCount);
+
+      for (int i = 0; i < presenceCount; i++) {
+        final UUID accountUuid = UUID.randomUUID();
+        accountUuids.add(accountUuid);
+
+        futures.add(CompletableFuture.runAsync(
+            () -> clientPresenceManager.setPresent(accountUuid, (byte) 1, NO_OP), executor));
+      }
+
+      assertTimeoutPreemptively(Duration.ofSeconds(10),
+          () -> CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join());
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    final Set<String> connectedClients = REDIS_CLUSTER_EXTENSION.getRedisCluster().withCluster(connection ->
+        connection.sync().smembers(ClientPresenceManager.getConnectedClientSetKey(clientPresenceManager.getManagerId())));
+
+    for (final UUID accountUuid : accountUuids) {
+      assertTrue(clientPresenceManager.isPresent(accountUuid, (byte) 1));
+      assertTrue(connectedClients.contains(ClientPresenceManager.getPresenceKey(accountUuid, (byte) 1)));
     }
   }
 
@@ -254,6 +310,7 @@ class ClientPresenceManagerTest {
     final UUID accountUuid = UUID.randomUUID();
     final byte deviceId = 1;
 
+    clientPresenceManager.start();
     clientPresenceManager.setPresent(accountUuid, deviceId, NO_OP);
 
     assertTrue(clientPresenceManager.isPresent(accountUuid, deviceId));
@@ -262,7 +319,114 @@ class ClientPresenceManagerTest {
     REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection ->
         connection.sync().expire(ClientPresenceManager.getPresenceKey(accountUuid, deviceId), 0));
 
+    // The cached result is discarded when the keyspace notification for the expiration arrives, well before it would
+    // have expired on its own
+    assertTimeoutPreemptively(ClientPresenceManager.PRESENT_CACHE_TTL.dividedBy(2), () -> {
+      while (clientPresenceManager.isPresent(accountUuid, deviceId)) {
+        Thread.sleep(10);
+      }
+    });
+  }
+
+  @Test
+  void testIsPresentCached() {
+    final UUID accountUuid = UUID.randomUUID();
+    final byte deviceId = 1;
+
     assertFalse(clientPresenceManager.isPresent(accountUuid, deviceId));
+
+    // This presence manager isn't listening for keyspace notifications, so it won't notice the change until its cached
+    // result expires
+    REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(
+        connection -> connection.sync().set(ClientPresenceManager.getPresenceKey(accountUuid, deviceId),
+            UUID.randomUUID().toString()));
+
+    assertFalse(clientPresenceManager.isPresent(accountUuid, deviceId));
+
+    // Local changes always invalidate cached results
+    clientPresenceManager.setPresent(accountUuid, deviceId, NO_OP);
+    assertTrue(clientPresenceManager.isPresent(accountUuid, deviceId));
+
+    clientPresenceManager.disconnectPresence(accountUuid, deviceId);
+    assertFalse(clientPresenceManager.isPresent(accountUuid, deviceId));
+  }
+
+  @Test
+  void testPresenceCacheSubscriptions() {
+    clientPresenceManager.start();
+
+    for (int i = 0; i < 16; i++) {
+      assertFalse(clientPresenceManager.isPresent(UUID.randomUUID(), (byte) 1));
+    }
+
+    // Presence checks don't subscribe to anything; cached results are invalidated through a single shared channel
+    REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection -> connection.sync().upstream().asMap()
+        .forEach((node, commands) -> {
+          assertTrue(commands.pubsubChannels("__keyspace@0__:*").isEmpty());
+          assertEquals(0, commands.pubsubNumpat());
+        }));
+
+    final long presenceChangesSubscriberCount = REDIS_CLUSTER_EXTENSION.getRedisCluster().withCluster(connection ->
+        connection.sync().upstream().asMap().values().stream()
+            .mapToLong(commands -> commands.pubsubNumsub(ClientPresenceManager.PRESENCE_CHANGES_CHANNEL)
+                .getOrDefault(ClientPresenceManager.PRESENCE_CHANGES_CHANNEL, 0L))
+            .sum());
+
+    assertEquals(1, presenceChangesSubscriberCount);
+  }
+
+  @Test
+  void testIsPresentConcurrentlyWithSetPresent() throws InterruptedException {
+    final int iterations = 64;
+    final byte deviceId = 1;
+    final AtomicInteger displacements = new AtomicInteger();
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    clientPresenceManager.start();
+
+    try {
+      for (int i = 0; i < iterations; i++) {
+        final UUID accountUuid = UUID.randomUUID();
+
+        final CompletableFuture<Void> setPresentFuture = CompletableFuture.runAsync(() ->
+            clientPresenceManager.setPresent(accountUuid, deviceId,
+                connectedElsewhere -> displacements.incrementAndGet()), executor);
+
+        final CompletableFuture<Void> isPresentFuture = CompletableFuture.runAsync(() -> {
+          while (!setPresentFuture.isDone()) {
+            clientPresenceManager.isPresent(accountUuid, deviceId);
+          }
+        }, executor);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10),
+            () -> CompletableFuture.allOf(setPresentFuture, isPresentFuture).join());
+
+        // A check that raced with setPresent must not leave a stale "absent" result in the cache
+        assertTrue(clientPresenceManager.isPresent(accountUuid, deviceId));
+      }
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    // ...and this manager must never mistake its own writes for a remote displacement
+    assertEquals(0, displacements.get());
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+      "K$gx, true",
+      "K$glxz, true",
+      "KEA, true",
+      "KA, true",
+      "'', false",
+      "K$z, false",
+      "K$g, false",
+      "$gx, false",
+      "EA, false",
+  })
+  void hasRequiredKeyspaceNotificationFlags(final String flags, final boolean expectHasRequiredFlags) {
+    assertEquals(expectHasRequiredFlags, ClientPresenceManager.hasRequiredKeyspaceNotificationFlags(flags));
   }
 
   private void addClientPresence(final String managerId) {
@@ -320,7 +484,7 @@ class ClientPresenceManagerTest {
 
       REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection -> {
         connection.sync().flushall();
-        connection.sync().upstream().commands().configSet("notify-keyspace-events", "K$glz");
+        connection.sync().upstream().commands().configSet("notify-keyspace-events", "K$glxz");
       });
 
       final ScheduledExecutorService scheduledExecutorService1 = mock(ScheduledExecutorService.class);
@@ -357,6 +521,31 @@ class ClientPresenceManagerTest {
       assertTimeoutPreemptively(Duration.ofSeconds(10), displaced::join);
     }
 
+    @Test
+    void testIsPresentCacheInvalidatedRemotely() {
+      final UUID accountUuid = UUID.randomUUID();
+      final byte deviceId = 1;
+
+      assertFalse(server1.isPresent(accountUuid, deviceId));
+
+      server2.setPresent(accountUuid, deviceId, NO_OP);
+
+      // The cached result should be discarded well before it would have expired
+      assertTimeoutPreemptively(ClientPresenceManager.ABSENT_CACHE_TTL.dividedBy(2), () -> {
+        while (!server1.isPresent(accountUuid, deviceId)) {
+          Thread.sleep(10);
+        }
+      });
+
+      server2.disconnectPresence(accountUuid, deviceId);
+
+      assertTimeoutPreemptively(ClientPresenceManager.PRESENT_CACHE_TTL.dividedBy(2), () -> {
+        while (server1.isPresent(accountUuid, deviceId)) {
+          Thread.sleep(10);
+        }
+      });
+    }
+
     @Test
     void testDisconnectPresenceLocally() {
       final UUID uuid1 = UUID.randomUUID();
@@ -8,6 +8,8 @@ package org.whispersystems.textsecuregcm.push;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyByte;
@@ -20,7 +22,10 @@ import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import com.google.protobuf.ByteString;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -142,6 +147,71 @@ class MessageSenderTest {
     verify(messagesManager).insert(ACCOUNT_UUID, DEVICE_ID, message);
   }
 
+  @Test
+  void testSendMessagesClientNotPresent() throws Exception {
+    when(clientPresenceManager.isPresent(ACCOUNT_UUID, DEVICE_ID)).thenReturn(false);
+    when(device.getApnId()).thenReturn("apn-id");
+    when(messagesManager.insert(any())).thenReturn(List.of(CompletableFuture.completedFuture(UUID.randomUUID())));
+
+    final List<CompletableFuture<Void>> sendFutures =
+        messageSender.sendMessages(List.of(new MessageSender.DeviceMessage(account, device, message)), false,
+            Runnable::run);
+
+    assertEquals(1, sendFutures.size());
+    assertDoesNotThrow(() -> sendFutures.get(0).join());
+
+    verify(messagesManager).insert(List.of(new MessagesManager.DestinationMessage(ACCOUNT_UUID, DEVICE_ID, message)));
+    verify(pushNotificationManager).sendNewMessageNotification(account, DEVICE_ID, message.getUrgent());
+  }
+
+  @Test
+  void testSendMessagesNotPushRegistered() throws Exception {
+    when(clientPresenceManager.isPresent(ACCOUNT_UUID, DEVICE_ID)).thenReturn(false);
+    when(device.getApnId()).thenReturn("apn-id");
+    when(messagesManager.insert(any())).thenReturn(List.of(CompletableFuture.completedFuture(UUID.randomUUID())));
+
+    doThrow(NotPushRegisteredException.class)
+        .when(pushNotificationManager).sendNewMessageNotification(account, DEVICE_ID, message.getUrgent());
+
+    final CompletableFuture<Void> sendFuture =
+        messageSender.sendMessages(List.of(new MessageSender.DeviceMessage(account, device, message)), false,
+            Runnable::run).get(0);
+
+    final CompletionException completionException = assertThrows(CompletionException.class, sendFuture::join);
+    assertInstanceOf(NotPushRegisteredException.class, completionException.getCause());
+  }
+
+  @Test
+  void testSendOnlineMessagesOnlyInsertsForPresentClients() {
+    final Device absentDevice = mock(Device.class);
+    final byte absentDeviceId = DEVICE_ID + 1;
+
+    when(absentDevice.getId()).thenReturn(absentDeviceId);
+    when(absentDevice.getGcmId()).thenReturn("gcm-id");
+    when(device.getGcmId()).thenReturn("gcm-id");
+    when(clientPresenceManager.isPresent(ACCOUNT_UUID, DEVICE_ID)).thenReturn(true);
+    when(clientPresenceManager.isPresent(ACCOUNT_UUID, absentDeviceId)).thenReturn(false);
+    when(messagesManager.insert(any())).thenReturn(List.of(CompletableFuture.completedFuture(UUID.randomUUID())));
+
+    final List<CompletableFuture<Void>> sendFutures = messageSender.sendMessages(List.of(
+            new MessageSender.DeviceMessage(account, absentDevice, message),
+            new MessageSender.DeviceMessage(account, device, message)),
+        true, Runnable::run);
+
+    assertEquals(2, sendFutures.size());
+    sendFutures.forEach(sendFuture -> assertDoesNotThrow(sendFuture::join));
+
+    @SuppressWarnings("unchecked") final ArgumentCaptor<List<MessagesManager.DestinationMessage>> captor =
+        ArgumentCaptor.forClass(List.class);
+
+    verify(messagesManager).insert(captor.capture());
+    assertEquals(1, captor.getValue().size());
+    assertEquals(DEVICE_ID, captor.getValue().get(0).destinationDevice());
+    assertTrue(captor.getValue().get(0).envelope().getEphemeral());
+
+    verifyNoInteractions(pushNotificationManager);
+  }
+
   private MessageProtos.Envelope generateRandomMessage() {
     return MessageProtos.Envelope.newBuilder()
         .setTimestamp(System.currentTimeMillis())
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+class AbstractDynamoDbStoreTest {
+
+  private DynamoDbAsyncClient dynamoDbAsyncClient;
+  private AbstractDynamoDbStore store;
+
+  private static final String TABLE_NAME = "test";
+
+  @BeforeEach
+  void setUp() {
+    dynamoDbAsyncClient = mock(DynamoDbAsyncClient.class);
+    store = new AbstractDynamoDbStore(mock(DynamoDbClient.class)) {
+    };
+  }
+
+  @Test
+  void executeTableWriteItemsUntilCompleteAsync() {
+    when(dynamoDbAsyncClient.batchWriteItem(any(BatchWriteItemRequest.class)))
+        .thenReturn(CompletableFuture.completedFuture(BatchWriteItemResponse.builder().build()));
+
+    assertDoesNotThrow(() -> store.executeTableWriteItemsUntilCompleteAsync(dynamoDbAsyncClient, TABLE_NAME,
+        generateWriteRequests(AbstractDynamoDbStore.DYNAMO_DB_MAX_BATCH_SIZE * 2 + 1)).join());
+
+    verify(dynamoDbAsyncClient, times(3)).batchWriteItem(any(BatchWriteItemRequest.class));
+    assertEquals(AbstractDynamoDbStore.MAX_ASYNC_BATCH_WRITE_CONCURRENCY, store.getAsyncBatchWriteConcurrencyLimit());
+  }
+
+  @Test
+  void executeTableWriteItemsUntilCompleteAsyncUnprocessedItems() {
+    final List<WriteRequest> writeRequests = generateWriteRequests(3);
+
+    when(dynamoDbAsyncClient.batchWriteItem(any(BatchWriteItemRequest.class)))
+        .thenReturn(CompletableFuture.completedFuture(BatchWriteItemResponse.builder()
+            .unprocessedItems(Map.of(TABLE_NAME, writeRequests.subList(0, 1)))
+            .build()))
+        .thenReturn(CompletableFuture.completedFuture(BatchWriteItemResponse.builder().build()));
+
+    assertDoesNotThrow(() ->
+        store.executeTableWriteItemsUntilCompleteAsync(dynamoDbAsyncClient, TABLE_NAME, writeRequests).join());
+
+    verify(dynamoDbAsyncClient).batchWriteItem(BatchWriteItemRequest.builder()
+        .requestItems(Map.of(TABLE_NAME, writeRequests.subList(0, 1)))
+        .build());
+
+    // One throttled batch halves the limit, and one successful batch raises it by one
+    assertEquals(AbstractDynamoDbStore.MAX_ASYNC_BATCH_WRITE_CONCURRENCY / 2 + 1,
+        store.getAsyncBatchWriteConcurrencyLimit());
+  }
+
+  @Test
+  void executeTableWriteItemsUntilCompleteAsyncThrottled() {
+    when(dynamoDbAsyncClient.batchWriteItem(any(BatchWriteItemRequest.class)))
+        .thenReturn(CompletableFuture.failedFuture(ProvisionedThroughputExceededException.builder()
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("ProvisionedThroughputExceededException").build())
+            .build()))
+        .thenReturn(CompletableFuture.completedFuture(BatchWriteItemResponse.builder().build()));
+
+    assertDoesNotThrow(() -> store.executeTableWriteItemsUntilCompleteAsync(dynamoDbAsyncClient, TABLE_NAME,
+        generateWriteRequests(1)).join());
+
+    verify(dynamoDbAsyncClient, times(2)).batchWriteItem(any(BatchWriteItemRequest.class));
+  }
+
+  @Test
+  void executeTableWriteItemsUntilCompleteAsyncError() {
+    when(dynamoDbAsyncClient.batchWriteItem(any(BatchWriteItemRequest.class)))
+        .thenReturn(CompletableFuture.failedFuture(DynamoDbException.builder().message("OH NO").build()));
+
+    final CompletionException completionException = assertThrows(CompletionException.class,
+        () -> store.executeTableWriteItemsUntilCompleteAsync(dynamoDbAsyncClient, TABLE_NAME,
+            generateWriteRequests(1)).join());
+
+    assertTrue(completionException.getCause() instanceof DynamoDbException);
+    verify(dynamoDbAsyncClient).batchWriteItem(any(BatchWriteItemRequest.class));
+  }
+
+  @Test
+  void executeTableWriteItemsUntilCompleteAsyncConcurrencyLimit() {
+    final List<CompletableFuture<BatchWriteItemResponse>> responseFutures = new ArrayList<>();
+
+    when(dynamoDbAsyncClient.batchWriteItem(any(BatchWriteItemRequest.class))).thenAnswer(invocation -> {
+      final CompletableFuture<BatchWriteItemResponse> responseFuture = new CompletableFuture<>();
+      responseFutures.add(responseFuture);
+
+      return responseFuture;
+    });
+
+    final int batchCount = AbstractDynamoDbStore.MAX_ASYNC_BATCH_WRITE_CONCURRENCY + 2;
+
+    final CompletableFuture<Void> writeFuture = store.executeTableWriteItemsUntilCompleteAsync(dynamoDbAsyncClient,
+        TABLE_NAME, generateWriteRequests(AbstractDynamoDbStore.DYNAMO_DB_MAX_BATCH_SIZE * batchCount));
+
+    assertEquals(AbstractDynamoDbStore.MAX_ASYNC_BATCH_WRITE_CONCURRENCY, responseFutures.size());
+
+    responseFutures.get(0).complete(BatchWriteItemResponse.builder().build());
+    assertEquals(AbstractDynamoDbStore.MAX_ASYNC_BATCH_WRITE_CONCURRENCY + 1, responseFutures.size());
+
+    for (int i = 1; i < batchCount; i++) {
+      assertFalse(writeFuture.isDone());
+      responseFutures.get(i).complete(BatchWriteItemResponse.builder().build());
+    }
+
+    assertEquals(batchCount, responseFutures.size());
+    assertDoesNotThrow(writeFuture::join);
+  }
+
+  @Test
+  void executeTableWriteItemsUntilCompleteAsyncConcurrentThrottles() {
+    final List<CompletableFuture<BatchWriteItemResponse>> responseFutures = new ArrayList<>();
+
+    // Retried batches may be issued from other threads, and never complete so they can't affect the limit
+    when(dynamoDbAsyncClient.batchWriteItem(any(BatchWriteItemRequest.class))).thenAnswer(invocation -> {
+      final CompletableFuture<BatchWriteItemResponse> responseFuture = new CompletableFuture<>();
+
+      synchronized (responseFutures) {
+        responseFutures.add(responseFuture);
+      }
+
+      return responseFuture;
+    });
+
+    store.executeTableWriteItemsUntilCompleteAsync(dynamoDbAsyncClient,
+        TABLE_NAME, generateWriteRequests(
+            AbstractDynamoDbStore.DYNAMO_DB_MAX_BATCH_SIZE * AbstractDynamoDbStore.MAX_ASYNC_BATCH_WRITE_CONCURRENCY));
+
+    final List<CompletableFuture<BatchWriteItemResponse>> concurrentResponseFutures;
+
+    synchronized (responseFutures) {
+      assertEquals(AbstractDynamoDbStore.MAX_ASYNC_BATCH_WRITE_CONCURRENCY, responseFutures.size());
+      concurrentResponseFutures = List.copyOf(responseFutures);
+    }
+
+    // All of these batches were started before the first throttle, so together they should only halve the limit once
+    concurrentResponseFutures.forEach(responseFuture ->
+        responseFuture.completeExceptionally(ProvisionedThroughputExceededException.builder()
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("ProvisionedThroughputExceededException").build())
+            .build()));
+
+    assertEquals(AbstractDynamoDbStore.MAX_ASYNC_BATCH_WRITE_CONCURRENCY / 2, store.getAsyncBatchWriteConcurrencyLimit());
+  }
+
+  @Test
+  void getItemsAsync() {
+    final List<Map<String, AttributeValue>> keys = generateKeys(AbstractDynamoDbStore.DYNAMO_DB_MAX_BATCH_GET_SIZE * 2 + 1);
+
+    when(dynamoDbAsyncClient.batchGetItem(any(BatchGetItemRequest.class))).thenAnswer(invocation -> {
+      final BatchGetItemRequest request = invocation.getArgument(0);
+
+      return CompletableFuture.completedFuture(BatchGetItemResponse.builder()
+          .responses(Map.of(TABLE_NAME, request.requestItems().get(TABLE_NAME).keys()))
+          .build());
+    });
+
+    final List<Map<String, AttributeValue>> keysWithDuplicates = new ArrayList<>(keys);
+    keysWithDuplicates.add(keys.get(0));
+
+    final List<Map<String, AttributeValue>> items =
+        store.getItemsAsync(dynamoDbAsyncClient, TABLE_NAME, keysWithDuplicates).join();
+
+    assertEquals(new HashSet<>(keys), new HashSet<>(items));
+    assertEquals(keys.size(), items.size());
+    verify(dynamoDbAsyncClient, times(3)).batchGetItem(any(BatchGetItemRequest.class));
+  }
+
+  @Test
+  void getItemsAsyncUnprocessedKeys() {
+    final List<Map<String, AttributeValue>> keys = generateKeys(3);
+
+    when(dynamoDbAsyncClient.batchGetItem(any(BatchGetItemRequest.class)))
+        .thenReturn(CompletableFuture.completedFuture(BatchGetItemResponse.builder()
+            .responses(Map.of(TABLE_NAME, keys.subList(1, 3)))
+            .unprocessedKeys(Map.of(TABLE_NAME, KeysAndAttributes.builder().keys(keys.subList(0, 1)).build()))
+            .build()))
+        .thenReturn(CompletableFuture.completedFuture(BatchGetItemResponse.builder()
+            .responses(Map.of(TABLE_NAME, keys.subList(0, 1)))
+            .build()));
+
+    final List<Map<String, AttributeValue>> items = store.getItemsAsync(dynamoDbAsyncClient, TABLE_NAME, keys).join();
+
+    assertEquals(new HashSet<>(keys), new HashSet<>(items));
+    verify(dynamoDbAsyncClient, times(2)).batchGetItem(any(BatchGetItemRequest.class));
+  }
+
+  @Test
+  void getItemsAsyncUnprocessedKeysExhausted() {
+    final List<Map<String, AttributeValue>> keys = generateKeys(1);
+
+    when(dynamoDbAsyncClient.batchGetItem(any(BatchGetItemRequest.class)))
+        .thenReturn(CompletableFuture.completedFuture(BatchGetItemResponse.builder()
+            .unprocessedKeys(Map.of(TABLE_NAME, KeysAndAttributes.builder().keys(keys).build()))
+            .build()));
+
+    final CompletionException completionException = assertThrows(CompletionException.class,
+        () -> store.getItemsAsync(dynamoDbAsyncClient, TABLE_NAME, keys).join());
+
+    assertTrue(completionException.getCause() instanceof IllegalStateException);
+    verify(dynamoDbAsyncClient, times(AbstractDynamoDbStore.MAX_ATTEMPTS_TO_GET_BATCH))
+        .batchGetItem(any(BatchGetItemRequest.class));
+  }
+
+  private static List<Map<String, AttributeValue>> generateKeys(final int count) {
+    return IntStream.range(0, count)
+        .mapToObj(i -> Map.of("id", AttributeValue.builder().n(String.valueOf(i)).build()))
+        .toList();
+  }
+
+  private static List<WriteRequest> generateWriteRequests(final int count) {
+    return IntStream.range(0, count)
+        .mapToObj(i -> WriteRequest.builder()
+            .putRequest(PutRequest.builder()
+                .item(Map.of("id", AttributeValue.builder().n(String.valueOf(i)).build()))
+                .build())
+            .build())
+        .toList();
+  }
+}
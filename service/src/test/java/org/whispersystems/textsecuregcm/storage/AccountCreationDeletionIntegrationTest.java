@@ -135,6 +135,7 @@ public class AccountCreationDeletionIntegrationTest {
         accounts,
         phoneNumberIdentifiers,
         CACHE_CLUSTER_EXTENSION.getRedisCluster(),
+        mock(AccountNearCache.class),
         accountLockManager,
         keysManager,
         messagesManager,
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.base.Ticker;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.whispersystems.textsecuregcm.configuration.AccountNearCacheConfiguration;
+import org.whispersystems.textsecuregcm.redis.RedisClusterExtension;
+import org.whispersystems.textsecuregcm.tests.util.AccountsHelper;
+
+class AccountNearCacheTest {
+
+  @RegisterExtension
+  static final RedisClusterExtension REDIS_CLUSTER_EXTENSION = RedisClusterExtension.builder().build();
+
+  private AtomicLong nanos;
+  private AccountNearCache accountNearCache;
+
+  private static final Duration TTL = Duration.ofSeconds(10);
+
+  @BeforeEach
+  void setUp() {
+    nanos = new AtomicLong(0);
+
+    accountNearCache = new AccountNearCache(REDIS_CLUSTER_EXTENSION.getRedisCluster(),
+        new AccountNearCacheConfiguration(true, 1_000, TTL),
+        new Ticker() {
+          @Override
+          public long read() {
+            return nanos.get();
+          }
+        });
+
+    accountNearCache.start();
+  }
+
+  @AfterEach
+  void tearDown() {
+    accountNearCache.stop();
+  }
+
+  @Test
+  void getPut() {
+    final Account account = generateAccount(UUID.randomUUID(), 1);
+
+    assertTrue(accountNearCache.get(account.getUuid()).isEmpty());
+
+    accountNearCache.put(account);
+
+    final Account firstCopy = accountNearCache.get(account.getUuid()).orElseThrow();
+    final Account secondCopy = accountNearCache.get(account.getUuid()).orElseThrow();
+
+    assertSameAccount(account, firstCopy);
+    assertSameAccount(account, secondCopy);
+
+    assertNotSame(account, firstCopy);
+    assertNotSame(firstCopy, secondCopy);
+  }
+
+  @Test
+  void getDisabled() {
+    final AccountNearCache disabledNearCache = new AccountNearCache(REDIS_CLUSTER_EXTENSION.getRedisCluster(),
+        new AccountNearCacheConfiguration(false, 1_000, TTL));
+
+    final Account account = generateAccount(UUID.randomUUID(), 1);
+
+    disabledNearCache.put(account);
+    assertTrue(disabledNearCache.get(account.getUuid()).isEmpty());
+  }
+
+  @Test
+  void putStaleAfterInvalidation() {
+    final UUID accountIdentifier = UUID.randomUUID();
+
+    // A lookup starts, and then the account changes before the lookup finishes loading the account
+    assertTrue(accountNearCache.get(accountIdentifier).isEmpty());
+    accountNearCache.invalidate(generateAccount(accountIdentifier, 2), false);
+
+    accountNearCache.put(generateAccount(accountIdentifier, 1));
+    assertTrue(accountNearCache.get(accountIdentifier).isEmpty());
+
+    accountNearCache.put(generateAccount(accountIdentifier, 2));
+    assertEquals(Optional.of(2), accountNearCache.get(accountIdentifier).map(Account::getVersion));
+  }
+
+  @Test
+  void invalidateSet() {
+    final UUID accountIdentifier = UUID.randomUUID();
+
+    accountNearCache.put(generateAccount(accountIdentifier, 3));
+
+    accountNearCache.invalidate(generateAccount(accountIdentifier, 3), false);
+    assertEquals(Optional.of(3), accountNearCache.get(accountIdentifier).map(Account::getVersion));
+
+    accountNearCache.invalidate(generateAccount(accountIdentifier, 4), false);
+    assertTrue(accountNearCache.get(accountIdentifier).isEmpty());
+  }
+
+  @Test
+  void invalidateDeleted() {
+    final UUID accountIdentifier = UUID.randomUUID();
+
+    accountNearCache.put(generateAccount(accountIdentifier, 3));
+
+    // Removal from the accounts cache evicts every version, but doesn't make the cached version unacceptable
+    accountNearCache.invalidate(generateAccount(accountIdentifier, 1), true);
+    assertTrue(accountNearCache.get(accountIdentifier).isEmpty());
+
+    accountNearCache.put(generateAccount(accountIdentifier, 2));
+    assertTrue(accountNearCache.get(accountIdentifier).isEmpty());
+
+    accountNearCache.put(generateAccount(accountIdentifier, 3));
+    assertEquals(Optional.of(3), accountNearCache.get(accountIdentifier).map(Account::getVersion));
+  }
+
+  @Test
+  void expiration() {
+    final Account account = generateAccount(UUID.randomUUID(), 1);
+
+    accountNearCache.get(account.getUuid());
+    accountNearCache.put(account);
+    assertTrue(accountNearCache.get(account.getUuid()).isPresent());
+
+    nanos.addAndGet(TTL.plusMillis(1).toNanos());
+    assertTrue(accountNearCache.get(account.getUuid()).isEmpty());
+  }
+
+  @Test
+  void remoteInvalidation() {
+    final Account account = generateAccount(UUID.randomUUID(), 1);
+
+    accountNearCache.get(account.getUuid());
+    accountNearCache.put(account);
+
+    // Servers that have the near-cache disabled still need to publish invalidations
+    final AccountNearCache remoteNearCache = new AccountNearCache(REDIS_CLUSTER_EXTENSION.getRedisCluster(),
+        new AccountNearCacheConfiguration(false, 1_000, TTL));
+
+    remoteNearCache.invalidate(generateAccount(account.getUuid(), 2), false);
+
+    assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+      while (accountNearCache.get(account.getUuid()).isPresent()) {
+        Thread.sleep(10);
+      }
+    });
+
+    // The invalidated version should still be remembered
+    accountNearCache.put(account);
+    assertTrue(accountNearCache.get(account.getUuid()).isEmpty());
+  }
+
+  @Test
+  void messageMalformed() {
+    final Account account = generateAccount(UUID.randomUUID(), 1);
+
+    accountNearCache.get(account.getUuid());
+    accountNearCache.put(account);
+
+    accountNearCache.message(null, AccountNearCache.INVALIDATION_CHANNEL, "not a valid invalidation");
+    accountNearCache.message(null, "some-other-channel",
+        AccountNearCache.encodeInvalidation(account.getUuid(), 2, true));
+
+    assertTrue(accountNearCache.get(account.getUuid()).isPresent());
+  }
+
+  private static Account generateAccount(final UUID accountIdentifier, final int version) {
+    final Account account = AccountsHelper.generateTestAccount("+18005551234", accountIdentifier, UUID.randomUUID(),
+        new ArrayList<>(), new byte[16]);
+
+    account.setVersion(version);
+
+    return account;
+  }
+
+  private static void assertSameAccount(final Account expected, final Account actual) {
+    assertEquals(expected.getUuid(), actual.getUuid());
+    assertEquals(expected.getPhoneNumberIdentifier(), actual.getPhoneNumberIdentifier());
+    assertEquals(expected.getNumber(), actual.getNumber());
+    assertEquals(expected.getVersion(), actual.getVersion());
+  }
+}
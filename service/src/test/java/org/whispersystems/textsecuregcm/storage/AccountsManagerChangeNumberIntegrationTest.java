@@ -130,6 +130,7 @@ class AccountsManagerChangeNumberIntegrationTest {
           accounts,
           phoneNumberIdentifiers,
           CACHE_CLUSTER_EXTENSION.getRedisCluster(),
+          mock(AccountNearCache.class),
           accountLockManager,
           keysManager,
           messagesManager,
@@ -53,7 +53,6 @@ import org.whispersystems.textsecuregcm.securestorage.SecureStorageClient;
 import org.whispersystems.textsecuregcm.securevaluerecovery.SecureValueRecovery2Client;
 import org.whispersystems.textsecuregcm.storage.DynamoDbExtensionSchema.Tables;
 import org.whispersystems.textsecuregcm.tests.util.DevicesHelper;
-import org.whispersystems.textsecuregcm.tests.util.JsonHelpers;
 import org.whispersystems.textsecuregcm.tests.util.KeysHelper;
 import org.whispersystems.textsecuregcm.tests.util.RedisClusterHelper;
 import org.whispersystems.textsecuregcm.util.Pair;
@@ -77,6 +76,7 @@ class AccountsManagerConcurrentModificationIntegrationTest {
   private AccountsManager accountsManager;
 
   private RedisAdvancedClusterCommands<String, String> commands;
+  private RedisAdvancedClusterCommands<byte[], byte[]> binaryCommands;
 
   private Executor mutationExecutor = new ThreadPoolExecutor(20, 20, 5, TimeUnit.SECONDS, new LinkedBlockingDeque<>(20));
 
@@ -100,6 +100,9 @@ class AccountsManagerConcurrentModificationIntegrationTest {
       //noinspection unchecked
       commands = mock(RedisAdvancedClusterCommands.class);
 
+      //noinspection unchecked
+      binaryCommands = mock(RedisAdvancedClusterCommands.class);
+
       final AccountLockManager accountLockManager = mock(AccountLockManager.class);
 
       doAnswer(invocation -> {
@@ -123,7 +126,8 @@ class AccountsManagerConcurrentModificationIntegrationTest {
       accountsManager = new AccountsManager(
           accounts,
           phoneNumberIdentifiers,
-          RedisClusterHelper.builder().stringCommands(commands).build(),
+          RedisClusterHelper.builder().stringCommands(commands).binaryCommands(binaryCommands).build(),
+          mock(AccountNearCache.class),
           accountLockManager,
           mock(KeysManager.class),
           mock(MessagesManager.class),
@@ -200,7 +204,7 @@ class AccountsManagerConcurrentModificationIntegrationTest {
     final Account managerAccount = accountsManager.getByAccountIdentifier(uuid).orElseThrow();
     final Account dynamoAccount = accounts.getByAccountIdentifier(uuid).orElseThrow();
 
-    final Account redisAccount = getLastAccountFromRedisMock(commands);
+    final Account redisAccount = getLastAccountFromRedisMock(binaryCommands);
 
     Stream.of(
         new Pair<>("manager", managerAccount),
@@ -212,12 +216,12 @@ class AccountsManagerConcurrentModificationIntegrationTest {
             unrestrictedUnidentifiedAccess, lastSeen));
   }
 
-  private Account getLastAccountFromRedisMock(RedisAdvancedClusterCommands<String, String> commands) throws IOException {
-    ArgumentCaptor<String> redisSetArgumentCapture = ArgumentCaptor.forClass(String.class);
+  private Account getLastAccountFromRedisMock(RedisAdvancedClusterCommands<byte[], byte[]> commands) {
+    ArgumentCaptor<byte[]> redisSetArgumentCapture = ArgumentCaptor.forClass(byte[].class);
 
-    verify(commands, atLeast(20)).setex(anyString(), anyLong(), redisSetArgumentCapture.capture());
+    verify(commands, atLeast(10)).setex(any(), anyLong(), redisSetArgumentCapture.capture());
 
-    return JsonHelpers.fromJson(redisSetArgumentCapture.getValue(), Account.class);
+    return AccountsManager.parseRedisAccount(redisSetArgumentCapture.getValue(), UUID.randomUUID()).orElseThrow();
   }
 
   private void verifyAccount(final String name, final Account account, final boolean discoverableByPhoneNumber, final String currentProfileVersion, final IdentityKey identityKey, final byte[] unidentifiedAccessKey, final String pin, final String clientRegistrationLock, final boolean unrestrictedUnidentifiedAccess, final long lastSeen) {
@@ -13,6 +13,7 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyByte;
 import static org.mockito.ArgumentMatchers.anyLong;
@@ -32,13 +33,16 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import io.lettuce.core.KeyValue;
 import io.lettuce.core.RedisException;
 import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
 import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.HashMap;
@@ -60,6 +64,7 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
 import org.mockito.stubbing.Answer;
 import org.signal.libsignal.protocol.IdentityKey;
 import org.signal.libsignal.protocol.ecc.Curve;
@@ -74,6 +79,7 @@ import org.whispersystems.textsecuregcm.experiment.ExperimentEnrollmentManager;
 import org.whispersystems.textsecuregcm.identity.AciServiceIdentifier;
 import org.whispersystems.textsecuregcm.identity.IdentityType;
 import org.whispersystems.textsecuregcm.identity.PniServiceIdentifier;
+import org.whispersystems.textsecuregcm.identity.ServiceIdentifier;
 import org.whispersystems.textsecuregcm.push.ClientPresenceManager;
 import org.whispersystems.textsecuregcm.securestorage.SecureStorageClient;
 import org.whispersystems.textsecuregcm.securevaluerecovery.SecureValueRecovery2Client;
@@ -107,11 +113,14 @@ class AccountsManagerTest {
   private ProfilesManager profilesManager;
   private ClientPresenceManager clientPresenceManager;
   private ExperimentEnrollmentManager enrollmentManager;
+  private AccountNearCache accountNearCache;
 
   private Map<String, UUID> phoneNumberIdentifiersByE164;
 
   private RedisAdvancedClusterCommands<String, String> commands;
   private RedisAdvancedClusterAsyncCommands<String, String> asyncCommands;
+  private RedisAdvancedClusterCommands<byte[], byte[]> binaryCommands;
+  private RedisAdvancedClusterAsyncCommands<byte[], byte[]> binaryAsyncCommands;
   private TestClock clock;
   private AccountsManager accountsManager;
 
@@ -139,6 +148,7 @@ class AccountsManagerTest {
     messagesManager = mock(MessagesManager.class);
     profilesManager = mock(ProfilesManager.class);
     clientPresenceManager = mock(ClientPresenceManager.class);
+    accountNearCache = mock(AccountNearCache.class);
 
     final Executor clientPresenceExecutor = mock(Executor.class);
 
@@ -158,6 +168,14 @@ class AccountsManagerTest {
     when(asyncCommands.get(any())).thenReturn(MockRedisFuture.completedFuture(null));
     when(asyncCommands.setex(any(), anyLong(), any())).thenReturn(MockRedisFuture.completedFuture("OK"));
 
+    //noinspection unchecked
+    binaryCommands = mock(RedisAdvancedClusterCommands.class);
+
+    //noinspection unchecked
+    binaryAsyncCommands = mock(RedisAdvancedClusterAsyncCommands.class);
+    when(binaryAsyncCommands.get(any())).thenReturn(MockRedisFuture.completedFuture(null));
+    when(binaryAsyncCommands.setex(any(), anyLong(), any())).thenReturn(MockRedisFuture.completedFuture("OK"));
+
     when(accounts.updateAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
     when(accounts.updateTransactionallyAsync(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
     when(accounts.delete(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
@@ -227,7 +245,10 @@ class AccountsManagerTest {
         RedisClusterHelper.builder()
             .stringCommands(commands)
             .stringAsyncCommands(asyncCommands)
+            .binaryCommands(binaryCommands)
+            .binaryAsyncCommands(binaryAsyncCommands)
             .build(),
+        accountNearCache,
         accountLockManager,
         keysManager,
         messagesManager,
@@ -248,8 +269,8 @@ class AccountsManagerTest {
     final UUID pni = UUID.randomUUID();
 
     when(commands.get(eq("AccountMap::" + pni))).thenReturn(aci.toString());
-    when(commands.get(eq("Account3::" + aci))).thenReturn(
-        "{\"number\": \"+14152222222\", \"pni\": \"" + pni + "\"}");
+    when(binaryCommands.get(aryEq(getAccountEntityKey(aci)))).thenReturn(
+        ("{\"number\": \"+14152222222\", \"pni\": \"" + pni + "\"}").getBytes(StandardCharsets.UTF_8));
 
     assertTrue(accountsManager.getByServiceIdentifier(new AciServiceIdentifier(aci)).isPresent());
     assertTrue(accountsManager.getByServiceIdentifier(new PniServiceIdentifier(pni)).isPresent());
@@ -263,8 +284,8 @@ class AccountsManagerTest {
     final UUID pni = UUID.randomUUID();
 
     when(asyncCommands.get(eq("AccountMap::" + pni))).thenReturn(MockRedisFuture.completedFuture(aci.toString()));
-    when(asyncCommands.get(eq("Account3::" + aci))).thenReturn(MockRedisFuture.completedFuture(
-        "{\"number\": \"+14152222222\", \"pni\": \"" + pni + "\"}"));
+    when(binaryAsyncCommands.get(aryEq(getAccountEntityKey(aci)))).thenReturn(MockRedisFuture.completedFuture(
+        ("{\"number\": \"+14152222222\", \"pni\": \"" + pni + "\"}").getBytes(StandardCharsets.UTF_8)));
 
     when(asyncCommands.setex(any(), anyLong(), any())).thenReturn(MockRedisFuture.completedFuture("OK"));
 
@@ -285,8 +306,8 @@ class AccountsManagerTest {
   void testGetAccountByUuidInCache() {
     UUID uuid = UUID.randomUUID();
 
-    when(commands.get(eq("Account3::" + uuid))).thenReturn(
-        "{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\"}");
+    when(binaryCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(
+        "{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\"}".getBytes(StandardCharsets.UTF_8));
 
     Optional<Account> account = accountsManager.getByAccountIdentifier(uuid);
 
@@ -295,8 +316,9 @@ class AccountsManagerTest {
     assertEquals(account.get().getUuid(), uuid);
     assertEquals(UUID.fromString("de24dc73-fbd8-41be-a7d5-764c70d9da7e"), account.get().getPhoneNumberIdentifier());
 
-    verify(commands, times(1)).get(eq("Account3::" + uuid));
+    verify(binaryCommands, times(1)).get(aryEq(getAccountEntityKey(uuid)));
     verifyNoMoreInteractions(commands);
+    verifyNoMoreInteractions(binaryCommands);
 
     verifyNoInteractions(accounts);
   }
@@ -305,8 +327,8 @@ class AccountsManagerTest {
   void testGetAccountByUuidInCacheAsync() {
     UUID uuid = UUID.randomUUID();
 
-    when(asyncCommands.get(eq("Account3::" + uuid))).thenReturn(MockRedisFuture.completedFuture(
-        "{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\"}"));
+    when(binaryAsyncCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(MockRedisFuture.completedFuture(
+        "{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\"}".getBytes(StandardCharsets.UTF_8)));
 
     when(asyncCommands.setex(any(), anyLong(), any())).thenReturn(MockRedisFuture.completedFuture("OK"));
 
@@ -317,9 +339,27 @@ class AccountsManagerTest {
     assertEquals(account.get().getUuid(), uuid);
     assertEquals(UUID.fromString("de24dc73-fbd8-41be-a7d5-764c70d9da7e"), account.get().getPhoneNumberIdentifier());
 
-    verify(asyncCommands, times(1)).get(eq("Account3::" + uuid));
+    verify(binaryAsyncCommands, times(1)).get(aryEq(getAccountEntityKey(uuid)));
     verifyNoMoreInteractions(asyncCommands);
+    verifyNoMoreInteractions(binaryAsyncCommands);
+
+    verifyNoInteractions(accounts);
+  }
+
+  @Test
+  void testGetAccountByUuidInNearCache() {
+    final UUID uuid = UUID.randomUUID();
+    final Account account = AccountsHelper.generateTestAccount("+14152222222", uuid, UUID.randomUUID(),
+        new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]);
 
+    when(accountNearCache.get(uuid)).thenReturn(Optional.of(account));
+
+    assertEquals(Optional.of(account), accountsManager.getByAccountIdentifier(uuid));
+    assertEquals(Optional.of(account), accountsManager.getByAccountIdentifierAsync(uuid).join());
+
+    verify(accountNearCache, never()).put(any());
+    verifyNoInteractions(commands);
+    verifyNoInteractions(asyncCommands);
     verifyNoInteractions(accounts);
   }
 
@@ -329,8 +369,8 @@ class AccountsManagerTest {
     UUID pni = UUID.randomUUID();
 
     when(commands.get(eq("AccountMap::" + pni))).thenReturn(uuid.toString());
-    when(commands.get(eq("Account3::" + uuid))).thenReturn(
-        "{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\"}");
+    when(binaryCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(
+        "{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\"}".getBytes(StandardCharsets.UTF_8));
 
     Optional<Account> account = accountsManager.getByPhoneNumberIdentifier(pni);
 
@@ -339,8 +379,9 @@ class AccountsManagerTest {
     assertEquals(UUID.fromString("de24dc73-fbd8-41be-a7d5-764c70d9da7e"), account.get().getPhoneNumberIdentifier());
 
     verify(commands).get(eq("AccountMap::" + pni));
-    verify(commands).get(eq("Account3::" + uuid));
+    verify(binaryCommands).get(aryEq(getAccountEntityKey(uuid)));
     verifyNoMoreInteractions(commands);
+    verifyNoMoreInteractions(binaryCommands);
 
     verifyNoInteractions(accounts);
   }
@@ -353,8 +394,8 @@ class AccountsManagerTest {
     when(asyncCommands.get(eq("AccountMap::" + pni)))
         .thenReturn(MockRedisFuture.completedFuture(uuid.toString()));
 
-    when(asyncCommands.get(eq("Account3::" + uuid))).thenReturn(MockRedisFuture.completedFuture(
-        "{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\"}"));
+    when(binaryAsyncCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(MockRedisFuture.completedFuture(
+        "{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\"}".getBytes(StandardCharsets.UTF_8)));
 
     when(asyncCommands.setex(any(), anyLong(), any())).thenReturn(MockRedisFuture.completedFuture("OK"));
 
@@ -365,8 +406,9 @@ class AccountsManagerTest {
     assertEquals(UUID.fromString("de24dc73-fbd8-41be-a7d5-764c70d9da7e"), account.get().getPhoneNumberIdentifier());
 
     verify(asyncCommands).get(eq("AccountMap::" + pni));
-    verify(asyncCommands).get(eq("Account3::" + uuid));
+    verify(binaryAsyncCommands).get(aryEq(getAccountEntityKey(uuid)));
     verifyNoMoreInteractions(asyncCommands);
+    verifyNoMoreInteractions(binaryAsyncCommands);
 
     verifyNoInteractions(accounts);
   }
@@ -377,7 +419,7 @@ class AccountsManagerTest {
     UUID pni = UUID.randomUUID();
     Account account = AccountsHelper.generateTestAccount("+14152222222", uuid, pni, new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]);
 
-    when(commands.get(eq("Account3::" + uuid))).thenReturn(null);
+    when(binaryCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(null);
     when(accounts.getByAccountIdentifier(eq(uuid))).thenReturn(Optional.of(account));
 
     Optional<Account> retrieved = accountsManager.getByAccountIdentifier(uuid);
@@ -385,22 +427,46 @@ class AccountsManagerTest {
     assertTrue(retrieved.isPresent());
     assertSame(retrieved.get(), account);
 
-    verify(commands, times(1)).get(eq("Account3::" + uuid));
+    verify(accountNearCache).put(account);
+
+    verify(binaryCommands, times(1)).get(aryEq(getAccountEntityKey(uuid)));
     verify(commands, times(1)).setex(eq("AccountMap::" + pni), anyLong(), eq(uuid.toString()));
-    verify(commands, times(1)).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryCommands, times(1)).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(commands);
+    verifyNoMoreInteractions(binaryCommands);
 
     verify(accounts, times(1)).getByAccountIdentifier(eq(uuid));
     verifyNoMoreInteractions(accounts);
   }
 
+  @ParameterizedTest
+  @ValueSource(booleans = {true, false})
+  void testGetAccountByUuidNotInCacheBinaryFormat(final boolean binary) {
+    final UUID uuid = UUID.randomUUID();
+    final Account account = AccountsHelper.generateTestAccount("+14152222222", uuid, UUID.randomUUID(),
+        new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]);
+
+    when(enrollmentManager.isEnrolled(uuid, AccountsManager.BINARY_ACCOUNT_CACHE_EXPERIMENT_NAME)).thenReturn(binary);
+    when(accounts.getByAccountIdentifier(uuid)).thenReturn(Optional.of(account));
+
+    accountsManager.getByAccountIdentifier(uuid);
+
+    final ArgumentCaptor<byte[]> encodedAccountCaptor = ArgumentCaptor.forClass(byte[].class);
+    verify(binaryCommands).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), encodedAccountCaptor.capture());
+
+    final byte[] encodedAccount = encodedAccountCaptor.getValue();
+    assertEquals(binary, encodedAccount[0] == AccountsManager.REDIS_ACCOUNT_CBOR_FORMAT_VERSION);
+    assertEquals(account.getNumber(),
+        AccountsManager.parseRedisAccount(encodedAccount, uuid).map(Account::getNumber).orElseThrow());
+  }
+
   @Test
   void testGetAccountByUuidNotInCacheAsync() {
     UUID uuid = UUID.randomUUID();
     UUID pni = UUID.randomUUID();
     Account account = AccountsHelper.generateTestAccount("+14152222222", uuid, pni, new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]);
 
-    when(asyncCommands.get(eq("Account3::" + uuid))).thenReturn(MockRedisFuture.completedFuture(null));
+    when(binaryAsyncCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(MockRedisFuture.completedFuture(null));
     when(asyncCommands.setex(any(), anyLong(), any())).thenReturn(MockRedisFuture.completedFuture("OK"));
     when(accounts.getByAccountIdentifierAsync(eq(uuid)))
         .thenReturn(CompletableFuture.completedFuture(Optional.of(account)));
@@ -410,10 +476,13 @@ class AccountsManagerTest {
     assertTrue(retrieved.isPresent());
     assertSame(retrieved.get(), account);
 
-    verify(asyncCommands).get(eq("Account3::" + uuid));
+    verify(accountNearCache).put(account);
+
+    verify(binaryAsyncCommands).get(aryEq(getAccountEntityKey(uuid)));
     verify(asyncCommands).setex(eq("AccountMap::" + pni), anyLong(), eq(uuid.toString()));
-    verify(asyncCommands).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryAsyncCommands).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(asyncCommands);
+    verifyNoMoreInteractions(binaryAsyncCommands);
 
     verify(accounts).getByAccountIdentifierAsync(eq(uuid));
     verifyNoMoreInteractions(accounts);
@@ -436,8 +505,9 @@ class AccountsManagerTest {
 
     verify(commands).get(eq("AccountMap::" + pni));
     verify(commands).setex(eq("AccountMap::" + pni), anyLong(), eq(uuid.toString()));
-    verify(commands).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryCommands).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(commands);
+    verifyNoMoreInteractions(binaryCommands);
 
     verify(accounts).getByPhoneNumberIdentifier(pni);
     verifyNoMoreInteractions(accounts);
@@ -462,13 +532,151 @@ class AccountsManagerTest {
 
     verify(asyncCommands).get(eq("AccountMap::" + pni));
     verify(asyncCommands).setex(eq("AccountMap::" + pni), anyLong(), eq(uuid.toString()));
-    verify(asyncCommands).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryAsyncCommands).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(asyncCommands);
+    verifyNoMoreInteractions(binaryAsyncCommands);
 
     verify(accounts).getByPhoneNumberIdentifierAsync(pni);
     verifyNoMoreInteractions(accounts);
   }
 
+  @Test
+  void testGetByServiceIdentifiers() throws IOException {
+    final Account nearCachedAccount = generateAccount();
+    final Account cachedAccount = generateAccount();
+    final Account uncachedAccount = generateAccount();
+    final Account cachedByPniAccount = generateAccount();
+    final Account uncachedByPniAccount = generateAccount();
+
+    when(accountNearCache.get(nearCachedAccount.getUuid())).thenReturn(Optional.of(nearCachedAccount));
+
+    mockRedisMultiGet(
+        Map.of("AccountMap::" + cachedByPniAccount.getPhoneNumberIdentifier(), cachedByPniAccount.getUuid().toString()),
+        Map.of(cachedAccount.getUuid(), AccountsManager.writeRedisAccount(cachedAccount, true),
+            cachedByPniAccount.getUuid(), AccountsManager.writeRedisAccount(cachedByPniAccount, false)));
+
+    when(accounts.getByAccountIdentifiersAsync(any()))
+        .thenReturn(CompletableFuture.completedFuture(Map.of(uncachedAccount.getUuid(), uncachedAccount)));
+
+    when(accounts.getByPhoneNumberIdentifiersAsync(any())).thenReturn(CompletableFuture.completedFuture(
+        Map.of(uncachedByPniAccount.getPhoneNumberIdentifier(), uncachedByPniAccount)));
+
+    final List<ServiceIdentifier> serviceIdentifiers = List.of(
+        new PniServiceIdentifier(uncachedByPniAccount.getPhoneNumberIdentifier()),
+        new AciServiceIdentifier(UUID.randomUUID()),
+        new AciServiceIdentifier(uncachedAccount.getUuid()),
+        new PniServiceIdentifier(cachedByPniAccount.getPhoneNumberIdentifier()),
+        new AciServiceIdentifier(cachedAccount.getUuid()),
+        new AciServiceIdentifier(nearCachedAccount.getUuid()),
+        new PniServiceIdentifier(UUID.randomUUID()));
+
+    final Map<ServiceIdentifier, Account> accountsByServiceIdentifier =
+        accountsManager.getByServiceIdentifiers(serviceIdentifiers).join();
+
+    // Identifiers without accounts are absent, and the rest appear in the order in which they were requested
+    assertEquals(List.of(serviceIdentifiers.get(0), serviceIdentifiers.get(2), serviceIdentifiers.get(3),
+            serviceIdentifiers.get(4), serviceIdentifiers.get(5)),
+        new ArrayList<>(accountsByServiceIdentifier.keySet()));
+
+    assertSame(uncachedByPniAccount, accountsByServiceIdentifier.get(serviceIdentifiers.get(0)));
+    assertSame(uncachedAccount, accountsByServiceIdentifier.get(serviceIdentifiers.get(2)));
+    assertEquals(cachedByPniAccount.getUuid(), accountsByServiceIdentifier.get(serviceIdentifiers.get(3)).getUuid());
+    assertEquals(cachedAccount.getUuid(), accountsByServiceIdentifier.get(serviceIdentifiers.get(4)).getUuid());
+    assertSame(nearCachedAccount, accountsByServiceIdentifier.get(serviceIdentifiers.get(5)));
+
+    // Only accounts missing from the accounts cache should be read from the accounts table and written back to the cache
+    verify(accounts).getByAccountIdentifiersAsync(argThat(uuids -> uuids.size() == 2
+        && uuids.contains(uncachedAccount.getUuid())
+        && uuids.contains(serviceIdentifiers.get(1).uuid())));
+
+    verify(accounts).getByPhoneNumberIdentifiersAsync(argThat(pnis -> pnis.size() == 2
+        && pnis.contains(uncachedByPniAccount.getPhoneNumberIdentifier())
+        && pnis.contains(serviceIdentifiers.get(6).uuid())));
+
+    verify(binaryAsyncCommands).setex(aryEq(getAccountEntityKey(uncachedAccount.getUuid())), anyLong(), any());
+    verify(binaryAsyncCommands).setex(aryEq(getAccountEntityKey(uncachedByPniAccount.getUuid())), anyLong(), any());
+    verify(binaryAsyncCommands, never()).setex(aryEq(getAccountEntityKey(cachedAccount.getUuid())), anyLong(), any());
+
+    verify(accountNearCache).put(uncachedAccount);
+    verify(accountNearCache, never()).put(nearCachedAccount);
+    verify(accountNearCache, times(3)).put(any());
+  }
+
+  @Test
+  void testGetByServiceIdentifiersBrokenCache() {
+    final Account account = generateAccount();
+    final Account accountByPni = generateAccount();
+
+    when(asyncCommands.mget(any(String[].class)))
+        .thenReturn(MockRedisFuture.failedFuture(new RedisException("OH NO")));
+
+    when(binaryAsyncCommands.mget(any(byte[][].class)))
+        .thenReturn(MockRedisFuture.failedFuture(new RedisException("OH NO")));
+
+    when(binaryAsyncCommands.setex(any(), anyLong(), any()))
+        .thenReturn(MockRedisFuture.failedFuture(new RedisException("OH NO")));
+
+    when(accounts.getByAccountIdentifiersAsync(any()))
+        .thenReturn(CompletableFuture.completedFuture(Map.of(account.getUuid(), account)));
+
+    when(accounts.getByPhoneNumberIdentifiersAsync(any()))
+        .thenReturn(CompletableFuture.completedFuture(Map.of(accountByPni.getPhoneNumberIdentifier(), accountByPni)));
+
+    final ServiceIdentifier aci = new AciServiceIdentifier(account.getUuid());
+    final ServiceIdentifier pni = new PniServiceIdentifier(accountByPni.getPhoneNumberIdentifier());
+
+    // Cache failures should fall back to the accounts table
+    assertEquals(Map.of(aci, account, pni, accountByPni),
+        accountsManager.getByServiceIdentifiers(List.of(aci, pni)).join());
+  }
+
+  @Test
+  void testGetByServiceIdentifiersTableFailure() {
+    mockRedisMultiGet(Collections.emptyMap(), Collections.emptyMap());
+
+    when(accounts.getByAccountIdentifiersAsync(any()))
+        .thenReturn(CompletableFuture.failedFuture(new RuntimeException("OH NO")));
+
+    CompletableFutureTestUtil.assertFailsWithCause(RuntimeException.class,
+        accountsManager.getByServiceIdentifiers(List.of(new AciServiceIdentifier(UUID.randomUUID()))));
+  }
+
+  @Test
+  void testGetByServiceIdentifiersEmpty() {
+    assertTrue(accountsManager.getByServiceIdentifiers(Collections.emptyList()).join().isEmpty());
+
+    verifyNoInteractions(accounts);
+    verifyNoInteractions(asyncCommands);
+    verifyNoInteractions(binaryAsyncCommands);
+  }
+
+  private void mockRedisMultiGet(final Map<String, String> stringValues, final Map<UUID, byte[]> encodedAccounts) {
+    when(asyncCommands.mget(any(String[].class))).thenAnswer(invocation -> {
+      final String[] keys = (String[]) invocation.getRawArguments()[0];
+
+      return MockRedisFuture.completedFuture(Arrays.stream(keys)
+          .map(key -> KeyValue.fromNullable(key, stringValues.get(key)))
+          .toList());
+    });
+
+    final Map<String, byte[]> binaryValues = new HashMap<>();
+    encodedAccounts.forEach((uuid, encodedAccount) ->
+        binaryValues.put(new String(getAccountEntityKey(uuid), StandardCharsets.UTF_8), encodedAccount));
+
+    when(binaryAsyncCommands.mget(any(byte[][].class))).thenAnswer(invocation -> {
+      final byte[][] keys = (byte[][]) invocation.getRawArguments()[0];
+
+      return MockRedisFuture.completedFuture(Arrays.stream(keys)
+          .map(key -> KeyValue.fromNullable(key, binaryValues.get(new String(key, StandardCharsets.UTF_8))))
+          .toList());
+    });
+  }
+
+  private static Account generateAccount() {
+    return AccountsHelper.generateTestAccount("+14152222222", UUID.randomUUID(), UUID.randomUUID(), new ArrayList<>(),
+        new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]);
+  }
+
   @Test
   void testGetAccountByUsernameHash() {
     UUID uuid = UUID.randomUUID();
@@ -490,7 +698,7 @@ class AccountsManagerTest {
     UUID pni = UUID.randomUUID();
     Account account = AccountsHelper.generateTestAccount("+14152222222", uuid, pni, new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]);
 
-    when(commands.get(eq("Account3::" + uuid))).thenThrow(new RedisException("Connection lost!"));
+    when(binaryCommands.get(aryEq(getAccountEntityKey(uuid)))).thenThrow(new RedisException("Connection lost!"));
     when(accounts.getByAccountIdentifier(eq(uuid))).thenReturn(Optional.of(account));
 
     Optional<Account> retrieved = accountsManager.getByAccountIdentifier(uuid);
@@ -498,10 +706,11 @@ class AccountsManagerTest {
     assertTrue(retrieved.isPresent());
     assertSame(retrieved.get(), account);
 
-    verify(commands, times(1)).get(eq("Account3::" + uuid));
+    verify(binaryCommands, times(1)).get(aryEq(getAccountEntityKey(uuid)));
     verify(commands, times(1)).setex(eq("AccountMap::" + pni), anyLong(), eq(uuid.toString()));
-    verify(commands, times(1)).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryCommands, times(1)).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(commands);
+    verifyNoMoreInteractions(binaryCommands);
 
     verify(accounts, times(1)).getByAccountIdentifier(eq(uuid));
     verifyNoMoreInteractions(accounts);
@@ -513,7 +722,7 @@ class AccountsManagerTest {
     UUID pni = UUID.randomUUID();
     Account account = AccountsHelper.generateTestAccount("+14152222222", uuid, pni, new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]);
 
-    when(asyncCommands.get(eq("Account3::" + uuid)))
+    when(binaryAsyncCommands.get(aryEq(getAccountEntityKey(uuid))))
         .thenReturn(MockRedisFuture.failedFuture(new RedisException("Connection lost!")));
 
     when(asyncCommands.setex(any(), anyLong(), any())).thenReturn(MockRedisFuture.completedFuture("OK"));
@@ -526,10 +735,11 @@ class AccountsManagerTest {
     assertTrue(retrieved.isPresent());
     assertSame(retrieved.get(), account);
 
-    verify(asyncCommands).get(eq("Account3::" + uuid));
+    verify(binaryAsyncCommands).get(aryEq(getAccountEntityKey(uuid)));
     verify(asyncCommands).setex(eq("AccountMap::" + pni), anyLong(), eq(uuid.toString()));
-    verify(asyncCommands).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryAsyncCommands).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(asyncCommands);
+    verifyNoMoreInteractions(binaryAsyncCommands);
 
     verify(accounts).getByAccountIdentifierAsync(eq(uuid));
     verifyNoMoreInteractions(accounts);
@@ -552,8 +762,9 @@ class AccountsManagerTest {
 
     verify(commands).get(eq("AccountMap::" + pni));
     verify(commands).setex(eq("AccountMap::" + pni), anyLong(), eq(uuid.toString()));
-    verify(commands).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryCommands).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(commands);
+    verifyNoMoreInteractions(binaryCommands);
 
     verify(accounts).getByPhoneNumberIdentifier(pni);
     verifyNoMoreInteractions(accounts);
@@ -581,8 +792,9 @@ class AccountsManagerTest {
 
     verify(asyncCommands).get(eq("AccountMap::" + pni));
     verify(asyncCommands).setex(eq("AccountMap::" + pni), anyLong(), eq(uuid.toString()));
-    verify(asyncCommands).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryAsyncCommands).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(asyncCommands);
+    verifyNoMoreInteractions(binaryAsyncCommands);
 
     verify(accounts).getByPhoneNumberIdentifierAsync(pni);
     verifyNoMoreInteractions(accounts);
@@ -594,7 +806,7 @@ class AccountsManagerTest {
     UUID pni = UUID.randomUUID();
     Account account = AccountsHelper.generateTestAccount("+14152222222", uuid, pni, new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]);
 
-    when(commands.get(eq("Account3::" + uuid))).thenReturn(null);
+    when(binaryCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(null);
 
     when(accounts.getByAccountIdentifier(uuid)).thenReturn(
         Optional.of(AccountsHelper.generateTestAccount("+14152222222", uuid, pni, new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH])));
@@ -609,6 +821,9 @@ class AccountsManagerTest {
     assertEquals(1, account.getVersion());
     assertEquals(identityKey, account.getIdentityKey(IdentityType.ACI));
 
+    verify(accountNearCache).invalidate(any(), eq(true));
+    verify(accountNearCache).invalidate(account, false);
+
     verify(accounts, times(1)).getByAccountIdentifier(uuid);
     verify(accounts, times(2)).update(any());
     verifyNoMoreInteractions(accounts);
@@ -620,7 +835,7 @@ class AccountsManagerTest {
     UUID pni = UUID.randomUUID();
     Account account = AccountsHelper.generateTestAccount("+14152222222", uuid, pni, new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]);
 
-    when(asyncCommands.get(eq("Account3::" + uuid))).thenReturn(null);
+    when(binaryAsyncCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(null);
 
     when(accounts.getByAccountIdentifierAsync(uuid)).thenReturn(CompletableFuture.completedFuture(
         Optional.of(AccountsHelper.generateTestAccount("+14152222222", uuid, pni, new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]))));
@@ -646,7 +861,7 @@ class AccountsManagerTest {
     UUID uuid = UUID.randomUUID();
     Account account = AccountsHelper.generateTestAccount("+14152222222", uuid, UUID.randomUUID(), new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]);
 
-    when(commands.get(eq("Account3::" + uuid))).thenReturn(null);
+    when(binaryCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(null);
     when(accounts.getByAccountIdentifier(uuid)).thenReturn(Optional.empty())
         .thenReturn(Optional.of(account));
     when(accounts.create(any(), any())).thenThrow(ContestedOptimisticLockException.class);
@@ -983,6 +1198,19 @@ class AccountsManagerTest {
     );
   }
 
+  @ParameterizedTest
+  @MethodSource("testUpdateDeviceLastSeen")
+  void testUpdateDeviceLastSeenAsync(final boolean expectUpdate, final long initialLastSeen, final long updatedLastSeen) {
+    final Account account = AccountsHelper.generateTestAccount("+14152222222", UUID.randomUUID(), UUID.randomUUID(), new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]);
+    final Device device = generateTestDevice(initialLastSeen);
+    account.addDevice(device);
+
+    accountsManager.updateDeviceLastSeenAsync(account, device.getId(), updatedLastSeen).join();
+
+    assertEquals(expectUpdate ? updatedLastSeen : initialLastSeen, device.getLastSeen());
+    verify(accounts, expectUpdate ? times(1) : never()).updateAsync(account);
+  }
+
   @Test
   void testChangePhoneNumber() throws InterruptedException, MismatchedDevicesException {
     final String originalNumber = "+14152222222";
@@ -1489,8 +1717,9 @@ class AccountsManagerTest {
     assertThrows(AssertionError.class, () -> accountsManager.update(account, a -> a.setUsernameHash(USERNAME_HASH_1)));
   }
 
-  @Test
-  void testJsonRoundTripSerialization() throws Exception {
+  @ParameterizedTest
+  @ValueSource(booleans = {true, false})
+  void testJsonRoundTripSerialization(final boolean binary) throws Exception {
     String originalJson;
     try (InputStream inputStream = getClass().getResourceAsStream(
         "AccountsManagerTest-testJsonRoundTripSerialization.json")) {
@@ -1498,11 +1727,13 @@ class AccountsManagerTest {
       originalJson = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
     }
 
-    final Account originalAccount = AccountsManager.parseAccountJson(originalJson,
+    final Account originalAccount = AccountsManager.parseRedisAccount(originalJson.getBytes(StandardCharsets.UTF_8),
         UUID.fromString("111111-1111-1111-1111-111111111111")).orElseThrow();
 
-    final String serialized = AccountsManager.writeRedisAccountJson(originalAccount);
-    final Account parsedAccount = AccountsManager.parseAccountJson(serialized, originalAccount.getUuid()).orElseThrow();
+    final byte[] serialized = AccountsManager.writeRedisAccount(originalAccount, binary);
+    assertEquals(binary, serialized[0] == AccountsManager.REDIS_ACCOUNT_CBOR_FORMAT_VERSION);
+
+    final Account parsedAccount = AccountsManager.parseRedisAccount(serialized, originalAccount.getUuid()).orElseThrow();
 
     assertEquals(originalAccount.getUuid(), parsedAccount.getUuid());
     assertEquals(originalAccount.getPhoneNumberIdentifier(), parsedAccount.getPhoneNumberIdentifier());
@@ -1527,6 +1758,26 @@ class AccountsManagerTest {
     assertEquals(originalDevice.getFetchesMessages(), parsedDevice.getFetchesMessages());
   }
 
+  @Test
+  void testBinaryRedisAccountSize() throws Exception {
+    final byte[] originalJson;
+    try (InputStream inputStream = getClass().getResourceAsStream(
+        "AccountsManagerTest-testJsonRoundTripSerialization.json")) {
+      Objects.requireNonNull(inputStream);
+      originalJson = inputStream.readAllBytes();
+    }
+
+    final Account account = AccountsManager.parseRedisAccount(originalJson, UUID.randomUUID()).orElseThrow();
+
+    // Binary fields are stored as raw bytes rather than base64 strings, among other savings
+    assertTrue(AccountsManager.writeRedisAccount(account, true).length <
+        AccountsManager.writeRedisAccount(account, false).length);
+  }
+
+  private static byte[] getAccountEntityKey(final UUID accountIdentifier) {
+    return ("Account3::" + accountIdentifier).getBytes(StandardCharsets.UTF_8);
+  }
+
   private void setReservationHash(final Account account, final byte[] reservedUsernameHash) {
     account.setReservedUsernameHash(reservedUsernameHash);
   }
@@ -141,6 +141,7 @@ class AccountsManagerUsernameIntegrationTest {
         accounts,
         phoneNumberIdentifiers,
         CACHE_CLUSTER_EXTENSION.getRedisCluster(),
+        mock(AccountNearCache.class),
         accountLockManager,
         keysManager,
         messageManager,
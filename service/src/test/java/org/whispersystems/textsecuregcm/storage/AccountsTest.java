@@ -40,6 +40,7 @@ import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -743,6 +744,43 @@ class AccountsTest {
     assertThat(accounts.getByPhoneNumberIdentifierAsync(account.getPhoneNumberIdentifier()).join()).isPresent();
   }
 
+  @Test
+  void getByAccountIdentifiersAsync() {
+    final List<Account> createdAccounts = IntStream.range(0, AbstractDynamoDbStore.DYNAMO_DB_MAX_BATCH_GET_SIZE + 1)
+        .mapToObj(i -> generateAccount(String.format("+1415555%04d", i), UUID.randomUUID(), UUID.randomUUID(),
+            List.of(generateDevice(DEVICE_ID_1))))
+        .toList();
+
+    createdAccounts.forEach(this::createAccount);
+
+    final List<UUID> accountIdentifiers = new ArrayList<>(createdAccounts.stream().map(Account::getUuid).toList());
+    accountIdentifiers.add(UUID.randomUUID());
+    accountIdentifiers.add(createdAccounts.get(0).getUuid());
+
+    final Map<UUID, Account> retrievedAccounts = accounts.getByAccountIdentifiersAsync(accountIdentifiers).join();
+
+    assertThat(retrievedAccounts).hasSize(createdAccounts.size());
+    createdAccounts.forEach(account ->
+        verifyStoredState(account.getNumber(), account.getUuid(), account.getPhoneNumberIdentifier(), null,
+            retrievedAccounts.get(account.getUuid()), account));
+  }
+
+  @Test
+  void getByPhoneNumberIdentifiersAsync() {
+    final Account account =
+        generateAccount("+14151112222", UUID.randomUUID(), UUID.randomUUID(), List.of(generateDevice(DEVICE_ID_1)));
+
+    createAccount(account);
+
+    final UUID unknownPhoneNumberIdentifier = UUID.randomUUID();
+
+    final Map<UUID, Account> retrievedAccounts = accounts.getByPhoneNumberIdentifiersAsync(
+        List.of(account.getPhoneNumberIdentifier(), unknownPhoneNumberIdentifier)).join();
+
+    assertThat(retrievedAccounts).containsOnlyKeys(account.getPhoneNumberIdentifier());
+    assertThat(retrievedAccounts.get(account.getPhoneNumberIdentifier()).getUuid()).isEqualTo(account.getUuid());
+  }
+
   @Test
   void getByE164Async() {
     final String e164 = "+14151112222";
@@ -123,6 +123,7 @@ public class AddRemoveDeviceIntegrationTest {
         accounts,
         phoneNumberIdentifiers,
         CACHE_CLUSTER_EXTENSION.getRedisCluster(),
+        mock(AccountNearCache.class),
         accountLockManager,
         keysManager,
         messagesManager,
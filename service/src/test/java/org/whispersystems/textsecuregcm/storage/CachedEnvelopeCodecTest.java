@@ -0,0 +1,92 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.Arrays;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.whispersystems.textsecuregcm.entities.MessageProtos;
+import org.whispersystems.textsecuregcm.util.TestRandomUtil;
+
+class CachedEnvelopeCodecTest {
+
+  @ParameterizedTest
+  @ValueSource(booleans = {true, false})
+  void encodeDecode(final boolean compress) throws InvalidProtocolBufferException {
+    final MessageProtos.Envelope envelope = MessageProtos.Envelope.newBuilder()
+        .setType(MessageProtos.Envelope.Type.CIPHERTEXT)
+        .setSourceUuid(UUID.randomUUID().toString())
+        .setSourceDevice(1)
+        .setDestinationUuid("PNI:" + UUID.randomUUID())
+        .setServerGuid(UUID.randomUUID().toString())
+        .setTimestamp(System.currentTimeMillis())
+        .setServerTimestamp(System.currentTimeMillis())
+        .setContent(ByteString.copyFromUtf8("A fairly repetitive message. A fairly repetitive message."))
+        .build();
+
+    final byte[] encoded = CachedEnvelopeCodec.encode(envelope, compress);
+
+    assertEquals(compress, CachedEnvelopeCodec.isCompressed(encoded));
+
+    if (compress) {
+      assertTrue(encoded.length < envelope.getSerializedSize());
+    } else {
+      assertArrayEquals(envelope.toByteArray(), encoded);
+    }
+
+    assertEquals(envelope, CachedEnvelopeCodec.decode(encoded));
+  }
+
+  @Test
+  void encodeIncompressible() throws InvalidProtocolBufferException {
+    final MessageProtos.Envelope envelope = MessageProtos.Envelope.newBuilder()
+        .setType(MessageProtos.Envelope.Type.UNIDENTIFIED_SENDER)
+        .setContent(ByteString.copyFrom(TestRandomUtil.nextBytes(1024)))
+        .build();
+
+    final byte[] encoded = CachedEnvelopeCodec.encode(envelope, true);
+
+    assertFalse(CachedEnvelopeCodec.isCompressed(encoded));
+    assertArrayEquals(envelope.toByteArray(), encoded);
+    assertEquals(envelope, CachedEnvelopeCodec.decode(encoded));
+  }
+
+  @Test
+  void encodeEmpty() throws InvalidProtocolBufferException {
+    final byte[] encoded = CachedEnvelopeCodec.encode(MessageProtos.Envelope.getDefaultInstance(), true);
+
+    assertEquals(0, encoded.length);
+    assertEquals(MessageProtos.Envelope.getDefaultInstance(), CachedEnvelopeCodec.decode(encoded));
+  }
+
+  @Test
+  void decodeInvalid() {
+    final MessageProtos.Envelope envelope = MessageProtos.Envelope.newBuilder()
+        .setContent(ByteString.copyFromUtf8("A fairly repetitive message. A fairly repetitive message."))
+        .build();
+
+    final byte[] encoded = CachedEnvelopeCodec.encode(envelope, true);
+    assertTrue(CachedEnvelopeCodec.isCompressed(encoded));
+
+    assertThrows(InvalidProtocolBufferException.class,
+        () -> CachedEnvelopeCodec.decode(Arrays.copyOf(encoded, encoded.length - 4)));
+
+    final byte[] unknownVersion = encoded.clone();
+    unknownVersion[1] = 0x7f;
+
+    assertThrows(InvalidProtocolBufferException.class, () -> CachedEnvelopeCodec.decode(unknownVersion));
+  }
+}
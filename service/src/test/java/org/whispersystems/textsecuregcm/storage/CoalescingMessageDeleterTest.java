@@ -0,0 +1,117 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.whispersystems.textsecuregcm.entities.MessageProtos.Envelope;
+
+class CoalescingMessageDeleterTest {
+
+  private MessagesManager messagesManager;
+
+  private List<List<MessagesManager.DeleteRequest>> submittedBatches;
+  private List<List<CompletableFuture<Optional<Envelope>>>> batchResults;
+
+  private static final UUID DESTINATION_UUID = UUID.randomUUID();
+  private static final byte DESTINATION_DEVICE_ID = Device.PRIMARY_ID;
+
+  @BeforeEach
+  void setUp() {
+    messagesManager = mock(MessagesManager.class);
+    submittedBatches = new ArrayList<>();
+    batchResults = new ArrayList<>();
+
+    when(messagesManager.delete(eq(DESTINATION_UUID), eq(DESTINATION_DEVICE_ID), anyList())).thenAnswer(invocation -> {
+      final List<MessagesManager.DeleteRequest> deleteRequests = invocation.getArgument(2);
+      final List<CompletableFuture<Optional<Envelope>>> results = deleteRequests.stream()
+          .map(ignored -> new CompletableFuture<Optional<Envelope>>())
+          .toList();
+
+      submittedBatches.add(deleteRequests);
+      batchResults.add(results);
+
+      return results;
+    });
+  }
+
+  @Test
+  void delete() {
+    final CoalescingMessageDeleter deleter =
+        new CoalescingMessageDeleter(messagesManager, DESTINATION_UUID, DESTINATION_DEVICE_ID, 2);
+
+    final UUID firstGuid = UUID.randomUUID();
+    final CompletableFuture<Optional<Envelope>> firstFuture = deleter.delete(firstGuid, 1L);
+
+    // Nothing is in flight, so the first deletion should be submitted immediately
+    assertEquals(List.of(List.of(new MessagesManager.DeleteRequest(firstGuid, 1L))), submittedBatches);
+
+    final List<UUID> heldGuids = IntStream.range(0, 3).mapToObj(ignored -> UUID.randomUUID()).toList();
+    final List<CompletableFuture<Optional<Envelope>>> heldFutures = heldGuids.stream()
+        .map(guid -> deleter.delete(guid, null))
+        .toList();
+
+    assertEquals(1, submittedBatches.size());
+
+    final Envelope firstMessage = Envelope.newBuilder().setServerGuid(firstGuid.toString()).build();
+    batchResults.get(0).get(0).complete(Optional.of(firstMessage));
+
+    assertEquals(Optional.of(firstMessage), firstFuture.join());
+
+    // Held deletions should be submitted together, but no more than the maximum batch size at a time
+    assertEquals(2, submittedBatches.size());
+    assertEquals(List.of(new MessagesManager.DeleteRequest(heldGuids.get(0), null),
+        new MessagesManager.DeleteRequest(heldGuids.get(1), null)), submittedBatches.get(1));
+
+    batchResults.get(1).get(0).complete(Optional.empty());
+    assertEquals(2, submittedBatches.size());
+    assertTrue(heldFutures.get(0).isDone());
+    assertFalse(heldFutures.get(1).isDone());
+
+    batchResults.get(1).get(1).completeExceptionally(new RuntimeException("OH NO"));
+    assertThrows(CompletionException.class, () -> heldFutures.get(1).join());
+
+    assertEquals(3, submittedBatches.size());
+    assertEquals(List.of(new MessagesManager.DeleteRequest(heldGuids.get(2), null)), submittedBatches.get(2));
+
+    batchResults.get(2).get(0).complete(Optional.empty());
+    assertEquals(Optional.empty(), heldFutures.get(2).join());
+
+    verify(messagesManager, times(3)).delete(eq(DESTINATION_UUID), eq(DESTINATION_DEVICE_ID), anyList());
+  }
+
+  @Test
+  void deleteManagerException() {
+    final CoalescingMessageDeleter deleter =
+        new CoalescingMessageDeleter(messagesManager, DESTINATION_UUID, DESTINATION_DEVICE_ID, 2);
+
+    when(messagesManager.delete(eq(DESTINATION_UUID), eq(DESTINATION_DEVICE_ID), anyList()))
+        .thenThrow(new IllegalStateException());
+
+    assertThrows(CompletionException.class, () -> deleter.delete(UUID.randomUUID(), null).join());
+
+    // A failed submission must not leave the deleter stuck with a batch "in flight"
+    assertThrows(CompletionException.class, () -> deleter.delete(UUID.randomUUID(), null).join());
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyByte;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DeviceLastSeenUpdaterTest {
+
+  private AccountsManager accountsManager;
+  private DeviceLastSeenUpdater deviceLastSeenUpdater;
+
+  private static final int MAX_PENDING_UPDATES = 2;
+
+  @BeforeEach
+  void setUp() {
+    accountsManager = mock(AccountsManager.class);
+
+    when(accountsManager.updateDeviceLastSeenAsync(any(), anyByte(), anyLong()))
+        .thenAnswer(invocation -> CompletableFuture.completedFuture(invocation.getArgument(0)));
+
+    deviceLastSeenUpdater = new DeviceLastSeenUpdater(accountsManager, mock(ScheduledExecutorService.class),
+        Duration.ofSeconds(5), MAX_PENDING_UPDATES, 4);
+  }
+
+  @Test
+  void flush() {
+    final Account account = mockAccount();
+    final Device primaryDevice = mockDevice(Device.PRIMARY_ID);
+    final Device linkedDevice = mockDevice((byte) (Device.PRIMARY_ID + 1));
+
+    deviceLastSeenUpdater.updateLastSeen(account, primaryDevice, 2);
+    deviceLastSeenUpdater.updateLastSeen(account, primaryDevice, 1);
+    deviceLastSeenUpdater.updateLastSeen(account, linkedDevice, 3);
+
+    verify(accountsManager, never()).updateDeviceLastSeenAsync(any(), anyByte(), anyLong());
+
+    deviceLastSeenUpdater.flush();
+
+    // Updates for the same device should be coalesced, and the latest timestamp should win
+    verify(accountsManager).updateDeviceLastSeenAsync(account, Device.PRIMARY_ID, 2);
+    verify(accountsManager).updateDeviceLastSeenAsync(account, linkedDevice.getId(), 3);
+
+    // Flushed updates should not be written again
+    deviceLastSeenUpdater.flush();
+
+    verify(accountsManager, times(2)).updateDeviceLastSeenAsync(any(), anyByte(), anyLong());
+  }
+
+  @Test
+  void updateLastSeenQueueFull() {
+    final Account account = mockAccount();
+    final Device firstDevice = mockDevice((byte) 1);
+    final Device secondDevice = mockDevice((byte) 2);
+    final Device thirdDevice = mockDevice((byte) 3);
+
+    deviceLastSeenUpdater.updateLastSeen(account, firstDevice, 1);
+    deviceLastSeenUpdater.updateLastSeen(account, secondDevice, 1);
+    deviceLastSeenUpdater.updateLastSeen(account, thirdDevice, 1);
+
+    // Devices that already have pending updates can still be updated when the queue is full
+    deviceLastSeenUpdater.updateLastSeen(account, firstDevice, 2);
+
+    deviceLastSeenUpdater.flush();
+
+    verify(accountsManager).updateDeviceLastSeenAsync(account, firstDevice.getId(), 2);
+    verify(accountsManager).updateDeviceLastSeenAsync(account, secondDevice.getId(), 1);
+    verify(accountsManager, never()).updateDeviceLastSeenAsync(any(), eq((byte) 3), anyLong());
+  }
+
+  @Test
+  void flushAccountNotFound() {
+    final Account account = mockAccount();
+    when(accountsManager.getByAccountIdentifierAsync(account.getUuid()))
+        .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+
+    deviceLastSeenUpdater.updateLastSeen(account, mockDevice(Device.PRIMARY_ID), 1);
+    deviceLastSeenUpdater.flush();
+
+    verify(accountsManager, never()).updateDeviceLastSeenAsync(any(), anyByte(), anyLong());
+  }
+
+  @Test
+  void flushUpdateFailed() {
+    final Account failedAccount = mockAccount();
+    final Account account = mockAccount();
+
+    when(accountsManager.updateDeviceLastSeenAsync(failedAccount, Device.PRIMARY_ID, 1))
+        .thenReturn(CompletableFuture.failedFuture(new RuntimeException("OH NO")));
+
+    deviceLastSeenUpdater.updateLastSeen(failedAccount, mockDevice(Device.PRIMARY_ID), 1);
+    deviceLastSeenUpdater.updateLastSeen(account, mockDevice(Device.PRIMARY_ID), 1);
+
+    // A failed update shouldn't prevent other updates from being written
+    assertDoesNotThrow(() -> deviceLastSeenUpdater.flush());
+
+    verify(accountsManager).updateDeviceLastSeenAsync(account, Device.PRIMARY_ID, 1);
+  }
+
+  private Account mockAccount() {
+    final UUID accountIdentifier = UUID.randomUUID();
+    final Account account = mock(Account.class);
+    when(account.getUuid()).thenReturn(accountIdentifier);
+
+    when(accountsManager.getByAccountIdentifierAsync(accountIdentifier))
+        .thenReturn(CompletableFuture.completedFuture(Optional.of(account)));
+
+    return account;
+  }
+
+  private static Device mockDevice(final byte deviceId) {
+    final Device device = mock(Device.class);
+    when(device.getId()).thenReturn(deviceId);
+
+    return device;
+  }
+}
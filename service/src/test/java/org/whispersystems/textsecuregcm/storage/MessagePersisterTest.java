@@ -8,6 +8,7 @@ package org.whispersystems.textsecuregcm.storage;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyByte;
 import static org.mockito.ArgumentMatchers.anyList;
@@ -16,11 +17,10 @@ import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
-import static org.whispersystems.textsecuregcm.util.MockUtils.exactly;
 
-import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.ByteString;
 import io.lettuce.core.cluster.SlotHash;
 import java.nio.charset.StandardCharsets;
@@ -57,6 +57,7 @@ class MessagePersisterTest {
   static final RedisClusterExtension REDIS_CLUSTER_EXTENSION = RedisClusterExtension.builder().build();
 
   private ExecutorService sharedExecutorService;
+  private ExecutorService persisterExecutorService;
   private ScheduledExecutorService resubscribeRetryExecutorService;
   private Scheduler messageDeliveryScheduler;
   private MessagesCache messagesCache;
@@ -87,7 +88,8 @@ class MessagePersisterTest {
     keysManager = mock(KeysManager.class);
     destinationAccount = mock(Account.class);;
 
-    when(accountsManager.getByAccountIdentifier(DESTINATION_ACCOUNT_UUID)).thenReturn(Optional.of(destinationAccount));
+    when(accountsManager.getByAccountIdentifierAsync(DESTINATION_ACCOUNT_UUID))
+        .thenReturn(CompletableFuture.completedFuture(Optional.of(destinationAccount)));
     when(accountsManager.removeDevice(any(), anyByte()))
         .thenAnswer(invocation -> CompletableFuture.completedFuture(invocation.getArgument(0)));
 
@@ -96,13 +98,14 @@ class MessagePersisterTest {
     when(dynamicConfigurationManager.getConfiguration()).thenReturn(new DynamicConfiguration());
 
     sharedExecutorService = Executors.newSingleThreadExecutor();
+    persisterExecutorService = Executors.newSingleThreadExecutor();
     resubscribeRetryExecutorService = Executors.newSingleThreadScheduledExecutor();
     messageDeliveryScheduler = Schedulers.newBoundedElastic(10, 10_000, "messageDelivery");
     messagesCache = new MessagesCache(REDIS_CLUSTER_EXTENSION.getRedisCluster(),
         REDIS_CLUSTER_EXTENSION.getRedisCluster(), sharedExecutorService, messageDeliveryScheduler,
-        sharedExecutorService, Clock.systemUTC());
+        sharedExecutorService, Clock.systemUTC(), dynamicConfigurationManager);
     messagePersister = new MessagePersister(messagesCache, messagesManager, accountsManager, clientPresenceManager,
-        keysManager, dynamicConfigurationManager, PERSIST_DELAY, 1, MoreExecutors.newDirectExecutorService());
+        keysManager, dynamicConfigurationManager, PERSIST_DELAY, 1, persisterExecutorService);
 
     when(messagesManager.persistMessages(any(UUID.class), anyByte(), any())).thenAnswer(invocation -> {
       final UUID destinationUuid = invocation.getArgument(0);
@@ -111,11 +114,10 @@ class MessagePersisterTest {
 
       messagesDynamoDb.store(messages, destinationUuid, destinationDeviceId);
 
-      for (final MessageProtos.Envelope message : messages) {
-        messagesCache.remove(destinationUuid, destinationDeviceId, UUID.fromString(message.getServerGuid())).get();
-      }
-
-      return messages.size();
+      return messagesCache.remove(destinationUuid, destinationDeviceId, messages.stream()
+              .map(message -> UUID.fromString(message.getServerGuid()))
+              .toList())
+          .thenApply(ignored -> messages.size());
     });
   }
 
@@ -124,6 +126,9 @@ class MessagePersisterTest {
     sharedExecutorService.shutdown();
     sharedExecutorService.awaitTermination(1, TimeUnit.SECONDS);
 
+    persisterExecutorService.shutdown();
+    persisterExecutorService.awaitTermination(1, TimeUnit.SECONDS);
+
     messageDeliveryScheduler.dispose();
     resubscribeRetryExecutorService.shutdown();
     resubscribeRetryExecutorService.awaitTermination(1, TimeUnit.SECONDS);
@@ -133,7 +138,7 @@ class MessagePersisterTest {
   void testPersistNextQueuesNoQueues() {
     messagePersister.persistNextQueues(Instant.now());
 
-    verify(accountsManager, never()).getByAccountIdentifier(any(UUID.class));
+    verify(accountsManager, never()).getByAccountIdentifierAsync(any(UUID.class));
   }
 
   @Test
@@ -185,7 +190,8 @@ class MessagePersisterTest {
 
       final Account account = mock(Account.class);
 
-      when(accountsManager.getByAccountIdentifier(accountUuid)).thenReturn(Optional.of(account));
+      when(accountsManager.getByAccountIdentifierAsync(accountUuid))
+          .thenReturn(CompletableFuture.completedFuture(Optional.of(account)));
       when(account.getUuid()).thenReturn(accountUuid);
       when(account.getNumber()).thenReturn(accountNumber);
 
@@ -223,6 +229,36 @@ class MessagePersisterTest {
             Instant.now().plus(messagePersister.getPersistDelay()), 1));
   }
 
+  @Test
+  void testPersistQueueTransientFailure() {
+    final String queueName = new String(
+        MessagesCache.getMessageQueueKey(DESTINATION_ACCOUNT_UUID, DESTINATION_DEVICE_ID), StandardCharsets.UTF_8);
+    final int messageCount = (MessagePersister.MESSAGE_BATCH_LIMIT * 3) + 7;
+    final Instant now = Instant.now();
+
+    insertMessages(DESTINATION_ACCOUNT_UUID, DESTINATION_DEVICE_ID, messageCount, now);
+    setNextSlotToPersist(SlotHash.getSlot(queueName));
+
+    doAnswer((Answer<Void>) invocation -> {
+      throw new RuntimeException("OH NO.");
+    }).doNothing().when(messagesDynamoDb).store(any(), eq(DESTINATION_ACCOUNT_UUID), eq(DESTINATION_DEVICE_ID));
+
+    messagePersister.persistNextQueues(now.plus(messagePersister.getPersistDelay()));
+
+    final ArgumentCaptor<List<MessageProtos.Envelope>> messagesCaptor = ArgumentCaptor.forClass(List.class);
+
+    // the first attempt fails before anything is removed from the cache, so the retry should persist everything
+    verify(messagesDynamoDb, atLeastOnce()).store(messagesCaptor.capture(), eq(DESTINATION_ACCOUNT_UUID),
+        eq(DESTINATION_DEVICE_ID));
+    final List<List<MessageProtos.Envelope>> storedBatches = messagesCaptor.getAllValues();
+
+    assertEquals(messageCount,
+        storedBatches.stream().skip(1).mapToInt(List::size).sum());
+
+    assertTrue(messagesCache.getQueuesToPersist(SlotHash.getSlot(queueName),
+        Instant.now().plus(messagePersister.getPersistDelay()), 1).isEmpty());
+  }
+
   @Test
   void testPersistQueueRetryLoop() {
     final String queueName = new String(
@@ -234,7 +270,8 @@ class MessagePersisterTest {
     setNextSlotToPersist(SlotHash.getSlot(queueName));
 
     // returning `0` indicates something not working correctly
-    when(messagesManager.persistMessages(any(UUID.class), anyByte(), anyList())).thenReturn(0);
+    when(messagesManager.persistMessages(any(UUID.class), anyByte(), anyList()))
+        .thenReturn(CompletableFuture.completedFuture(0));
 
     assertTimeoutPreemptively(Duration.ofSeconds(1), () ->
         assertThrows(MessagePersistenceException.class,
@@ -281,7 +318,7 @@ class MessagePersisterTest {
     assertTimeoutPreemptively(Duration.ofSeconds(1), () ->
         messagePersister.persistQueue(destinationAccount, DESTINATION_DEVICE_ID));
 
-    verify(messagesManager, exactly()).clear(DESTINATION_ACCOUNT_UUID, inactiveId);
+    verify(messagesManager, timeout(1000)).clear(DESTINATION_ACCOUNT_UUID, inactiveId);
   }
 
   @Test
@@ -331,7 +368,7 @@ class MessagePersisterTest {
     assertTimeoutPreemptively(Duration.ofSeconds(1), () ->
         messagePersister.persistQueue(destinationAccount, DESTINATION_DEVICE_ID));
 
-    verify(messagesManager, exactly()).clear(DESTINATION_ACCOUNT_UUID, deviceIdB);
+    verify(messagesManager, timeout(1000)).clear(DESTINATION_ACCOUNT_UUID, deviceIdB);
   }
 
   @Test
@@ -381,7 +418,7 @@ class MessagePersisterTest {
     assertTimeoutPreemptively(Duration.ofSeconds(1), () ->
         messagePersister.persistQueue(destinationAccount, DESTINATION_DEVICE_ID));
 
-    verify(messagesManager, exactly()).clear(DESTINATION_ACCOUNT_UUID, DESTINATION_DEVICE_ID);
+    verify(messagesManager, timeout(1000)).clear(DESTINATION_ACCOUNT_UUID, DESTINATION_DEVICE_ID);
   }
 
   @SuppressWarnings("SameParameterValue")
@@ -34,9 +34,13 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
@@ -46,6 +50,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.jupiter.api.AfterEach;
@@ -57,6 +62,8 @@ import org.junit.jupiter.api.extension.RegisterExtension;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.reactivestreams.Publisher;
+import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicConfiguration;
+import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicMessageCacheConfiguration;
 import org.whispersystems.textsecuregcm.entities.MessageProtos;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
 import org.whispersystems.textsecuregcm.redis.RedisClusterExtension;
@@ -81,6 +88,8 @@ class MessagesCacheTest {
     private ExecutorService sharedExecutorService;
     private ScheduledExecutorService resubscribeRetryExecutorService;
     private Scheduler messageDeliveryScheduler;
+    private DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager;
+    private DynamicMessageCacheConfiguration messageCacheConfiguration;
     private MessagesCache messagesCache;
 
     private static final UUID DESTINATION_UUID = UUID.randomUUID();
@@ -98,8 +107,18 @@ class MessagesCacheTest {
       sharedExecutorService = Executors.newSingleThreadExecutor();
       resubscribeRetryExecutorService = Executors.newSingleThreadScheduledExecutor();
       messageDeliveryScheduler = Schedulers.newBoundedElastic(10, 10_000, "messageDelivery");
+
+      messageCacheConfiguration = mock(DynamicMessageCacheConfiguration.class);
+      final DynamicConfiguration dynamicConfiguration = mock(DynamicConfiguration.class);
+      when(dynamicConfiguration.getMessageCacheConfiguration()).thenReturn(messageCacheConfiguration);
+
+      //noinspection unchecked
+      dynamicConfigurationManager = mock(DynamicConfigurationManager.class);
+      when(dynamicConfigurationManager.getConfiguration()).thenReturn(dynamicConfiguration);
+
       messagesCache = new MessagesCache(REDIS_CLUSTER_EXTENSION.getRedisCluster(),
-          REDIS_CLUSTER_EXTENSION.getRedisCluster(), sharedExecutorService, messageDeliveryScheduler, sharedExecutorService, Clock.systemUTC());
+          REDIS_CLUSTER_EXTENSION.getRedisCluster(), sharedExecutorService, messageDeliveryScheduler, sharedExecutorService, Clock.systemUTC(),
+          dynamicConfigurationManager);
 
       messagesCache.start();
     }
@@ -124,6 +143,240 @@ class MessagesCacheTest {
           generateRandomMessage(messageGuid, sealedSender)) > 0);
     }
 
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testInsertBatch(final boolean sealedSender) throws Exception {
+      final List<MessagesCache.InsertRequest> insertRequests = new ArrayList<>();
+
+      for (int i = 0; i < 50; i++) {
+        final UUID messageGuid = UUID.randomUUID();
+        final UUID destinationUuid = i % 2 == 0 ? DESTINATION_UUID : UUID.randomUUID();
+
+        insertRequests.add(new MessagesCache.InsertRequest(messageGuid, destinationUuid, DESTINATION_DEVICE_ID,
+            generateRandomMessage(messageGuid, sealedSender)));
+      }
+
+      final List<CompletableFuture<Long>> insertFutures = messagesCache.insert(insertRequests);
+      assertEquals(insertRequests.size(), insertFutures.size());
+
+      for (int i = 0; i < insertRequests.size(); i++) {
+        final MessagesCache.InsertRequest insertRequest = insertRequests.get(i);
+        assertTrue(insertFutures.get(i).get(5, TimeUnit.SECONDS) > 0);
+
+        // Inserting the same GUID again should yield the same message ID
+        assertEquals(insertFutures.get(i).get(),
+            messagesCache.insert(insertRequest.guid(), insertRequest.destinationUuid(),
+                insertRequest.destinationDevice(), insertRequest.message()));
+      }
+
+      assertEquals(insertRequests.stream()
+              .filter(insertRequest -> insertRequest.destinationUuid().equals(DESTINATION_UUID))
+              .map(MessagesCache.InsertRequest::message)
+              .toList(),
+          get(DESTINATION_UUID, DESTINATION_DEVICE_ID, insertRequests.size()));
+    }
+
+    @Test
+    void testInsertBatchSharedPayload() throws Exception {
+      when(messageCacheConfiguration.isSharedPayloadEnabled()).thenReturn(true);
+      when(messageCacheConfiguration.getSharedPayloadMinimumBytes()).thenReturn(16);
+
+      final byte[] sharedPayload = RandomStringUtils.randomAlphanumeric(512).getBytes(StandardCharsets.UTF_8);
+      final List<UUID> destinationUuids = List.of(DESTINATION_UUID, UUID.randomUUID(), UUID.randomUUID());
+      final List<MessagesCache.InsertRequest> insertRequests = new ArrayList<>();
+
+      for (final UUID destinationUuid : destinationUuids) {
+        final UUID messageGuid = UUID.randomUUID();
+        final MessageProtos.Envelope message = generateRandomMessage(messageGuid, true).toBuilder()
+            .setContent(ByteString.copyFromUtf8(RandomStringUtils.randomAlphanumeric(32))
+                .concat(ByteString.copyFrom(sharedPayload)))
+            .build();
+
+        insertRequests.add(new MessagesCache.InsertRequest(messageGuid, destinationUuid, DESTINATION_DEVICE_ID, message));
+      }
+
+      CompletableFuture.allOf(messagesCache.insert(insertRequests).toArray(CompletableFuture[]::new))
+          .get(5, TimeUnit.SECONDS);
+
+      // The shared payload is stored once, and queue entries only hold a reference to it
+      final List<String> sharedPayloadKeys = REDIS_CLUSTER_EXTENSION.getRedisCluster().withCluster(connection ->
+          connection.sync().upstream().commands().keys("user_queue_shared_payload::*").asMap().values().stream()
+              .flatMap(List::stream)
+              .toList());
+
+      assertEquals(1, sharedPayloadKeys.size());
+
+      final byte[] storedQueueItem = REDIS_CLUSTER_EXTENSION.getRedisCluster().withBinaryCluster(connection ->
+          connection.sync().zrange(MessagesCache.getMessageQueueKey(DESTINATION_UUID, DESTINATION_DEVICE_ID), 0, 0))
+          .get(0);
+
+      final MessageProtos.Envelope storedMessage = MessageProtos.Envelope.parseFrom(storedQueueItem);
+      assertTrue(storedMessage.hasSharedPayloadKey());
+      assertEquals(32, storedMessage.getContent().size());
+
+      // Readers see the full content
+      assertEquals(List.of(insertRequests.get(0).message()), get(DESTINATION_UUID, DESTINATION_DEVICE_ID, 1));
+      assertEquals(List.of(insertRequests.get(1).message()),
+          messagesCache.getMessagesToPersist(destinationUuids.get(1), DESTINATION_DEVICE_ID, 1));
+
+      // The shared payload is removed only when the last reference is removed
+      for (int i = 0; i < insertRequests.size(); i++) {
+        final MessagesCache.InsertRequest insertRequest = insertRequests.get(i);
+
+        assertEquals(Optional.of(insertRequest.message()),
+            messagesCache.remove(insertRequest.destinationUuid(), DESTINATION_DEVICE_ID, insertRequest.guid())
+                .get(5, TimeUnit.SECONDS));
+
+        final long sharedPayloadKeysRemaining = REDIS_CLUSTER_EXTENSION.getRedisCluster().withCluster(connection ->
+            connection.sync().exists(sharedPayloadKeys.get(0)));
+
+        assertEquals(i == insertRequests.size() - 1 ? 0 : 1, sharedPayloadKeysRemaining);
+      }
+    }
+
+    @Test
+    void testClearQueueReleasesSharedPayload() throws Exception {
+      when(messageCacheConfiguration.isSharedPayloadEnabled()).thenReturn(true);
+      when(messageCacheConfiguration.getSharedPayloadMinimumBytes()).thenReturn(16);
+
+      final byte[] sharedPayload = RandomStringUtils.randomAlphanumeric(512).getBytes(StandardCharsets.UTF_8);
+      final List<UUID> destinationUuids = List.of(DESTINATION_UUID, UUID.randomUUID());
+      final List<MessagesCache.InsertRequest> insertRequests = new ArrayList<>();
+
+      for (final UUID destinationUuid : destinationUuids) {
+        final UUID messageGuid = UUID.randomUUID();
+        final MessageProtos.Envelope message = generateRandomMessage(messageGuid, true).toBuilder()
+            .setContent(ByteString.copyFromUtf8(RandomStringUtils.randomAlphanumeric(32))
+                .concat(ByteString.copyFrom(sharedPayload)))
+            .build();
+
+        insertRequests.add(new MessagesCache.InsertRequest(messageGuid, destinationUuid, DESTINATION_DEVICE_ID, message));
+      }
+
+      CompletableFuture.allOf(messagesCache.insert(insertRequests).toArray(CompletableFuture[]::new))
+          .get(5, TimeUnit.SECONDS);
+
+      final String sharedPayloadKey = REDIS_CLUSTER_EXTENSION.getRedisCluster().withCluster(connection ->
+          connection.sync().upstream().commands().keys("user_queue_shared_payload::*").asMap().values().stream()
+              .flatMap(List::stream)
+              .findFirst()
+              .orElseThrow());
+
+      messagesCache.clear(destinationUuids.get(0), DESTINATION_DEVICE_ID).get(5, TimeUnit.SECONDS);
+
+      // The other queue still refers to the shared payload
+      assertEquals("1", REDIS_CLUSTER_EXTENSION.getRedisCluster().withCluster(connection ->
+          connection.sync().hget(sharedPayloadKey, "references")));
+
+      assertEquals(List.of(insertRequests.get(1).message()), get(destinationUuids.get(1), DESTINATION_DEVICE_ID, 1));
+
+      messagesCache.clear(destinationUuids.get(1)).get(5, TimeUnit.SECONDS);
+
+      assertEquals(0, (long) REDIS_CLUSTER_EXTENSION.getRedisCluster().withCluster(connection ->
+          connection.sync().exists(sharedPayloadKey)));
+    }
+
+    @Test
+    void testMissingSharedPayload() throws Exception {
+      when(messageCacheConfiguration.isSharedPayloadEnabled()).thenReturn(true);
+      when(messageCacheConfiguration.getSharedPayloadMinimumBytes()).thenReturn(16);
+
+      final byte[] sharedPayload = RandomStringUtils.randomAlphanumeric(512).getBytes(StandardCharsets.UTF_8);
+      final List<MessagesCache.InsertRequest> insertRequests = new ArrayList<>();
+
+      for (int i = 0; i < 2; i++) {
+        final UUID messageGuid = UUID.randomUUID();
+        final MessageProtos.Envelope message = generateRandomMessage(messageGuid, true).toBuilder()
+            .setContent(ByteString.copyFromUtf8(RandomStringUtils.randomAlphanumeric(32))
+                .concat(ByteString.copyFrom(sharedPayload)))
+            .build();
+
+        insertRequests.add(new MessagesCache.InsertRequest(messageGuid, i == 0 ? DESTINATION_UUID : UUID.randomUUID(),
+            DESTINATION_DEVICE_ID, message));
+      }
+
+      CompletableFuture.allOf(messagesCache.insert(insertRequests).toArray(CompletableFuture[]::new))
+          .get(5, TimeUnit.SECONDS);
+
+      final UUID unsharedMessageGuid = UUID.randomUUID();
+      final MessageProtos.Envelope unsharedMessage = generateRandomMessage(unsharedMessageGuid, true);
+      messagesCache.insert(unsharedMessageGuid, DESTINATION_UUID, DESTINATION_DEVICE_ID, unsharedMessage);
+
+      REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection ->
+          connection.sync().upstream().commands().keys("user_queue_shared_payload::*").asMap().values().stream()
+              .flatMap(List::stream)
+              .forEach(key -> connection.sync().del(key)));
+
+      // Messages whose shared payload has gone missing can never be delivered, and should be removed from the queue
+      // rather than blocking it
+      assertEquals(List.of(unsharedMessage), get(DESTINATION_UUID, DESTINATION_DEVICE_ID, 1));
+      assertEquals(List.of(unsharedMessage),
+          messagesCache.getMessagesToPersist(DESTINATION_UUID, DESTINATION_DEVICE_ID, 10));
+      assertEquals(1, (long) REDIS_CLUSTER_EXTENSION.getRedisCluster().withBinaryCluster(connection ->
+          connection.sync().zcard(MessagesCache.getMessageQueueKey(DESTINATION_UUID, DESTINATION_DEVICE_ID))));
+
+      assertTrue(messagesCache.getMessagesToPersist(insertRequests.get(1).destinationUuid(), DESTINATION_DEVICE_ID, 10)
+          .isEmpty());
+      assertFalse(messagesCache.hasMessages(insertRequests.get(1).destinationUuid(), DESTINATION_DEVICE_ID));
+    }
+
+    @Test
+    void testMixedCompressionQueue() throws Exception {
+      final List<MessageProtos.Envelope> messages = new ArrayList<>();
+
+      for (int i = 0; i < 10; i++) {
+        // Alternate compressed and uncompressed messages to simulate a queue written during a rollout
+        when(messageCacheConfiguration.isCompressionEnabled()).thenReturn(i % 2 == 0);
+
+        final UUID messageGuid = UUID.randomUUID();
+        final MessageProtos.Envelope message = generateRandomMessage(messageGuid, i % 3 == 0);
+
+        messagesCache.insert(messageGuid, DESTINATION_UUID, DESTINATION_DEVICE_ID, message);
+        messages.add(message);
+      }
+
+      final List<byte[]> storedQueueItems = REDIS_CLUSTER_EXTENSION.getRedisCluster().withBinaryCluster(connection ->
+          connection.sync().zrange(MessagesCache.getMessageQueueKey(DESTINATION_UUID, DESTINATION_DEVICE_ID), 0, -1));
+
+      for (int i = 0; i < storedQueueItems.size(); i++) {
+        assertEquals(i % 2 == 0, CachedEnvelopeCodec.isCompressed(storedQueueItems.get(i)));
+
+        if (i % 2 == 0) {
+          assertTrue(storedQueueItems.get(i).length < messages.get(i).getSerializedSize());
+        }
+      }
+
+      assertEquals(messages, get(DESTINATION_UUID, DESTINATION_DEVICE_ID, messages.size()));
+      assertEquals(messages,
+          messagesCache.getMessagesToPersist(DESTINATION_UUID, DESTINATION_DEVICE_ID, messages.size()));
+      assertEquals(messages, messagesCache.remove(DESTINATION_UUID, DESTINATION_DEVICE_ID,
+              messages.stream().map(message -> UUID.fromString(message.getServerGuid())).toList())
+          .get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testGetCommonContentSuffixLength() {
+      final UUID messageGuid = UUID.randomUUID();
+      final MessageProtos.Envelope message = generateRandomMessage(messageGuid, true);
+
+      final Function<String, MessagesCache.InsertRequest> insertRequestWithContent = content ->
+          new MessagesCache.InsertRequest(messageGuid, DESTINATION_UUID, DESTINATION_DEVICE_ID,
+              message.toBuilder().setContent(ByteString.copyFromUtf8(content)).build());
+
+      assertEquals(3, MessagesCache.getCommonContentSuffixLength(List.of(
+          insertRequestWithContent.apply("aaxyz"),
+          insertRequestWithContent.apply("bxyz"),
+          insertRequestWithContent.apply("aaxyz"))));
+
+      assertEquals(0, MessagesCache.getCommonContentSuffixLength(List.of(
+          insertRequestWithContent.apply("abc"),
+          insertRequestWithContent.apply("abd"))));
+
+      assertEquals(3, MessagesCache.getCommonContentSuffixLength(List.of(
+          insertRequestWithContent.apply("abc"),
+          insertRequestWithContent.apply("abc"))));
+    }
+
     @Test
     void testDoubleInsertGuid() {
       final UUID duplicateGuid = UUID.randomUUID();
@@ -272,7 +525,8 @@ class MessagesCacheTest {
       }
 
       final MessagesCache messagesCache = new MessagesCache(REDIS_CLUSTER_EXTENSION.getRedisCluster(),
-          REDIS_CLUSTER_EXTENSION.getRedisCluster(), sharedExecutorService, messageDeliveryScheduler, sharedExecutorService, cacheClock);
+          REDIS_CLUSTER_EXTENSION.getRedisCluster(), sharedExecutorService, messageDeliveryScheduler, sharedExecutorService, cacheClock,
+          dynamicConfigurationManager);
 
       final List<MessageProtos.Envelope> actualMessages = Flux.from(
               messagesCache.get(DESTINATION_UUID, DESTINATION_DEVICE_ID))
@@ -306,6 +560,32 @@ class MessagesCacheTest {
       }
     }
 
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 2})
+    void testGetAllMessagesReadAhead(final int readAheadPages) {
+      when(messageCacheConfiguration.getReadAheadPages()).thenReturn(readAheadPages);
+
+      final int messageCount = 450;
+      final List<MessageProtos.Envelope> expectedMessages = new ArrayList<>(messageCount);
+
+      for (int i = 0; i < messageCount; i++) {
+        final UUID messageGuid = UUID.randomUUID();
+        final MessageProtos.Envelope message = generateRandomMessage(messageGuid, true);
+        messagesCache.insert(messageGuid, DESTINATION_UUID, DESTINATION_DEVICE_ID, message);
+
+        expectedMessages.add(message.toBuilder().setServerGuid(messageGuid.toString()).build());
+      }
+
+      // deliver slowly enough that read-ahead has a chance to run while pages are being consumed
+      final List<MessageProtos.Envelope> actualMessages =
+          messagesCache.getAllMessages(DESTINATION_UUID, DESTINATION_DEVICE_ID)
+              .delayElements(Duration.ofMillis(1))
+              .collectList()
+              .block(Duration.ofSeconds(10));
+
+      assertEquals(expectedMessages, actualMessages);
+    }
+
     @ParameterizedTest
     @ValueSource(booleans = {true, false})
     void testClearQueueForDevice(final boolean sealedSender) {
@@ -363,10 +643,73 @@ class MessagesCacheTest {
     }
 
     @Test
-    void testGetQueueNameFromKeyspaceChannel() {
-      assertEquals("1b363a31-a429-4fb6-8959-984a025e72ff::7",
-          MessagesCache.getQueueNameFromKeyspaceChannel(
-              "__keyspace@0__:user_queue::{1b363a31-a429-4fb6-8959-984a025e72ff::7}"));
+    void testGetQueueNameFromChannel() {
+      final String queueName = MessagesCache.getQueueName(DESTINATION_UUID, DESTINATION_DEVICE_ID);
+
+      assertEquals(queueName,
+          MessagesCache.getQueueNameFromChannel("__keyspace@0__:user_queue::{" + queueName + "}"));
+      assertEquals(queueName,
+          MessagesCache.getQueueNameFromChannel("__keyspace@0__:user_queue_persisting::{" + queueName + "}"));
+    }
+
+    @Test
+    void testNotificationSubscriptions() {
+      final String queueName = MessagesCache.getQueueName(DESTINATION_UUID, DESTINATION_DEVICE_ID);
+      final MessageAvailabilityListener listener = mock(MessageAvailabilityListener.class);
+
+      messagesCache.addMessageAvailabilityListener(DESTINATION_UUID, DESTINATION_DEVICE_ID, listener);
+
+      // Only the node that owns the queue's slot should carry the queue's subscriptions
+      final String queueNodeId = REDIS_CLUSTER_EXTENSION.getRedisCluster().withCluster(connection ->
+          connection.getPartitions().getPartitionBySlot(SlotHash.getSlot(queueName)).getNodeId());
+
+      assertEquals(Map.of(queueNodeId, Set.of(
+              "__keyspace@0__:user_queue::{" + queueName + "}",
+              "__keyspace@0__:user_queue_persisting::{" + queueName + "}")),
+          getSubscribedChannelsByNodeId());
+
+      messagesCache.removeMessageAvailabilityListener(listener);
+
+      assertTrue(getSubscribedChannelsByNodeId().isEmpty());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 10, 100})
+    void testNotificationSubscriptionCount(final int connectedDevices) {
+      final List<MessageAvailabilityListener> listeners = new ArrayList<>(connectedDevices);
+
+      for (int i = 0; i < connectedDevices; i++) {
+        final MessageAvailabilityListener listener = mock(MessageAvailabilityListener.class);
+        messagesCache.addMessageAvailabilityListener(UUID.randomUUID(), DESTINATION_DEVICE_ID, listener);
+
+        listeners.add(listener);
+      }
+
+      // Each connected device has exactly two subscriptions across the whole cluster: its queue's keyspace channel and
+      // its persistence lock's keyspace channel
+      assertEquals(connectedDevices * 2, getSubscribedChannelsByNodeId().values().stream()
+          .mapToInt(Set::size)
+          .sum());
+
+      listeners.forEach(messagesCache::removeMessageAvailabilityListener);
+
+      assertTrue(getSubscribedChannelsByNodeId().isEmpty());
+    }
+
+    private Map<String, Set<String>> getSubscribedChannelsByNodeId() {
+      final Map<String, Set<String>> subscribedChannelsByNodeId = new HashMap<>();
+
+      REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection -> connection.sync().upstream()
+          .asMap()
+          .forEach((node, commands) -> {
+            final Set<String> channels = new HashSet<>(commands.pubsubChannels("*user_queue*"));
+
+            if (!channels.isEmpty()) {
+              subscribedChannelsByNodeId.put(node.getNodeId(), channels);
+            }
+          }));
+
+      return subscribedChannelsByNodeId;
     }
 
     @ParameterizedTest
@@ -548,21 +891,35 @@ class MessagesCacheTest {
     private RedisAdvancedClusterReactiveCommands<byte[], byte[]> reactiveCommands;
     private RedisAdvancedClusterAsyncCommands<byte[], byte[]> asyncCommands;
     private Scheduler messageDeliveryScheduler;
+    private FaultTolerantRedisCluster mockCluster;
+    private DynamicMessageCacheConfiguration messageCacheConfiguration;
+    private DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager;
 
     @SuppressWarnings("unchecked")
     @BeforeEach
     void setup() throws Exception {
       reactiveCommands = mock(RedisAdvancedClusterReactiveCommands.class);
       asyncCommands = mock(RedisAdvancedClusterAsyncCommands.class);
-      final FaultTolerantRedisCluster mockCluster = RedisClusterHelper.builder()
+      mockCluster = RedisClusterHelper.builder()
           .binaryReactiveCommands(reactiveCommands)
           .binaryAsyncCommands(asyncCommands)
           .build();
 
       messageDeliveryScheduler = Schedulers.newBoundedElastic(10, 10_000, "messageDelivery");
 
+      messageCacheConfiguration = mock(DynamicMessageCacheConfiguration.class);
+      when(messageCacheConfiguration.getReadAheadPages()).thenReturn(1);
+
+      final DynamicConfiguration dynamicConfiguration = mock(DynamicConfiguration.class);
+      when(dynamicConfiguration.getMessageCacheConfiguration()).thenReturn(messageCacheConfiguration);
+
+      //noinspection unchecked
+      dynamicConfigurationManager = mock(DynamicConfigurationManager.class);
+      when(dynamicConfigurationManager.getConfiguration()).thenReturn(dynamicConfiguration);
+
       messagesCache = new MessagesCache(mockCluster, mockCluster, mock(ExecutorService.class),
-          messageDeliveryScheduler, Executors.newSingleThreadExecutor(), Clock.systemUTC());
+          messageDeliveryScheduler, Executors.newSingleThreadExecutor(), Clock.systemUTC(),
+          dynamicConfigurationManager);
     }
 
     @AfterEach
@@ -672,6 +1029,45 @@ class MessagesCacheTest {
       assertTrue(pages.isEmpty());
     }
 
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 4})
+    void testGetAllMessagesReadAheadLimit(final int readAheadPages) throws Exception {
+      when(messageCacheConfiguration.getReadAheadPages()).thenReturn(readAheadPages);
+
+      final AtomicInteger pagesFetched = new AtomicInteger();
+
+      // Every page is full, so the queue never runs out and only demand limits how many pages are fetched
+      when(reactiveCommands.evalsha(any(), any(), any(byte[][].class), any(byte[][].class))).thenAnswer(ignored -> {
+        pagesFetched.incrementAndGet();
+        return Flux.just(generatePage());
+      });
+
+      // Deliver on the subscribing thread so that all fetching has settled by the time each request returns
+      final MessagesCache immediateMessagesCache = new MessagesCache(mockCluster, mockCluster,
+          mock(ExecutorService.class), Schedulers.immediate(), Executors.newSingleThreadExecutor(), Clock.systemUTC(),
+          dynamicConfigurationManager);
+
+      final int pageSize = 100;
+
+      // Besides the read-ahead pages, each of the operators between fetching and delivery may hold one page; what
+      // matters is that this doesn't grow with the length of the queue
+      final int pagesHeldByOperators = 5;
+      final int expectedInitialPagesFetched = readAheadPages + 1 + pagesHeldByOperators;
+
+      StepVerifier.create(immediateMessagesCache.getAllMessages(UUID.randomUUID(), Device.PRIMARY_ID), 0)
+          .expectSubscription()
+          .then(() -> assertEquals(expectedInitialPagesFetched, pagesFetched.get()))
+          .thenRequest(pageSize)
+          .expectNextCount(pageSize)
+          // Consuming a page should only make room for one more
+          .then(() -> assertEquals(expectedInitialPagesFetched + 1, pagesFetched.get()))
+          .thenRequest(pageSize * 3)
+          .expectNextCount(pageSize * 3)
+          .then(() -> assertEquals(expectedInitialPagesFetched + 4, pagesFetched.get()))
+          .thenCancel()
+          .verify(Duration.ofSeconds(5));
+    }
+
     @Test
     void testGetDiscardsEphemeralMessages() {
       final Deque<List<byte[]>> pages = new ArrayDeque<>();
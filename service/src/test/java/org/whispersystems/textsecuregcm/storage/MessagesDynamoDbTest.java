@@ -145,6 +145,24 @@ class MessagesDynamoDbTest {
         .verify();
   }
 
+  @ParameterizedTest
+  @ValueSource(ints = {1, 25, 26, 1_000})
+  void testStoreAsync(final int messageCount) {
+    final UUID destinationUuid = UUID.randomUUID();
+    final byte destinationDeviceId = (byte) (random.nextInt(Device.MAXIMUM_DEVICE_ID) + 1);
+
+    final List<MessageProtos.Envelope> messages = new ArrayList<>(messageCount);
+    for (int i = 0; i < messageCount; i++) {
+      messages.add(MessageHelper.createMessage(UUID.randomUUID(), Device.PRIMARY_ID, destinationUuid, (i + 1L) * 1000,
+          "message " + i));
+    }
+
+    messagesDynamoDb.storeAsync(messages, destinationUuid, destinationDeviceId).join();
+
+    assertThat(load(destinationUuid, destinationDeviceId, messageCount + 1))
+        .containsExactlyInAnyOrderElementsOf(messages);
+  }
+
   @Test
   void testLimitedLoad() {
     final int messageCount = 200;
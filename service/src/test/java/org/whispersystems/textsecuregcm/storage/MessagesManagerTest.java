@@ -5,13 +5,19 @@
 
 package org.whispersystems.textsecuregcm.storage;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import org.junit.jupiter.api.Test;
 import org.whispersystems.textsecuregcm.entities.MessageProtos.Envelope;
@@ -46,4 +52,37 @@ class MessagesManagerTest {
 
     verifyNoMoreInteractions(reportMessageManager);
   }
+
+  @Test
+  void deleteBatch() {
+    final UUID destinationUuid = UUID.randomUUID();
+    final UUID cachedGuid = UUID.randomUUID();
+    final UUID persistedGuid = UUID.randomUUID();
+    final UUID unknownTimestampGuid = UUID.randomUUID();
+
+    final Envelope cachedMessage = Envelope.newBuilder().setServerGuid(cachedGuid.toString()).build();
+    final Envelope persistedMessage = Envelope.newBuilder().setServerGuid(persistedGuid.toString()).build();
+
+    when(messagesCache.remove(destinationUuid, Device.PRIMARY_ID,
+        List.of(cachedGuid, persistedGuid, unknownTimestampGuid)))
+        .thenReturn(CompletableFuture.completedFuture(List.of(cachedMessage)));
+
+    when(messagesDynamoDb.deleteMessage(destinationUuid, Device.PRIMARY_ID, persistedGuid, 1234L))
+        .thenReturn(CompletableFuture.completedFuture(Optional.of(persistedMessage)));
+
+    when(messagesDynamoDb.deleteMessageByDestinationAndGuid(destinationUuid, unknownTimestampGuid))
+        .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+
+    final List<Optional<Envelope>> deleted = messagesManager.delete(destinationUuid, Device.PRIMARY_ID, List.of(
+            new MessagesManager.DeleteRequest(cachedGuid, 1234L),
+            new MessagesManager.DeleteRequest(persistedGuid, 1234L),
+            new MessagesManager.DeleteRequest(unknownTimestampGuid, null)))
+        .stream()
+        .map(CompletableFuture::join)
+        .toList();
+
+    assertEquals(List.of(Optional.of(cachedMessage), Optional.of(persistedMessage), Optional.empty()), deleted);
+
+    verify(messagesDynamoDb, never()).deleteMessage(any(), any(Byte.class), eq(cachedGuid), any(Long.class));
+  }
 }
@@ -10,7 +10,9 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.time.Duration;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.IntStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
@@ -29,6 +31,7 @@ class ReportMessageDynamoDbTest {
   void setUp() {
     this.reportMessageDynamoDb = new ReportMessageDynamoDb(
         DYNAMO_DB_EXTENSION.getDynamoDbClient(),
+        DYNAMO_DB_EXTENSION.getDynamoDbAsyncClient(),
         Tables.REPORT_MESSAGES.tableName(),
         Duration.ofDays(1));
   }
@@ -58,4 +61,15 @@ class ReportMessageDynamoDbTest {
     );
   }
 
+  @Test
+  void testStoreBatch() {
+    final List<byte[]> hashes = IntStream.range(0, AbstractDynamoDbStore.DYNAMO_DB_MAX_BATCH_SIZE * 2 + 1)
+        .mapToObj(i -> UUIDUtil.toBytes(UUID.randomUUID()))
+        .toList();
+
+    reportMessageDynamoDb.store(hashes).join();
+
+    assertAll("all hashes should be found",
+        hashes.stream().map(hash -> () -> assertTrue(reportMessageDynamoDb.remove(hash))));
+  }
 }
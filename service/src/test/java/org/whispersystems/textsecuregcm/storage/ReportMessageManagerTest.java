@@ -5,19 +5,27 @@
 
 package org.whispersystems.textsecuregcm.storage;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.doThrow;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
@@ -59,19 +67,115 @@ class ReportMessageManagerTest {
   }
 
   @Test
-  void testStore() {
+  void testStore() throws InterruptedException {
+    when(reportMessageDynamoDb.store(anyCollection())).thenReturn(CompletableFuture.completedFuture(null));
+
     assertDoesNotThrow(() -> reportMessageManager.store(null, messageGuid));
+    assertEquals(0, reportMessageManager.flushPendingHashes(0));
+
+    verifyNoInteractions(reportMessageDynamoDb);
 
+    reportMessageManager.store(sourceAci.toString(), messageGuid);
+    reportMessageManager.store(sourceAci.toString(), UUID.randomUUID());
+
+    // Hashes are only written when flushed
     verifyNoInteractions(reportMessageDynamoDb);
 
+    assertEquals(2, reportMessageManager.flushPendingHashes(0));
+    verify(reportMessageDynamoDb).store(argThat((Collection<byte[]> hashes) -> hashes.size() == 2));
+
+    when(reportMessageDynamoDb.store(anyCollection()))
+        .thenReturn(CompletableFuture.failedFuture(new RuntimeException()));
+
+    reportMessageManager.store(sourceAci.toString(), messageGuid);
+    assertEquals(1, assertDoesNotThrow(() -> reportMessageManager.flushPendingHashes(0)));
+  }
+
+  @Test
+  void testStoreDropsOldestHashes() throws InterruptedException {
+    final ReportMessageManager boundedReportMessageManager = new ReportMessageManager(reportMessageDynamoDb,
+        RATE_LIMIT_CLUSTER_EXTENSION.getRedisCluster(), Duration.ofDays(1), 2, Duration.ofSeconds(30));
+
+    boundedReportMessageManager.store(sourceAci.toString(), UUID.randomUUID());
+    boundedReportMessageManager.store(sourceAci.toString(), messageGuid);
+    boundedReportMessageManager.store(sourceAci.toString(), reporterUuid);
+
+    final List<byte[]> hashesAfterOverflow = captureHashesOnFlush(boundedReportMessageManager);
+
+    reportMessageManager.store(sourceAci.toString(), messageGuid);
+    reportMessageManager.store(sourceAci.toString(), reporterUuid);
+
+    final List<byte[]> expectedHashes = captureHashesOnFlush(reportMessageManager);
+
+    // The oldest hash is discarded, and the newest hashes are retained in order
+    assertEquals(2, hashesAfterOverflow.size());
+    assertArrayEquals(expectedHashes.get(0), hashesAfterOverflow.get(0));
+    assertArrayEquals(expectedHashes.get(1), hashesAfterOverflow.get(1));
+  }
+
+  @Test
+  void testStoreDuplicateHashes() throws InterruptedException {
+    final UUID otherMessageGuid = UUID.randomUUID();
+
     reportMessageManager.store(sourceAci.toString(), messageGuid);
+    reportMessageManager.store(sourceAci.toString(), otherMessageGuid);
+    reportMessageManager.store(sourceAci.toString(), messageGuid);
+
+    final List<byte[]> storedHashes = captureHashesOnFlush(reportMessageManager);
+
+    reportMessageManager.store(sourceAci.toString(), messageGuid);
+    reportMessageManager.store(sourceAci.toString(), otherMessageGuid);
+
+    final List<byte[]> expectedHashes = captureHashesOnFlush(reportMessageManager);
+
+    // Duplicates are removed before writing, since DynamoDB would reject the whole batch
+    assertEquals(2, storedHashes.size());
+    assertArrayEquals(expectedHashes.get(0), storedHashes.get(0));
+    assertArrayEquals(expectedHashes.get(1), storedHashes.get(1));
+  }
+
+  @Test
+  void testStoreTimeout() {
+    final ReportMessageManager timeoutReportMessageManager = new ReportMessageManager(reportMessageDynamoDb,
+        RATE_LIMIT_CLUSTER_EXTENSION.getRedisCluster(), Duration.ofDays(1), 16, Duration.ofMillis(100));
+
+    // A write that never completes shouldn't stall the writer
+    when(reportMessageDynamoDb.store(anyCollection())).thenReturn(new CompletableFuture<>());
+
+    timeoutReportMessageManager.store(sourceAci.toString(), messageGuid);
+
+    assertTimeoutPreemptively(Duration.ofSeconds(5),
+        () -> assertEquals(1, timeoutReportMessageManager.flushPendingHashes(0)));
+  }
+
+  @Test
+  void testStopFlushesPendingHashes() {
+    final List<byte[]> storedHashes = Collections.synchronizedList(new ArrayList<>());
+
+    when(reportMessageDynamoDb.store(anyCollection())).thenAnswer(invocation -> {
+      storedHashes.addAll(invocation.getArgument(0));
+      return CompletableFuture.completedFuture(null);
+    });
+
+    reportMessageManager.start();
+    reportMessageManager.store(sourceAci.toString(), messageGuid);
+    reportMessageManager.store(sourceAci.toString(), UUID.randomUUID());
+    reportMessageManager.stop();
+
+    assertEquals(2, storedHashes.size());
+  }
+
+  private List<byte[]> captureHashesOnFlush(final ReportMessageManager manager) throws InterruptedException {
+    final List<byte[]> hashes = new ArrayList<>();
 
-    verify(reportMessageDynamoDb).store(any());
+    when(reportMessageDynamoDb.store(anyCollection())).thenAnswer(invocation -> {
+      hashes.addAll(invocation.getArgument(0));
+      return CompletableFuture.completedFuture(null);
+    });
 
-    doThrow(RuntimeException.class)
-        .when(reportMessageDynamoDb).store(any());
+    manager.flushPendingHashes(0);
 
-    assertDoesNotThrow(() -> reportMessageManager.store(sourceAci.toString(), messageGuid));
+    return hashes;
   }
 
   @Test
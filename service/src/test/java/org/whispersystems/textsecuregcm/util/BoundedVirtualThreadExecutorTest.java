@@ -0,0 +1,103 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BoundedVirtualThreadExecutorTest {
+
+  private BoundedVirtualThreadExecutor executor;
+
+  private static final int MAX_CONCURRENCY = 4;
+
+  @BeforeEach
+  void setUp() {
+    executor = new BoundedVirtualThreadExecutor("test", MAX_CONCURRENCY);
+  }
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    executor.shutdownNow();
+    executor.awaitTermination(1, TimeUnit.SECONDS);
+  }
+
+  @Test
+  void execute() {
+    assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+      final Future<String> threadName = executor.submit(() -> {
+        assertTrue(Thread.currentThread().isVirtual());
+        return Thread.currentThread().getName();
+      });
+
+      assertEquals("test-0", threadName.get());
+    });
+  }
+
+  @Test
+  void maxConcurrency() {
+    assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+      final int taskCount = MAX_CONCURRENCY * 4;
+
+      final CountDownLatch releaseLatch = new CountDownLatch(1);
+      final CountDownLatch startedLatch = new CountDownLatch(MAX_CONCURRENCY);
+      final AtomicInteger running = new AtomicInteger();
+      final AtomicInteger maxRunning = new AtomicInteger();
+
+      final List<Future<?>> futures = new ArrayList<>(taskCount);
+
+      for (int i = 0; i < taskCount; i++) {
+        futures.add(executor.submit(() -> {
+          maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+          startedLatch.countDown();
+
+          try {
+            releaseLatch.await();
+          } catch (final InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+
+          running.decrementAndGet();
+        }));
+      }
+
+      startedLatch.await();
+
+      while (executor.getQueuedTaskCount() < taskCount - MAX_CONCURRENCY) {
+        Thread.sleep(1);
+      }
+
+      assertEquals(MAX_CONCURRENCY, running.get());
+
+      releaseLatch.countDown();
+
+      for (final Future<?> future : futures) {
+        future.get();
+      }
+
+      assertEquals(MAX_CONCURRENCY, maxRunning.get());
+      assertEquals(0, executor.getQueuedTaskCount());
+    });
+  }
+
+  @Test
+  void illegalMaxConcurrency() {
+    assertThrows(IllegalArgumentException.class, () -> new BoundedVirtualThreadExecutor("test", 0));
+  }
+}
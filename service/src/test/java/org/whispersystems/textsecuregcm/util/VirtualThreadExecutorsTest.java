@@ -0,0 +1,93 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import io.dropwizard.lifecycle.ExecutorServiceManager;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.lifecycle.setup.LifecycleEnvironment;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.whispersystems.textsecuregcm.configuration.VirtualThreadConfiguration;
+
+class VirtualThreadExecutorsTest {
+
+  private LifecycleEnvironment lifecycleEnvironment;
+
+  @BeforeEach
+  void setUp() {
+    lifecycleEnvironment = mock(LifecycleEnvironment.class);
+  }
+
+  @Test
+  void executorServiceDisabled() {
+    final VirtualThreadExecutors virtualThreadExecutors =
+        new VirtualThreadExecutors(new VirtualThreadConfiguration(null, null, null), lifecycleEnvironment);
+
+    final ExecutorService platformExecutor = mock(ExecutorService.class);
+
+    assertSame(platformExecutor,
+        virtualThreadExecutors.executorService(VirtualThreadExecutors.ACCOUNT_LOCK, 8, () -> platformExecutor));
+
+    verify(lifecycleEnvironment, never()).manage(any(Managed.class));
+  }
+
+  @Test
+  void executorServiceEnabled() {
+    final VirtualThreadExecutors virtualThreadExecutors = new VirtualThreadExecutors(
+        new VirtualThreadConfiguration(Set.of(VirtualThreadExecutors.ACCOUNT_LOCK), Map.of(), null),
+        lifecycleEnvironment);
+
+    final ExecutorService executor =
+        virtualThreadExecutors.executorService(VirtualThreadExecutors.ACCOUNT_LOCK, 8, () -> {
+          throw new AssertionError("Platform executor should not be built");
+        });
+
+    assertInstanceOf(BoundedVirtualThreadExecutor.class, executor);
+    assertFalse(executor.isShutdown());
+    verify(lifecycleEnvironment).manage(any(ExecutorServiceManager.class));
+
+    executor.shutdown();
+  }
+
+  @Test
+  void ineligibleExecutor() {
+    assertThrows(IllegalArgumentException.class, () -> new VirtualThreadExecutors(
+        new VirtualThreadConfiguration(Set.of("receiptSender"), Map.of(), null), lifecycleEnvironment));
+
+    final VirtualThreadExecutors virtualThreadExecutors =
+        new VirtualThreadExecutors(new VirtualThreadConfiguration(null, null, null), lifecycleEnvironment);
+
+    assertThrows(IllegalArgumentException.class,
+        () -> virtualThreadExecutors.executorService("receiptSender", 2, () -> mock(ExecutorService.class)));
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+      "accountLock-0, accountLock",
+      "multiRecipientMessage-1234, multiRecipientMessage",
+      "receiptSender-1, other",
+      "accountLock, other",
+      "'', other"
+  })
+  void getExecutorName(final String threadName, final String expectedExecutorName) {
+    assertEquals(expectedExecutorName, VirtualThreadExecutors.getExecutorName(threadName));
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class AdaptiveDeliveryWindowTest {
+
+  private AtomicLong clock;
+  private List<CompletableFuture<Void>> startedRequests;
+
+  private static final int MIN_WINDOW = 2;
+  private static final int MAX_WINDOW = 16;
+  private static final int INITIAL_WINDOW = 4;
+
+  @BeforeEach
+  void setUp() {
+    clock = new AtomicLong();
+    startedRequests = new ArrayList<>();
+  }
+
+  @Test
+  void flatMapWithinWindow() {
+    final AdaptiveDeliveryWindow window = new AdaptiveDeliveryWindow(MIN_WINDOW, MAX_WINDOW, INITIAL_WINDOW, 2.0,
+        clock::get);
+
+    final AtomicLong requested = new AtomicLong();
+    final Flux<Integer> elements = Flux.range(0, INITIAL_WINDOW * 4).doOnRequest(requested::addAndGet);
+
+    final CompletableFuture<Void> sent = window.flatMapWithinWindow(elements,
+            ignored -> Mono.fromFuture(window.track(this::startRequest)))
+        .then()
+        .toFuture();
+
+    // Only as many elements as fit in the window should be requested from upstream
+    assertEquals(INITIAL_WINDOW, requested.get());
+    assertEquals(INITIAL_WINDOW, startedRequests.size());
+
+    clock.addAndGet(1_000);
+    startedRequests.get(0).complete(null);
+
+    // The window grew by one and the completed request left, so two more elements can be sent
+    assertEquals(INITIAL_WINDOW + 1, window.getWindowSize());
+    assertEquals(INITIAL_WINDOW + 2, requested.get());
+    assertEquals(INITIAL_WINDOW + 2, startedRequests.size());
+
+    while (!sent.isDone()) {
+      startedRequests.stream().filter(request -> !request.isDone()).findFirst().orElseThrow().complete(null);
+    }
+
+    assertDoesNotThrow(sent::join);
+    assertEquals(INITIAL_WINDOW * 4, startedRequests.size());
+  }
+
+  @Test
+  void flatMapWithinWindowError() {
+    final AdaptiveDeliveryWindow window = new AdaptiveDeliveryWindow(MIN_WINDOW, MAX_WINDOW, INITIAL_WINDOW, 2.0,
+        clock::get);
+
+    final AtomicBoolean cancelled = new AtomicBoolean();
+    final Flux<Integer> elements = Flux.range(0, INITIAL_WINDOW * 4).doOnCancel(() -> cancelled.set(true));
+
+    final CompletableFuture<Void> sent = window.flatMapWithinWindow(elements,
+            ignored -> Mono.fromFuture(window.track(this::startRequest)))
+        .then()
+        .toFuture();
+
+    startedRequests.get(1).completeExceptionally(new TimeoutException());
+
+    // The first failed send terminates the stream, and nothing more is sent
+    final CompletionException completionException = assertThrows(CompletionException.class, sent::join);
+    assertTrue(completionException.getCause() instanceof TimeoutException);
+    assertTrue(cancelled.get());
+
+    startedRequests.get(0).complete(null);
+    assertEquals(INITIAL_WINDOW, startedRequests.size());
+  }
+
+  @Test
+  void slowStartAndAdditiveIncrease() {
+    final AdaptiveDeliveryWindow window = new AdaptiveDeliveryWindow(MIN_WINDOW, MAX_WINDOW, INITIAL_WINDOW, 2.0,
+        clock::get);
+
+    for (int i = 0; i < 4; i++) {
+      completeRequest(window, 1_000, true);
+    }
+
+    assertEquals(INITIAL_WINDOW + 4, window.getWindowSize());
+
+    // A failure halves the window and ends slow start
+    completeRequest(window, 1_000, false);
+    assertEquals((INITIAL_WINDOW + 4) / 2, window.getWindowSize());
+
+    // ...after which the window grows by about one per window's worth of acknowledgements
+    for (int i = 0; i < 5; i++) {
+      completeRequest(window, 1_000, true);
+    }
+
+    assertEquals((INITIAL_WINDOW + 4) / 2 + 1, window.getWindowSize());
+  }
+
+  @Test
+  void maxWindow() {
+    final AdaptiveDeliveryWindow window = new AdaptiveDeliveryWindow(MIN_WINDOW, MAX_WINDOW, INITIAL_WINDOW, 2.0,
+        clock::get);
+
+    for (int i = 0; i < MAX_WINDOW * 2; i++) {
+      completeRequest(window, 1_000, true);
+    }
+
+    assertEquals(MAX_WINDOW, window.getWindowSize());
+  }
+
+  @Test
+  void minWindow() {
+    final AdaptiveDeliveryWindow window = new AdaptiveDeliveryWindow(MIN_WINDOW, MAX_WINDOW, INITIAL_WINDOW, 2.0,
+        clock::get);
+
+    for (int i = 0; i < 8; i++) {
+      clock.addAndGet(1);
+      completeRequest(window, 1_000, false);
+    }
+
+    assertEquals(MIN_WINDOW, window.getWindowSize());
+  }
+
+  @Test
+  void latencyIncrease() {
+    final AdaptiveDeliveryWindow window = new AdaptiveDeliveryWindow(MIN_WINDOW, MAX_WINDOW, INITIAL_WINDOW, 2.0,
+        clock::get);
+
+    completeRequest(window, 1_000, true);
+    completeRequest(window, 2_000, true);
+    assertEquals(INITIAL_WINDOW + 2, window.getWindowSize());
+
+    // Acknowledgements that take more than twice as long as the fastest one signal that requests are queueing
+    completeRequest(window, 2_001, true);
+    assertEquals((INITIAL_WINDOW + 2) / 2, window.getWindowSize());
+  }
+
+  @Test
+  void decreaseOncePerGroup() {
+    final AdaptiveDeliveryWindow window = new AdaptiveDeliveryWindow(MIN_WINDOW, MAX_WINDOW, MAX_WINDOW, 2.0,
+        clock::get);
+
+    final List<CompletableFuture<Void>> results = new ArrayList<>();
+
+    for (int i = 0; i < MAX_WINDOW; i++) {
+      results.add(window.track(this::startRequest));
+    }
+
+    clock.addAndGet(1_000);
+    startedRequests.forEach(request -> request.completeExceptionally(new TimeoutException()));
+    startedRequests.clear();
+
+    // All of the requests were in flight together, so they only shrink the window once
+    assertEquals(MAX_WINDOW / 2, window.getWindowSize());
+    assertTrue(results.stream().allMatch(CompletableFuture::isCompletedExceptionally));
+
+    // ...but a request that started after the decrease may shrink it again
+    completeRequest(window, 1_000, false);
+    assertEquals(MAX_WINDOW / 4, window.getWindowSize());
+  }
+
+  private CompletableFuture<Void> startRequest() {
+    final CompletableFuture<Void> request = new CompletableFuture<>();
+    startedRequests.add(request);
+
+    return request;
+  }
+
+  private void completeRequest(final AdaptiveDeliveryWindow window, final long latencyNanos, final boolean success) {
+    window.track(this::startRequest);
+    clock.addAndGet(latencyNanos);
+
+    final CompletableFuture<Void> request = startedRequests.remove(startedRequests.size() - 1);
+
+    if (success) {
+      request.complete(null);
+    } else {
+      request.completeExceptionally(new TimeoutException());
+    }
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import org.eclipse.jetty.websocket.api.UpgradeRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.whispersystems.textsecuregcm.configuration.WebSocketDrainConfiguration;
+import org.whispersystems.textsecuregcm.util.TestClock;
+
+class WebSocketConnectionDrainerTest {
+
+  private TestClock clock;
+
+  private static final Duration MAX_RECONNECT_DELAY = Duration.ofSeconds(10);
+
+  @BeforeEach
+  void setUp() {
+    clock = TestClock.pinned(Instant.now());
+  }
+
+  @Test
+  void checkAdmission() {
+    final WebSocketConnectionDrainer drainer = new WebSocketConnectionDrainer(
+        new WebSocketDrainConfiguration(Duration.ZERO, MAX_RECONNECT_DELAY, 0), clock);
+
+    for (int i = 0; i < 1_000; i++) {
+      assertEquals(Optional.empty(), drainer.checkAdmission(mock(UpgradeRequest.class)));
+    }
+
+    drainer.drain();
+
+    final Optional<Duration> maybeReconnectDelay = drainer.checkAdmission(mock(UpgradeRequest.class));
+    assertTrue(maybeReconnectDelay.isPresent());
+    assertTrue(maybeReconnectDelay.get().compareTo(MAX_RECONNECT_DELAY) <= 0);
+  }
+
+  @Test
+  void checkAdmissionRateLimited() {
+    final int maxConnectionsPerSecond = 10;
+
+    final WebSocketConnectionDrainer drainer = new WebSocketConnectionDrainer(
+        new WebSocketDrainConfiguration(Duration.ZERO, MAX_RECONNECT_DELAY, maxConnectionsPerSecond), clock);
+
+    for (int i = 0; i < maxConnectionsPerSecond; i++) {
+      assertEquals(Optional.empty(), drainer.checkAdmission(mock(UpgradeRequest.class)));
+    }
+
+    assertTrue(drainer.checkAdmission(mock(UpgradeRequest.class)).isPresent());
+
+    // A tenth of a second makes room for one more connection
+    clock.pin(clock.instant().plusMillis(100));
+    assertEquals(Optional.empty(), drainer.checkAdmission(mock(UpgradeRequest.class)));
+    assertTrue(drainer.checkAdmission(mock(UpgradeRequest.class)).isPresent());
+
+    // ...and permits never accumulate beyond a second's worth
+    clock.pin(clock.instant().plusSeconds(60));
+
+    for (int i = 0; i < maxConnectionsPerSecond; i++) {
+      assertEquals(Optional.empty(), drainer.checkAdmission(mock(UpgradeRequest.class)));
+    }
+
+    assertTrue(drainer.checkAdmission(mock(UpgradeRequest.class)).isPresent());
+  }
+
+  @Test
+  void drain() {
+    final WebSocketConnectionDrainer drainer = new WebSocketConnectionDrainer(
+        new WebSocketDrainConfiguration(Duration.ZERO, MAX_RECONNECT_DELAY, 0), clock);
+
+    final WebSocketConnection activeConnection = mock(WebSocketConnection.class);
+    final WebSocketConnection idleConnection = mock(WebSocketConnection.class);
+    final WebSocketConnection failingConnection = mock(WebSocketConnection.class);
+    final WebSocketConnection closedConnection = mock(WebSocketConnection.class);
+
+    when(activeConnection.getLastActivityMillis()).thenReturn(3_000L);
+    when(idleConnection.getLastActivityMillis()).thenReturn(1_000L);
+    when(failingConnection.getLastActivityMillis()).thenReturn(2_000L);
+    doThrow(new RuntimeException()).when(failingConnection).closeWithReconnectDelay(any());
+
+    drainer.register(activeConnection);
+    drainer.register(idleConnection);
+    drainer.register(failingConnection);
+    drainer.register(closedConnection);
+    drainer.unregister(closedConnection);
+
+    assertFalse(drainer.isDraining());
+
+    drainer.drain();
+
+    assertTrue(drainer.isDraining());
+
+    final InOrder inOrder = inOrder(idleConnection, failingConnection, activeConnection);
+    inOrder.verify(idleConnection).closeWithReconnectDelay(any());
+    inOrder.verify(failingConnection).closeWithReconnectDelay(any());
+    inOrder.verify(activeConnection).closeWithReconnectDelay(any());
+
+    verify(closedConnection, never()).closeWithReconnectDelay(any());
+  }
+}
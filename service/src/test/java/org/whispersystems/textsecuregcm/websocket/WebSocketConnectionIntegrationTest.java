@@ -33,6 +33,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.jupiter.api.AfterEach;
@@ -44,6 +45,8 @@ import org.junit.jupiter.params.provider.CsvSource;
 import org.mockito.ArgumentCaptor;
 import org.mockito.stubbing.Answer;
 import org.whispersystems.textsecuregcm.auth.AuthenticatedAccount;
+import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicConfiguration;
+import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicMessageDeliveryConfiguration;
 import org.whispersystems.textsecuregcm.entities.MessageProtos;
 import org.whispersystems.textsecuregcm.entities.MessageProtos.Envelope;
 import org.whispersystems.textsecuregcm.push.ReceiptSender;
@@ -51,6 +54,7 @@ import org.whispersystems.textsecuregcm.redis.RedisClusterExtension;
 import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.ClientReleaseManager;
 import org.whispersystems.textsecuregcm.storage.Device;
+import org.whispersystems.textsecuregcm.storage.DynamicConfigurationManager;
 import org.whispersystems.textsecuregcm.storage.DynamoDbExtension;
 import org.whispersystems.textsecuregcm.storage.DynamoDbExtensionSchema.Tables;
 import org.whispersystems.textsecuregcm.storage.MessagesCache;
@@ -90,8 +94,13 @@ class WebSocketConnectionIntegrationTest {
     sharedExecutorService = Executors.newSingleThreadExecutor();
     scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
     messageDeliveryScheduler = Schedulers.newBoundedElastic(10, 10_000, "messageDelivery");
+    @SuppressWarnings("unchecked") final DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager =
+        mock(DynamicConfigurationManager.class);
+    when(dynamicConfigurationManager.getConfiguration()).thenReturn(new DynamicConfiguration());
+
     messagesCache = new MessagesCache(REDIS_CLUSTER_EXTENSION.getRedisCluster(),
-        REDIS_CLUSTER_EXTENSION.getRedisCluster(), sharedExecutorService, messageDeliveryScheduler, sharedExecutorService, Clock.systemUTC());
+        REDIS_CLUSTER_EXTENSION.getRedisCluster(), sharedExecutorService, messageDeliveryScheduler, sharedExecutorService, Clock.systemUTC(),
+        dynamicConfigurationManager);
     messagesDynamoDb = new MessagesDynamoDb(DYNAMO_DB_EXTENSION.getDynamoDbClient(),
         DYNAMO_DB_EXTENSION.getDynamoDbAsyncClient(), Tables.MESSAGES.tableName(), Duration.ofDays(7),
         sharedExecutorService);
@@ -117,11 +126,19 @@ class WebSocketConnectionIntegrationTest {
 
   @ParameterizedTest
   @CsvSource({
-      "207, 173",
-      "323, 0",
-      "0, 221",
+      "207, 173, false",
+      "323, 0, false",
+      "0, 221, false",
+      "207, 173, true",
+      "323, 0, true",
+      "0, 221, true",
   })
-  void testProcessStoredMessages(final int persistedMessageCount, final int cachedMessageCount) {
+  void testProcessStoredMessages(final int persistedMessageCount, final int cachedMessageCount,
+      final boolean adaptiveWindowEnabled) {
+
+    final DynamicMessageDeliveryConfiguration messageDeliveryConfiguration = new DynamicMessageDeliveryConfiguration();
+    messageDeliveryConfiguration.setAdaptiveWindowEnabled(adaptiveWindowEnabled);
+
     final WebSocketConnection webSocketConnection = new WebSocketConnection(
         mock(ReceiptSender.class),
         new MessagesManager(messagesDynamoDb, messagesCache, reportMessageManager, sharedExecutorService),
@@ -130,7 +147,8 @@ class WebSocketConnectionIntegrationTest {
         webSocketClient,
         scheduledExecutorService,
         messageDeliveryScheduler,
-        clientReleaseManager);
+        clientReleaseManager,
+        messageDeliveryConfiguration);
 
     final List<MessageProtos.Envelope> expectedMessages = new ArrayList<>(persistedMessageCount + cachedMessageCount);
 
@@ -161,7 +179,7 @@ class WebSocketConnectionIntegrationTest {
       final AtomicBoolean queueCleared = new AtomicBoolean(false);
 
       when(successResponse.getStatus()).thenReturn(200);
-      when(webSocketClient.sendRequest(eq("PUT"), eq("/api/v1/message"), anyList(), any()))
+      when(webSocketClient.sendRequest(eq("PUT"), eq("/api/v1/message"), anyList(), any(), any()))
           .thenReturn(CompletableFuture.completedFuture(successResponse));
 
       when(webSocketClient.sendRequest(eq("PUT"), eq("/api/v1/queue/empty"), anyList(), any())).thenAnswer(
@@ -186,7 +204,8 @@ class WebSocketConnectionIntegrationTest {
           Optional.class);
 
       verify(webSocketClient, times(persistedMessageCount + cachedMessageCount)).sendRequest(eq("PUT"),
-          eq("/api/v1/message"), anyList(), messageBodyCaptor.capture());
+          eq("/api/v1/message"), anyList(), messageBodyCaptor.capture(), any());
+
       verify(webSocketClient).sendRequest(eq("PUT"), eq("/api/v1/queue/empty"), anyList(), eq(Optional.empty()));
 
       final List<MessageProtos.Envelope> sentMessages = new ArrayList<>();
@@ -244,7 +263,7 @@ class WebSocketConnectionIntegrationTest {
         expectedMessages.add(envelope);
       }
 
-      when(webSocketClient.sendRequest(eq("PUT"), eq("/api/v1/message"), anyList(), any())).thenReturn(
+      when(webSocketClient.sendRequest(eq("PUT"), eq("/api/v1/message"), anyList(), any(), any())).thenReturn(
           CompletableFuture.failedFuture(new IOException("Connection closed")));
 
       webSocketConnection.processStoredMessages();
@@ -253,7 +272,7 @@ class WebSocketConnectionIntegrationTest {
       ArgumentCaptor<Optional<byte[]>> messageBodyCaptor = ArgumentCaptor.forClass(Optional.class);
 
       verify(webSocketClient, atMost(persistedMessageCount + cachedMessageCount)).sendRequest(eq("PUT"),
-          eq("/api/v1/message"), anyList(), messageBodyCaptor.capture());
+          eq("/api/v1/message"), anyList(), messageBodyCaptor.capture(), any());
       verify(webSocketClient, never()).sendRequest(eq("PUT"), eq("/api/v1/queue/empty"), anyList(),
           eq(Optional.empty()));
 
@@ -282,7 +301,8 @@ class WebSocketConnectionIntegrationTest {
         100, // use a very short timeout, so that this test completes quickly
         scheduledExecutorService,
         messageDeliveryScheduler,
-        clientReleaseManager);
+        clientReleaseManager,
+        new DynamicMessageDeliveryConfiguration());
 
     final int persistedMessageCount = 207;
     final int cachedMessageCount = 173;
@@ -314,11 +334,9 @@ class WebSocketConnectionIntegrationTest {
       final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
       when(successResponse.getStatus()).thenReturn(200);
 
-      final CompletableFuture<WebSocketResponseMessage> neverCompleting = new CompletableFuture<>();
-
-      // for the first message, return a future that never completes
-      when(webSocketClient.sendRequest(eq("PUT"), eq("/api/v1/message"), anyList(), any()))
-          .thenReturn(neverCompleting)
+      // for the first message, fail the way the client's pending request table does when a response never arrives
+      when(webSocketClient.sendRequest(eq("PUT"), eq("/api/v1/message"), anyList(), any(), any()))
+          .thenReturn(CompletableFuture.failedFuture(new TimeoutException()))
           .thenReturn(CompletableFuture.completedFuture(successResponse));
 
       when(webSocketClient.isOpen()).thenReturn(true);
@@ -348,7 +366,7 @@ class WebSocketConnectionIntegrationTest {
 
       // We expect all of the messages from both pools to be sent, plus one for the future that times out
       verify(webSocketClient, atMost(persistedMessageCount + cachedMessageCount + 1)).sendRequest(eq("PUT"),
-          eq("/api/v1/message"), anyList(), messageBodyCaptor.capture());
+          eq("/api/v1/message"), anyList(), messageBodyCaptor.capture(), any());
 
       verify(webSocketClient).sendRequest(eq("PUT"), eq("/api/v1/queue/empty"), anyList(), eq(Optional.empty()));
 
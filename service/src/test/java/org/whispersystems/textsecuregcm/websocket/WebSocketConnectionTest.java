@@ -11,6 +11,7 @@ import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyByte;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.nullable;
@@ -34,6 +35,7 @@ import io.lettuce.core.RedisException;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -46,15 +48,22 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.eclipse.jetty.websocket.api.UpgradeRequest;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.mockito.stubbing.Answer;
 import org.whispersystems.textsecuregcm.auth.AccountAuthenticator;
 import org.whispersystems.textsecuregcm.auth.AuthenticatedAccount;
+import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicConfiguration;
+import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicMessageDeliveryConfiguration;
+import org.whispersystems.textsecuregcm.entities.MessageProtos.EnvelopeBatch;
+import org.whispersystems.textsecuregcm.entities.MessageProtos.EnvelopeBatchAcknowledgement;
 import org.whispersystems.textsecuregcm.identity.AciServiceIdentifier;
 import org.whispersystems.textsecuregcm.push.ClientPresenceManager;
 import org.whispersystems.textsecuregcm.push.PushNotificationManager;
@@ -63,7 +72,9 @@ import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.AccountsManager;
 import org.whispersystems.textsecuregcm.storage.ClientReleaseManager;
 import org.whispersystems.textsecuregcm.storage.Device;
+import org.whispersystems.textsecuregcm.storage.DynamicConfigurationManager;
 import org.whispersystems.textsecuregcm.storage.MessagesManager;
+import org.whispersystems.textsecuregcm.util.HeaderUtils;
 import org.whispersystems.textsecuregcm.util.Pair;
 import org.whispersystems.websocket.WebSocketClient;
 import org.whispersystems.websocket.auth.WebSocketAuthenticator.AuthenticationResult;
@@ -83,6 +94,8 @@ class WebSocketConnectionTest {
 
   private static final String VALID_PASSWORD = "secure";
 
+  private static final int MAX_WINDOW = new DynamicMessageDeliveryConfiguration().getMaxWindow();
+
   private AccountAuthenticator accountAuthenticator;
   private AccountsManager accountsManager;
   private Account account;
@@ -94,6 +107,7 @@ class WebSocketConnectionTest {
   private ScheduledExecutorService retrySchedulingExecutor;
   private Scheduler messageDeliveryScheduler;
   private ClientReleaseManager clientReleaseManager;
+  private DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager;
 
   @BeforeEach
   void setup() {
@@ -108,6 +122,10 @@ class WebSocketConnectionTest {
     retrySchedulingExecutor = mock(ScheduledExecutorService.class);
     messageDeliveryScheduler = Schedulers.newBoundedElastic(10, 10_000, "messageDelivery");
     clientReleaseManager = mock(ClientReleaseManager.class);
+
+    //noinspection unchecked
+    dynamicConfigurationManager = mock(DynamicConfigurationManager.class);
+    when(dynamicConfigurationManager.getConfiguration()).thenReturn(new DynamicConfiguration());
   }
 
   @AfterEach
@@ -121,7 +139,8 @@ class WebSocketConnectionTest {
     WebSocketAccountAuthenticator webSocketAuthenticator = new WebSocketAccountAuthenticator(accountAuthenticator);
     AuthenticatedConnectListener connectListener = new AuthenticatedConnectListener(receiptSender, messagesManager,
         mock(PushNotificationManager.class), mock(ClientPresenceManager.class),
-        retrySchedulingExecutor, messageDeliveryScheduler, clientReleaseManager);
+        retrySchedulingExecutor, messageDeliveryScheduler, clientReleaseManager, dynamicConfigurationManager,
+        mock(WebSocketConnectionDrainer.class));
     WebSocketSessionContext sessionContext = mock(WebSocketSessionContext.class);
 
     when(accountAuthenticator.authenticate(eq(new BasicCredentials(VALID_USER, VALID_PASSWORD))))
@@ -181,8 +200,8 @@ class WebSocketConnectionTest {
     when(accountsManager.getByE164("sender1")).thenReturn(Optional.of(sender1));
     when(accountsManager.getByE164("sender2")).thenReturn(Optional.empty());
 
-    when(messagesManager.delete(any(), anyByte(), any(), any())).thenReturn(
-        CompletableFuture.completedFuture(Optional.empty()));
+    when(messagesManager.delete(any(), anyByte(), anyList()))
+        .thenAnswer(invocation -> completedDeletions(invocation.getArgument(2)));
 
     String userAgent = HttpHeaders.USER_AGENT;
 
@@ -193,7 +212,7 @@ class WebSocketConnectionTest {
     final WebSocketClient client = mock(WebSocketClient.class);
 
     when(client.getUserAgent()).thenReturn(userAgent);
-    when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), nullable(List.class), any()))
+    when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), nullable(List.class), any(), any()))
         .thenAnswer(invocation -> {
           CompletableFuture<WebSocketResponseMessage> future = new CompletableFuture<>();
           futures.add(future);
@@ -205,7 +224,7 @@ class WebSocketConnectionTest {
 
     connection.start();
     verify(client, times(3)).sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class),
-        any());
+        any(), any());
 
     assertEquals(3, futures.size());
 
@@ -217,7 +236,8 @@ class WebSocketConnectionTest {
     futures.get(2).completeExceptionally(new IOException());
 
     verify(messagesManager, times(1)).delete(eq(accountUuid), eq(deviceId),
-        eq(UUID.fromString(outgoingMessages.get(1).getServerGuid())), eq(outgoingMessages.get(1).getServerTimestamp()));
+        eq(List.of(new MessagesManager.DeleteRequest(UUID.fromString(outgoingMessages.get(1).getServerGuid()),
+            outgoingMessages.get(1).getServerTimestamp()))));
     verify(receiptSender, times(1)).sendReceipt(eq(new AciServiceIdentifier(accountUuid)), eq(deviceId), eq(new AciServiceIdentifier(senderOneUuid)),
         eq(2222L));
 
@@ -228,14 +248,15 @@ class WebSocketConnectionTest {
   @Test
   public void testOnlineSend() {
     final WebSocketClient client = mock(WebSocketClient.class);
-    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
-        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
-
     final UUID accountUuid = UUID.randomUUID();
 
     when(account.getNumber()).thenReturn("+18005551234");
     when(account.getUuid()).thenReturn(accountUuid);
     when(device.getId()).thenReturn(Device.PRIMARY_ID);
+
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
+        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
+
     when(client.isOpen()).thenReturn(true);
 
     when(messagesManager.getMessagesForDeviceReactive(eq(accountUuid), eq(Device.PRIMARY_ID), anyBoolean()))
@@ -249,7 +270,7 @@ class WebSocketConnectionTest {
 
     final AtomicInteger sendCounter = new AtomicInteger(0);
 
-    when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class)))
+    when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class), any()))
         .thenAnswer(invocation -> {
           synchronized (sendCounter) {
             sendCounter.incrementAndGet();
@@ -284,7 +305,164 @@ class WebSocketConnectionTest {
     });
 
     verify(client, times(1)).sendRequest(eq("PUT"), eq("/api/v1/queue/empty"), any(List.class), eq(Optional.empty()));
-    verify(client, times(2)).sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class));
+    verify(client, times(2)).sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class), any());
+  }
+
+  @Test
+  void testSendClearsEphemeral() {
+    final WebSocketClient client = mock(WebSocketClient.class);
+    final UUID accountUuid = UUID.randomUUID();
+
+    when(account.getNumber()).thenReturn("+18005551234");
+    when(account.getUuid()).thenReturn(accountUuid);
+    when(device.getId()).thenReturn(Device.PRIMARY_ID);
+
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
+        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
+
+    when(client.isOpen()).thenReturn(true);
+
+    final Envelope storedMessage = createMessage(UUID.randomUUID(), accountUuid, 1111, "stored");
+    final Envelope ephemeralMessage = createMessage(UUID.randomUUID(), accountUuid, 2222, "ephemeral")
+        .toBuilder()
+        .setEphemeral(true)
+        .build();
+
+    when(messagesManager.getMessagesForDeviceReactive(eq(accountUuid), eq(Device.PRIMARY_ID), anyBoolean()))
+        .thenReturn(Flux.just(storedMessage, ephemeralMessage));
+
+    when(messagesManager.delete(eq(accountUuid), eq(Device.PRIMARY_ID), anyList()))
+        .thenAnswer(invocation -> completedDeletions(invocation.getArgument(2)));
+
+    final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
+    when(successResponse.getStatus()).thenReturn(200);
+
+    final List<Envelope> sentEnvelopes = new ArrayList<>();
+
+    when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class), any()))
+        .thenAnswer(invocation -> {
+          final Optional<byte[]> body = invocation.getArgument(3);
+          sentEnvelopes.add(Envelope.parseFrom(body.orElseThrow()));
+
+          return CompletableFuture.completedFuture(successResponse);
+        });
+
+    when(client.sendRequest(eq("PUT"), eq("/api/v1/queue/empty"), any(List.class), any(Optional.class)))
+        .thenReturn(CompletableFuture.completedFuture(successResponse));
+
+    connection.start();
+
+    assertEquals(List.of(storedMessage, ephemeralMessage.toBuilder().clearEphemeral().build()), sentEnvelopes);
+    assertFalse(sentEnvelopes.get(1).hasEphemeral());
+  }
+
+  @Test
+  void testSendMessageBatches() {
+    final WebSocketClient client = mock(WebSocketClient.class);
+    final UUID accountUuid = UUID.randomUUID();
+
+    when(account.getNumber()).thenReturn("+18005551234");
+    when(account.getUuid()).thenReturn(accountUuid);
+    when(device.getId()).thenReturn(Device.PRIMARY_ID);
+    when(client.isOpen()).thenReturn(true);
+    when(client.getUpgradeRequestHeader(HeaderUtils.X_SIGNAL_RECEIVE_MESSAGE_BATCHES)).thenReturn("2");
+
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
+        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
+
+    final List<Envelope> storedMessages = IntStream.range(0, 5)
+        .mapToObj(i -> createMessage(UUID.randomUUID(), accountUuid, 1000 + i, "message " + i))
+        .toList();
+
+    final Envelope rejectedMessage = storedMessages.get(3);
+
+    when(messagesManager.getMessagesForDeviceReactive(eq(accountUuid), eq(Device.PRIMARY_ID), anyBoolean()))
+        .thenReturn(Flux.fromIterable(storedMessages));
+
+    final List<UUID> deletedGuids = new ArrayList<>();
+
+    when(messagesManager.delete(eq(accountUuid), eq(Device.PRIMARY_ID), anyList()))
+        .thenAnswer(invocation -> {
+          final List<MessagesManager.DeleteRequest> deleteRequests = invocation.getArgument(2);
+          deleteRequests.forEach(deleteRequest -> deletedGuids.add(deleteRequest.guid()));
+
+          return completedDeletions(deleteRequests);
+        });
+
+    final List<List<Envelope>> sentBatches = new ArrayList<>();
+
+    when(client.sendRequest(eq("PUT"), eq("/api/v1/messages"), any(List.class), any(Optional.class), any()))
+        .thenAnswer(invocation -> {
+          final Optional<byte[]> body = invocation.getArgument(3);
+          final List<Envelope> batch = EnvelopeBatch.parseFrom(body.orElseThrow()).getEnvelopesList();
+          sentBatches.add(batch);
+
+          final WebSocketResponseMessage response = mock(WebSocketResponseMessage.class);
+          when(response.getStatus()).thenReturn(200);
+          when(response.getBody()).thenReturn(Optional.of(EnvelopeBatchAcknowledgement.newBuilder()
+              .addAllAcceptedServerGuids(batch.stream()
+                  .map(Envelope::getServerGuid)
+                  .filter(guid -> !guid.equals(rejectedMessage.getServerGuid()))
+                  .toList())
+              .build()
+              .toByteArray()));
+
+          return CompletableFuture.completedFuture(response);
+        });
+
+    final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
+    when(successResponse.getStatus()).thenReturn(200);
+
+    when(client.sendRequest(eq("PUT"), eq("/api/v1/queue/empty"), any(List.class), any(Optional.class)))
+        .thenReturn(CompletableFuture.completedFuture(successResponse));
+
+    connection.start();
+
+    assertEquals(List.of(storedMessages.subList(0, 2), storedMessages.subList(2, 4), storedMessages.subList(4, 5)),
+        sentBatches);
+
+    assertEquals(storedMessages.stream()
+            .filter(message -> message != rejectedMessage)
+            .map(message -> UUID.fromString(message.getServerGuid()))
+            .toList(),
+        deletedGuids);
+
+    verify(client, never()).sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class), any());
+    verify(client).sendRequest(eq("PUT"), eq("/api/v1/queue/empty"), any(List.class), any(Optional.class));
+  }
+
+  @ParameterizedTest
+  @CsvSource(value = {
+      "null, 1",
+      "'', 1",
+      "true, 1",
+      "-4, 1",
+      "0, 1",
+      "1, 1",
+      "' 16 ', 16",
+      "1000, " + WebSocketConnection.MAX_MESSAGE_BATCH_SIZE
+  }, nullValues = "null")
+  void testGetMessageBatchSize(final String header, final int expectedBatchSize) {
+    assertEquals(expectedBatchSize, WebSocketConnection.getMessageBatchSize(header));
+  }
+
+  @Test
+  void testMessageBatchBoundary() {
+    final UUID accountUuid = UUID.randomUUID();
+    final Envelope smallMessage = createMessage(UUID.randomUUID(), accountUuid, 1111, "small");
+    final Envelope largeMessage = createMessage(UUID.randomUUID(), accountUuid, 2222, "large".repeat(100));
+
+    final WebSocketConnection.MessageBatchBoundary boundary =
+        new WebSocketConnection.MessageBatchBoundary(3, largeMessage.getSerializedSize() + 1);
+
+    // The first envelope never starts a new batch, even if it's larger than the maximum batch size
+    assertFalse(boundary.test(smallMessage));
+    assertFalse(boundary.test(smallMessage));
+    assertTrue(boundary.test(largeMessage));
+    assertTrue(boundary.test(smallMessage));
+    assertFalse(boundary.test(smallMessage));
+    assertFalse(boundary.test(smallMessage));
+    assertTrue(boundary.test(smallMessage));
   }
 
   @Test
@@ -329,8 +507,8 @@ class WebSocketConnectionTest {
     when(accountsManager.getByE164("sender1")).thenReturn(Optional.of(sender1));
     when(accountsManager.getByE164("sender2")).thenReturn(Optional.empty());
 
-    when(messagesManager.delete(any(), anyByte(), any(), any())).thenReturn(
-        CompletableFuture.completedFuture(Optional.empty()));
+    when(messagesManager.delete(any(), anyByte(), anyList()))
+        .thenAnswer(invocation -> completedDeletions(invocation.getArgument(2)));
 
     String userAgent = HttpHeaders.USER_AGENT;
 
@@ -341,7 +519,7 @@ class WebSocketConnectionTest {
     final WebSocketClient client = mock(WebSocketClient.class);
 
     when(client.getUserAgent()).thenReturn(userAgent);
-    when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), any(), any()))
+    when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), any(), any(), any()))
         .thenAnswer((Answer<CompletableFuture<WebSocketResponseMessage>>) invocationOnMock -> {
           CompletableFuture<WebSocketResponseMessage> future = new CompletableFuture<>();
           futures.add(future);
@@ -353,7 +531,7 @@ class WebSocketConnectionTest {
 
     connection.start();
 
-    verify(client, times(2)).sendRequest(eq("PUT"), eq("/api/v1/message"), any(), any());
+    verify(client, times(2)).sendRequest(eq("PUT"), eq("/api/v1/message"), any(), any(), any());
 
     assertEquals(futures.size(), 2);
 
@@ -372,12 +550,13 @@ class WebSocketConnectionTest {
   @Test
   void testProcessStoredMessageConcurrency() {
     final WebSocketClient client = mock(WebSocketClient.class);
-    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
-        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
-
     when(account.getNumber()).thenReturn("+18005551234");
     when(account.getUuid()).thenReturn(UUID.randomUUID());
     when(device.getId()).thenReturn(Device.PRIMARY_ID);
+
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
+        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
+
     when(client.isOpen()).thenReturn(true);
 
     final AtomicBoolean threadWaiting = new AtomicBoolean(false);
@@ -437,13 +616,14 @@ class WebSocketConnectionTest {
   @Test
   void testProcessStoredMessagesMultiplePages() {
     final WebSocketClient client = mock(WebSocketClient.class);
-    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
-        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
-
     when(account.getNumber()).thenReturn("+18005551234");
     final UUID accountUuid = UUID.randomUUID();
     when(account.getUuid()).thenReturn(accountUuid);
     when(device.getId()).thenReturn(Device.PRIMARY_ID);
+
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
+        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
+
     when(client.isOpen()).thenReturn(true);
 
     final List<Envelope> firstPageMessages =
@@ -456,15 +636,15 @@ class WebSocketConnectionTest {
     when(messagesManager.getMessagesForDeviceReactive(eq(accountUuid), eq(Device.PRIMARY_ID), eq(false)))
         .thenReturn(Flux.fromStream(Stream.concat(firstPageMessages.stream(), secondPageMessages.stream())));
 
-    when(messagesManager.delete(eq(accountUuid), eq(Device.PRIMARY_ID), any(), any()))
-        .thenReturn(CompletableFuture.completedFuture(null));
+    when(messagesManager.delete(eq(accountUuid), eq(Device.PRIMARY_ID), anyList()))
+        .thenAnswer(invocation -> completedDeletions(invocation.getArgument(2)));
 
     final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
     when(successResponse.getStatus()).thenReturn(200);
 
     final CountDownLatch queueEmptyLatch = new CountDownLatch(1);
 
-    when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class)))
+    when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class), any()))
         .thenAnswer(invocation -> CompletableFuture.completedFuture(successResponse));
 
     when(client.sendRequest(eq("PUT"), eq("/api/v1/queue/empty"), any(List.class), eq(Optional.empty())))
@@ -479,32 +659,33 @@ class WebSocketConnectionTest {
     });
 
     verify(client, times(firstPageMessages.size() + secondPageMessages.size())).sendRequest(eq("PUT"),
-        eq("/api/v1/message"), any(List.class), any(Optional.class));
+        eq("/api/v1/message"), any(List.class), any(Optional.class), any());
     verify(client).sendRequest(eq("PUT"), eq("/api/v1/queue/empty"), any(List.class), eq(Optional.empty()));
   }
 
   @Test
   void testProcessStoredMessagesMultiplePagesBackpressure() {
     final WebSocketClient client = mock(WebSocketClient.class);
-    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
-        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
-
     when(account.getNumber()).thenReturn("+18005551234");
     final UUID accountUuid = UUID.randomUUID();
     when(account.getUuid()).thenReturn(accountUuid);
     when(device.getId()).thenReturn(Device.PRIMARY_ID);
+
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
+        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
+
     when(client.isOpen()).thenReturn(true);
 
-    // Create two publishers, each with >2x WebSocketConnection.MESSAGE_SENDER_MAX_CONCURRENCY messages
+    // Create two publishers, each with >2x MAX_WINDOW messages
     final TestPublisher<Envelope> firstPublisher = TestPublisher.createCold();
     final List<Envelope> firstPublisherMessages = IntStream.range(1,
-            2 * WebSocketConnection.MESSAGE_SENDER_MAX_CONCURRENCY + 23)
+            2 * MAX_WINDOW + 23)
         .mapToObj(i -> createMessage(UUID.randomUUID(), UUID.randomUUID(), i, "content " + i))
         .toList();
 
     final TestPublisher<Envelope> secondPublisher = TestPublisher.createCold();
     final List<Envelope> secondPublisherMessages = IntStream.range(firstPublisherMessages.size(),
-            firstPublisherMessages.size() + 2 * WebSocketConnection.MESSAGE_SENDER_MAX_CONCURRENCY + 73)
+            firstPublisherMessages.size() + 2 * MAX_WINDOW + 73)
         .mapToObj(i -> createMessage(UUID.randomUUID(), UUID.randomUUID(), i, "content " + i))
         .toList();
 
@@ -512,8 +693,8 @@ class WebSocketConnectionTest {
     when(messagesManager.getMessagesForDeviceReactive(eq(accountUuid), eq(Device.PRIMARY_ID), eq(false)))
         .thenReturn(allMessages);
 
-    when(messagesManager.delete(eq(accountUuid), eq(Device.PRIMARY_ID), any(), any()))
-        .thenReturn(CompletableFuture.completedFuture(null));
+    when(messagesManager.delete(eq(accountUuid), eq(Device.PRIMARY_ID), anyList()))
+        .thenAnswer(invocation -> completedDeletions(invocation.getArgument(2)));
 
     final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
     when(successResponse.getStatus()).thenReturn(200);
@@ -522,7 +703,7 @@ class WebSocketConnectionTest {
 
     final Queue<CompletableFuture<WebSocketResponseMessage>> pendingClientAcks = new LinkedList<>();
 
-    when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class)))
+    when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class), any()))
         .thenAnswer(invocation -> {
           final CompletableFuture<WebSocketResponseMessage> pendingAck = new CompletableFuture<>();
           pendingClientAcks.add(pendingAck);
@@ -545,8 +726,8 @@ class WebSocketConnectionTest {
       // nothing should be requested from the second publisher, because max concurrency is less than the number emitted,
       // and none have completed
       secondPublisher.assertWasNotRequested();
-      // there should only be MESSAGE_SENDER_MAX_CONCURRENCY pending client acknowledgements
-      assertEquals(WebSocketConnection.MESSAGE_SENDER_MAX_CONCURRENCY, pendingClientAcks.size());
+      // there should only be MAX_WINDOW pending client acknowledgements
+      assertEquals(MAX_WINDOW, pendingClientAcks.size());
 
       while (!pendingClientAcks.isEmpty()) {
         pendingClientAcks.poll().complete(successResponse);
@@ -563,20 +744,87 @@ class WebSocketConnectionTest {
     });
 
     verify(client, times(firstPublisherMessages.size() + secondPublisherMessages.size())).sendRequest(eq("PUT"),
-        eq("/api/v1/message"), any(List.class), any(Optional.class));
+        eq("/api/v1/message"), any(List.class), any(Optional.class), any());
     verify(client).sendRequest(eq("PUT"), eq("/api/v1/queue/empty"), any(List.class), eq(Optional.empty()));
   }
 
   @Test
-  void testProcessStoredMessagesContainsSenderUuid() {
+  void testAdaptiveDeliveryWindow() {
     final WebSocketClient client = mock(WebSocketClient.class);
+    final UUID accountUuid = UUID.randomUUID();
+
+    when(account.getNumber()).thenReturn("+18005551234");
+    when(account.getUuid()).thenReturn(accountUuid);
+    when(device.getId()).thenReturn(Device.PRIMARY_ID);
+    when(client.isOpen()).thenReturn(true);
+
+    final DynamicMessageDeliveryConfiguration messageDeliveryConfiguration = new DynamicMessageDeliveryConfiguration();
+    messageDeliveryConfiguration.setAdaptiveWindowEnabled(true);
+
     final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
-        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
+        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager, messageDeliveryConfiguration);
+
+    final List<Envelope> messages = IntStream.range(0, 64)
+        .mapToObj(i -> createMessage(UUID.randomUUID(), UUID.randomUUID(), i, "content " + i))
+        .toList();
+
+    final AtomicLong requestedMessages = new AtomicLong();
+
+    when(messagesManager.getMessagesForDeviceReactive(eq(accountUuid), eq(Device.PRIMARY_ID), anyBoolean()))
+        .thenReturn(Flux.fromIterable(messages).doOnRequest(requestedMessages::addAndGet))
+        .thenReturn(Flux.empty());
+
+    when(messagesManager.delete(eq(accountUuid), eq(Device.PRIMARY_ID), anyList()))
+        .thenAnswer(invocation -> completedDeletions(invocation.getArgument(2)));
+
+    final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
+    when(successResponse.getStatus()).thenReturn(200);
+
+    final Queue<CompletableFuture<WebSocketResponseMessage>> pendingClientAcks = new LinkedList<>();
+
+    when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class),
+        any(Duration.class)))
+        .thenAnswer(invocation -> {
+          final CompletableFuture<WebSocketResponseMessage> pendingAck = new CompletableFuture<>();
+          pendingClientAcks.add(pendingAck);
+          return pendingAck;
+        });
+
+    when(client.sendRequest(eq("PUT"), eq("/api/v1/queue/empty"), any(List.class), eq(Optional.empty())))
+        .thenReturn(CompletableFuture.completedFuture(successResponse));
+
+    connection.processStoredMessages();
 
+    // Messages should only be requested from the message store as the window has room to send them
+    assertEquals(messageDeliveryConfiguration.getInitialWindow(), pendingClientAcks.size());
+    assertEquals(messageDeliveryConfiguration.getInitialWindow(), requestedMessages.get());
+
+    // Each prompt acknowledgement makes room for its own replacement and grows the window by one
+    pendingClientAcks.remove().complete(successResponse);
+    assertEquals(messageDeliveryConfiguration.getInitialWindow() + 1, pendingClientAcks.size());
+    assertEquals(messageDeliveryConfiguration.getInitialWindow() + 2, requestedMessages.get());
+
+    while (!pendingClientAcks.isEmpty()) {
+      pendingClientAcks.remove().complete(successResponse);
+    }
+
+    verify(client, times(messages.size())).sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class),
+        any(Optional.class), any(Duration.class));
+    verify(client, never()).sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class));
+    verify(client).sendRequest(eq("PUT"), eq("/api/v1/queue/empty"), any(List.class), eq(Optional.empty()));
+  }
+
+  @Test
+  void testProcessStoredMessagesContainsSenderUuid() {
+    final WebSocketClient client = mock(WebSocketClient.class);
     when(account.getNumber()).thenReturn("+18005551234");
     final UUID accountUuid = UUID.randomUUID();
     when(account.getUuid()).thenReturn(accountUuid);
     when(device.getId()).thenReturn(Device.PRIMARY_ID);
+
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
+        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
+
     when(client.isOpen()).thenReturn(true);
 
     final UUID senderUuid = UUID.randomUUID();
@@ -587,15 +835,15 @@ class WebSocketConnectionTest {
         .thenReturn(Flux.fromIterable(messages))
         .thenReturn(Flux.empty());
 
-    when(messagesManager.delete(eq(accountUuid), eq(Device.PRIMARY_ID), any(UUID.class), any()))
-        .thenReturn(CompletableFuture.completedFuture(null));
+    when(messagesManager.delete(eq(accountUuid), eq(Device.PRIMARY_ID), anyList()))
+        .thenAnswer(invocation -> completedDeletions(invocation.getArgument(2)));
 
     final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
     when(successResponse.getStatus()).thenReturn(200);
 
     final CountDownLatch queueEmptyLatch = new CountDownLatch(1);
 
-    when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class))).thenAnswer(
+    when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class), any())).thenAnswer(
         invocation -> CompletableFuture.completedFuture(successResponse));
 
     when(client.sendRequest(eq("PUT"), eq("/api/v1/queue/empty"), any(List.class), eq(Optional.empty())))
@@ -625,21 +873,22 @@ class WebSocketConnectionTest {
           } catch (InvalidProtocolBufferException e) {
             return false;
           }
-        }));
+        }), any());
     verify(client).sendRequest(eq("PUT"), eq("/api/v1/queue/empty"), any(List.class), eq(Optional.empty()));
   }
 
   @Test
   void testProcessStoredMessagesSingleEmptyCall() {
     final WebSocketClient client = mock(WebSocketClient.class);
-    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
-        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
-
     final UUID accountUuid = UUID.randomUUID();
 
     when(account.getNumber()).thenReturn("+18005551234");
     when(account.getUuid()).thenReturn(accountUuid);
     when(device.getId()).thenReturn(Device.PRIMARY_ID);
+
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
+        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
+
     when(client.isOpen()).thenReturn(true);
 
     when(messagesManager.getMessagesForDeviceReactive(eq(accountUuid), eq(Device.PRIMARY_ID), anyBoolean()))
@@ -661,13 +910,15 @@ class WebSocketConnectionTest {
   @Test
   public void testRequeryOnStateMismatch() {
     final WebSocketClient client = mock(WebSocketClient.class);
-    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
-        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
     final UUID accountUuid = UUID.randomUUID();
 
     when(account.getNumber()).thenReturn("+18005551234");
     when(account.getUuid()).thenReturn(accountUuid);
     when(device.getId()).thenReturn(Device.PRIMARY_ID);
+
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
+        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
+
     when(client.isOpen()).thenReturn(true);
 
     final List<Envelope> firstPageMessages =
@@ -682,15 +933,15 @@ class WebSocketConnectionTest {
         .thenReturn(Flux.fromIterable(secondPageMessages))
         .thenReturn(Flux.empty());
 
-    when(messagesManager.delete(eq(accountUuid), eq(Device.PRIMARY_ID), any(), any()))
-        .thenReturn(CompletableFuture.completedFuture(null));
+    when(messagesManager.delete(eq(accountUuid), eq(Device.PRIMARY_ID), anyList()))
+        .thenAnswer(invocation -> completedDeletions(invocation.getArgument(2)));
 
     final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
     when(successResponse.getStatus()).thenReturn(200);
 
     final CountDownLatch queueEmptyLatch = new CountDownLatch(1);
 
-    when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class)))
+    when(client.sendRequest(eq("PUT"), eq("/api/v1/message"), any(List.class), any(Optional.class), any()))
         .thenAnswer(invocation -> {
           connection.handleNewMessagesAvailable();
 
@@ -710,21 +961,22 @@ class WebSocketConnectionTest {
     });
 
     verify(client, times(firstPageMessages.size() + secondPageMessages.size())).sendRequest(eq("PUT"),
-        eq("/api/v1/message"), any(List.class), any(Optional.class));
+        eq("/api/v1/message"), any(List.class), any(Optional.class), any());
     verify(client).sendRequest(eq("PUT"), eq("/api/v1/queue/empty"), any(List.class), eq(Optional.empty()));
   }
 
   @Test
   void testProcessCachedMessagesOnly() {
     final WebSocketClient client = mock(WebSocketClient.class);
-    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
-        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
-
     final UUID accountUuid = UUID.randomUUID();
 
     when(account.getNumber()).thenReturn("+18005551234");
     when(account.getUuid()).thenReturn(accountUuid);
     when(device.getId()).thenReturn(Device.PRIMARY_ID);
+
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
+        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
+
     when(client.isOpen()).thenReturn(true);
 
     when(messagesManager.getMessagesForDeviceReactive(eq(accountUuid), eq(Device.PRIMARY_ID), anyBoolean()))
@@ -749,14 +1001,15 @@ class WebSocketConnectionTest {
   @Test
   void testProcessDatabaseMessagesAfterPersist() {
     final WebSocketClient client = mock(WebSocketClient.class);
-    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
-        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
-
     final UUID accountUuid = UUID.randomUUID();
 
     when(account.getNumber()).thenReturn("+18005551234");
     when(account.getUuid()).thenReturn(accountUuid);
     when(device.getId()).thenReturn(Device.PRIMARY_ID);
+
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
+        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
+
     when(client.isOpen()).thenReturn(true);
 
     when(messagesManager.getMessagesForDeviceReactive(eq(accountUuid), eq(Device.PRIMARY_ID), anyBoolean()))
@@ -851,8 +1104,10 @@ class WebSocketConnectionTest {
     final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
     when(successResponse.getStatus()).thenReturn(200);
     when(client.sendRequest(any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(successResponse));
-    when(messagesManager.delete(any(), anyByte(), any(), any())).thenReturn(
-        CompletableFuture.completedFuture(Optional.empty()));
+    when(client.sendRequest(any(), any(), any(), any(), any()))
+        .thenReturn(CompletableFuture.completedFuture(successResponse));
+    when(messagesManager.delete(any(), anyByte(), anyList()))
+        .thenAnswer(invocation -> completedDeletions(invocation.getArgument(2)));
 
     WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
         retrySchedulingExecutor, messageDeliveryScheduler, clientReleaseManager);
@@ -907,16 +1162,16 @@ class WebSocketConnectionTest {
     when(client.isOpen()).thenReturn(true);
     final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
     when(successResponse.getStatus()).thenReturn(200);
-    when(client.sendRequest(any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(successResponse));
-    when(messagesManager.delete(any(), anyByte(), any(), any())).thenReturn(
-        CompletableFuture.completedFuture(Optional.empty()));
+    when(client.sendRequest(any(), any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(successResponse));
+    when(messagesManager.delete(any(), anyByte(), anyList()))
+        .thenAnswer(invocation -> completedDeletions(invocation.getArgument(2)));
 
     WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
         retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
 
     connection.start();
 
-    verify(client).sendRequest(any(), any(), any(), any());
+    verify(client).sendRequest(any(), any(), any(), any(), any());
 
     // close the connection before the publisher completes
     connection.stop();
@@ -933,6 +1188,14 @@ class WebSocketConnectionTest {
         .verify();
   }
 
+  private static List<CompletableFuture<Optional<Envelope>>> completedDeletions(
+      final List<MessagesManager.DeleteRequest> deleteRequests) {
+
+    return deleteRequests.stream()
+        .map(ignored -> CompletableFuture.completedFuture(Optional.<Envelope>empty()))
+        .toList();
+  }
+
   private Envelope createMessage(UUID senderUuid, UUID destinationUuid, long timestamp, String content) {
     return Envelope.newBuilder()
         .setServerGuid(UUID.randomUUID().toString())
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.websocket;
+
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.whispersystems.websocket.messages.WebSocketResponseMessage;
+
+/**
+ * Compares the cost of correlating a request with its response using a {@link PendingRequestTable} to the cost of doing
+ * so with the {@code SecureRandom}-generated IDs and boxed {@link ConcurrentHashMap} it replaced. Each operation
+ * registers one request and resolves the oldest outstanding one, keeping a fixed number of requests in flight as a busy
+ * websocket session would.
+ * <p>
+ * Run with {@code ./mvnw -pl websocket-resources -Pbenchmark test-compile exec:exec}; run with
+ * {@code -Djmh.args="-prof gc"} to compare allocation rates, too.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PendingRequestTableBenchmark {
+
+  @Param({"1", "32", "1024"})
+  private int requestsInFlight;
+
+  private PendingRequestTable pendingRequestTable;
+  private Map<Long, CompletableFuture<WebSocketResponseMessage>> pendingRequestMap;
+
+  private long[] inFlightRequestIds;
+  private int oldestRequestIndex;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    pendingRequestTable = new PendingRequestTable();
+    pendingRequestMap = new ConcurrentHashMap<>();
+    inFlightRequestIds = new long[requestsInFlight];
+    oldestRequestIndex = 0;
+  }
+
+  @Benchmark
+  public CompletableFuture<WebSocketResponseMessage> pendingRequestTable() {
+    final long requestId = pendingRequestTable.register(new CompletableFuture<>(), null);
+    return pendingRequestTable.remove(advance(requestId));
+  }
+
+  @Benchmark
+  public CompletableFuture<WebSocketResponseMessage> concurrentHashMap() {
+    final long requestId = Math.abs(new SecureRandom().nextLong());
+    pendingRequestMap.put(requestId, new CompletableFuture<>());
+
+    return pendingRequestMap.remove(advance(requestId));
+  }
+
+  /**
+   * Records a newly-registered request ID and returns the ID of the oldest request in flight, which the benchmark then
+   * resolves.
+   */
+  private long advance(final long requestId) {
+    final long oldestRequestId = inFlightRequestIds[oldestRequestIndex];
+    inFlightRequestIds[oldestRequestIndex] = requestId;
+    oldestRequestIndex = (oldestRequestIndex + 1) % inFlightRequestIds.length;
+
+    return oldestRequestId;
+  }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.websocket;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.whispersystems.websocket.messages.WebSocketResponseMessage;
+
+/**
+ * Tracks the requests a server has sent over a single websocket session and is still waiting for the client to answer.
+ * <p>
+ * Request IDs are assigned sequentially from a random starting point, and pending requests are stored in an
+ * open-addressing table keyed by primitive request ID, so registering and resolving a request allocates nothing beyond
+ * the request's own future (and the occasional resize). Requests may carry a deadline; rather than scheduling a task
+ * per request, a single shared thread periodically sweeps the tables that have requests with deadlines and fails any
+ * that have expired with a {@link TimeoutException}.
+ * <p>
+ * Pending request tables are thread-safe. Futures are always completed outside the table's lock.
+ */
+public final class PendingRequestTable {
+
+  // Request ID 0 marks an empty slot and is never assigned
+  private static final long EMPTY = 0;
+  private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  @VisibleForTesting
+  static final Duration EXPIRATION_INTERVAL = Duration.ofMillis(100);
+
+  private static final Set<PendingRequestTable> TABLES_WITH_DEADLINES = ConcurrentHashMap.newKeySet();
+
+  private static final ScheduledExecutorService EXPIRATION_EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("websocket-request-expiration").setDaemon(true).build());
+
+  static {
+    EXPIRATION_EXECUTOR.scheduleWithFixedDelay(PendingRequestTable::expireAll,
+        EXPIRATION_INTERVAL.toMillis(), EXPIRATION_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  private long[] requestIds;
+  private long[] deadlines;
+  private CompletableFuture<WebSocketResponseMessage>[] futures;
+
+  private int size;
+  private int sizeWithDeadlines;
+  private long earliestDeadline = NO_DEADLINE;
+  private long nextRequestId;
+  private boolean closed;
+
+  public PendingRequestTable() {
+    this(ThreadLocalRandom.current().nextLong());
+  }
+
+  @VisibleForTesting
+  PendingRequestTable(final long firstRequestId) {
+    allocate(INITIAL_CAPACITY);
+    this.nextRequestId = firstRequestId;
+  }
+
+  /**
+   * Registers a pending request and assigns it a request ID. If this table has already been closed, the given future is
+   * failed immediately with {@link WebSocketResourceProvider#CONNECTION_CLOSED_EXCEPTION}.
+   *
+   * @param future the future to complete when the client responds
+   * @param timeout the time after which to fail the future with a {@link TimeoutException} if the client hasn't
+   * responded, or {@code null} to wait indefinitely
+   *
+   * @return the request's ID
+   */
+  long register(final CompletableFuture<WebSocketResponseMessage> future, final Duration timeout) {
+    final long deadline = timeout == null ? NO_DEADLINE : System.nanoTime() + timeout.toNanos();
+    final long requestId;
+    final boolean tableClosed;
+
+    synchronized (this) {
+      requestId = nextRequestId();
+      tableClosed = closed;
+
+      if (!tableClosed) {
+        if ((size + 1) * 2 > requestIds.length) {
+          resize(requestIds.length * 2);
+        }
+
+        insert(requestId, deadline, future);
+
+        if (deadline != NO_DEADLINE) {
+          earliestDeadline = Math.min(earliestDeadline, deadline);
+
+          if (sizeWithDeadlines++ == 0) {
+            TABLES_WITH_DEADLINES.add(this);
+          }
+        }
+      }
+    }
+
+    if (tableClosed) {
+      future.completeExceptionally(WebSocketResourceProvider.CONNECTION_CLOSED_EXCEPTION);
+    }
+
+    return requestId;
+  }
+
+  /**
+   * Removes a pending request.
+   *
+   * @param requestId the ID of the request to remove
+   *
+   * @return the pending request's future, or {@code null} if no request with the given ID was pending
+   */
+  synchronized CompletableFuture<WebSocketResponseMessage> remove(final long requestId) {
+    if (requestId == EMPTY) {
+      return null;
+    }
+
+    final int slot = findSlot(requestId);
+    return requestIds[slot] == requestId ? removeSlot(slot) : null;
+  }
+
+  /**
+   * Removes all pending requests and closes this table; requests registered after this table is closed fail
+   * immediately.
+   *
+   * @return the futures for all requests that were pending
+   */
+  List<CompletableFuture<WebSocketResponseMessage>> close() {
+    final List<CompletableFuture<WebSocketResponseMessage>> pendingFutures;
+
+    synchronized (this) {
+      closed = true;
+      pendingFutures = new ArrayList<>(size);
+
+      for (final CompletableFuture<WebSocketResponseMessage> future : futures) {
+        if (future != null) {
+          pendingFutures.add(future);
+        }
+      }
+
+      allocate(INITIAL_CAPACITY);
+      size = 0;
+      sizeWithDeadlines = 0;
+      earliestDeadline = NO_DEADLINE;
+    }
+
+    TABLES_WITH_DEADLINES.remove(this);
+
+    return pendingFutures;
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Fails all pending requests whose deadlines are no later than the given time.
+   *
+   * @param now the current value of {@link System#nanoTime()}
+   */
+  @VisibleForTesting
+  void expire(final long now) {
+    final List<CompletableFuture<WebSocketResponseMessage>> expiredFutures;
+
+    synchronized (this) {
+      if (earliestDeadline - now > 0) {
+        return;
+      }
+
+      final List<Long> expiredRequestIds = new ArrayList<>();
+      long nextEarliestDeadline = NO_DEADLINE;
+
+      for (int slot = 0; slot < requestIds.length; slot++) {
+        if (requestIds[slot] != EMPTY && deadlines[slot] != NO_DEADLINE) {
+          if (deadlines[slot] - now <= 0) {
+            expiredRequestIds.add(requestIds[slot]);
+          } else {
+            nextEarliestDeadline = Math.min(nextEarliestDeadline, deadlines[slot]);
+          }
+        }
+      }
+
+      // Removal shifts entries around, so collect expired requests before removing any of them
+      expiredFutures = new ArrayList<>(expiredRequestIds.size());
+
+      for (final long requestId : expiredRequestIds) {
+        expiredFutures.add(removeSlot(findSlot(requestId)));
+      }
+
+      earliestDeadline = nextEarliestDeadline;
+
+      if (sizeWithDeadlines == 0) {
+        TABLES_WITH_DEADLINES.remove(this);
+      }
+    }
+
+    expiredFutures.forEach(future -> future.completeExceptionally(new TimeoutException()));
+  }
+
+  private static void expireAll() {
+    final long now = System.nanoTime();
+    TABLES_WITH_DEADLINES.forEach(table -> table.expire(now));
+  }
+
+  private long nextRequestId() {
+    long requestId;
+
+    do {
+      requestId = nextRequestId++ & Long.MAX_VALUE;
+    } while (requestId == EMPTY);
+
+    return requestId;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void allocate(final int capacity) {
+    requestIds = new long[capacity];
+    deadlines = new long[capacity];
+    futures = new CompletableFuture[capacity];
+  }
+
+  private void resize(final int capacity) {
+    final long[] oldRequestIds = requestIds;
+    final long[] oldDeadlines = deadlines;
+    final CompletableFuture<WebSocketResponseMessage>[] oldFutures = futures;
+
+    allocate(capacity);
+
+    for (int slot = 0; slot < oldRequestIds.length; slot++) {
+      if (oldRequestIds[slot] != EMPTY) {
+        final int newSlot = findSlot(oldRequestIds[slot]);
+
+        requestIds[newSlot] = oldRequestIds[slot];
+        deadlines[newSlot] = oldDeadlines[slot];
+        futures[newSlot] = oldFutures[slot];
+      }
+    }
+  }
+
+  private void insert(final long requestId, final long deadline,
+      final CompletableFuture<WebSocketResponseMessage> future) {
+
+    final int slot = findSlot(requestId);
+
+    requestIds[slot] = requestId;
+    deadlines[slot] = deadline;
+    futures[slot] = future;
+    size++;
+  }
+
+  /**
+   * Returns the slot that holds the given request ID or, if the request ID isn't present, the empty slot where it would
+   * be inserted.
+   */
+  private int findSlot(final long requestId) {
+    final int mask = requestIds.length - 1;
+    int slot = hash(requestId) & mask;
+
+    while (requestIds[slot] != EMPTY && requestIds[slot] != requestId) {
+      slot = (slot + 1) & mask;
+    }
+
+    return slot;
+  }
+
+  private CompletableFuture<WebSocketResponseMessage> removeSlot(int slot) {
+    final CompletableFuture<WebSocketResponseMessage> future = futures[slot];
+
+    if (deadlines[slot] != NO_DEADLINE) {
+      sizeWithDeadlines--;
+    }
+
+    size--;
+
+    // Shift later entries in the same probe sequence back so that lookups never stop early at the vacated slot
+    final int mask = requestIds.length - 1;
+    int next = (slot + 1) & mask;
+
+    while (requestIds[next] != EMPTY) {
+      final int home = hash(requestIds[next]) & mask;
+
+      // Move the entry at `next` into `slot` unless its home slot lies cyclically in (slot, next]
+      if (((next - home) & mask) >= ((next - slot) & mask)) {
+        requestIds[slot] = requestIds[next];
+        deadlines[slot] = deadlines[next];
+        futures[slot] = futures[next];
+        slot = next;
+      }
+
+      next = (next + 1) & mask;
+    }
+
+    requestIds[slot] = EMPTY;
+    deadlines[slot] = 0;
+    futures[slot] = null;
+
+    return future;
+  }
+
+  private static int hash(final long requestId) {
+    // Fibonacci hashing; request IDs are sequential, and the high bits of the product are well-mixed
+    return (int) ((requestId * 0x9E3779B97F4A7C15L) >>> 32);
+  }
+}
@@ -7,9 +7,8 @@ package org.whispersystems.websocket;
 import com.google.common.net.HttpHeaders;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.security.SecureRandom;
+import java.time.Duration;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import org.eclipse.jetty.websocket.api.RemoteEndpoint;
@@ -27,30 +26,64 @@ public class WebSocketClient {
 
   private static final Logger logger = LoggerFactory.getLogger(WebSocketClient.class);
 
-  private final Session                                                session;
-  private final RemoteEndpoint                                         remoteEndpoint;
-  private final WebSocketMessageFactory                                messageFactory;
-  private final Map<Long, CompletableFuture<WebSocketResponseMessage>> pendingRequestMapper;
-  private final long                                                   created;
+  private final Session                 session;
+  private final RemoteEndpoint          remoteEndpoint;
+  private final WebSocketMessageFactory messageFactory;
+  private final PendingRequestTable     pendingRequests;
+  private final long                    created;
 
   public WebSocketClient(Session session, RemoteEndpoint remoteEndpoint,
                          WebSocketMessageFactory messageFactory,
-                         Map<Long, CompletableFuture<WebSocketResponseMessage>> pendingRequestMapper) {
+                         PendingRequestTable pendingRequests) {
     this.session = session;
     this.remoteEndpoint = remoteEndpoint;
     this.messageFactory = messageFactory;
-    this.pendingRequestMapper = pendingRequestMapper;
+    this.pendingRequests = pendingRequests;
     this.created = System.currentTimeMillis();
   }
 
+  /**
+   * Sends a request to the client.
+   *
+   * @param verb the request's HTTP verb
+   * @param path the request's path
+   * @param headers the request's headers
+   * @param body the request's body, if any; the body is not copied and must not be modified after this call
+   *
+   * @return a future that completes with the client's response to the request
+   */
   public CompletableFuture<WebSocketResponseMessage> sendRequest(String verb, String path,
                                                                  List<String> headers,
                                                                  Optional<byte[]> body)
   {
-    final long                                        requestId = generateRequestId();
+    return sendRequest(verb, path, headers, body, null);
+  }
+
+  /**
+   * Sends a request to the client, failing with a {@link java.util.concurrent.TimeoutException} if the client doesn't
+   * respond within the given timeout. Timeouts are enforced by a periodic sweep rather than a timer per request, and so
+   * may fire slightly late.
+   *
+   * @param verb the request's HTTP verb
+   * @param path the request's path
+   * @param headers the request's headers
+   * @param body the request's body, if any; the body is not copied and must not be modified after this call
+   * @param timeout the time to wait for a response, or {@code null} to wait until the connection closes
+   *
+   * @return a future that completes with the client's response to the request
+   */
+  public CompletableFuture<WebSocketResponseMessage> sendRequest(String verb, String path,
+                                                                 List<String> headers,
+                                                                 Optional<byte[]> body,
+                                                                 Duration timeout)
+  {
     final CompletableFuture<WebSocketResponseMessage> future    = new CompletableFuture<>();
+    final long                                        requestId = pendingRequests.register(future, timeout);
 
-    pendingRequestMapper.put(requestId, future);
+    if (future.isDone()) {
+      // the connection has already closed
+      return future;
+    }
 
     WebSocketMessage requestMessage = messageFactory.createRequest(Optional.of(requestId), verb, path, headers, body);
 
@@ -59,7 +92,7 @@ public class WebSocketClient {
         @Override
         public void writeFailed(Throwable x) {
           logger.debug("Write failed", x);
-          pendingRequestMapper.remove(requestId);
+          pendingRequests.remove(requestId);
           future.completeExceptionally(x);
         }
 
@@ -68,7 +101,7 @@ public class WebSocketClient {
       });
     } catch (WebSocketException e) {
       logger.debug("Write", e);
-      pendingRequestMapper.remove(requestId);
+      pendingRequests.remove(requestId);
       future.completeExceptionally(e);
     }
 
@@ -79,6 +112,17 @@ public class WebSocketClient {
     return session.getUpgradeRequest().getHeader(HttpHeaders.USER_AGENT);
   }
 
+  /**
+   * Returns the value of a header from the request that established this websocket connection.
+   *
+   * @param header the name of the header to retrieve
+   *
+   * @return the value of the given header, or {@code null} if the upgrade request did not include the header
+   */
+  public String getUpgradeRequestHeader(final String header) {
+    return session.getUpgradeRequest().getHeader(header);
+  }
+
   public long getCreatedTimestamp() {
     return this.created;
   }
@@ -104,8 +148,4 @@ public class WebSocketClient {
     }
   }
 
-  private long generateRequestId() {
-    return Math.abs(new SecureRandom().nextLong());
-  }
-
 }
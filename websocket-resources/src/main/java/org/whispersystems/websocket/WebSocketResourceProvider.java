@@ -4,6 +4,7 @@
  */
 package org.whispersystems.websocket;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.net.HttpHeaders;
 import com.google.protobuf.UninitializedMessageException;
@@ -21,7 +22,6 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import org.eclipse.jetty.websocket.api.RemoteEndpoint;
@@ -41,6 +41,8 @@ import org.whispersystems.websocket.messages.WebSocketMessage;
 import org.whispersystems.websocket.messages.WebSocketMessageFactory;
 import org.whispersystems.websocket.messages.WebSocketRequestMessage;
 import org.whispersystems.websocket.messages.WebSocketResponseMessage;
+import org.whispersystems.websocket.routing.WebSocketRouteResponse;
+import org.whispersystems.websocket.routing.WebSocketRoutes;
 import org.whispersystems.websocket.session.ContextPrincipal;
 import org.whispersystems.websocket.session.WebSocketSessionContext;
 import org.whispersystems.websocket.setup.WebSocketConnectListener;
@@ -56,12 +58,13 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
   public static final IOException CONNECTION_CLOSED_EXCEPTION = new IOException("Connection closed!");
   private static final Logger logger = LoggerFactory.getLogger(WebSocketResourceProvider.class);
 
-  private final Map<Long, CompletableFuture<WebSocketResponseMessage>> requestMap = new ConcurrentHashMap<>();
+  private final PendingRequestTable pendingRequests = new PendingRequestTable();
 
   private final T authenticated;
   private final WebSocketMessageFactory messageFactory;
   private final Optional<WebSocketConnectListener> connectListener;
   private final ApplicationHandler jerseyHandler;
+  private final WebSocketRoutes routes;
   private final WebsocketRequestLog requestLog;
   private final Duration idleTimeout;
   private final String remoteAddress;
@@ -79,8 +82,22 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
       WebSocketMessageFactory messageFactory,
       Optional<WebSocketConnectListener> connectListener,
       Duration idleTimeout) {
+
+    this(remoteAddress, jerseyHandler, new WebSocketRoutes(new MetricRegistry()), requestLog, authenticated,
+        messageFactory, connectListener, idleTimeout);
+  }
+
+  public WebSocketResourceProvider(String remoteAddress,
+      ApplicationHandler jerseyHandler,
+      WebSocketRoutes routes,
+      WebsocketRequestLog requestLog,
+      T authenticated,
+      WebSocketMessageFactory messageFactory,
+      Optional<WebSocketConnectListener> connectListener,
+      Duration idleTimeout) {
     this.remoteAddress = remoteAddress;
     this.jerseyHandler = jerseyHandler;
+    this.routes = routes;
     this.requestLog = requestLog;
     this.authenticated = authenticated;
     this.messageFactory = messageFactory;
@@ -93,7 +110,7 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
     this.session = session;
     this.remoteEndpoint = session.getRemote();
     this.context = new WebSocketSessionContext(
-        new WebSocketClient(session, remoteEndpoint, messageFactory, requestMap));
+        new WebSocketClient(session, remoteEndpoint, messageFactory, pendingRequests));
     this.context.setAuthenticated(authenticated);
     this.session.setIdleTimeout(idleTimeout);
 
@@ -144,12 +161,8 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
     if (context != null) {
       context.notifyClosed(statusCode, reason);
 
-      for (long requestId : requestMap.keySet()) {
-        CompletableFuture<WebSocketResponseMessage> outstandingRequest = requestMap.remove(requestId);
-
-        if (outstandingRequest != null) {
-          outstandingRequest.completeExceptionally(CONNECTION_CLOSED_EXCEPTION);
-        }
+      for (CompletableFuture<WebSocketResponseMessage> outstandingRequest : pendingRequests.close()) {
+        outstandingRequest.completeExceptionally(CONNECTION_CLOSED_EXCEPTION);
       }
     }
   }
@@ -160,6 +173,26 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
   }
 
   private void handleRequest(WebSocketRequestMessage requestMessage) {
+    final Optional<CompletableFuture<WebSocketRouteResponse>> maybeRouteResponse =
+        routes.dispatch(context, requestMessage);
+
+    if (maybeRouteResponse.isPresent()) {
+      maybeRouteResponse.get().whenComplete((response, throwable) -> {
+        if (throwable == null) {
+          sendRouteResponse(requestMessage, response);
+        } else {
+          logger.warn("Websocket Error: " + requestMessage.getVerb() + " " + requestMessage.getPath(), throwable);
+          try {
+            sendErrorResponse(requestMessage, Response.status(500).build());
+          } catch (IOException e) {
+            logger.warn("Failed to send error response", e);
+          }
+        }
+      });
+
+      return;
+    }
+
     ContainerRequest containerRequest = new ContainerRequest(null, URI.create(requestMessage.getPath()),
         requestMessage.getVerb(), new WebSocketSecurityContext(new ContextPrincipal(context)),
         new MapPropertiesDelegate(new HashMap<>()), jerseyHandler.getConfiguration());
@@ -220,7 +253,7 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
   }
 
   private void handleResponse(WebSocketResponseMessage responseMessage) {
-    CompletableFuture<WebSocketResponseMessage> future = requestMap.remove(responseMessage.getRequestId());
+    CompletableFuture<WebSocketResponseMessage> future = pendingRequests.remove(responseMessage.getRequestId());
 
     if (future != null) {
       future.complete(responseMessage);
@@ -251,6 +284,23 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
     }
   }
 
+  private void sendRouteResponse(WebSocketRequestMessage requestMessage, WebSocketRouteResponse response) {
+    if (requestMessage.hasRequestId()) {
+      final Response.Status status = Response.Status.fromStatusCode(response.status());
+      final List<String> headers = new LinkedList<>();
+      response.headers().forEach((key, value) -> headers.add(key + ":" + value));
+
+      byte[] responseBytes = messageFactory.createResponse(requestMessage.getRequestId(),
+              response.status(),
+              status != null ? status.getReasonPhrase() : "",
+              headers,
+              response.body())
+          .toByteArray();
+
+      remoteEndpoint.sendBytes(ByteBuffer.wrap(responseBytes), WriteCallback.NOOP);
+    }
+  }
+
   private void sendErrorResponse(WebSocketRequestMessage requestMessage, Response error) throws IOException {
     if (requestMessage.hasRequestId()) {
       WebSocketMessage response = messageFactory.createResponse(requestMessage.getRequestId(),
@@ -11,8 +11,11 @@ import io.dropwizard.jersey.jackson.JacksonMessageBodyProvider;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.security.Principal;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import org.eclipse.jetty.websocket.api.ExtensionConfig;
 import org.eclipse.jetty.websocket.server.JettyServerUpgradeRequest;
 import org.eclipse.jetty.websocket.server.JettyServerUpgradeResponse;
 import org.eclipse.jetty.websocket.server.JettyWebSocketCreator;
@@ -25,6 +28,8 @@ import org.whispersystems.websocket.auth.AuthenticationException;
 import org.whispersystems.websocket.auth.WebSocketAuthenticator;
 import org.whispersystems.websocket.auth.WebSocketAuthenticator.AuthenticationResult;
 import org.whispersystems.websocket.auth.WebsocketAuthValueFactoryProvider;
+import org.whispersystems.websocket.compression.PerMessageDeflateNegotiator;
+import org.whispersystems.websocket.configuration.PerMessageDeflateConfiguration;
 import org.whispersystems.websocket.configuration.WebSocketConfiguration;
 import org.whispersystems.websocket.session.WebSocketSessionContextValueFactoryProvider;
 import org.whispersystems.websocket.setup.WebSocketEnvironment;
@@ -54,6 +59,16 @@ public class WebSocketResourceProviderFactory<T extends Principal> extends Jetty
   @Override
   public Object createWebSocket(final JettyServerUpgradeRequest request, final JettyServerUpgradeResponse response) {
     try {
+      final Optional<Duration> retryAfter = environment.getAdmissionController().checkAdmission(request);
+
+      if (retryAfter.isPresent()) {
+        // Retry-After is measured in whole seconds; round up so clients never come back early
+        response.setHeader(HttpHeaders.RETRY_AFTER,
+            String.valueOf(Math.max(1, retryAfter.get().plusMillis(999).toSeconds())));
+        response.sendError(503, "Unavailable");
+        return null;
+      }
+
       Optional<WebSocketAuthenticator<T>> authenticator = Optional.ofNullable(environment.getAuthenticator());
       T authenticated = null;
 
@@ -68,8 +83,11 @@ public class WebSocketResourceProviderFactory<T extends Principal> extends Jetty
         }
       }
 
+      response.setExtensions(negotiateExtensions(request));
+
       return new WebSocketResourceProvider<>(getRemoteAddress(request),
           this.jerseyApplicationHandler,
+          this.environment.routes(),
           this.environment.getRequestLog(),
           authenticated,
           this.environment.getMessageFactory(),
@@ -92,6 +110,22 @@ public class WebSocketResourceProviderFactory<T extends Principal> extends Jetty
     factory.setMaxTextMessageSize(configuration.getMaxTextMessageSize());
   }
 
+  /**
+   * Selects the websocket extensions to use for a connection. Compression is the only extension we support, and is only
+   * negotiated with clients on platforms for which it's enabled.
+   */
+  private List<ExtensionConfig> negotiateExtensions(JettyServerUpgradeRequest request) {
+    final PerMessageDeflateConfiguration perMessageDeflateConfiguration = configuration.getPermessageDeflate();
+
+    if (!perMessageDeflateConfiguration.isEnabledForPlatform(environment.getClientPlatformResolver().apply(request))) {
+      return List.of();
+    }
+
+    return PerMessageDeflateNegotiator.negotiate(request.getExtensions(), perMessageDeflateConfiguration)
+        .map(List::of)
+        .orElse(List.of());
+  }
+
   private String getRemoteAddress(JettyServerUpgradeRequest request) {
     String forwardedFor = request.getHeader(HttpHeaders.X_FORWARDED_FOR);
 
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.websocket.compression;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.util.compression.CompressionPool;
+import org.eclipse.jetty.util.compression.DeflaterPool;
+import org.eclipse.jetty.websocket.core.server.WebSocketServerComponents;
+
+/**
+ * A pool of {@link Deflater deflaters} that report how many bytes compression saves and how much time it costs.
+ * Installed as a context's websocket deflater pool, it measures all {@code permessage-deflate} compression in that
+ * context without depending on the internals of Jetty's extension.
+ * <p>
+ * "Uncompressed" and "compressed" meters track the number of bytes passed into and produced by deflaters from this
+ * pool, respectively. The "deflate" timer measures the time spent in each call to a deflater. Jetty compresses
+ * messages in several deflater calls, so its count reflects calls rather than messages.
+ */
+public class MeteredDeflaterPool extends DeflaterPool {
+
+  private final Meter uncompressedBytesMeter;
+  private final Meter compressedBytesMeter;
+  private final Timer deflateTimer;
+
+  public MeteredDeflaterPool(final MetricRegistry metricRegistry) {
+    // Jetty's default websocket deflater pool uses the default capacity and compression level and produces raw
+    // (headerless) deflate streams, as RFC 7692 requires
+    super(CompressionPool.DEFAULT_CAPACITY, Deflater.DEFAULT_COMPRESSION, true);
+
+    this.uncompressedBytesMeter = metricRegistry.meter(name(MeteredDeflaterPool.class, "uncompressedBytes"));
+    this.compressedBytesMeter = metricRegistry.meter(name(MeteredDeflaterPool.class, "compressedBytes"));
+    this.deflateTimer = metricRegistry.timer(name(MeteredDeflaterPool.class, "deflate"));
+  }
+
+  /**
+   * Makes a new metered deflater pool the websocket deflater pool for the given context. Jetty reads the pool from the
+   * context when it initializes the context's websocket components, so this must be called before the context starts.
+   *
+   * @param contextHandler the context whose websockets should use a metered deflater pool
+   * @param metricRegistry the registry to which to report compression metrics
+   */
+  public static void install(final ContextHandler contextHandler, final MetricRegistry metricRegistry) {
+    contextHandler.setAttribute(WebSocketServerComponents.WEBSOCKET_DEFLATER_POOL_ATTRIBUTE,
+        new MeteredDeflaterPool(metricRegistry));
+  }
+
+  @Override
+  protected Deflater newPooled() {
+    return new MeteredDeflater();
+  }
+
+  private class MeteredDeflater extends Deflater {
+
+    MeteredDeflater() {
+      super(Deflater.DEFAULT_COMPRESSION, true);
+    }
+
+    @Override
+    public void setInput(final byte[] input, final int off, final int len) {
+      uncompressedBytesMeter.mark(len);
+      super.setInput(input, off, len);
+    }
+
+    @Override
+    public void setInput(final ByteBuffer input) {
+      uncompressedBytesMeter.mark(input.remaining());
+      super.setInput(input);
+    }
+
+    @Override
+    public int deflate(final byte[] output, final int off, final int len, final int flush) {
+      final long start = System.nanoTime();
+      final int compressedBytes = super.deflate(output, off, len, flush);
+      deflateTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+      compressedBytesMeter.mark(compressedBytes);
+      return compressedBytes;
+    }
+
+    @Override
+    public int deflate(final ByteBuffer output, final int flush) {
+      final long start = System.nanoTime();
+      final int compressedBytes = super.deflate(output, flush);
+      deflateTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+      compressedBytesMeter.mark(compressedBytes);
+      return compressedBytes;
+    }
+  }
+}
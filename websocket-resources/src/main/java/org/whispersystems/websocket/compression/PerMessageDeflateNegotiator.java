@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.websocket.compression;
+
+import java.util.List;
+import java.util.Optional;
+import org.eclipse.jetty.websocket.api.ExtensionConfig;
+import org.whispersystems.websocket.configuration.PerMessageDeflateConfiguration;
+
+/**
+ * Chooses the {@code permessage-deflate} parameters for a websocket connection from the extension offers in the
+ * client's upgrade request.
+ */
+public final class PerMessageDeflateNegotiator {
+
+  public static final String EXTENSION_NAME = "permessage-deflate";
+
+  private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+  private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+  private static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+  private static final String CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
+
+  // java.util.zip always compresses with a 32 KiB window, so we can't agree to anything smaller
+  private static final int SUPPORTED_SERVER_MAX_WINDOW_BITS = 15;
+
+  private PerMessageDeflateNegotiator() {
+  }
+
+  /**
+   * Selects the first acceptable {@code permessage-deflate} offer and derives the parameters of the server's response.
+   * Offers are acceptable unless they ask the server to use a compression window smaller than it supports or include
+   * parameters the server doesn't recognize. The response always honors a client's request that the server not take
+   * over its compression context, and additionally disables context takeover as directed by the given configuration.
+   *
+   * @param offers the extensions offered by the client, in order of preference
+   * @param configuration the server's compression configuration
+   *
+   * @return the negotiated {@code permessage-deflate} extension configuration, or empty if no offer was acceptable
+   */
+  public static Optional<ExtensionConfig> negotiate(final List<ExtensionConfig> offers,
+      final PerMessageDeflateConfiguration configuration) {
+
+    for (final ExtensionConfig offer : offers) {
+      if (!EXTENSION_NAME.equalsIgnoreCase(offer.getName()) || !isAcceptable(offer)) {
+        continue;
+      }
+
+      final StringBuilder negotiated = new StringBuilder(EXTENSION_NAME);
+
+      if (configuration.isServerNoContextTakeover() || offer.getParameterKeys().contains(SERVER_NO_CONTEXT_TAKEOVER)) {
+        negotiated.append(';').append(SERVER_NO_CONTEXT_TAKEOVER);
+      }
+
+      if (configuration.isClientNoContextTakeover() || offer.getParameterKeys().contains(CLIENT_NO_CONTEXT_TAKEOVER)) {
+        negotiated.append(';').append(CLIENT_NO_CONTEXT_TAKEOVER);
+      }
+
+      return Optional.of(ExtensionConfig.parse(negotiated.toString()));
+    }
+
+    return Optional.empty();
+  }
+
+  private static boolean isAcceptable(final ExtensionConfig offer) {
+    for (final String parameter : offer.getParameterKeys()) {
+      switch (parameter) {
+        case SERVER_NO_CONTEXT_TAKEOVER, CLIENT_NO_CONTEXT_TAKEOVER, CLIENT_MAX_WINDOW_BITS -> {
+          // Always acceptable; a client's advertised window limit only matters if we were to ask for a smaller window
+        }
+
+        case SERVER_MAX_WINDOW_BITS -> {
+          if (offer.getParameter(SERVER_MAX_WINDOW_BITS, -1) != SUPPORTED_SERVER_MAX_WINDOW_BITS) {
+            return false;
+          }
+        }
+
+        default -> {
+          return false;
+        }
+      }
+    }
+
+    return true;
+  }
+}
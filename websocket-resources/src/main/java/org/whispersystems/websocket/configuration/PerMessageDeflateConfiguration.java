@@ -0,0 +1,100 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.websocket.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.annotations.VisibleForTesting;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configures negotiation of the {@code permessage-deflate} websocket extension (RFC 7692).
+ */
+public class PerMessageDeflateConfiguration {
+
+  /**
+   * Whether to negotiate {@code permessage-deflate} with clients that offer it at all.
+   */
+  @JsonProperty
+  private boolean enabled = true;
+
+  /**
+   * The client platforms with which to negotiate {@code permessage-deflate}, as identified by the websocket
+   * environment's client platform resolver; if empty, compression is negotiated with all clients that offer it.
+   */
+  @JsonProperty
+  @NotNull
+  private Set<String> platforms = Collections.emptySet();
+
+  /**
+   * Whether the server should reset its compression context after each message. Without context takeover, the server
+   * holds compression state only while compressing a message rather than for the lifetime of each connection, at the
+   * cost of a somewhat lower compression ratio. Off by default, which keeps compression as it was before this setting
+   * existed.
+   */
+  @JsonProperty
+  private boolean serverNoContextTakeover = false;
+
+  /**
+   * Whether to require clients to reset their compression context after each message, which likewise frees the server
+   * from holding decompression state between messages. Off by default; clients may still request it on their own.
+   */
+  @JsonProperty
+  private boolean clientNoContextTakeover = false;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @VisibleForTesting
+  public void setEnabled(final boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public Set<String> getPlatforms() {
+    return platforms;
+  }
+
+  @VisibleForTesting
+  public void setPlatforms(final Set<String> platforms) {
+    this.platforms = platforms;
+  }
+
+  public boolean isServerNoContextTakeover() {
+    return serverNoContextTakeover;
+  }
+
+  @VisibleForTesting
+  public void setServerNoContextTakeover(final boolean serverNoContextTakeover) {
+    this.serverNoContextTakeover = serverNoContextTakeover;
+  }
+
+  public boolean isClientNoContextTakeover() {
+    return clientNoContextTakeover;
+  }
+
+  @VisibleForTesting
+  public void setClientNoContextTakeover(final boolean clientNoContextTakeover) {
+    this.clientNoContextTakeover = clientNoContextTakeover;
+  }
+
+  /**
+   * Checks whether {@code permessage-deflate} may be negotiated with a client on the given platform.
+   *
+   * @param platform the client's platform, if known
+   *
+   * @return {@code true} if compression is enabled for the given platform or for all clients
+   */
+  public boolean isEnabledForPlatform(final Optional<String> platform) {
+    if (!enabled) {
+      return false;
+    }
+
+    return platforms.isEmpty() || platform.map(p -> platforms.stream().anyMatch(p::equalsIgnoreCase)).orElse(false);
+  }
+}
@@ -28,6 +28,11 @@ public class WebSocketConfiguration {
   @JsonProperty
   private int maxTextMessageSize = 512 * 1024;
 
+  @Valid
+  @NotNull
+  @JsonProperty
+  private PerMessageDeflateConfiguration permessageDeflate = new PerMessageDeflateConfiguration();
+
   public WebsocketRequestLoggerFactory getRequestLog() {
     return requestLog;
   }
@@ -39,4 +44,8 @@ public class WebSocketConfiguration {
   public int getMaxTextMessageSize() {
     return maxTextMessageSize;
   }
+
+  public PerMessageDeflateConfiguration getPermessageDeflate() {
+    return permessageDeflate;
+  }
 }
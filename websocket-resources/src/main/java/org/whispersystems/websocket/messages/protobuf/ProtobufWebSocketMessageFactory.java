@@ -5,6 +5,7 @@
 package org.whispersystems.websocket.messages.protobuf;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import org.whispersystems.websocket.messages.InvalidMessageException;
 import org.whispersystems.websocket.messages.WebSocketMessage;
 import org.whispersystems.websocket.messages.WebSocketMessageFactory;
@@ -37,7 +38,9 @@ public class ProtobufWebSocketMessageFactory implements WebSocketMessageFactory
     }
 
     if (body.isPresent()) {
-      requestMessage.setBody(ByteString.copyFrom(body.get()));
+      // Request bodies are freshly-serialized payloads owned by the caller (see WebSocketClient#sendRequest), so wrap
+      // rather than copy them; outgoing message bodies are often the largest allocation on the delivery path
+      requestMessage.setBody(UnsafeByteOperations.unsafeWrap(body.get()));
     }
 
     if (headers != null) {
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.websocket.routing;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A path template like {@code /v1/messages/{uuid}}. Parameters must span an entire path segment and match any
+ * non-empty segment, as with Jersey's default parameter pattern; everything else must match literally.
+ */
+final class PathTemplate {
+
+  private final String template;
+
+  // Literal segments, or null for parameter segments
+  private final String[] literals;
+  private final String[] parameterNames;
+  private final boolean literal;
+
+  PathTemplate(final String template) {
+    if (!template.startsWith("/")) {
+      throw new IllegalArgumentException("Path templates must begin with '/': " + template);
+    }
+
+    final String[] segments = template.substring(1).split("/", -1);
+
+    this.template = template;
+    this.literals = new String[segments.length];
+    this.parameterNames = new String[segments.length];
+
+    boolean literal = true;
+
+    for (int i = 0; i < segments.length; i++) {
+      final String segment = segments[i];
+
+      if (segment.length() > 2 && segment.startsWith("{") && segment.endsWith("}")) {
+        final String parameterName = segment.substring(1, segment.length() - 1);
+
+        if (parameterName.indexOf('{') >= 0 || parameterName.indexOf('}') >= 0 || parameterName.indexOf(':') >= 0) {
+          throw new IllegalArgumentException("Unsupported path template parameter: " + segment);
+        }
+
+        parameterNames[i] = parameterName;
+        literal = false;
+      } else if (segment.indexOf('{') >= 0 || segment.indexOf('}') >= 0) {
+        throw new IllegalArgumentException("Path template parameters must span an entire segment: " + template);
+      } else {
+        literals[i] = segment;
+      }
+    }
+
+    this.literal = literal;
+  }
+
+  String getTemplate() {
+    return template;
+  }
+
+  /**
+   * @return {@code true} if this template has no parameters and so matches exactly one path
+   */
+  boolean isLiteral() {
+    return literal;
+  }
+
+  /**
+   * Matches a path (without a query string) against this template.
+   *
+   * @param path the path to match
+   *
+   * @return the decoded values of this template's parameters keyed by parameter name, or {@code null} if the path does
+   * not match this template
+   */
+  Map<String, String> match(final String path) {
+    if (!path.startsWith("/")) {
+      return null;
+    }
+
+    final Map<String, String> parameters = new HashMap<>(parameterNames.length);
+
+    int segmentStart = 1;
+
+    for (int i = 0; i < literals.length; i++) {
+      if (segmentStart > path.length()) {
+        return null;
+      }
+
+      int segmentEnd = path.indexOf('/', segmentStart);
+
+      if (segmentEnd < 0) {
+        segmentEnd = path.length();
+      }
+
+      // Only the last segment may run to the end of the path
+      if ((segmentEnd == path.length()) != (i == literals.length - 1)) {
+        return null;
+      }
+
+      if (literals[i] != null) {
+        if (!path.regionMatches(segmentStart, literals[i], 0, literals[i].length())
+            || segmentEnd - segmentStart != literals[i].length()) {
+          return null;
+        }
+      } else {
+        if (segmentEnd == segmentStart) {
+          return null;
+        }
+
+        parameters.put(parameterNames[i], decodeSegment(path.substring(segmentStart, segmentEnd)));
+      }
+
+      segmentStart = segmentEnd + 1;
+    }
+
+    return parameters;
+  }
+
+  private static String decodeSegment(final String segment) {
+    // URLDecoder decodes form data, in which '+' means ' '; in a path segment, '+' is just '+'
+    return segment.indexOf('%') < 0
+        ? segment
+        : URLDecoder.decode(segment.replace("+", "%2B"), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.websocket.routing;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Handles websocket requests for a single route without going through Jersey.
+ *
+ * @see WebSocketRoutes
+ */
+@FunctionalInterface
+public interface WebSocketRouteHandler {
+
+  /**
+   * Handles a request. Handlers are called on the websocket's network thread and must not block.
+   *
+   * @param request the request to handle
+   *
+   * @return a future that yields the response to send to the client; if the future fails, the client receives a generic
+   * 500 response
+   */
+  CompletableFuture<WebSocketRouteResponse> handle(WebSocketRouteRequest request);
+}
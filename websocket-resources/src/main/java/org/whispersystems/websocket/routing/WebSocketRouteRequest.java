@@ -0,0 +1,33 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.websocket.routing;
+
+import java.util.Map;
+import java.util.Optional;
+import org.whispersystems.websocket.session.WebSocketSessionContext;
+
+/**
+ * A websocket request matched to a fast-path route.
+ *
+ * @param context the session that sent the request; its authenticated principal (if any) is available via
+ * {@link WebSocketSessionContext#getAuthenticated()}
+ * @param verb the request's HTTP verb
+ * @param path the request's path, excluding any query string
+ * @param pathParameters the values of the route's path template parameters, keyed by parameter name
+ * @param query the request's raw query string, if any
+ * @param headers the headers included in the request message; headers from the websocket upgrade request are not
+ * included
+ * @param body the request's body, if any
+ */
+@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+public record WebSocketRouteRequest(WebSocketSessionContext context,
+                                    String verb,
+                                    String path,
+                                    Map<String, String> pathParameters,
+                                    Optional<String> query,
+                                    Map<String, String> headers,
+                                    Optional<byte[]> body) {
+}
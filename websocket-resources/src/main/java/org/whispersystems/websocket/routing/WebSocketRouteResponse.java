@@ -0,0 +1,28 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.websocket.routing;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A response produced by a fast-path route handler.
+ *
+ * @param status the HTTP status code for the response
+ * @param headers the response's headers
+ * @param body the response's body, if any; handlers are responsible for setting an appropriate content type
+ */
+@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+public record WebSocketRouteResponse(int status, Map<String, String> headers, Optional<byte[]> body) {
+
+  public static WebSocketRouteResponse ok() {
+    return status(200);
+  }
+
+  public static WebSocketRouteResponse status(final int status) {
+    return new WebSocketRouteResponse(status, Map.of(), Optional.empty());
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.websocket.routing;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.whispersystems.websocket.messages.WebSocketRequestMessage;
+import org.whispersystems.websocket.session.WebSocketSessionContext;
+
+/**
+ * A registry of "fast-path" websocket routes that are handled directly rather than dispatched through Jersey.
+ * <p>
+ * Dispatching a websocket request through Jersey means building a container request, merging headers, resolving the
+ * resource method, running the full filter and event listener chain, and serializing the response through a message
+ * body writer. That's worthwhile for most endpoints, but adds up for small, very frequent requests. Routes registered
+ * here are matched by verb and path template before a request ever reaches Jersey; requests that match no route are
+ * handled by Jersey as usual.
+ * <p>
+ * Fast-path routes bypass everything Jersey would otherwise do on a request's behalf, including filters, event
+ * listeners, exception mappers, and the websocket request log. Handlers are responsible for their own validation and
+ * instrumentation beyond the per-route latency timers maintained by this registry. Routes should be registered before
+ * the websocket servlet starts accepting connections.
+ */
+public class WebSocketRoutes {
+
+  private final MetricRegistry metricRegistry;
+
+  // Verb -> path -> route
+  private final Map<String, Map<String, Route>> literalRoutes = new ConcurrentHashMap<>();
+  private final List<Route> templatedRoutes = new CopyOnWriteArrayList<>();
+
+  private record Route(String verb, PathTemplate pathTemplate, WebSocketRouteHandler handler, Timer timer,
+                       Meter errors) {
+  }
+
+  public WebSocketRoutes(final MetricRegistry metricRegistry) {
+    this.metricRegistry = metricRegistry;
+  }
+
+  /**
+   * Registers a fast-path route.
+   *
+   * @param verb the HTTP verb to match
+   * @param pathTemplate the path template to match; see {@link #dispatch} for details
+   * @param handler the handler for requests that match the given verb and path template
+   *
+   * @throws IllegalArgumentException if the path template is malformed or a route with the same verb and path template
+   * has already been registered
+   */
+  public synchronized void register(final String verb, final String pathTemplate, final WebSocketRouteHandler handler) {
+    final String normalizedVerb = verb.toUpperCase(Locale.ROOT);
+    final PathTemplate template = new PathTemplate(pathTemplate);
+
+    final boolean duplicate = template.isLiteral()
+        ? literalRoutes.getOrDefault(normalizedVerb, Map.of()).containsKey(pathTemplate)
+        : templatedRoutes.stream().anyMatch(route ->
+            route.verb().equals(normalizedVerb) && route.pathTemplate().getTemplate().equals(pathTemplate));
+
+    if (duplicate) {
+      throw new IllegalArgumentException("Route already registered: " + normalizedVerb + " " + pathTemplate);
+    }
+
+    final Route route = new Route(normalizedVerb, template, handler,
+        metricRegistry.timer(name(WebSocketRoutes.class, "latency", normalizedVerb, pathTemplate)),
+        metricRegistry.meter(name(WebSocketRoutes.class, "errors", normalizedVerb, pathTemplate)));
+
+    if (template.isLiteral()) {
+      literalRoutes.computeIfAbsent(normalizedVerb, ignored -> new ConcurrentHashMap<>()).put(pathTemplate, route);
+    } else {
+      templatedRoutes.add(route);
+    }
+  }
+
+  /**
+   * Dispatches a request to the matching fast-path route, if any. Literal routes (those with no template parameters)
+   * take precedence over templated routes; templated routes are tried in the order in which they were registered. Path
+   * template parameters match any single, non-empty path segment, and their values are percent-decoded. Any query
+   * string is ignored for matching purposes.
+   *
+   * @param context the session that sent the request
+   * @param requestMessage the request to dispatch
+   *
+   * @return a future that yields the route handler's response if the request matched a route, or empty if the request
+   * should be handled by Jersey
+   */
+  public Optional<CompletableFuture<WebSocketRouteResponse>> dispatch(final WebSocketSessionContext context,
+      final WebSocketRequestMessage requestMessage) {
+
+    if (literalRoutes.isEmpty() && templatedRoutes.isEmpty()) {
+      return Optional.empty();
+    }
+
+    final String rawPath = requestMessage.getPath();
+    final int queryStart = rawPath.indexOf('?');
+    final String path = queryStart >= 0 ? rawPath.substring(0, queryStart) : rawPath;
+
+    Route matchedRoute = literalRoutes.getOrDefault(requestMessage.getVerb(), Map.of()).get(path);
+    Map<String, String> pathParameters = Map.of();
+
+    if (matchedRoute == null) {
+      for (final Route route : templatedRoutes) {
+        if (route.verb().equals(requestMessage.getVerb())) {
+          final Map<String, String> parameters = route.pathTemplate().match(path);
+
+          if (parameters != null) {
+            matchedRoute = route;
+            pathParameters = parameters;
+            break;
+          }
+        }
+      }
+    }
+
+    if (matchedRoute == null) {
+      return Optional.empty();
+    }
+
+    final Route route = matchedRoute;
+    final Timer.Context timerContext = route.timer().time();
+
+    CompletableFuture<WebSocketRouteResponse> responseFuture;
+
+    try {
+      responseFuture = route.handler().handle(new WebSocketRouteRequest(context,
+          requestMessage.getVerb(),
+          path,
+          pathParameters,
+          queryStart >= 0 ? Optional.of(rawPath.substring(queryStart + 1)) : Optional.empty(),
+          requestMessage.getHeaders(),
+          requestMessage.getBody()));
+    } catch (final RuntimeException e) {
+      responseFuture = CompletableFuture.failedFuture(e);
+    }
+
+    return Optional.of(responseFuture.whenComplete((response, throwable) -> {
+      timerContext.stop();
+
+      if (throwable != null) {
+        route.errors().mark();
+      }
+    }));
+  }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.websocket.setup;
+
+import java.time.Duration;
+import java.util.Optional;
+import org.eclipse.jetty.websocket.api.UpgradeRequest;
+
+/**
+ * Decides whether to accept new websocket connections. Admission is checked before a connection is authenticated or
+ * upgraded, so refusing a connection costs the server very little.
+ */
+@FunctionalInterface
+public interface WebSocketAdmissionController {
+
+  /**
+   * Checks whether a new connection may be accepted.
+   *
+   * @param request the client's upgrade request
+   *
+   * @return empty if the connection may be accepted, or the time the client should wait before trying again if the
+   * connection must be refused
+   */
+  Optional<Duration> checkAdmission(UpgradeRequest request);
+}
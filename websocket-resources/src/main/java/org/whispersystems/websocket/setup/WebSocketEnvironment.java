@@ -8,12 +8,16 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.dropwizard.jersey.DropwizardResourceConfig;
 import io.dropwizard.core.setup.Environment;
 import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Function;
+import org.eclipse.jetty.websocket.api.UpgradeRequest;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.whispersystems.websocket.auth.WebSocketAuthenticator;
 import org.whispersystems.websocket.configuration.WebSocketConfiguration;
 import org.whispersystems.websocket.logging.WebsocketRequestLog;
 import org.whispersystems.websocket.messages.WebSocketMessageFactory;
 import org.whispersystems.websocket.messages.protobuf.ProtobufWebSocketMessageFactory;
+import org.whispersystems.websocket.routing.WebSocketRoutes;
 
 import javax.validation.Validator;
 import java.security.Principal;
@@ -21,6 +25,7 @@ import java.security.Principal;
 public class WebSocketEnvironment<T extends Principal> {
 
   private final ResourceConfig jerseyConfig;
+  private final WebSocketRoutes routes;
   private final ObjectMapper objectMapper;
   private final Validator validator;
   private final WebsocketRequestLog requestLog;
@@ -29,6 +34,8 @@ public class WebSocketEnvironment<T extends Principal> {
   private WebSocketAuthenticator<T> authenticator;
   private WebSocketMessageFactory messageFactory;
   private WebSocketConnectListener connectListener;
+  private Function<UpgradeRequest, Optional<String>> clientPlatformResolver = ignored -> Optional.empty();
+  private WebSocketAdmissionController admissionController = ignored -> Optional.empty();
 
   public WebSocketEnvironment(Environment environment, WebSocketConfiguration configuration) {
     this(environment, configuration, Duration.ofMillis(60000));
@@ -40,6 +47,7 @@ public class WebSocketEnvironment<T extends Principal> {
 
   public WebSocketEnvironment(Environment environment, WebsocketRequestLog requestLog, Duration idleTimeout) {
     this.jerseyConfig = new DropwizardResourceConfig(environment.metrics());
+    this.routes = new WebSocketRoutes(environment.metrics());
     this.objectMapper = environment.getObjectMapper();
     this.validator = environment.getValidator();
     this.requestLog = requestLog;
@@ -51,6 +59,13 @@ public class WebSocketEnvironment<T extends Principal> {
     return jerseyConfig;
   }
 
+  /**
+   * @return the fast-path routes for this environment, which are checked before dispatching requests to Jersey
+   */
+  public WebSocketRoutes routes() {
+    return routes;
+  }
+
   public WebSocketAuthenticator<T> getAuthenticator() {
     return authenticator;
   }
@@ -90,4 +105,27 @@ public class WebSocketEnvironment<T extends Principal> {
   public void setConnectListener(WebSocketConnectListener connectListener) {
     this.connectListener = connectListener;
   }
+
+  public Function<UpgradeRequest, Optional<String>> getClientPlatformResolver() {
+    return clientPlatformResolver;
+  }
+
+  /**
+   * Sets the function used to identify a connecting client's platform (for example, for selecting clients with which to
+   * negotiate compression). By default, clients' platforms are unknown.
+   */
+  public void setClientPlatformResolver(Function<UpgradeRequest, Optional<String>> clientPlatformResolver) {
+    this.clientPlatformResolver = clientPlatformResolver;
+  }
+
+  public WebSocketAdmissionController getAdmissionController() {
+    return admissionController;
+  }
+
+  /**
+   * Sets the controller that decides whether to accept new connections. By default, all connections are accepted.
+   */
+  public void setAdmissionController(WebSocketAdmissionController admissionController) {
+    this.admissionController = admissionController;
+  }
 }
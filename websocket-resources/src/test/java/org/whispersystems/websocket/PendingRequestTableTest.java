@@ -0,0 +1,151 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.Test;
+import org.whispersystems.websocket.messages.WebSocketResponseMessage;
+
+class PendingRequestTableTest {
+
+  @Test
+  void registerAndRemove() {
+    final PendingRequestTable pendingRequests = new PendingRequestTable(17);
+
+    final CompletableFuture<WebSocketResponseMessage> firstFuture = new CompletableFuture<>();
+    final CompletableFuture<WebSocketResponseMessage> secondFuture = new CompletableFuture<>();
+
+    final long firstRequestId = pendingRequests.register(firstFuture, null);
+    final long secondRequestId = pendingRequests.register(secondFuture, null);
+
+    assertEquals(17, firstRequestId);
+    assertEquals(18, secondRequestId);
+    assertEquals(2, pendingRequests.size());
+
+    assertSame(secondFuture, pendingRequests.remove(secondRequestId));
+    assertNull(pendingRequests.remove(secondRequestId));
+    assertNull(pendingRequests.remove(0));
+    assertSame(firstFuture, pendingRequests.remove(firstRequestId));
+    assertEquals(0, pendingRequests.size());
+  }
+
+  @Test
+  void requestIdsArePositive() {
+    final PendingRequestTable pendingRequests = new PendingRequestTable(Long.MAX_VALUE);
+
+    assertEquals(Long.MAX_VALUE, pendingRequests.register(new CompletableFuture<>(), null));
+
+    // The next ID wraps around to zero, which is never assigned
+    assertEquals(1, pendingRequests.register(new CompletableFuture<>(), null));
+  }
+
+  @Test
+  void randomOperations() {
+    final Random random = new Random(0x5167);
+    final PendingRequestTable pendingRequests = new PendingRequestTable(random.nextLong());
+    final Map<Long, CompletableFuture<WebSocketResponseMessage>> expected = new HashMap<>();
+    final List<Long> requestIds = new ArrayList<>();
+
+    for (int i = 0; i < 100_000; i++) {
+      if (requestIds.isEmpty() || random.nextInt(3) != 0) {
+        final CompletableFuture<WebSocketResponseMessage> future = new CompletableFuture<>();
+        final long requestId = pendingRequests.register(future, null);
+
+        assertNotEquals(0, requestId);
+        assertNull(expected.put(requestId, future));
+        requestIds.add(requestId);
+      } else {
+        final int index = random.nextInt(requestIds.size());
+        final long requestId = requestIds.get(index);
+        requestIds.set(index, requestIds.get(requestIds.size() - 1));
+        requestIds.remove(requestIds.size() - 1);
+
+        assertSame(expected.remove(requestId), pendingRequests.remove(requestId));
+      }
+
+      assertEquals(expected.size(), pendingRequests.size());
+    }
+
+    for (final Map.Entry<Long, CompletableFuture<WebSocketResponseMessage>> entry : expected.entrySet()) {
+      assertSame(entry.getValue(), pendingRequests.remove(entry.getKey()));
+    }
+
+    assertEquals(0, pendingRequests.size());
+  }
+
+  @Test
+  void close() {
+    final PendingRequestTable pendingRequests = new PendingRequestTable();
+
+    final CompletableFuture<WebSocketResponseMessage> pendingFuture = new CompletableFuture<>();
+    pendingRequests.register(pendingFuture, Duration.ofMinutes(1));
+
+    assertEquals(List.of(pendingFuture), pendingRequests.close());
+    assertEquals(0, pendingRequests.size());
+
+    final CompletableFuture<WebSocketResponseMessage> lateFuture = new CompletableFuture<>();
+    pendingRequests.register(lateFuture, null);
+
+    assertTrue(lateFuture.isCompletedExceptionally());
+    assertEquals(0, pendingRequests.size());
+  }
+
+  @Test
+  void expire() {
+    final PendingRequestTable pendingRequests = new PendingRequestTable();
+
+    final CompletableFuture<WebSocketResponseMessage> shortFuture = new CompletableFuture<>();
+    final CompletableFuture<WebSocketResponseMessage> longFuture = new CompletableFuture<>();
+    final CompletableFuture<WebSocketResponseMessage> indefiniteFuture = new CompletableFuture<>();
+
+    pendingRequests.register(shortFuture, Duration.ofMinutes(1));
+    final long longRequestId = pendingRequests.register(longFuture, Duration.ofMinutes(2));
+    final long indefiniteRequestId = pendingRequests.register(indefiniteFuture, null);
+
+    pendingRequests.expire(System.nanoTime() + Duration.ofSeconds(90).toNanos());
+
+    final ExecutionException executionException = assertThrows(ExecutionException.class, shortFuture::get);
+    assertTrue(executionException.getCause() instanceof TimeoutException);
+
+    assertFalse(longFuture.isDone());
+    assertFalse(indefiniteFuture.isDone());
+    assertEquals(2, pendingRequests.size());
+
+    assertSame(longFuture, pendingRequests.remove(longRequestId));
+    assertSame(indefiniteFuture, pendingRequests.remove(indefiniteRequestId));
+  }
+
+  @Test
+  void expireAutomatically() {
+    final PendingRequestTable pendingRequests = new PendingRequestTable();
+
+    final CompletableFuture<WebSocketResponseMessage> future = new CompletableFuture<>();
+    pendingRequests.register(future, Duration.ofMillis(1));
+
+    final ExecutionException executionException = assertThrows(ExecutionException.class,
+        () -> assertTimeoutPreemptively(PendingRequestTable.EXPIRATION_INTERVAL.multipliedBy(50), () -> future.get()));
+
+    assertTrue(executionException.getCause() instanceof TimeoutException);
+    assertEquals(0, pendingRequests.size());
+  }
+}
@@ -10,14 +10,20 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import com.google.common.net.HttpHeaders;
 import io.dropwizard.jersey.DropwizardResourceConfig;
 import java.io.IOException;
 import java.security.Principal;
+import java.time.Duration;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import javax.security.auth.Subject;
+import org.eclipse.jetty.websocket.api.ExtensionConfig;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.UpgradeRequest;
 import org.eclipse.jetty.websocket.server.JettyServerUpgradeRequest;
@@ -26,6 +32,9 @@ import org.eclipse.jetty.websocket.server.JettyWebSocketServletFactory;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.mockito.ArgumentCaptor;
 import org.whispersystems.websocket.auth.AuthenticationException;
 import org.whispersystems.websocket.auth.WebSocketAuthenticator;
 import org.whispersystems.websocket.configuration.WebSocketConfiguration;
@@ -49,6 +58,30 @@ public class WebSocketResourceProviderFactoryTest {
     request = mock(JettyServerUpgradeRequest.class);
     response = mock(JettyServerUpgradeResponse.class);
 
+    when(environment.getClientPlatformResolver()).thenReturn(ignored -> Optional.empty());
+    when(environment.getAdmissionController()).thenReturn(ignored -> Optional.empty());
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+      "100, 1",
+      "1000, 1",
+      "1001, 2",
+      "30000, 30"
+  })
+  void testAdmissionRefused(final long retryAfterMillis, final String expectedRetryAfterHeader) throws IOException {
+    when(environment.getAuthenticator()).thenReturn(authenticator);
+    when(environment.getAdmissionController())
+        .thenReturn(ignored -> Optional.of(Duration.ofMillis(retryAfterMillis)));
+    when(environment.jersey()).thenReturn(jerseyEnvironment);
+
+    final WebSocketResourceProviderFactory<?> factory =
+        new WebSocketResourceProviderFactory<>(environment, Account.class, new WebSocketConfiguration());
+
+    assertNull(factory.createWebSocket(request, response));
+    verify(response).setHeader(HttpHeaders.RETRY_AFTER, expectedRetryAfterHeader);
+    verify(response).sendError(503, "Unavailable");
+    verifyNoInteractions(authenticator);
   }
 
   @Test
@@ -59,7 +92,7 @@ public class WebSocketResourceProviderFactoryTest {
     when(environment.jersey()).thenReturn(jerseyEnvironment);
 
     WebSocketResourceProviderFactory<?> factory = new WebSocketResourceProviderFactory<>(environment, Account.class,
-        mock(WebSocketConfiguration.class));
+        new WebSocketConfiguration());
     Object connection = factory.createWebSocket(request, response);
 
     assertNull(connection);
@@ -79,10 +112,11 @@ public class WebSocketResourceProviderFactoryTest {
     when(session.getUpgradeRequest()).thenReturn(mock(UpgradeRequest.class));
 
     WebSocketResourceProviderFactory<?> factory = new WebSocketResourceProviderFactory<>(environment, Account.class,
-        mock(WebSocketConfiguration.class));
+        new WebSocketConfiguration());
     Object connection = factory.createWebSocket(request, response);
 
     assertNotNull(connection);
+    verify(response).setExtensions(List.of());
     verifyNoMoreInteractions(response);
     verify(authenticator).authenticate(eq(request));
 
@@ -100,7 +134,7 @@ public class WebSocketResourceProviderFactoryTest {
 
     WebSocketResourceProviderFactory<Account> factory = new WebSocketResourceProviderFactory<>(environment,
         Account.class,
-        mock(WebSocketConfiguration.class));
+        new WebSocketConfiguration());
     Object connection = factory.createWebSocket(request, response);
 
     assertNull(connection);
@@ -108,6 +142,41 @@ public class WebSocketResourceProviderFactoryTest {
     verify(authenticator).authenticate(eq(request));
   }
 
+  @ParameterizedTest
+  @CsvSource({
+      "ANDROID, true",
+      "IOS, false",
+  })
+  void testNegotiatePerMessageDeflate(final String platform, final boolean expectCompression) {
+    when(environment.getClientPlatformResolver()).thenReturn(ignored -> Optional.of(platform));
+    when(environment.jersey()).thenReturn(jerseyEnvironment);
+    when(request.getExtensions()).thenReturn(List.of(
+        ExtensionConfig.parse("permessage-deflate; server_max_window_bits=10"),
+        ExtensionConfig.parse("permessage-deflate; client_max_window_bits")));
+
+    final WebSocketConfiguration configuration = new WebSocketConfiguration();
+    configuration.getPermessageDeflate().setPlatforms(Set.of("android"));
+
+    final WebSocketResourceProviderFactory<Account> factory =
+        new WebSocketResourceProviderFactory<>(environment, Account.class, configuration);
+
+    assertNotNull(factory.createWebSocket(request, response));
+
+    @SuppressWarnings("unchecked") final ArgumentCaptor<List<ExtensionConfig>> extensionsCaptor =
+        ArgumentCaptor.forClass(List.class);
+
+    verify(response).setExtensions(extensionsCaptor.capture());
+
+    if (expectCompression) {
+      assertEquals(1, extensionsCaptor.getValue().size());
+      assertEquals("permessage-deflate", extensionsCaptor.getValue().get(0).getName());
+      // Context takeover stays enabled by default
+      assertEquals(Set.of(), extensionsCaptor.getValue().get(0).getParameterKeys());
+    } else {
+      assertEquals(List.of(), extensionsCaptor.getValue());
+    }
+  }
+
   @Test
   void testConfigure() {
     JettyWebSocketServletFactory servletFactory = mock(JettyWebSocketServletFactory.class);
@@ -115,7 +184,7 @@ public class WebSocketResourceProviderFactoryTest {
 
     WebSocketResourceProviderFactory<Account> factory = new WebSocketResourceProviderFactory<>(environment,
         Account.class,
-        mock(WebSocketConfiguration.class));
+        new WebSocketConfiguration());
     factory.configure(servletFactory);
 
     verify(servletFactory).setCreator(eq(factory));
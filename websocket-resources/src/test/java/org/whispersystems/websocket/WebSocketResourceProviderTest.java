@@ -15,6 +15,7 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.net.HttpHeaders;
@@ -63,6 +64,8 @@ import org.whispersystems.websocket.auth.WebsocketAuthValueFactoryProvider;
 import org.whispersystems.websocket.logging.WebsocketRequestLog;
 import org.whispersystems.websocket.messages.protobuf.ProtobufWebSocketMessageFactory;
 import org.whispersystems.websocket.messages.protobuf.SubProtocol;
+import org.whispersystems.websocket.routing.WebSocketRouteResponse;
+import org.whispersystems.websocket.routing.WebSocketRoutes;
 import org.whispersystems.websocket.session.WebSocketSession;
 import org.whispersystems.websocket.session.WebSocketSessionContext;
 import org.whispersystems.websocket.session.WebSocketSessionContextValueFactoryProvider;
@@ -226,6 +229,71 @@ class WebSocketResourceProviderTest {
     assertThat(responseMessageContainer.getResponse().hasBody()).isFalse();
   }
 
+  @Test
+  void testFastPathRouteMessage() throws Exception {
+    ApplicationHandler applicationHandler = mock(ApplicationHandler.class);
+    WebsocketRequestLog requestLog = mock(WebsocketRequestLog.class);
+    WebSocketRoutes routes = new WebSocketRoutes(new MetricRegistry());
+
+    routes.register("GET", "/v1/widgets/{id}", routeRequest -> {
+      assertThat(routeRequest.context().getAuthenticated(TestPrincipal.class).getName()).isEqualTo("foo");
+      assertThat(routeRequest.pathParameters()).isEqualTo(Map.of("id", "17"));
+
+      return CompletableFuture.completedFuture(new WebSocketRouteResponse(200,
+          Map.of(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN),
+          Optional.of(("widget " + routeRequest.pathParameters().get("id")).getBytes())));
+    });
+
+    routes.register("GET", "/v1/broken", ignored -> {
+      throw new IllegalStateException("foo");
+    });
+
+    WebSocketResourceProvider<TestPrincipal> provider = new WebSocketResourceProvider<>("127.0.0.1", applicationHandler,
+        routes, requestLog, new TestPrincipal("foo"), new ProtobufWebSocketMessageFactory(), Optional.empty(),
+        Duration.ofMillis(30000));
+
+    Session session = mock(Session.class);
+    RemoteEndpoint remoteEndpoint = mock(RemoteEndpoint.class);
+    UpgradeRequest request = mock(UpgradeRequest.class);
+
+    when(session.getUpgradeRequest()).thenReturn(request);
+    when(session.getRemote()).thenReturn(remoteEndpoint);
+
+    provider.onWebSocketConnect(session);
+
+    final byte[] message = new ProtobufWebSocketMessageFactory().createRequest(Optional.of(111L), "GET",
+        "/v1/widgets/17?verbose=true", new LinkedList<>(), Optional.empty()).toByteArray();
+
+    provider.onWebSocketBinary(message, 0, message.length);
+
+    final byte[] brokenMessage = new ProtobufWebSocketMessageFactory().createRequest(Optional.of(112L), "GET",
+        "/v1/broken", new LinkedList<>(), Optional.empty()).toByteArray();
+
+    provider.onWebSocketBinary(brokenMessage, 0, brokenMessage.length);
+
+    verify(applicationHandler, never()).apply(any(ContainerRequest.class), any(OutputStream.class));
+    verify(requestLog, never()).log(anyString(), any(ContainerRequest.class), any(ContainerResponse.class));
+
+    ArgumentCaptor<ByteBuffer> responseCaptor = ArgumentCaptor.forClass(ByteBuffer.class);
+    verify(remoteEndpoint, times(2)).sendBytes(responseCaptor.capture(), any(WriteCallback.class));
+
+    final SubProtocol.WebSocketResponseMessage response =
+        SubProtocol.WebSocketMessage.parseFrom(responseCaptor.getAllValues().get(0).array()).getResponse();
+
+    assertThat(response.getId()).isEqualTo(111L);
+    assertThat(response.getStatus()).isEqualTo(200);
+    assertThat(response.getMessage()).isEqualTo("OK");
+    assertThat(response.getHeadersList()).containsExactly(HttpHeaders.CONTENT_TYPE + ":" + MediaType.TEXT_PLAIN);
+    assertThat(response.getBody()).isEqualTo(ByteString.copyFrom("widget 17".getBytes()));
+
+    final SubProtocol.WebSocketResponseMessage errorResponse =
+        SubProtocol.WebSocketMessage.parseFrom(responseCaptor.getAllValues().get(1).array()).getResponse();
+
+    assertThat(errorResponse.getId()).isEqualTo(112L);
+    assertThat(errorResponse.getStatus()).isEqualTo(500);
+    assertThat(errorResponse.hasBody()).isFalse();
+  }
+
   @Test
   void testActualRouteMessageSuccess() throws Exception {
     ResourceConfig resourceConfig = new DropwizardResourceConfig();
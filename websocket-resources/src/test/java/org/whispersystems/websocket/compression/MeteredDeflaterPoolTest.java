@@ -0,0 +1,63 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.websocket.compression;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.codahale.metrics.MetricRegistry;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.eclipse.jetty.util.compression.CompressionPool;
+import org.junit.jupiter.api.Test;
+
+class MeteredDeflaterPoolTest {
+
+  @Test
+  void deflate() throws DataFormatException {
+    final MetricRegistry metricRegistry = new MetricRegistry();
+    final MeteredDeflaterPool deflaterPool = new MeteredDeflaterPool(metricRegistry);
+
+    final byte[] uncompressed = "Hello, hello, hello, hello, hello!".repeat(32).getBytes(StandardCharsets.UTF_8);
+    final ByteBuffer compressed = ByteBuffer.allocate(uncompressed.length);
+
+    final CompressionPool<Deflater>.Entry entry = deflaterPool.acquire();
+
+    try {
+      final Deflater deflater = entry.get();
+      deflater.setInput(ByteBuffer.wrap(uncompressed));
+
+      while (!deflater.needsInput()) {
+        deflater.deflate(compressed, Deflater.SYNC_FLUSH);
+      }
+    } finally {
+      deflaterPool.release(entry);
+    }
+
+    compressed.flip();
+
+    assertEquals(uncompressed.length,
+        metricRegistry.meter(name(MeteredDeflaterPool.class, "uncompressedBytes")).getCount());
+
+    assertEquals(compressed.remaining(),
+        metricRegistry.meter(name(MeteredDeflaterPool.class, "compressedBytes")).getCount());
+
+    assertTrue(metricRegistry.timer(name(MeteredDeflaterPool.class, "deflate")).getCount() > 0);
+
+    // Deflaters from the pool must still produce the raw deflate streams that permessage-deflate expects
+    final Inflater inflater = new Inflater(true);
+    inflater.setInput(compressed);
+
+    final byte[] inflated = new byte[uncompressed.length];
+    assertEquals(uncompressed.length, inflater.inflate(inflated));
+    assertArrayEquals(uncompressed, inflated);
+  }
+}
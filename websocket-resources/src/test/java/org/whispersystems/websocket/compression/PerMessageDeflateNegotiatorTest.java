@@ -0,0 +1,68 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.websocket.compression;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import org.eclipse.jetty.websocket.api.ExtensionConfig;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.whispersystems.websocket.configuration.PerMessageDeflateConfiguration;
+
+class PerMessageDeflateNegotiatorTest {
+
+  @ParameterizedTest
+  @MethodSource
+  void negotiate(final List<String> offers,
+      final boolean serverNoContextTakeover,
+      final boolean clientNoContextTakeover,
+      final Optional<Set<String>> expectedParameters) {
+
+    final PerMessageDeflateConfiguration configuration = new PerMessageDeflateConfiguration();
+    configuration.setServerNoContextTakeover(serverNoContextTakeover);
+    configuration.setClientNoContextTakeover(clientNoContextTakeover);
+
+    final Optional<ExtensionConfig> negotiated =
+        PerMessageDeflateNegotiator.negotiate(offers.stream().map(ExtensionConfig::parse).toList(), configuration);
+
+    negotiated.ifPresent(extension -> assertEquals(PerMessageDeflateNegotiator.EXTENSION_NAME, extension.getName()));
+    assertEquals(expectedParameters, negotiated.map(ExtensionConfig::getParameterKeys));
+  }
+
+  private static List<Arguments> negotiate() {
+    return List.of(
+        Arguments.of(List.of(), true, true, Optional.empty()),
+        Arguments.of(List.of("x-webkit-deflate-frame"), true, true, Optional.empty()),
+
+        Arguments.of(List.of("permessage-deflate"), false, false,
+            Optional.of(Set.of())),
+
+        Arguments.of(List.of("permessage-deflate"), true, true,
+            Optional.of(Set.of("server_no_context_takeover", "client_no_context_takeover"))),
+
+        // client-requested context takeover restrictions are always honored
+        Arguments.of(List.of("permessage-deflate; server_no_context_takeover; client_no_context_takeover"), false, false,
+            Optional.of(Set.of("server_no_context_takeover", "client_no_context_takeover"))),
+
+        Arguments.of(List.of("permessage-deflate; client_max_window_bits"), false, true,
+            Optional.of(Set.of("client_no_context_takeover"))),
+
+        Arguments.of(List.of("permessage-deflate; server_max_window_bits=15"), false, false,
+            Optional.of(Set.of())),
+
+        // smaller server windows and unrecognized parameters can't be honored, so fall through to the next offer
+        Arguments.of(Arrays.asList("permessage-deflate; server_max_window_bits=10", "permessage-deflate; x_unknown",
+            "permessage-deflate"), false, false, Optional.of(Set.of())),
+
+        Arguments.of(List.of("permessage-deflate; server_max_window_bits=10"), true, true, Optional.empty())
+    );
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2024 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.websocket.routing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.codahale.metrics.MetricRegistry;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.whispersystems.websocket.messages.WebSocketRequestMessage;
+import org.whispersystems.websocket.session.WebSocketSessionContext;
+
+class WebSocketRoutesTest {
+
+  private MetricRegistry metricRegistry;
+  private WebSocketRoutes routes;
+
+  @BeforeEach
+  void setUp() {
+    metricRegistry = new MetricRegistry();
+    routes = new WebSocketRoutes(metricRegistry);
+
+    routes.register("GET", "/v1/keepalive", request -> respond("keepalive"));
+    routes.register("GET", "/v1/profile/{identifier}", request ->
+        respond("profile " + request.pathParameters().get("identifier")));
+    routes.register("GET", "/v1/profile/{identifier}/{version}", request ->
+        respond("profile " + request.pathParameters().get("identifier") + " " + request.pathParameters().get("version")));
+    routes.register("PUT", "/v1/profile/{identifier}", request -> respond("put profile"));
+  }
+
+  @ParameterizedTest
+  @MethodSource
+  void dispatch(final String verb, final String path, final Optional<String> expectedResponse) {
+    final Optional<CompletableFuture<WebSocketRouteResponse>> maybeResponse =
+        routes.dispatch(mock(WebSocketSessionContext.class), request(verb, path));
+
+    assertEquals(expectedResponse, maybeResponse.map(future -> new String(future.join().body().orElseThrow())));
+  }
+
+  private static List<Arguments> dispatch() {
+    return List.of(
+        Arguments.of("GET", "/v1/keepalive", Optional.of("keepalive")),
+        Arguments.of("GET", "/v1/keepalive?foo=bar", Optional.of("keepalive")),
+        Arguments.of("get", "/v1/keepalive", Optional.empty()),
+        Arguments.of("PUT", "/v1/keepalive", Optional.empty()),
+        Arguments.of("GET", "/v1/keepalive/", Optional.empty()),
+        Arguments.of("GET", "/v1/keepalive/provisioning", Optional.empty()),
+        Arguments.of("GET", "/v1/profile/abc", Optional.of("profile abc")),
+        Arguments.of("GET", "/v1/profile/a%2Fb+c", Optional.of("profile a/b+c")),
+        Arguments.of("GET", "/v1/profile/abc/17?credentialType=expiringProfileKey", Optional.of("profile abc 17")),
+        Arguments.of("PUT", "/v1/profile/abc", Optional.of("put profile")),
+        Arguments.of("GET", "/v1/profile/", Optional.empty()),
+        Arguments.of("GET", "/v1/profile//17", Optional.empty()),
+        Arguments.of("GET", "/v1/profile/abc/17/extra", Optional.empty()),
+        Arguments.of("GET", "/v2/profile/abc", Optional.empty()),
+        Arguments.of("GET", "/v1/profiles/abc", Optional.empty()),
+        Arguments.of("GET", "v1/profile/abc", Optional.empty())
+    );
+  }
+
+  @Test
+  void dispatchHandlerException() {
+    routes.register("GET", "/v1/broken", request -> {
+      throw new IllegalStateException();
+    });
+
+    final CompletableFuture<WebSocketRouteResponse> responseFuture =
+        routes.dispatch(mock(WebSocketSessionContext.class), request("GET", "/v1/broken")).orElseThrow();
+
+    final CompletionException completionException = assertThrows(CompletionException.class, responseFuture::join);
+    assertTrue(completionException.getCause() instanceof IllegalStateException);
+
+    assertEquals(1, metricRegistry.timer(MetricRegistry.name(WebSocketRoutes.class, "latency", "GET", "/v1/broken"))
+        .getCount());
+    assertEquals(1, metricRegistry.meter(MetricRegistry.name(WebSocketRoutes.class, "errors", "GET", "/v1/broken"))
+        .getCount());
+  }
+
+  @Test
+  void dispatchRecordsLatency() {
+    routes.dispatch(mock(WebSocketSessionContext.class), request("GET", "/v1/keepalive")).orElseThrow().join();
+    routes.dispatch(mock(WebSocketSessionContext.class), request("GET", "/v1/keepalive")).orElseThrow().join();
+
+    assertEquals(2, metricRegistry.timer(MetricRegistry.name(WebSocketRoutes.class, "latency", "GET", "/v1/keepalive"))
+        .getCount());
+    assertEquals(0, metricRegistry.meter(MetricRegistry.name(WebSocketRoutes.class, "errors", "GET", "/v1/keepalive"))
+        .getCount());
+  }
+
+  @Test
+  void dispatchNoRoutes() {
+    assertTrue(new WebSocketRoutes(new MetricRegistry())
+        .dispatch(mock(WebSocketSessionContext.class), request("GET", "/v1/keepalive"))
+        .isEmpty());
+  }
+
+  @Test
+  void registerDuplicate() {
+    assertThrows(IllegalArgumentException.class,
+        () -> routes.register("get", "/v1/keepalive", request -> respond("duplicate")));
+
+    assertThrows(IllegalArgumentException.class,
+        () -> routes.register("GET", "/v1/profile/{identifier}", request -> respond("duplicate")));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"v1/keepalive", "/v1/profile/{identifier", "/v1/profile/x{identifier}",
+      "/v1/profile/{identifier: [a-z]+}"})
+  void registerMalformed(final String pathTemplate) {
+    assertThrows(IllegalArgumentException.class, () -> routes.register("GET", pathTemplate, request -> respond("")));
+  }
+
+  private static WebSocketRequestMessage request(final String verb, final String path) {
+    final WebSocketRequestMessage requestMessage = mock(WebSocketRequestMessage.class);
+    when(requestMessage.getVerb()).thenReturn(verb);
+    when(requestMessage.getPath()).thenReturn(path);
+    when(requestMessage.getHeaders()).thenReturn(Map.of());
+    when(requestMessage.getBody()).thenReturn(Optional.empty());
+
+    return requestMessage;
+  }
+
+  private static CompletableFuture<WebSocketRouteResponse> respond(final String body) {
+    return CompletableFuture.completedFuture(new WebSocketRouteResponse(200, Map.of(), Optional.of(body.getBytes())));
+  }
+}